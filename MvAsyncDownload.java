@@ -7,17 +7,7 @@
 
 package com.vsubhash.droid.androidwithoutstupid;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.UnknownHostException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 import android.os.AsyncTask;
 import android.webkit.URLUtil;
@@ -27,7 +17,11 @@ import android.webkit.URLUtil;
  * download a file, call the constructor with the URL of the file and the full
  * pathname to which the file needs to be saved to. The constructor automatically 
  * starts the download. As this class extends {@link android.os.AsyncTask}, 
- * override its methods to handle download events.
+ * override its methods to handle download events. If a download of the same
+ * URL to the same file is already running, no second transfer is started; 
+ * the download waits for the running one and reports its progress and outcome.
+ * The download itself is done by an {@link MvDownload}, which can also be
+ * used without Android.
  * <pre>
 MvAsyncDownload dl = 
   new MvAsyncDownload(
@@ -51,58 +45,84 @@ MvAsyncDownload dl =
  * 
  */
 public class MvAsyncDownload extends AsyncTask<String, Long, MvException> {
-	String msFilename, msFilePathname, msFileDirectory, msMimeType;
-	String msRemoteUrl, msHeaderFileName, msUserAgent, msHashMd5 = "", msHashSha1 = "";	
-	HttpURLConnection moURLConnection;
-	long mlDownloadSize;
-	long mlBytesDownloaded = 0;
-	boolean mbGuessFileName = false, mbContinue = true;
-	
-	BufferedInputStream in = null;
-	FileOutputStream of = null;
+	MvDownload moDownload;
+	MvDownloadProgress moDeliveredProgress = null;
 	
 	/**
 	 * Returns bytes that have been downloaded.
 	 * 
 	 * @return number of downloaded bytes
 	 */
-	public long getDownloadedSize() { return(mlBytesDownloaded); }
+	public long getDownloadedSize() { return(moDownload.getDownloadedSize()); }
 	/**
 	 * Returns byte size of the download (if known).
 	 * @return byte size of the download
 	 */
-	public long getDownloadSize() { return(mlDownloadSize); }
+	public long getDownloadSize() { return(moDownload.getDownloadSize()); }
 	/**
 	 * Returns name of the download file (if known).
 	 * 
 	 * @return name of the download file
 	 */
-	public String getDownloadFilename() { return(msFilename); }
+	public String getDownloadFilename() { return(moDownload.getDownloadFilename()); }
 	/**
 	 * Returns pathname of the download file.
 	 * 
 	 * @return pathname of the download file
 	 */
-	public String getDownloadFilePathname() { return(msFilePathname); }
+	public String getDownloadFilePathname() { return(moDownload.getDownloadFilePathname()); }
 	/**
 	 * Returns mimetype of the download.
 	 * @return mimetype of the download
 	 */
-	public String getMimeType() { return(msMimeType); }
+	public String getMimeType() { return(moDownload.getMimeType()); }
 	
 	/**
 	 * Returns MD5 hash of the file.
 	 * 
 	 * @return MD5 hash of the file
 	 */
-	public String getHashMd5() { return("MD5: " + msHashMd5); }
+	public String getHashMd5() { return(moDownload.getHashMd5()); }
 	
 	/**
 	 * Returns SHA1 hash of the file.
 	 * 
 	 * @return SHA1 hash of the file
 	 */
-	public String getHashSha1() { return("SHA1: " + msHashSha1); }
+	public String getHashSha1() { return(moDownload.getHashSha1()); }
+	
+	/**
+	 * Returns the hash of the file computed with specified algorithm. The
+	 * algorithms are set with {@link MvDownloadOptions#masDigestAlgorithms}.
+	 * 
+	 * @param asAlgorithm name of the algorithm, such as "SHA-256" or "CRC32"
+	 * @return hash as a hexadecimal string; null if it was not computed
+	 */
+	public String getHash(String asAlgorithm) { return(moDownload.getHash(asAlgorithm)); }
+	
+	/**
+	 * Returns whether the server reported that the remote file has not changed
+	 * since it was last downloaded (see {@link MvDownloadOptions#moValidatorCache}).
+	 * The local file was left as it is.
+	 * 
+	 * @return whether the remote file has not been modified
+	 */
+	public boolean isNotModified() { return(moDownload.isNotModified()); }
+	
+	/**
+	 * Returns the latest progress report of the download.
+	 * 
+	 * @return latest progress report; null if none has been made yet
+	 */
+	public MvDownloadProgress getProgress() { return(moDownload.getProgress()); }
+	
+	/**
+	 * Returns the measurements of the download, such as the time to the first
+	 * response and the rate of the transfer.
+	 * 
+	 * @return measurements of the download
+	 */
+	public MvDownloadMetrics.Sample getMetrics() { return(moDownload.getMetrics()); }
 	
 	private MvAsyncDownload() {
 		super();
@@ -132,11 +152,33 @@ public class MvAsyncDownload extends AsyncTask<String, Long, MvException> {
 	 */
 	public MvAsyncDownload(String asURL, String asFile, String asUserAgent) {
 	  this();
-		msRemoteUrl = asURL;
-		msFilePathname = asFile;
-		msUserAgent = asUserAgent;
-		mbGuessFileName = false;
-		this.execute(msRemoteUrl, msFilePathname);
+		MvDownloadOptions oOptions = new MvDownloadOptions();
+		oOptions.msUserAgent = asUserAgent;
+		moDownload = newDownload(asURL, asFile, oOptions);
+		this.execute(asURL, asFile);
+	}
+	
+	/**
+	 * Asynchronously downloads the specified URL to specified file using the
+	 * specified settings. Use this constructor to download large files over
+	 * several connections ({@link MvDownloadOptions#miSegments}) or to run the
+	 * download on a {@link MvDownloadQueue} ({@link MvDownloadOptions#moQueue}).
+	 * 
+	 * @param asURL
+	 *          download URL
+	 * @param asFile
+	 *          pathname of local file to which the download needs to be saved
+	 * @param aoOptions
+	 *          settings for the download
+	 */
+	public MvAsyncDownload(String asURL, String asFile, MvDownloadOptions aoOptions) {
+	  this();
+		moDownload = newDownload(asURL, asFile, aoOptions);
+		if (aoOptions.moQueue != null) {
+			this.executeOnExecutor(aoOptions.moQueue.getExecutorFor(moDownload), asURL, asFile);
+		} else {
+			this.execute(asURL, asFile);
+		}
 	}
 	
 	/**
@@ -168,7 +210,10 @@ public class MvAsyncDownload extends AsyncTask<String, Long, MvException> {
 	 *          abGuessFileName is false, asPath represents the file name to which
 	 *          the download needs to be saved
 	 * @param abGuessFileName
-	 *          whether the filename needs to be guessed
+	 *          whether the filename needs to be guessed; if no extension can be
+	 *          guessed from the URL and mimetype, it is chosen from the first
+	 *          bytes of the body (see {@link MvContentSniffer}) before the file
+	 *          is created
 	 * @param asMimeType
 	 *          mimetype of the download (used only for guessing the filename)
 	 * @param asUserAgent
@@ -176,326 +221,115 @@ public class MvAsyncDownload extends AsyncTask<String, Long, MvException> {
 	 */
 	public MvAsyncDownload(String asURL, String asPath, boolean abGuessFileName, String asMimeType, String asUserAgent) {
 	  this();
-  	  
-	  msRemoteUrl = asURL;
-	  msUserAgent = asUserAgent;
-	  mbGuessFileName = abGuessFileName;
+		String sFilePathname, sFilename = null;
+		MvDownloadOptions oOptions = new MvDownloadOptions();
+		oOptions.msUserAgent = asUserAgent;
 	  
-	  if (mbGuessFileName) {
-	  	msFileDirectory = asPath;
+	  if (abGuessFileName) {
 	  	String sGuessedFilename = URLUtil.guessFileName(asURL, null, asMimeType);
 	  	if (sGuessedFilename.contains(".bin")) {
-	  		msFilename = "unknown-download-" + MvGeneral.getRandomNumber() + ".bin"; 	
+	  		sFilename = "unknown-download-" + MvGeneral.getRandomNumber() + ".bin"; 	
 	  	} else {
-	  		msFilename = sGuessedFilename;
+	  		sFilename = sGuessedFilename;
 	  	}
-	  	msFilePathname = msFileDirectory + File.separator + msFilename;
+	  	sFilePathname = asPath + File.separator + sFilename;
 	  } else {
-	  	msFileDirectory =	MvFileIO.getParentDirectoryFromPath(asPath);	
-	  	msFilePathname = asPath;
+	  	sFilePathname = asPath;
 	  }
 		
-		MvMessages.logMessage("Set to download " + msRemoteUrl + "\n\tto " + msFilePathname);
-		this.execute(msRemoteUrl, msFilePathname);	  
+		moDownload = newDownload(asURL, sFilePathname, oOptions);
+		moDownload.mbGuessFileName = abGuessFileName;
+		moDownload.msFilename = sFilename;
+		MvMessages.logMessage("Set to download " + asURL + "\n\tto " + sFilePathname);
+		this.execute(asURL, sFilePathname);	  
 	}	
 	
-	
+	/**
+	 * Creates the download that does the work of this task. Its progress
+	 * reports are published to the UI thread.
+	 */
+	MvDownload newDownload(String asURL, String asFile, MvDownloadOptions aoOptions) {
+		MvDownload oDownload = new MvDownload(asURL, asFile, aoOptions) {
+			@Override
+			protected void onProgress(MvDownloadProgress aoProgress) {
+				publishProgress(aoProgress.mlBytesDownloaded);
+			}
+			
+			@Override
+			protected boolean isStopped() {
+				return(super.isStopped() || isCancelled());
+			}
+		};
+		oDownload.setUseHeaderFileName(true);
+		return(oDownload);
+	}
 	  
 	@Override
 	protected void onCancelled() {
-		try {
-			
-			in.close();
-			of.flush();
-			of.close();
-			moURLConnection.disconnect();
-		} catch (IOException ioe) {
-			MvMessages.logMessage("IO Exception closing streams.");
-		} catch (Exception e) {
-			MvMessages.logMessage("Other exception cancelling download.");
-		}
-		
+		moDownload.closeStreams();
 		super.onCancelled();
 	}
 	
 	@Override
-	protected MvException doInBackground(String... asLinks) {
-		MessageDigest oHashMd5 = null, oHashSha1 = null;
-		try {
-			oHashMd5 = MessageDigest.getInstance("MD5");
-			oHashSha1 = MessageDigest.getInstance("SHA1");
-		} catch (NoSuchAlgorithmException nsae) {	
-			MvMessages.logMessage("Hash not available");
-			nsae.printStackTrace();
-		}
-		URL oURL;
-		MvException oRet = new MvException();
-		byte[] buf = new byte[1024];
-		int n = 0, iTries = 0;
-		
-		if (asLinks.length == 2) { // url, file
-			try {
-				oURL = new URL(msRemoteUrl);
-				moURLConnection = (HttpURLConnection) oURL.openConnection();
-				
-				if (msUserAgent.length() > "Wget 1".length()) {
-				  moURLConnection.setRequestProperty("User-Agent", msUserAgent);
-					// MvMessages.logMessage("Mimicking " + msUserAgent);
-					//MvMessages.logMessage("Mimicking useragent");
-				}
-				
-			// Handle redirects
-				int iResponseCode = moURLConnection.getResponseCode();
-				if ((iResponseCode == HttpURLConnection.HTTP_MOVED_TEMP) || 
-						(iResponseCode == HttpURLConnection.HTTP_MOVED_PERM) ||
-						(iResponseCode == HttpURLConnection.HTTP_SEE_OTHER)) {
-					if (moURLConnection.getHeaderField("Location") != null) {						
-						String sNewUrl = moURLConnection.getHeaderField("Location");
-						MvMessages.logMessage("Redirected to " + sNewUrl);
-						oURL = new URL(sNewUrl);
-						moURLConnection = (HttpURLConnection) oURL.openConnection();
-					} else {
-						MvMessages.logMessage("Redirected but no new location");
-						oRet.mbSuccess = false;
-						oRet.msProblem = "Redirected but no new location";
-						oRet.msPossibleSolution = "Check headers";
-						return(oRet);
-					}
-				}
-				
-				mlDownloadSize = moURLConnection.getContentLength();
-				if (mlDownloadSize > -1) {
-					MvMessages.logMessage("File size is " + mlDownloadSize);
-				} else {
-					MvMessages.logMessage("File size is unknown.");
-				}
-
-				if (moURLConnection.getHeaderFields() != null) {
-					MvMessages.logMessage("Headers are: " + moURLConnection.getHeaderFields().toString());
-					
-					String sDispositionHeader = moURLConnection.getHeaderField("content-disposition");
-
-					if (sDispositionHeader != null) {
-						if (sDispositionHeader.length() > 0) {
-							msHeaderFileName = getFileNameFromHeader(sDispositionHeader);							
-							if (msHeaderFileName.length() > 0) {
-								MvMessages.logMessage("Changed output file from " + msFilePathname);
-								msFilePathname = msFileDirectory + File.separator + MvFileIO.getSafeFileNameFor(msHeaderFileName);
-						  	MvMessages.logMessage("\tto " + msFilePathname);
-						  	msFilename = msHeaderFileName;
-						  }
-						}
-					}
-					
-					mlBytesDownloaded = MvFileIO.getFileSize(msFilePathname);
-					MvMessages.logMessage("Existing file size is "  + mlBytesDownloaded);
-					
-					if ((mlDownloadSize > 0) && (mlBytesDownloaded == mlDownloadSize)) {
-					  MvMessages.logMessage("File already downloaded");
-					  oRet.moResult = msFilePathname;
-					  msMimeType = moURLConnection.getContentType();
-					  oRet.mbSuccess = true;
-					  return(oRet);
-					} else if ((mlDownloadSize > 0) && (mlBytesDownloaded > 0) && (mlBytesDownloaded < mlDownloadSize)) {
-						moURLConnection.disconnect();
-						moURLConnection = (HttpURLConnection) oURL.openConnection();
-						MvMessages.logMessage("Resuming download from " + mlBytesDownloaded);
-						moURLConnection.setRequestProperty("Range", "bytes=" + mlBytesDownloaded + "-");
-					}
-					
-					moURLConnection.setConnectTimeout(4000);				
-					moURLConnection.connect();	
-					MvMessages.logMessage("Connection response is " + moURLConnection.getResponseCode());
-					
-					for (iTries = 1; iTries < 6; iTries++) {
-						if (!mbContinue) {
-							oRet.mbSuccess = false;
-							oRet.msProblem = "Download cancelled.";
-							oRet.msPossibleSolution = "None required";
-							iTries =6;
-							moURLConnection.disconnect();
-							MvMessages.logMessage("Download cancelled");
-							return(oRet);
-						}						
-						
-						if (iTries > 1) {						
-							moURLConnection.disconnect();
-							moURLConnection = (HttpURLConnection) oURL.openConnection();
-							if (mlDownloadSize > -1) {
-								MvMessages.logMessage("Resuming download from " + mlBytesDownloaded);
-							  moURLConnection.setRequestProperty("Range", "bytes=" + mlBytesDownloaded + "-");
-							}  
-							moURLConnection.connect();
-						} else {		
-							//MvMessages.logMessage(msFilePathname + " ~ \n" + asLinks[0]);
-							if ((mlDownloadSize > 0) && (mlBytesDownloaded > 0) && (mlBytesDownloaded < mlDownloadSize)) {
-								MvMessages.logMessage("Using existing download file.");
-							  of = new FileOutputStream(msFilePathname, true);
-							} else {
-								MvMessages.logMessage("Using new download file.");
-								of = new FileOutputStream(msFilePathname, false);
-							}
-						}
-						
-						try {						
-							in = new BufferedInputStream(moURLConnection.getInputStream());
-							do {
-								if (isCancelled()) {
-									oRet.mbSuccess = false;
-									oRet.msProblem = "Download cancelled.";
-									oRet.msPossibleSolution = "None required";
-									iTries =6;
-									of.flush();
-									in.close();
-									of.close();			
-									MvMessages.logMessage("Download cancelled");
-									return(oRet);
-								}
-								
-								n = in.read(buf, 0, 1024);
-								
-								mlBytesDownloaded = mlBytesDownloaded + n;
-								if (n > 0) {
-									of.write(buf, 0, n);
-									if (oHashMd5 != null) { oHashMd5.update(buf, 0, n); }
-									if (oHashSha1 != null) { oHashSha1.update(buf, 0, n); }
-									if (msFilename == null) {
-										msFilename = MvFileIO.getFileNameFromPath(msFilePathname);
-									}
-									publishProgress(mlBytesDownloaded);
-									
-								} else {
-									if (oHashMd5 != null) { 
-										byte[] arDigest = oHashMd5.digest();
-										String sDigest = MvGeneral.convertByteArrayToHexString(arDigest);
-										MvMessages.logMessage("The MD5 hash is " + sDigest);
-										msHashMd5 = sDigest;
-									}
-									if (oHashSha1 != null) { 
-										byte[] arDigest = oHashSha1.digest();
-										String sDigest = MvGeneral.convertByteArrayToHexString(arDigest);
-										MvMessages.logMessage("The SHA1 hash is " + sDigest);
-										msHashSha1 = sDigest;
-									}
-									
-									of.flush();
-									in.close();
-									of.close();
-									msMimeType = moURLConnection.getContentType();
-									MvMessages.logMessage("Mime = " + msMimeType);
-									
-									String sNewExtension, sNewFileName;
-									if ((mbGuessFileName) && (msFilename.endsWith(".bin"))) {
-										if (msMimeType.contains("text/html")) {
-											sNewExtension = ".htm";
-										} else if (msMimeType.contains("text/plain")) {
-											sNewExtension = ".txt";
-										} else if (msMimeType.contains("application/pdf")) {
-											sNewExtension = ".pdf";
-										} else if (msMimeType.contains("application/zip")) {
-											sNewExtension = ".zip";
-										} else if (msMimeType.contains("audio/mpeg")) {
-											sNewExtension = ".mp3";
-										} else if (msMimeType.contains("image/png")) {
-											sNewExtension = ".png";
-										} else if (msMimeType.contains("image/jpeg")) {
-											sNewExtension = ".jpg";
-										} else if (msMimeType.contains("image/gif")) {
-											sNewExtension = ".gif";
-										} else if (msMimeType.contains("video/mp4")) {
-											sNewExtension = ".mp4";
-										} else if (msMimeType.contains("video/mpeg")) {
-											sNewExtension = ".mpg";
-										} else {
-											sNewExtension = ".bin";
-										}
-										
-										sNewFileName = MvFileIO.getFileNameWithoutExtension(msFilePathname) + sNewExtension;
-										sNewFileName = MvFileIO.getSafeFileNameFor(sNewFileName);
-										sNewFileName = MvFileIO.getIncrementedFileName(msFileDirectory + File.separator + sNewFileName);
-										
-										MvException oRename = MvFileIO.renameFile(msFilePathname, msFileDirectory + File.separator + sNewFileName);		
-										if (oRename.mbSuccess) {
-											msFilename = sNewFileName;
-											msFilePathname = msFileDirectory + File.separator + sNewFileName;
-										} else {
-											MvMessages.logMessage("Unable to rename file as " + sNewFileName + " because of " + oRename.msProblem);
-										}
-									}
-									oRet.mbSuccess = true;
-								}
-							} while(n != -1);		
-							
-							oRet.moResult = msFilePathname;
-													
-							break;
-					  } catch (IOException e) {
-						  oRet.mbSuccess = false;
-							oRet.mException = e;
-							oRet.msProblem = "Download failed. Tries: " + iTries;
-							oRet.msPossibleSolution = "A better download URL or network conditions.";
-							MvMessages.logMessage(oRet.msProblem);
-							e.printStackTrace();					
-						}
-					}
-				} else {
-					MvMessages.logMessage("Headers are null");
-					oRet.mbSuccess = false;
-					oRet.mException = null;
-					oRet.msProblem = "Headers are null";
-					oRet.msPossibleSolution = "A valid URL (link) is required.";
-				}
-			} catch (MalformedURLException e) {
-				oRet.mbSuccess = false;
-				oRet.mException = e;
-				oRet.msProblem = "This is an invalid URL (link).";
-				oRet.msPossibleSolution = "A valid URL (link) is required.";
-				e.printStackTrace();
-			} catch (UnknownHostException e) {
-				oRet.mbSuccess = false;
-				oRet.mException = e;
-				oRet.msProblem = "There is no Internet connection or the website does not exist.";
-				oRet.msPossibleSolution = "An working Internet connection or a valid website address is required.";
-				MvMessages.logMessage("Have you added INTERNET permission?");
-				e.printStackTrace();
-			} catch (FileNotFoundException e) {
-				oRet.mbSuccess = false;
-				oRet.mException = e;
-				oRet.msProblem = "The link (URL) or the file path is invalid." + msFilePathname;
-				oRet.msPossibleSolution = "An existing link (URL) is required.";
-				e.printStackTrace();
-			} catch (IOException e) {
-				oRet.mbSuccess = false;
-				oRet.mException = e;
-				oRet.msProblem = "There is no network connection.";
-				oRet.msPossibleSolution = "A good connection to the network is required.";
-				e.printStackTrace();
-			}
-		}		
-		return oRet;
-  }
+	protected void onCancelled(MvException aoResult) {
+		deliverFinalProgress();
+		super.onCancelled(aoResult);
+	}
 	
-	public void stopDownload() {
-		mbContinue = false;
+	@Override
+	protected void onPostExecute(MvException aoResult) {
+		deliverFinalProgress();
+		super.onPostExecute(aoResult);
 	}
 	
-	String getFileNameFromHeader(String asHeader) {
-		String sFileName, sReturn = "";
-		
-		if (asHeader.indexOf("filename=") > -1) {
-		  if (asHeader.length() > asHeader.indexOf("filename=")) {
-		  	sFileName = asHeader.substring(asHeader.indexOf("filename=") + "filename=".length());
-		  	if (sFileName.indexOf(";") > -1) {
-		  		sFileName = sFileName.substring(0,sFileName.indexOf(";"));
-		  	}
-		  	sReturn = sFileName.replace("\"", "").replace("\\", "").replace("\\", "");
-		  }
+	/**
+	 * Called in the UI thread with the latest progress report of the download.
+	 * Reports are made as often as allowed by
+	 * {@link MvDownloadOptions#moProgressPolicy}, and the last report
+	 * ({@link MvDownloadProgress#mbFinal}) is always made, by the time
+	 * <code>super.onPostExecute()</code> or <code>super.onCancelled()</code>
+	 * returns. Override this method to display the progress.
+	 * 
+	 * @param aoProgress progress report
+	 */
+	protected void onDownloadProgress(MvDownloadProgress aoProgress) {
+	}
+	
+	@Override
+	protected void onProgressUpdate(Long... alValues) {
+		MvDownloadProgress oProgress = moDownload.getProgress();
+		if ((oProgress != null) && (oProgress != moDeliveredProgress)) {
+			moDeliveredProgress = oProgress;
+			onDownloadProgress(oProgress);
 		}
-		return(sReturn);
+		super.onProgressUpdate(alValues);
 	}
 	
-
-    
+	/**
+	 * Delivers the last progress report of the download, if it has not been
+	 * delivered. AsyncTask drops the progress published after the task is
+	 * cancelled, and the last report is published as a cancelled download
+	 * ends.
+	 */
+	void deliverFinalProgress() {
+		MvDownloadProgress oProgress = moDownload.getProgress();
+		if ((oProgress != null) && oProgress.mbFinal && (oProgress != moDeliveredProgress)) {
+			moDeliveredProgress = oProgress;
+			onDownloadProgress(oProgress);
+		}
+	}
 	
+	@Override
+	protected MvException doInBackground(String... asLinks) {
+		return(moDownload.run());
+	}
+	
+	/**
+	 * Stops the download. A segmented download keeps its segment state so that
+	 * it can be resumed later.
+	 */
+	public void stopDownload() {
+		moDownload.stopDownload();
+	}
 	
 }
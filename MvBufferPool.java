@@ -0,0 +1,233 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps a pool of direct byte buffers for
+ * {@link MvTransferEngine}. Direct buffers are expensive to allocate and are
+ * not reclaimed promptly by the garbage collector, so they are returned to the
+ * pool after each transfer and reused by the next one.
+ * <p>
+ * Buffers come in size classes, which are powers of two from
+ * {@value #MIN_BUFFER_SIZE} to {@value #MAX_BUFFER_SIZE} bytes, so that a
+ * transfer can move to a larger buffer on a fast link and to a smaller one on
+ * a slow link. The memory of the buffers in use is capped. A request that
+ * would go over the cap is given a smaller buffer, down to the smallest
+ * class, which is always given, so that a transfer never waits for memory.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvBufferPool {
+
+	/**
+	 * Default size of a buffer in bytes.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64*1024;
+
+	/**
+	 * Default number of idle buffers retained by a pool.
+	 */
+	public static final int DEFAULT_MAX_IDLE_BUFFERS = 8;
+
+	/**
+	 * Size of the smallest class of buffers.
+	 */
+	public static final int MIN_BUFFER_SIZE = 4*1024;
+
+	/**
+	 * Size of the largest class of buffers.
+	 */
+	public static final int MAX_BUFFER_SIZE = 256*1024;
+
+	/**
+	 * Default cap on the memory of the buffers in use, in bytes.
+	 */
+	public static final long DEFAULT_MAX_MEMORY = 8*1024*1024;
+
+	static final MvBufferPool moDefaultPool = new MvBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_IDLE_BUFFERS);
+
+	volatile int miBufferSize;
+	volatile int miMaxIdleBuffers;
+	volatile long mlMaxMemory = DEFAULT_MAX_MEMORY;
+	final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>> moIdleBuffers =
+			new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>>();
+	final AtomicInteger moIdleCount = new AtomicInteger(0);
+	final AtomicLong moMemoryInUse = new AtomicLong(0);
+
+	/**
+	 * Creates a pool of buffers with specified size.
+	 *
+	 * @param aiBufferSize size of each buffer in bytes, which is rounded up to
+	 *        a size class
+	 * @param aiMaxIdleBuffers number of idle buffers that are retained for reuse
+	 */
+	public MvBufferPool(int aiBufferSize, int aiMaxIdleBuffers) {
+		super();
+		miBufferSize = getSizeClass(aiBufferSize);
+		miMaxIdleBuffers = Math.max(0, aiMaxIdleBuffers);
+	}
+
+	/**
+	 * Returns the pool used by the download and copy routines of this library.
+	 *
+	 * @return the shared pool
+	 */
+	public static MvBufferPool getDefault() {
+		return(moDefaultPool);
+	}
+
+	/**
+	 * Returns the size class that holds specified number of bytes.
+	 *
+	 * @param aiSize number of bytes
+	 * @return smallest power of two that is not less than the size, within
+	 *         {@value #MIN_BUFFER_SIZE} and {@value #MAX_BUFFER_SIZE}
+	 */
+	public static int getSizeClass(int aiSize) {
+		int iClass = MIN_BUFFER_SIZE;
+		while ((iClass < aiSize) && (iClass < MAX_BUFFER_SIZE)) {
+			iClass = iClass * 2;
+		}
+		return(iClass);
+	}
+
+	/**
+	 * Returns size of the buffers handed out by {@link #acquire()}.
+	 *
+	 * @return buffer size in bytes
+	 */
+	public int getBufferSize() {
+		return(miBufferSize);
+	}
+
+	/**
+	 * Changes the size of buffers handed out by {@link #acquire()}.
+	 *
+	 * @param aiBufferSize buffer size in bytes, which is rounded up to a size
+	 *        class
+	 */
+	public void setBufferSize(int aiBufferSize) {
+		miBufferSize = getSizeClass(aiBufferSize);
+	}
+
+	/**
+	 * Changes the number of idle buffers retained for reuse.
+	 *
+	 * @param aiMaxIdleBuffers number of idle buffers
+	 */
+	public void setMaxIdleBuffers(int aiMaxIdleBuffers) {
+		miMaxIdleBuffers = Math.max(0, aiMaxIdleBuffers);
+		for (ConcurrentLinkedQueue<ByteBuffer> oIdle : moIdleBuffers.values()) {
+			while ((moIdleCount.get() > miMaxIdleBuffers) && (oIdle.poll() != null)) {
+				moIdleCount.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Changes the cap on the memory of the buffers in use. Buffers already
+	 * handed out are not taken back.
+	 *
+	 * @param alMaxMemory memory in bytes
+	 */
+	public void setMaxMemory(long alMaxMemory) {
+		mlMaxMemory = Math.max(MIN_BUFFER_SIZE, alMaxMemory);
+	}
+
+	/**
+	 * Returns the memory of the buffers that have been handed out and not yet
+	 * released.
+	 *
+	 * @return memory in bytes
+	 */
+	public long getMemoryInUse() {
+		return(moMemoryInUse.get());
+	}
+
+	/**
+	 * Returns a cleared buffer of the default size. Return it with
+	 * {@link #release(ByteBuffer)} when done.
+	 *
+	 * @return a cleared direct buffer
+	 */
+	public ByteBuffer acquire() {
+		return(acquire(miBufferSize));
+	}
+
+	/**
+	 * Returns a cleared buffer of the size class of specified size, or of a
+	 * smaller class if the memory cap does not allow it. It is taken from the
+	 * pool or, if there is no idle buffer of the class, allocated. Return it
+	 * with {@link #release(ByteBuffer)} when done.
+	 *
+	 * @param aiSize number of bytes required
+	 * @return a cleared direct buffer
+	 */
+	public ByteBuffer acquire(int aiSize) {
+		ConcurrentLinkedQueue<ByteBuffer> oIdle;
+		ByteBuffer oBuffer;
+		int iClass = getSizeClass(aiSize);
+		long lInUse;
+
+		while (true) {
+			lInUse = moMemoryInUse.get();
+			if ((iClass == MIN_BUFFER_SIZE) || (lInUse + iClass <= mlMaxMemory)) {
+				if (moMemoryInUse.compareAndSet(lInUse, lInUse + iClass)) {
+					break;
+				}
+			} else {
+				iClass = iClass / 2;
+			}
+		}
+
+		oIdle = moIdleBuffers.get(Integer.valueOf(iClass));
+		oBuffer = (oIdle == null) ? null : oIdle.poll();
+		if (oBuffer != null) {
+			moIdleCount.decrementAndGet();
+			oBuffer.clear();
+			return(oBuffer);
+		}
+		return(ByteBuffer.allocateDirect(iClass));
+	}
+
+	/**
+	 * Returns a buffer to the pool. Buffers in excess of the idle limit are
+	 * left to the garbage collector.
+	 *
+	 * @param aoBuffer buffer that was obtained from {@link #acquire(int)}
+	 */
+	public void release(ByteBuffer aoBuffer) {
+		ConcurrentLinkedQueue<ByteBuffer> oIdle, oNew;
+
+		if (aoBuffer == null) {
+			return;
+		}
+		moMemoryInUse.addAndGet(-aoBuffer.capacity());
+		if (moIdleCount.incrementAndGet() > miMaxIdleBuffers) {
+			moIdleCount.decrementAndGet();
+			return;
+		}
+		oIdle = moIdleBuffers.get(Integer.valueOf(aoBuffer.capacity()));
+		if (oIdle == null) {
+			oNew = new ConcurrentLinkedQueue<ByteBuffer>();
+			oIdle = moIdleBuffers.putIfAbsent(Integer.valueOf(aoBuffer.capacity()), oNew);
+			if (oIdle == null) {
+				oIdle = oNew;
+			}
+		}
+		oIdle.offer(aoBuffer);
+	}
+
+}
@@ -0,0 +1,349 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * This class keeps a hash of each chunk (such as every 4 MB) of a download
+ * file, as the bytes are written. The chunk map is saved in the journal of the
+ * download (see {@link MvDownloadJournal#moChunks}), with the hash of the
+ * partial chunk at the end of the committed bytes. When the download is
+ * resumed, only the bytes of the last chunk are read back and checked, rather
+ * than the whole file. If they do not match, the download is resumed from the
+ * start of that chunk.
+ * <p>
+ * When the download is complete, the chunk hashes are combined into one
+ * {@link #HASH_NAME hash} of the file. The chunk hashes are {@value #ALGORITHM}
+ * hashes.
+ *
+ * <pre>
+MvChunkMap oChunks = new MvChunkMap("/mnt/sdcard/podcast.mp3", MvChunkMap.DEFAULT_CHUNK_SIZE);
+oChunks.update(oBuffer);  // For each buffer written to the file
+MvLog.logMessage("Verified " + oChunks.verify(lCommittedBytes) + " bytes");
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvChunkMap {
+
+	/**
+	 * Default byte size of a chunk.
+	 */
+	public static final long DEFAULT_CHUNK_SIZE = 4*1024*1024;
+
+	/**
+	 * Algorithm with which the chunks are hashed.
+	 */
+	public static final String ALGORITHM = "SHA1";
+
+	/**
+	 * Name under which the combined hash of the chunks is reported with the
+	 * other hashes of a download (see {@link MvDownload#getHash(String)}).
+	 */
+	public static final String HASH_NAME = "CHUNKED-SHA1";
+
+	String msFilePathname;
+	long mlChunkSize;
+	final List<String> moHashes = new ArrayList<String>();
+	MessageDigest moDigest;
+	long mlLength = 0;
+	String msTailHash = "";
+
+	/**
+	 * Creates an empty chunk map for specified file.
+	 *
+	 * @param asFilePathname pathname of the download file
+	 * @param alChunkSize byte size of a chunk
+	 */
+	public MvChunkMap(String asFilePathname, long alChunkSize) {
+		super();
+		msFilePathname = asFilePathname;
+		mlChunkSize = Math.max(MvBufferPool.MIN_BUFFER_SIZE, alChunkSize);
+		moDigest = newDigest();
+	}
+
+	/**
+	 * Returns the chunk map saved in specified journal properties.
+	 *
+	 * @param asFilePathname pathname of the download file
+	 * @param aoProperties properties of the journal
+	 * @param alLength committed bytes of the journal, which the map covers
+	 * @return chunk map; null if none was saved or it could not be read
+	 */
+	static MvChunkMap load(String asFilePathname, Properties aoProperties, long alLength) {
+		MvChunkMap oMap;
+		String sChunks;
+
+		if (aoProperties.getProperty("chunk-size") == null) {
+			return(null);
+		}
+		oMap = new MvChunkMap(asFilePathname, Long.parseLong(aoProperties.getProperty("chunk-size")));
+		if (oMap.moDigest == null) {
+			return(null);
+		}
+		sChunks = aoProperties.getProperty("chunks", "");
+		if (sChunks.length() > 0) {
+			for (String sHash : sChunks.split(",")) {
+				oMap.moHashes.add(sHash);
+			}
+		}
+		if (oMap.moHashes.size() != alLength / oMap.mlChunkSize) {
+			MvLog.logMessage("Chunk map does not cover " + alLength + " bytes");
+			return(null);
+		}
+		// The partial chunk is hashed again when it is verified.
+		oMap.mlLength = oMap.moHashes.size() * oMap.mlChunkSize;
+		oMap.msTailHash = aoProperties.getProperty("chunk-tail", "");
+		return(oMap);
+	}
+
+	/**
+	 * Saves the chunk map in specified journal properties. The map is first
+	 * made to cover the specified number of bytes.
+	 *
+	 * @param aoProperties properties of the journal
+	 * @param alLength committed bytes of the journal
+	 * @return bytes covered by the saved map, which are fewer than the
+	 *         committed bytes if the file could not be read
+	 */
+	synchronized long store(Properties aoProperties, long alLength) {
+		MessageDigest oTail;
+
+		if (moDigest == null) {
+			return(alLength);
+		}
+		if (alLength != mlLength) {
+			try {
+				rehash(alLength);
+			} catch (IOException e) {
+				MvLog.logMessage("Chunk map could not be updated - " + e);
+			}
+		}
+		if (mlLength % mlChunkSize == 0) {
+			msTailHash = "";
+		} else {
+			try {
+				oTail = (MessageDigest) moDigest.clone();
+				msTailHash = MvDigestStage.toHexString(oTail.digest());
+			} catch (CloneNotSupportedException e) {
+				// The partial chunk is not verified when the download is resumed.
+				msTailHash = "";
+			}
+		}
+		aoProperties.setProperty("chunk-size", Long.toString(mlChunkSize));
+		aoProperties.setProperty("chunks", join(moHashes));
+		aoProperties.setProperty("chunk-tail", msTailHash);
+		return(mlLength);
+	}
+
+	/**
+	 * Hashes the bytes between the position and limit of specified buffer,
+	 * which are the next bytes of the file. The position of the buffer is not
+	 * changed.
+	 *
+	 * @param aoChunk bytes written to the file
+	 */
+	public synchronized void update(ByteBuffer aoChunk) {
+		ByteBuffer oBytes = aoChunk.duplicate();
+		int iLimit = oBytes.limit(), n;
+
+		if (moDigest == null) {
+			return;
+		}
+		while (oBytes.hasRemaining()) {
+			n = (int) Math.min(oBytes.remaining(), mlChunkSize - (mlLength % mlChunkSize));
+			oBytes.limit(oBytes.position() + n);
+			moDigest.update(oBytes);
+			oBytes.limit(iLimit);
+			mlLength = mlLength + n;
+			if (mlLength % mlChunkSize == 0) {
+				moHashes.add(MvDigestStage.toHexString(moDigest.digest()));
+			}
+		}
+	}
+
+	/**
+	 * Starts the map afresh, as when the download restarts from the beginning.
+	 */
+	public synchronized void reset() {
+		moHashes.clear();
+		if (moDigest != null) {
+			moDigest.reset();
+		}
+		mlLength = 0;
+		msTailHash = "";
+	}
+
+	/**
+	 * Returns the number of bytes covered by the map.
+	 *
+	 * @return bytes hashed
+	 */
+	public synchronized long getLength() {
+		return(mlLength);
+	}
+
+	/**
+	 * Reads back the last chunk of the bytes covered by the map, which may be
+	 * a partial chunk, and checks it against its saved hash. If it does not
+	 * match, the chunk is dropped from the map.
+	 *
+	 * @param alLength number of bytes of the file that need to be verified,
+	 *        which are the committed bytes of the journal that the map was
+	 *        saved with
+	 * @return number of bytes that can be trusted; less than the specified
+	 *         length if the last chunk did not match
+	 */
+	public synchronized long verify(long alLength) {
+		long lStart;
+		String sExpected, sActual;
+
+		if ((moDigest == null) || (alLength <= 0)) {
+			return(0);
+		}
+		lStart = ((alLength - 1) / mlChunkSize) * mlChunkSize;
+		if (alLength % mlChunkSize == 0) {
+			if (moHashes.size() < alLength / mlChunkSize) {
+				return(Math.min(alLength, mlLength));
+			}
+			sExpected = moHashes.get((int) (alLength / mlChunkSize) - 1);
+		} else {
+			sExpected = msTailHash;
+		}
+		try {
+			rehash(lStart);
+			rehash(alLength);
+			if (mlLength % mlChunkSize == 0) {
+				sActual = moHashes.get(moHashes.size() - 1);
+			} else {
+				sActual = MvDigestStage.toHexString(((MessageDigest) moDigest.clone()).digest());
+			}
+			if (sActual.equals(sExpected)) {
+				return(mlLength);
+			}
+			MvLog.logMessage("Chunk at " + lStart + " does not match its hash - " + msFilePathname);
+		} catch (IOException e) {
+			MvLog.logMessage("Chunk at " + lStart + " could not be verified - " + e.getMessage());
+		} catch (CloneNotSupportedException e) {
+			MvLog.logMessage("Chunk at " + lStart + " could not be verified");
+		}
+		truncate(lStart);
+		return(mlLength);
+	}
+
+	/**
+	 * Returns the hash of the chunk hashes, which are hashed one after the
+	 * other as bytes. The hash of the partial chunk at the end, if any, is
+	 * included.
+	 *
+	 * @return hexadecimal hash; empty if the hashes could not be computed
+	 */
+	public synchronized String getCombinedHash() {
+		MessageDigest oCombined = newDigest();
+
+		if ((oCombined == null) || (moDigest == null)) {
+			return("");
+		}
+		for (String sHash : moHashes) {
+			oCombined.update(toBytes(sHash));
+		}
+		if (mlLength % mlChunkSize != 0) {
+			try {
+				oCombined.update(((MessageDigest) moDigest.clone()).digest());
+			} catch (CloneNotSupportedException e) {
+				return("");
+			}
+		}
+		return(MvDigestStage.toHexString(oCombined.digest()));
+	}
+
+	/**
+	 * Drops the chunks at and after specified chunk boundary.
+	 */
+	void truncate(long alBoundary) {
+		while (moHashes.size() > alBoundary / mlChunkSize) {
+			moHashes.remove(moHashes.size() - 1);
+		}
+		moDigest.reset();
+		mlLength = (alBoundary / mlChunkSize) * mlChunkSize;
+		msTailHash = "";
+	}
+
+	/**
+	 * Makes the map cover the first specified number of bytes of the file. The
+	 * bytes after the last whole chunk that is kept are read from the file.
+	 */
+	void rehash(long alLength) throws IOException {
+		RandomAccessFile oFile = null;
+		byte[] buf;
+		int n;
+
+		if (alLength < mlLength) {
+			truncate(alLength);
+		}
+		if (alLength == mlLength) {
+			return;
+		}
+		// The file is read without its channel, which is closed if the thread
+		// has been interrupted, as it is when the download is stopped.
+		buf = new byte[MvBufferPool.DEFAULT_BUFFER_SIZE];
+		try {
+			oFile = new RandomAccessFile(msFilePathname, "r");
+			oFile.seek(mlLength);
+			while (mlLength < alLength) {
+				n = oFile.read(buf, 0, (int) Math.min(buf.length, alLength - mlLength));
+				if (n == -1) {
+					throw new IOException("File is shorter than " + alLength + " bytes");
+				}
+				update(ByteBuffer.wrap(buf, 0, n));
+			}
+		} finally {
+			if (oFile != null) {
+				oFile.close();
+			}
+		}
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return(MessageDigest.getInstance(ALGORITHM));
+		} catch (NoSuchAlgorithmException e) {
+			MvLog.logMessage("Hash not available - " + ALGORITHM);
+			return(null);
+		}
+	}
+
+	static String join(List<String> aoHashes) {
+		StringBuilder sb = new StringBuilder(aoHashes.size() * 41);
+		for (String sHash : aoHashes) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(sHash);
+		}
+		return(sb.toString());
+	}
+
+	static byte[] toBytes(String asHex) {
+		byte[] arBytes = new byte[asHex.length() / 2];
+		for (int i = 0; i < arBytes.length; i++) {
+			arBytes[i] = (byte) Integer.parseInt(asHex.substring(2*i, 2*i + 2), 16);
+		}
+		return(arBytes);
+	}
+
+}
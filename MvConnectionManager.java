@@ -0,0 +1,769 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * This class opens and releases the HTTP connections of the downloaders so
+ * that the sockets underneath are kept alive and reused. {@link HttpURLConnection}
+ * keeps a socket for reuse only if the response body was read to the end and
+ * closed, and {@link HttpURLConnection#disconnect()} was not called. When a
+ * connection is {@link #release(HttpURLConnection) released}, the rest of a
+ * small body is read and thrown away, so that the next request to the same
+ * host goes over the same socket without a TCP (and TLS) handshake. A large
+ * unread body is not worth reading, so that connection is closed instead. A
+ * connection that is in use can be {@link #abort(HttpURLConnection) aborted}
+ * from another thread, which releases the reader of its body at once. Bodies
+ * are handed straight through, except those of the HTTP client of desktop
+ * Java, whose blocked reads cannot be released; they are read ahead by a
+ * task of their own.
+ * <p>
+ * The platform does not tell whether a socket was reused. This class only
+ * counts the connections that were opened while a socket returned in a
+ * reusable state had not yet timed out. The keep-alive rate is therefore an
+ * upper bound on reuse; the platform may still have closed such a socket.
+ *
+ * <pre>
+MvConnectionManager oManager = MvConnectionManager.getDefault();
+MvDownloadResult[] arResults = oManager.fetchAll(
+  new String[] { "http://www.example.com/a.xml", "http://www.example.com/b.xml" },
+  new String[] { "/mnt/sdcard/a.xml", "/mnt/sdcard/b.xml" },
+  new MvDownloadOptions());
+MvMessages.logMessage("Keep-alive rate " + oManager.getKeepAliveRate());
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvConnectionManager {
+
+	/**
+	 * Default number of unread body bytes that are read and thrown away to keep
+	 * a connection alive.
+	 */
+	public static final int DEFAULT_DRAIN_LIMIT = 64*1024;
+
+	/**
+	 * Time for which an idle socket is assumed to be kept open, if the server
+	 * does not send a Keep-Alive header. It is the default of the platform.
+	 */
+	public static final long DEFAULT_KEEP_ALIVE_MILLIS = 5000;
+
+	static MvConnectionManager moDefault = null;
+
+	int miDrainLimit = DEFAULT_DRAIN_LIMIT;
+	long mlOpened = 0, mlKeptAlive = 0;
+	final Map<String, HostStats> moHosts = new HashMap<String, HostStats>();
+	final Map<HttpURLConnection, BodyStream> moBodies =
+			new WeakHashMap<HttpURLConnection, BodyStream>();
+
+	/**
+	 * Creates a connection manager with its own statistics.
+	 */
+	public MvConnectionManager() {
+		super();
+	}
+
+	/**
+	 * Returns the connection manager used by downloads whose options do not
+	 * specify one.
+	 *
+	 * @return shared connection manager
+	 */
+	public static synchronized MvConnectionManager getDefault() {
+		if (moDefault == null) {
+			moDefault = new MvConnectionManager();
+		}
+		return(moDefault);
+	}
+
+	/**
+	 * Sets the number of unread body bytes that are read and thrown away to
+	 * keep a connection alive. Connections with more unread bytes are closed.
+	 *
+	 * @param aiDrainLimit number of bytes (0 to close all such connections)
+	 */
+	public void setDrainLimit(int aiDrainLimit) {
+		miDrainLimit = Math.max(0, aiDrainLimit);
+	}
+
+	/**
+	 * Opens a connection to specified URL. The connection is not connected yet.
+	 *
+	 * @param aoURL address to which the connection needs to be opened
+	 * @return new connection
+	 * @throws IOException if the connection cannot be opened
+	 */
+	public HttpURLConnection open(URL aoURL) throws IOException {
+		HttpURLConnection oConnection = (HttpURLConnection) aoURL.openConnection();
+		HostStats oStats;
+		long lNow = System.currentTimeMillis();
+
+		synchronized (moHosts) {
+			oStats = getStats(getKey(aoURL));
+			oStats.mlOpened++;
+			mlOpened++;
+			while (!oStats.moIdleUntil.isEmpty() && (oStats.moIdleUntil.getFirst() < lNow)) {
+				oStats.moIdleUntil.removeFirst();
+			}
+			if (!oStats.moIdleUntil.isEmpty()) {
+				oStats.moIdleUntil.removeLast();
+				oStats.mlKeptAlive++;
+				mlKeptAlive++;
+			}
+		}
+		return(oConnection);
+	}
+
+	/**
+	 * Returns the response body of specified connection. Read the body from
+	 * this stream, rather than from the connection, so that the connection can
+	 * be released properly.
+	 *
+	 * @param aoConnection connection whose body needs to be read
+	 * @return body; an empty stream if there is none
+	 * @throws IOException if the response cannot be read or is an error, as
+	 *         with {@link HttpURLConnection#getInputStream()}
+	 */
+	public InputStream getInputStream(HttpURLConnection aoConnection) throws IOException {
+		BodyStream oBody;
+		InputStream oSource;
+
+		synchronized (moBodies) {
+			oBody = moBodies.get(aoConnection);
+		}
+		if (oBody == null) {
+			oSource = aoConnection.getInputStream();
+			synchronized (moBodies) {
+				// The connection may have been aborted while the response was awaited.
+				oBody = moBodies.get(aoConnection);
+				if (oBody == null) {
+					oBody = canAbortRead(aoConnection) ? new BodyStream(oSource) : new PumpedBodyStream(oSource);
+					moBodies.put(aoConnection, oBody);
+				}
+			}
+		}
+		return(oBody);
+	}
+
+	/**
+	 * Finishes with specified connection. The rest of the body is read if it is
+	 * small and the connection is left for reuse; otherwise, the connection is
+	 * closed. Call it instead of {@link HttpURLConnection#disconnect()}.
+	 *
+	 * @param aoConnection connection that is no longer needed (can be null)
+	 * @return whether the connection was left for reuse
+	 */
+	public boolean release(HttpURLConnection aoConnection) {
+		BodyStream oBody;
+		boolean bReusable;
+
+		if (aoConnection == null) {
+			return(false);
+		}
+		synchronized (moBodies) {
+			oBody = moBodies.remove(aoConnection);
+		}
+		try {
+			if (oBody == null) {
+				oBody = new BodyStream(openBody(aoConnection));
+			}
+			oBody.drain(miDrainLimit);
+			oBody.close();
+			bReusable = oBody.mbEndReached &&
+					!"close".equalsIgnoreCase(aoConnection.getHeaderField("Connection"));
+		} catch (IOException e) {
+			bReusable = false;
+		}
+
+		if (bReusable) {
+			HostStats oStats;
+			synchronized (moHosts) {
+				oStats = getStats(getKey(aoConnection.getURL()));
+				oStats.moIdleUntil.addLast(System.currentTimeMillis() + getKeepAliveMillis(aoConnection));
+			}
+		} else {
+			close(aoConnection, oBody);
+		}
+		return(bReusable);
+	}
+
+	/**
+	 * Closes specified connection without reading the rest of its body. Call it
+	 * when the connection has failed or the download has been cancelled.
+	 *
+	 * @param aoConnection connection that needs to be closed (can be null)
+	 */
+	public void discard(HttpURLConnection aoConnection) {
+		BodyStream oBody;
+
+		if (aoConnection != null) {
+			synchronized (moBodies) {
+				oBody = moBodies.remove(aoConnection);
+			}
+			close(aoConnection, oBody);
+		}
+	}
+
+	/**
+	 * Closes specified connection, unless it has been aborted, in which case
+	 * {@link #abort(HttpURLConnection)} closes it. If a read of its body is
+	 * still waiting for the network, the connection is aborted instead, since
+	 * closing it here would wait for the read.
+	 */
+	void close(HttpURLConnection aoConnection, BodyStream aoBody) {
+		if (aoBody == null) {
+			aoConnection.disconnect();
+		} else if (!aoBody.isAborted()) {
+			if (aoBody.isReading()) {
+				abort(aoConnection, aoBody);
+			} else {
+				aoConnection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Closes specified connection from any thread, such as the one that
+	 * cancels a download. A thread that is reading its body (from the stream
+	 * of {@link #getInputStream(HttpURLConnection)}) is released at once,
+	 * even on desktop Java, where closing a connection waits for a blocked
+	 * read to time out; later reads of the body fail. The connection itself
+	 * is closed on another thread, which also ends a request that is waiting
+	 * for the response headers. Call {@link #discard(HttpURLConnection)} when
+	 * the connection is no longer used, as for any failed connection.
+	 *
+	 * @param aoConnection connection that needs to be closed (can be null)
+	 */
+	public void abort(HttpURLConnection aoConnection) {
+		BodyStream oBody;
+
+		if (aoConnection == null) {
+			return;
+		}
+		synchronized (moBodies) {
+			oBody = moBodies.get(aoConnection);
+			if (oBody == null) {
+				// The body is not being read yet; it fails when it is.
+				oBody = new BodyStream(null);
+				moBodies.put(aoConnection, oBody);
+			}
+		}
+		abort(aoConnection, oBody);
+	}
+
+	void abort(final HttpURLConnection aoConnection, BodyStream aoBody) {
+		aoBody.abort();
+		MvDownload.getDefaultExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					aoConnection.disconnect();
+				} catch (RuntimeException e) {
+					MvLog.logMessage("Connection could not be closed - " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Downloads specified files one after another on the current thread. As
+	 * each connection is released before the next one is opened, files from
+	 * the same host are fetched over the same socket. This method should not be
+	 * called in the UI thread.
+	 *
+	 * @param asURLs addresses of the files
+	 * @param asFiles pathnames to which the files need to be saved
+	 * @param aoOptions settings for the downloads
+	 * @return outcome of each download, in the same order as the URLs
+	 */
+	public MvDownloadResult[] fetchAll(String[] asURLs, String[] asFiles, MvDownloadOptions aoOptions) {
+		MvDownloadResult[] arResults = new MvDownloadResult[asURLs.length];
+		MvConnectionManager oPreviousManager = aoOptions.moConnectionManager;
+		MvDownload oDownload;
+
+		aoOptions.moConnectionManager = this;
+		try {
+			for (int i = 0; i < asURLs.length; i++) {
+				oDownload = new MvDownload(asURLs[i], asFiles[i], aoOptions);
+				oDownload.setResumeExistingFile(false);
+				arResults[i] = oDownload.run();
+			}
+		} finally {
+			aoOptions.moConnectionManager = oPreviousManager;
+		}
+		return(arResults);
+	}
+
+	/**
+	 * Returns the number of connections opened through this manager.
+	 *
+	 * @return number of connections
+	 */
+	public long getOpenCount() {
+		synchronized (moHosts) {
+			return(mlOpened);
+		}
+	}
+
+	/**
+	 * Returns the number of connections that were opened while a socket left
+	 * open by an earlier connection was still within its keep-alive time. It
+	 * is an upper bound on the number of connections that reused a socket.
+	 *
+	 * @return number of connections opened with a socket kept alive
+	 */
+	public long getKeepAliveCount() {
+		synchronized (moHosts) {
+			return(mlKeptAlive);
+		}
+	}
+
+	/**
+	 * Returns the fraction of connections that were opened while a socket was
+	 * kept alive for them. It is an upper bound on the rate of socket reuse.
+	 *
+	 * @return rate from 0 to 1; 0 if no connection has been opened
+	 * @see #getKeepAliveCount()
+	 */
+	public double getKeepAliveRate() {
+		synchronized (moHosts) {
+			return((mlOpened == 0) ? 0 : ((double) mlKeptAlive) / mlOpened);
+		}
+	}
+
+	/**
+	 * Returns the fraction of connections to specified host that were opened
+	 * while a socket was kept alive for them. It is an upper bound on the rate
+	 * of socket reuse.
+	 *
+	 * @param asURL any address on the host
+	 * @return rate from 0 to 1; 0 if no connection has been opened to the host
+	 */
+	public double getKeepAliveRate(String asURL) {
+		HostStats oStats;
+		try {
+			synchronized (moHosts) {
+				oStats = moHosts.get(getKey(new URL(asURL)));
+				if ((oStats == null) || (oStats.mlOpened == 0)) {
+					return(0);
+				}
+				return(((double) oStats.mlKeptAlive) / oStats.mlOpened);
+			}
+		} catch (IOException e) {
+			return(0);
+		}
+	}
+
+	/**
+	 * Clears the statistics.
+	 */
+	public void resetStatistics() {
+		synchronized (moHosts) {
+			moHosts.clear();
+			mlOpened = 0;
+			mlKeptAlive = 0;
+		}
+	}
+
+	HostStats getStats(String asKey) {
+		HostStats oStats = moHosts.get(asKey);
+		if (oStats == null) {
+			oStats = new HostStats();
+			moHosts.put(asKey, oStats);
+		}
+		return(oStats);
+	}
+
+	/**
+	 * Returns whether a read of the body of specified connection, blocked on
+	 * the network, is released when the connection is closed from another
+	 * thread. It is not with the HTTP client of desktop Java.
+	 */
+	static boolean canAbortRead(HttpURLConnection aoConnection) {
+		return(!aoConnection.getClass().getName().startsWith("sun.net.www.protocol."));
+	}
+
+	static InputStream openBody(HttpURLConnection aoConnection) throws IOException {
+		InputStream oStream;
+		try {
+			oStream = aoConnection.getInputStream();
+		} catch (IOException e) {
+			// Error responses have their body in the error stream.
+			oStream = aoConnection.getErrorStream();
+			if (oStream == null) {
+				throw e;
+			}
+		}
+		return(oStream);
+	}
+
+	/**
+	 * Returns the time for which the server keeps an idle socket open, as
+	 * given in the Keep-Alive header of the response.
+	 */
+	static long getKeepAliveMillis(HttpURLConnection aoConnection) {
+		String sKeepAlive = aoConnection.getHeaderField("Keep-Alive");
+		int iStart, iEnd;
+
+		if (sKeepAlive != null) {
+			iStart = sKeepAlive.toLowerCase().indexOf("timeout=");
+			if (iStart > -1) {
+				iStart = iStart + "timeout=".length();
+				iEnd = iStart;
+				while ((iEnd < sKeepAlive.length()) && Character.isDigit(sKeepAlive.charAt(iEnd))) {
+					iEnd++;
+				}
+				if (iEnd > iStart) {
+					return(Long.parseLong(sKeepAlive.substring(iStart, iEnd)) * 1000);
+				}
+			}
+		}
+		return(DEFAULT_KEEP_ALIVE_MILLIS);
+	}
+
+	static String getKey(URL aoURL) {
+		int iPort = (aoURL.getPort() == -1) ? aoURL.getDefaultPort() : aoURL.getPort();
+		return(aoURL.getProtocol() + "://" + aoURL.getHost().toLowerCase() + ":" + iPort);
+	}
+
+
+	/**
+	 * Connection counts of one host.
+	 */
+	static class HostStats {
+		long mlOpened = 0, mlKeptAlive = 0;
+		LinkedList<Long> moIdleUntil = new LinkedList<Long>();
+	}
+
+
+	/**
+	 * A response body that remembers whether it was read to the end. Reads go
+	 * straight to the connection. Once the body is {@link #abort() aborted},
+	 * its reads fail; a read that is waiting for the network is released when
+	 * the connection is closed.
+	 */
+	static class BodyStream extends FilterInputStream {
+		volatile boolean mbEndReached = false, mbClosed = false, mbAborted = false;
+
+		BodyStream(InputStream aoStream) {
+			super(aoStream);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b;
+
+			checkAborted();
+			b = super.read();
+			if (b == -1) {
+				mbEndReached = true;
+			}
+			return(b);
+		}
+
+		@Override
+		public int read(byte[] aBuffer, int aiOffset, int aiLength) throws IOException {
+			int n;
+
+			checkAborted();
+			n = super.read(aBuffer, aiOffset, aiLength);
+			if (n == -1) {
+				mbEndReached = true;
+			}
+			return(n);
+		}
+
+		void checkAborted() throws IOException {
+			if (mbAborted) {
+				throw new IOException("Connection aborted");
+			}
+		}
+
+		/**
+		 * Makes this read, and any later one, fail. It can be called from any
+		 * thread.
+		 */
+		void abort() {
+			mbAborted = true;
+		}
+
+		boolean isAborted() {
+			return(mbAborted);
+		}
+
+		/**
+		 * Returns whether a read of the connection may still be waiting for
+		 * the network after the reader of this stream has given up on it.
+		 */
+		boolean isReading() {
+			return(false);
+		}
+
+		/**
+		 * Reads and throws away up to specified number of bytes, stopping at the
+		 * end of the body.
+		 */
+		void drain(int aiLimit) throws IOException {
+			byte[] buf;
+			int n;
+			long lDrained = 0;
+
+			if (mbEndReached || mbClosed) {
+				return;
+			}
+			buf = new byte[4096];
+			while (lDrained <= aiLimit) {
+				n = read(buf, 0, buf.length);
+				if (n == -1) {
+					break;
+				}
+				lDrained = lDrained + n;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!mbClosed) {
+				mbClosed = true;
+				if (in != null) {
+					super.close();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * A response body of a connection of the platform's own HTTP client, whose
+	 * blocked reads cannot be released. Desktop Java does not wake a thread
+	 * blocked on a socket when the stream is closed, the connection is
+	 * disconnected or the thread is interrupted; they all wait for the read
+	 * to time out. The bytes are therefore read from the connection by a task
+	 * on the {@link MvDownload#getDefaultExecutor() default executor}, ahead of
+	 * the reader, so that {@link #abort()} can release a reader that is
+	 * waiting for the network. Buffers are added only while the reader falls
+	 * behind, so a small body takes one of them.
+	 */
+	static class PumpedBodyStream extends BodyStream implements Runnable {
+		static final int BUFFER_SIZE = 16*1024, BUFFER_COUNT = 16;
+		final LinkedList<Chunk> moFree = new LinkedList<Chunk>(), moFilled = new LinkedList<Chunk>();
+		Chunk moCurrent = null;
+		IOException moError = null;
+		int miChunks = 0;
+		boolean mbSourceEnded = false, mbStarted = false, mbStopped = false;
+
+		/**
+		 * Bytes read from the connection, and how many of them have been read
+		 * from this stream.
+		 */
+		static class Chunk {
+			final byte[] mBuffer = new byte[BUFFER_SIZE];
+			int miLength = 0, miPosition = 0;
+		}
+
+		PumpedBodyStream(InputStream aoSource) {
+			super(aoSource);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] buf = new byte[1];
+			int n;
+
+			do {
+				n = read(buf, 0, 1);
+			} while (n == 0);
+			return((n == -1) ? -1 : (buf[0] & 0xff));
+		}
+
+		/**
+		 * Reads the bytes of as many filled buffers as fit, waiting only if none
+		 * is filled.
+		 */
+		@Override
+		public synchronized int read(byte[] aBuffer, int aiOffset, int aiLength) throws IOException {
+			int n, iRead = 0;
+
+			if (aiLength == 0) {
+				return(0);
+			}
+			while (moCurrent == null) {
+				checkAborted();
+				if (mbClosed) {
+					throw new IOException("Stream closed");
+				}
+				if (!moFilled.isEmpty()) {
+					moCurrent = moFilled.removeFirst();
+				} else if (moError != null) {
+					throw moError;
+				} else if (mbSourceEnded) {
+					mbEndReached = true;
+					return(-1);
+				} else {
+					start();
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Read interrupted");
+					}
+				}
+			}
+			while ((moCurrent != null) && (iRead < aiLength)) {
+				n = Math.min(aiLength - iRead, moCurrent.miLength - moCurrent.miPosition);
+				System.arraycopy(moCurrent.mBuffer, moCurrent.miPosition, aBuffer, aiOffset + iRead, n);
+				moCurrent.miPosition = moCurrent.miPosition + n;
+				iRead = iRead + n;
+				if (moCurrent.miPosition == moCurrent.miLength) {
+					moFree.addLast(moCurrent);
+					moCurrent = moFilled.isEmpty() ? null : moFilled.removeFirst();
+					notifyAll();
+				}
+			}
+			return(iRead);
+		}
+
+		@Override
+		public synchronized int available() {
+			int iAvailable = (moCurrent == null) ? 0 : (moCurrent.miLength - moCurrent.miPosition);
+
+			for (Chunk oChunk : moFilled) {
+				iAvailable = iAvailable + oChunk.miLength;
+			}
+			return(iAvailable);
+		}
+
+		/**
+		 * Reads the connection into the free buffers until the end of the body,
+		 * a failure or the stream is closed.
+		 */
+		@Override
+		public void run() {
+			Chunk oChunk;
+			boolean bClose;
+
+			try {
+				while (true) {
+					synchronized (this) {
+						while (moFree.isEmpty() && (miChunks == BUFFER_COUNT) && !mbClosed && !mbAborted) {
+							wait();
+						}
+						if (mbClosed || mbAborted) {
+							break;
+						}
+						if (moFree.isEmpty()) {
+							moFree.addLast(new Chunk());
+							miChunks++;
+						}
+						oChunk = moFree.removeFirst();
+					}
+					oChunk.miLength = in.read(oChunk.mBuffer, 0, BUFFER_SIZE);
+					oChunk.miPosition = 0;
+					synchronized (this) {
+						if (oChunk.miLength == -1) {
+							mbSourceEnded = true;
+							break;
+						}
+						moFilled.addLast(oChunk);
+						notifyAll();
+					}
+				}
+			} catch (IOException e) {
+				synchronized (this) {
+					moError = e;
+				}
+			} catch (InterruptedException e) {
+				synchronized (this) {
+					moError = new InterruptedIOException("Body reader interrupted");
+				}
+			} finally {
+				synchronized (this) {
+					mbStopped = true;
+					bClose = mbClosed || mbAborted;
+					notifyAll();
+				}
+				if (bClose) {
+					closeSource();
+				}
+			}
+		}
+
+		/**
+		 * Starts reading the connection, if it has not been started.
+		 */
+		synchronized void start() {
+			if (mbStarted) {
+				return;
+			}
+			mbStarted = true;
+			try {
+				MvDownload.getDefaultExecutor().execute(this);
+			} catch (RuntimeException e) {
+				mbStopped = true;
+				moError = new IOException("Body reader could not be started - " + e.getMessage());
+			}
+		}
+
+		/**
+		 * Releases the reader of this stream at once; its read, and any later
+		 * one, fails. The connection is closed by the reading task, when its
+		 * read returns.
+		 */
+		@Override
+		synchronized void abort() {
+			super.abort();
+			notifyAll();
+		}
+
+		@Override
+		synchronized boolean isReading() {
+			return(mbStarted && !mbStopped);
+		}
+
+		/**
+		 * Closes the stream. If the reading task is waiting for the network,
+		 * the connection is closed by it when its read returns.
+		 */
+		@Override
+		public void close() throws IOException {
+			boolean bReading;
+
+			synchronized (this) {
+				if (mbClosed) {
+					return;
+				}
+				mbClosed = true;
+				bReading = mbStarted && !mbStopped;
+				notifyAll();
+			}
+			if (!bReading) {
+				in.close();
+			}
+		}
+
+		void closeSource() {
+			try {
+				in.close();
+			} catch (IOException e) {
+				MvLog.logMessage("Body could not be closed - " + e.getMessage());
+			}
+		}
+	}
+
+}
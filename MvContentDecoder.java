@@ -0,0 +1,228 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class decodes a response body sent with a <code>Content-Encoding</code>
+ * of gzip or deflate. It also counts the encoded bytes read from the network,
+ * because the <code>Content-Length</code> of an encoded response is the size
+ * of the encoded body and not that of the file.
+ * <p>
+ * An encoded body cannot be resumed with a <code>Range</code> request, as the
+ * range would apply to the encoded bytes. The downloaders in this library
+ * therefore ask for compression only when there is nothing to resume.
+ *
+ * <pre>
+HttpURLConnection oConnection = (HttpURLConnection) oURL.openConnection();
+MvContentDecoder.setAcceptEncoding(oConnection);
+MvContentDecoder oDecoder = new MvContentDecoder(oConnection);
+MvTransferEngine.transfer(oDecoder.getInputStream(), oFileChannel, null);
+oDecoder.close();
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvContentDecoder {
+
+	/**
+	 * Value of the <code>Accept-Encoding</code> header sent by the downloaders.
+	 */
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	static final int INFLATER_BUFFER_SIZE = 64*1024;
+
+	String msContentEncoding;
+	CountingInputStream moCountingStream;
+	InputStream moDecodedStream;
+	Inflater moInflater = null;
+
+	/**
+	 * Creates a decoder for the body of specified connection, using the
+	 * <code>Content-Encoding</code> header of the response.
+	 *
+	 * @param aoConnection connection whose response body needs to be decoded
+	 * @throws IOException if the response cannot be read
+	 */
+	public MvContentDecoder(HttpURLConnection aoConnection) throws IOException {
+		this(aoConnection.getInputStream(), aoConnection.getContentEncoding());
+	}
+
+	/**
+	 * Creates a decoder for specified stream.
+	 *
+	 * @param aoEncodedStream stream of encoded bytes
+	 * @param asContentEncoding value of the <code>Content-Encoding</code> header
+	 *        (can be null)
+	 * @throws IOException if the gzip header cannot be read
+	 */
+	public MvContentDecoder(InputStream aoEncodedStream, String asContentEncoding) throws IOException {
+		super();
+		msContentEncoding = (asContentEncoding == null) ? "" : asContentEncoding.trim().toLowerCase();
+		moCountingStream = new CountingInputStream(new BufferedInputStream(aoEncodedStream));
+
+		if (msContentEncoding.equals("gzip") || msContentEncoding.equals("x-gzip")) {
+			moDecodedStream = new GZIPInputStream(moCountingStream, INFLATER_BUFFER_SIZE);
+		} else if (msContentEncoding.equals("deflate")) {
+			// Some servers send raw deflate data instead of the zlib format that
+			// the specification asks for.
+			moInflater = new Inflater(!hasZlibHeader(moCountingStream));
+			moDecodedStream = new InflaterInputStream(moCountingStream, moInflater, INFLATER_BUFFER_SIZE);
+		} else {
+			msContentEncoding = "";
+			moDecodedStream = moCountingStream;
+		}
+	}
+
+	/**
+	 * Asks the server for a compressed response. Do not call it on a connection
+	 * with a <code>Range</code> header.
+	 *
+	 * @param aoConnection connection that has not been connected yet
+	 */
+	public static void setAcceptEncoding(HttpURLConnection aoConnection) {
+		aoConnection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+	}
+
+	/**
+	 * Returns whether the response of specified connection has a gzip or deflate
+	 * encoded body.
+	 *
+	 * @param aoConnection connection whose response headers need to be checked
+	 * @return true if the body needs to be decoded
+	 * @throws IOException if the response cannot be read
+	 */
+	public static boolean isEncoded(HttpURLConnection aoConnection) throws IOException {
+		String sEncoding = aoConnection.getContentEncoding();
+		if (sEncoding == null) {
+			return(false);
+		}
+		sEncoding = sEncoding.trim().toLowerCase();
+		return(sEncoding.equals("gzip") || sEncoding.equals("x-gzip") || sEncoding.equals("deflate"));
+	}
+
+	/**
+	 * Returns whether the body is encoded.
+	 *
+	 * @return true if the body is gzip or deflate data
+	 */
+	public boolean isEncoded() { return(msContentEncoding.length() > 0); }
+
+	/**
+	 * Returns the content encoding of the body.
+	 *
+	 * @return "gzip", "x-gzip" or "deflate"; empty if the body is not encoded
+	 */
+	public String getContentEncoding() { return(msContentEncoding); }
+
+	/**
+	 * Returns the stream of decoded bytes.
+	 *
+	 * @return decoded stream
+	 */
+	public InputStream getInputStream() { return(moDecodedStream); }
+
+	/**
+	 * Returns number of encoded bytes read so far. Compare it with the
+	 * <code>Content-Length</code> of the response to show progress.
+	 *
+	 * @return number of bytes read from the network
+	 */
+	public long getEncodedBytes() { return(moCountingStream.mlCount); }
+
+	/**
+	 * Closes the streams and frees the native memory held by the inflater.
+	 *
+	 * @throws IOException if the stream cannot be closed
+	 */
+	public void close() throws IOException {
+		try {
+			moDecodedStream.close();
+		} finally {
+			if (moInflater != null) {
+				moInflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the stream starts with a zlib header. The stream is not
+	 * advanced.
+	 */
+	static boolean hasZlibHeader(InputStream aoStream) throws IOException {
+		int iCmf, iFlg;
+
+		aoStream.mark(2);
+		iCmf = aoStream.read();
+		iFlg = aoStream.read();
+		aoStream.reset();
+		if ((iCmf == -1) || (iFlg == -1)) {
+			return(true);
+		}
+		return(((iCmf & 0x0F) == 8) && ((((iCmf << 8) | iFlg) % 31) == 0));
+	}
+
+
+	/**
+	 * A stream that counts the bytes read through it.
+	 */
+	static class CountingInputStream extends FilterInputStream {
+		volatile long mlCount = 0, mlMark = 0;
+
+		CountingInputStream(InputStream aoStream) {
+			super(aoStream);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				mlCount++;
+			}
+			return(b);
+		}
+
+		@Override
+		public int read(byte[] aBuffer, int aiOffset, int aiLength) throws IOException {
+			int n = super.read(aBuffer, aiOffset, aiLength);
+			if (n > 0) {
+				mlCount = mlCount + n;
+			}
+			return(n);
+		}
+
+		@Override
+		public long skip(long alBytes) throws IOException {
+			long n = super.skip(alBytes);
+			mlCount = mlCount + n;
+			return(n);
+		}
+
+		@Override
+		public synchronized void mark(int aiReadLimit) {
+			super.mark(aiReadLimit);
+			mlMark = mlCount;
+		}
+
+		@Override
+		public synchronized void reset() throws IOException {
+			super.reset();
+			mlCount = mlMark;
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * This class works out the type of a download from the first bytes of its
+ * body (the magic numbers of PDF, ZIP, PNG, JPEG, GIF, MP3, MP4, Ogg and HTML
+ * files) and from its Content-Type header, and returns the file extension for
+ * it. Servers often send a generic type, such as
+ * <code>application/octet-stream</code>, so the bytes of the body are
+ * preferred to the header. Both are looked up in tables.
+ * <p>
+ * {@link MvDownload} uses it to name a download whose file name is guessed
+ * before the file is created, so that the file need not be renamed after the
+ * download.
+ *
+ * <pre>
+byte[] arHead = new byte[MvContentSniffer.SNIFF_LENGTH];
+int iLength = MvContentSniffer.readHead(oBufferedStream, arHead);
+String sExtension = MvContentSniffer.getExtension(
+    oConnection.getContentType(), arHead, iLength);  // ".pdf"
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvContentSniffer {
+
+	/**
+	 * Number of bytes at the start of the body that are inspected.
+	 */
+	public static final int SNIFF_LENGTH = 512;
+
+	/**
+	 * Extension used when the type is not known.
+	 */
+	public static final String DEFAULT_EXTENSION = ".bin";
+
+	/**
+	 * Content types and their file extensions.
+	 */
+	static final String[][] EXTENSIONS = {
+		{ "text/html", ".htm" },
+		{ "application/xhtml+xml", ".htm" },
+		{ "text/plain", ".txt" },
+		{ "application/pdf", ".pdf" },
+		{ "application/zip", ".zip" },
+		{ "application/x-zip-compressed", ".zip" },
+		{ "audio/mpeg", ".mp3" },
+		{ "audio/mp3", ".mp3" },
+		{ "image/png", ".png" },
+		{ "image/jpeg", ".jpg" },
+		{ "image/pjpeg", ".jpg" },
+		{ "image/gif", ".gif" },
+		{ "video/mp4", ".mp4" },
+		{ "audio/mp4", ".m4a" },
+		{ "audio/x-m4a", ".m4a" },
+		{ "video/mpeg", ".mpg" },
+		{ "audio/ogg", ".ogg" },
+		{ "application/ogg", ".ogg" },
+		{ "video/ogg", ".ogv" }
+	};
+
+	/**
+	 * Magic numbers, the offsets at which they are found and the content types
+	 * they stand for. MP3 frames and HTML, which have no fixed magic number,
+	 * are checked separately.
+	 */
+	static final Object[][] MAGIC_NUMBERS = {
+		{ 0, new int[] { '%', 'P', 'D', 'F', '-' }, "application/pdf" },
+		{ 0, new int[] { 'P', 'K', 3, 4 }, "application/zip" },
+		{ 0, new int[] { 'P', 'K', 5, 6 }, "application/zip" },
+		{ 0, new int[] { 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A }, "image/png" },
+		{ 0, new int[] { 0xFF, 0xD8, 0xFF }, "image/jpeg" },
+		{ 0, new int[] { 'G', 'I', 'F', '8', '7', 'a' }, "image/gif" },
+		{ 0, new int[] { 'G', 'I', 'F', '8', '9', 'a' }, "image/gif" },
+		{ 0, new int[] { 'I', 'D', '3' }, "audio/mpeg" },
+		{ 0, new int[] { 'O', 'g', 'g', 'S' }, "application/ogg" },
+		{ 4, new int[] { 'f', 't', 'y', 'p', 'M', '4', 'A', ' ' }, "audio/mp4" },
+		{ 4, new int[] { 'f', 't', 'y', 'p' }, "video/mp4" }
+	};
+
+	/**
+	 * Starts of HTML documents, in lower case.
+	 */
+	static final String[] HTML_STARTS = { "<!doctype html", "<html", "<head", "<body" };
+
+	static final HashMap<String, String> moExtensions = new HashMap<String, String>();
+
+	static {
+		for (String[] arEntry : EXTENSIONS) {
+			moExtensions.put(arEntry[0], arEntry[1]);
+		}
+	}
+
+	private MvContentSniffer() {
+		super();
+	}
+
+	/**
+	 * Returns the content type shown by the magic number at the start of
+	 * specified bytes.
+	 *
+	 * @param aHead first bytes of the body
+	 * @param aiLength number of bytes in the array
+	 * @return content type; null if it was not recognised
+	 */
+	public static String getMimeType(byte[] aHead, int aiLength) {
+		for (Object[] arMagic : MAGIC_NUMBERS) {
+			if (startsWith(aHead, aiLength, (Integer) arMagic[0], (int[]) arMagic[1])) {
+				return((String) arMagic[2]);
+			}
+		}
+		if ((aiLength >= 2) && ((aHead[0] & 0xFF) == 0xFF) &&
+				((aHead[1] & 0xE0) == 0xE0) && ((aHead[1] & 0x06) != 0)) {
+			// Frame sync of an MPEG audio frame. Layer bits of 00 are AAC.
+			return("audio/mpeg");
+		}
+		if (isHtml(aHead, aiLength)) {
+			return("text/html");
+		}
+		return(null);
+	}
+
+	/**
+	 * Returns the file extension for specified content type.
+	 *
+	 * @param asContentType value of a Content-Type header, with or without
+	 *        parameters (such as the charset)
+	 * @return extension, such as ".pdf"; null if the type is not known
+	 */
+	public static String getExtension(String asContentType) {
+		String sType;
+		int iParams;
+
+		if (asContentType == null) {
+			return(null);
+		}
+		iParams = asContentType.indexOf(';');
+		sType = (iParams < 0) ? asContentType : asContentType.substring(0, iParams);
+		return(moExtensions.get(sType.trim().toLowerCase(Locale.US)));
+	}
+
+	/**
+	 * Returns the file extension for a download with specified content type
+	 * and first bytes. The type shown by the bytes is preferred.
+	 *
+	 * @param asContentType value of the Content-Type header (can be null)
+	 * @param aHead first bytes of the body (can be null)
+	 * @param aiLength number of bytes in the array
+	 * @return extension; {@value #DEFAULT_EXTENSION} if the type is not known
+	 */
+	public static String getExtension(String asContentType, byte[] aHead, int aiLength) {
+		String sExtension = null;
+
+		if (aHead != null) {
+			sExtension = getExtension(getMimeType(aHead, aiLength));
+		}
+		if (sExtension == null) {
+			sExtension = getExtension(asContentType);
+		}
+		return((sExtension == null) ? DEFAULT_EXTENSION : sExtension);
+	}
+
+	/**
+	 * Reads the first bytes of specified stream without consuming them. The
+	 * stream needs to support {@link InputStream#mark(int)}. It blocks until
+	 * the array is full or the stream ends.
+	 *
+	 * @param aoStream stream at the start of the body
+	 * @param aHead array into which the bytes are read
+	 * @return number of bytes read
+	 * @throws IOException if the stream could not be read
+	 */
+	public static int readHead(InputStream aoStream, byte[] aHead) throws IOException {
+		int iLength = 0, n;
+
+		aoStream.mark(aHead.length);
+		try {
+			while (iLength < aHead.length) {
+				n = aoStream.read(aHead, iLength, aHead.length - iLength);
+				if (n == -1) {
+					break;
+				}
+				iLength = iLength + n;
+			}
+		} finally {
+			aoStream.reset();
+		}
+		return(iLength);
+	}
+
+	static boolean startsWith(byte[] aHead, int aiLength, int aiOffset, int[] aMagic) {
+		if (aiLength < aiOffset + aMagic.length) {
+			return(false);
+		}
+		for (int i = 0; i < aMagic.length; i++) {
+			if ((aHead[aiOffset + i] & 0xFF) != aMagic[i]) {
+				return(false);
+			}
+		}
+		return(true);
+	}
+
+	/**
+	 * Returns whether specified bytes start with an HTML tag, after any byte
+	 * order mark and white space.
+	 */
+	static boolean isHtml(byte[] aHead, int aiLength) {
+		int i = 0;
+		StringBuilder sbStart = new StringBuilder(16);
+		String sStart;
+
+		if (startsWith(aHead, aiLength, 0, new int[] { 0xEF, 0xBB, 0xBF })) {
+			i = 3;
+		}
+		while ((i < aiLength) && Character.isWhitespace((char) (aHead[i] & 0xFF))) {
+			i++;
+		}
+		for (int j = i; (j < aiLength) && (j < i + 16); j++) {
+			sbStart.append((char) (aHead[j] & 0xFF));
+		}
+		sStart = sbStart.toString().toLowerCase(Locale.US);
+		for (String sHtml : HTML_STARTS) {
+			if (sStart.startsWith(sHtml)) {
+				return(true);
+			}
+		}
+		return(false);
+	}
+
+}
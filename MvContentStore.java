@@ -0,0 +1,428 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Properties;
+
+/**
+ * This class stores downloaded files by their content. When a download
+ * completes, the file is committed to the store under its SHA1 digest and the
+ * downloaded file is made a hard link to the stored object. If the same
+ * content is downloaded again, under any URL or file name, the new file is
+ * linked to the existing object, so that the content is kept on disk only
+ * once.
+ * <p>
+ * The store also remembers the digest of each strong ETag it has seen, and of
+ * each digest the file that holds it. A download whose digest is known in
+ * advance ({@link MvDownloadOptions#msExpectedSha1}) is restored from the
+ * store without connecting. A download whose response carries a known ETag is
+ * restored without reading the body.
+ * <p>
+ * Where hard links are not available, the downloaded file is left as it is
+ * and the store refers to it instead. Later downloads of the same content are
+ * then copied from it, which still saves the network transfer.
+ * <p>
+ * As the files share their content, a file must not be written in place once
+ * it has been committed. {@link MvDownload} calls
+ * {@link #detach(String, boolean)} before it overwrites or resumes a file.
+ *
+ * <pre>
+MvDownloadOptions oOptions = new MvDownloadOptions();
+oOptions.moContentStore = new MvContentStore(getFilesDir() + "/store");
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvContentStore {
+
+	/**
+	 * Digest algorithm under which the content is stored.
+	 */
+	public static final String ALGORITHM = "SHA1";
+
+	static final String INDEX_FILE_NAME = "index.properties";
+	static final String ETAG_PREFIX = "etag ";
+	static final String PATH_PREFIX = "path ";
+
+	String msStoreDirectory;
+	final Properties moIndex = new Properties();
+
+	/**
+	 * Creates a store in specified directory. The directory is created if it
+	 * does not exist and the index is loaded if it does.
+	 *
+	 * @param asStoreDirectory pathname of the directory of the store
+	 */
+	public MvContentStore(String asStoreDirectory) {
+		super();
+		FileInputStream oFIS = null;
+
+		msStoreDirectory = asStoreDirectory;
+		new File(msStoreDirectory).mkdirs();
+		if (MvFileIO.isFile(getIndexPathname())) {
+			try {
+				oFIS = new FileInputStream(getIndexPathname());
+				moIndex.load(oFIS);
+			} catch (IOException e) {
+				MvLog.logMessage("Content store index could not be read - " + e.getMessage());
+			} finally {
+				if (oFIS != null) {
+					try { oFIS.close(); } catch (IOException e) { }
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the pathname of a file that holds the content with specified
+	 * digest.
+	 *
+	 * @param asSha1 SHA1 digest in hexadecimal
+	 * @return pathname; null if the content is not in the store
+	 */
+	public synchronized String locate(String asSha1) {
+		String sPathname;
+
+		if ((asSha1 == null) || (asSha1.length() == 0)) {
+			return(null);
+		}
+		sPathname = getObjectPathname(asSha1);
+		if (MvFileIO.isFile(sPathname)) {
+			return(sPathname);
+		}
+		sPathname = moIndex.getProperty(PATH_PREFIX + asSha1.toUpperCase());
+		if ((sPathname != null) && MvFileIO.isFile(sPathname)) {
+			return(sPathname);
+		}
+		return(null);
+	}
+
+	/**
+	 * Returns the digest of the content last sent by specified host with
+	 * specified ETag.
+	 *
+	 * @param asURL URL of the download
+	 * @param asETag ETag header of the response
+	 * @return SHA1 digest; null if the ETag is weak or unknown
+	 */
+	public synchronized String getHashForETag(String asURL, String asETag) {
+		if ((asETag == null) || asETag.startsWith("W/")) {
+			return(null);
+		}
+		return(moIndex.getProperty(getETagKey(asURL, asETag)));
+	}
+
+	/**
+	 * Puts the content with specified digest at specified pathname, as a hard
+	 * link or, failing that, as a copy.
+	 *
+	 * @param asSha1 SHA1 digest in hexadecimal
+	 * @param asFilePathname pathname at which the content is required
+	 * @return whether the content was in the store and was put in place
+	 */
+	public boolean restore(String asSha1, String asFilePathname) {
+		String sSource = locate(asSha1);
+
+		if (sSource == null) {
+			return(false);
+		}
+		if (sSource.equals(new File(asFilePathname).getAbsolutePath()) ||
+				sSource.equals(asFilePathname)) {
+			return(true);
+		}
+		if (replaceWithLink(sSource, asFilePathname)) {
+			MvLog.logMessage("Linked " + asFilePathname + " to stored " + asSha1);
+			return(true);
+		}
+		if (replaceWithCopy(sSource, asFilePathname)) {
+			MvLog.logMessage("Copied stored " + asSha1 + " to " + asFilePathname);
+			return(true);
+		}
+		return(false);
+	}
+
+	/**
+	 * Makes the file at specified pathname safe to be written in place. The
+	 * store stops referring to it, and if it shares its content with a stored
+	 * object or other files, it is given content of its own: a copy, or no
+	 * file at all if the content is not needed. Where link counts are not
+	 * available, a file is assumed to be shared.
+	 *
+	 * @param asFilePathname pathname of the file that is going to be written
+	 * @param abKeepContent whether the content of the file is needed, as when
+	 *        a download is resumed; if not, the file is deleted
+	 * @return whether the file can be written; false if a shared file could
+	 *         not be copied
+	 */
+	public synchronized boolean detach(String asFilePathname, boolean abKeepContent) {
+		String sPathname = new File(asFilePathname).getAbsolutePath();
+		boolean bReferred = false;
+
+		for (String sKey : moIndex.stringPropertyNames()) {
+			if (sKey.startsWith(PATH_PREFIX) && sPathname.equals(moIndex.getProperty(sKey))) {
+				moIndex.remove(sKey);
+				bReferred = true;
+			}
+		}
+		if (bReferred) {
+			save();
+		}
+		if (abKeepContent && (getLinkCount(asFilePathname) == -1) && MvFileIO.isFile(asFilePathname)) {
+			return(replaceWithCopy(asFilePathname, asFilePathname));
+		}
+		return(detachFile(asFilePathname, abKeepContent));
+	}
+
+	/**
+	 * Makes the file at specified pathname safe to be written in place, when
+	 * no store is at hand. If it is a hard link to other files, such as a file
+	 * committed to a store, it is replaced with a copy, or deleted if its
+	 * content is not needed.
+	 *
+	 * @param asFilePathname pathname of the file that is going to be written
+	 * @param abKeepContent whether the content of the file is needed
+	 * @return whether the file can be written; false if a shared file could
+	 *         not be copied
+	 */
+	public static boolean detachFile(String asFilePathname, boolean abKeepContent) {
+		if (!abKeepContent) {
+			// A new file does not share the content of the old one.
+			new File(asFilePathname).delete();
+			return(!MvFileIO.isFile(asFilePathname));
+		}
+		if (getLinkCount(asFilePathname) > 1) {
+			MvLog.logMessage("Copying shared file before it is written - " + asFilePathname);
+			return(replaceWithCopy(asFilePathname, asFilePathname));
+		}
+		return(true);
+	}
+
+	/**
+	 * Commits a downloaded file to the store. If the content is already stored,
+	 * the file is replaced with a link to it; otherwise, the content is stored
+	 * and the file is linked to it.
+	 *
+	 * @param asFilePathname pathname of the downloaded file
+	 * @param asSha1 SHA1 digest of the file (null to compute it)
+	 * @param asURL URL of the download (can be null)
+	 * @param asETag ETag header of the response (can be null)
+	 * @return SHA1 digest of the file; null if it could not be committed
+	 */
+	public synchronized String commit(String asFilePathname, String asSha1, String asURL, String asETag) {
+		String sExisting, sObject;
+
+		if ((asSha1 == null) || (asSha1.length() == 0)) {
+			asSha1 = computeHash(asFilePathname);
+			if (asSha1 == null) {
+				return(null);
+			}
+		}
+		asSha1 = asSha1.toUpperCase();
+
+		sExisting = locate(asSha1);
+		if (sExisting != null) {
+			if (!new File(sExisting).getAbsolutePath().equals(new File(asFilePathname).getAbsolutePath()) &&
+					(MvFileIO.getFileSize(sExisting) == MvFileIO.getFileSize(asFilePathname))) {
+				if (replaceWithLink(sExisting, asFilePathname)) {
+					MvLog.logMessage("Deduplicated " + asFilePathname + " - " + asSha1);
+				}
+			}
+		} else {
+			sObject = getObjectPathname(asSha1);
+			new File(sObject).getParentFile().mkdirs();
+			if (createLink(asFilePathname, sObject)) {
+				MvLog.logMessage("Stored " + asFilePathname + " as " + asSha1);
+			} else {
+				// No hard links; refer to the downloaded file instead.
+				moIndex.setProperty(PATH_PREFIX + asSha1, new File(asFilePathname).getAbsolutePath());
+			}
+		}
+
+		if ((asURL != null) && (asETag != null) && !asETag.startsWith("W/")) {
+			moIndex.setProperty(getETagKey(asURL, asETag), asSha1);
+		}
+		save();
+		return(asSha1);
+	}
+
+	/**
+	 * Deletes stored objects that no downloaded file links to any more. It
+	 * needs the link count of files, which is not available on all platforms.
+	 *
+	 * @return number of objects deleted; -1 if link counts are not available
+	 */
+	public synchronized int prune() {
+		File[] arDirs = new File(msStoreDirectory).listFiles();
+		File[] arObjects;
+		int iDeleted = 0, iLinks;
+
+		if (arDirs == null) {
+			return(0);
+		}
+		for (File oDir : arDirs) {
+			arObjects = oDir.isDirectory() ? oDir.listFiles() : null;
+			if (arObjects == null) {
+				continue;
+			}
+			for (File oObject : arObjects) {
+				iLinks = getLinkCount(oObject.getPath());
+				if (iLinks == -1) {
+					return(-1);
+				}
+				if ((iLinks == 1) && oObject.delete()) {
+					iDeleted++;
+				}
+			}
+		}
+		// Drop references to files that have been deleted
+		for (String sKey : moIndex.stringPropertyNames()) {
+			if (sKey.startsWith(PATH_PREFIX) && !MvFileIO.isFile(moIndex.getProperty(sKey))) {
+				moIndex.remove(sKey);
+			}
+		}
+		save();
+		return(iDeleted);
+	}
+
+	/**
+	 * Writes the index to the store directory.
+	 *
+	 * @return whether the index was written
+	 */
+	public synchronized boolean save() {
+		File oTempFile = new File(getIndexPathname() + ".tmp");
+		FileOutputStream oFOS = null;
+
+		try {
+			oFOS = new FileOutputStream(oTempFile);
+			moIndex.store(oFOS, null);
+			oFOS.close();
+			oFOS = null;
+			return(oTempFile.renameTo(new File(getIndexPathname())));
+		} catch (IOException e) {
+			MvLog.logMessage("Content store index could not be saved - " + e.getMessage());
+			return(false);
+		} finally {
+			if (oFOS != null) {
+				try { oFOS.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	String getIndexPathname() {
+		return(msStoreDirectory + File.separator + INDEX_FILE_NAME);
+	}
+
+	String getObjectPathname(String asSha1) {
+		String sHash = asSha1.toUpperCase();
+		return(msStoreDirectory + File.separator + sHash.substring(0, 2) + File.separator + sHash);
+	}
+
+	static String getETagKey(String asURL, String asETag) {
+		return(ETAG_PREFIX + MvDownloadQueue.getHost(asURL) + " " + asETag);
+	}
+
+	static String computeHash(String asFilePathname) {
+		MvDigestStage oDigests = new MvDigestStage(new String[] { ALGORITHM });
+		oDigests.start(asFilePathname, MvFileIO.getFileSize(asFilePathname));
+		return(oDigests.finish().get(ALGORITHM));
+	}
+
+	/**
+	 * Replaces the file at the link pathname with a hard link to the existing
+	 * file. The link is made under a temporary name and renamed over the file,
+	 * so the file is never missing.
+	 */
+	static boolean replaceWithLink(String asExisting, String asLink) {
+		File oTemp = new File(asLink + ".link");
+		oTemp.delete();
+		if (!createLink(asExisting, oTemp.getPath())) {
+			return(false);
+		}
+		if (!oTemp.renameTo(new File(asLink))) {
+			oTemp.delete();
+			return(false);
+		}
+		return(true);
+	}
+
+	/**
+	 * Replaces the file at the copy pathname with a copy of the existing file,
+	 * which can be the same file. The copy is made under a temporary name and
+	 * renamed over the file, so a file linked to it keeps its content.
+	 */
+	static boolean replaceWithCopy(String asExisting, String asCopy) {
+		File oTemp = new File(asCopy + ".copy");
+		oTemp.delete();
+		if (!MvFileIO.copyFile(asExisting, oTemp.getPath()).mbSuccess) {
+			oTemp.delete();
+			return(false);
+		}
+		if (!oTemp.renameTo(new File(asCopy))) {
+			oTemp.delete();
+			return(false);
+		}
+		return(true);
+	}
+
+	/**
+	 * Creates a hard link. android.system.Os is available from Android 5.0
+	 * and java.nio.file from Android 8.0 (and Java 7), so both are called
+	 * through reflection.
+	 */
+	static boolean createLink(String asExisting, String asLink) {
+		try {
+			Class.forName("android.system.Os").getMethod("link", String.class, String.class)
+				.invoke(null, asExisting, asLink);
+			return(true);
+		} catch (Exception e) {
+			// Not Android or the link failed
+		}
+		try {
+			Object oLink = getNioPath(asLink), oExisting = getNioPath(asExisting);
+			Class.forName("java.nio.file.Files")
+				.getMethod("createLink", oLink.getClass().getInterfaces()[0], oExisting.getClass().getInterfaces()[0])
+				.invoke(null, oLink, oExisting);
+			return(true);
+		} catch (Exception e) {
+			return(false);
+		}
+	}
+
+	static int getLinkCount(String asPathname) {
+		try {
+			Object oStat = Class.forName("android.system.Os").getMethod("stat", String.class)
+				.invoke(null, asPathname);
+			return((int) oStat.getClass().getField("st_nlink").getLong(oStat));
+		} catch (Exception e) {
+			// Not Android
+		}
+		try {
+			Object oPath = getNioPath(asPathname);
+			Class<?> oLinkOption = Class.forName("java.nio.file.LinkOption");
+			Object oCount = Class.forName("java.nio.file.Files")
+				.getMethod("getAttribute", oPath.getClass().getInterfaces()[0], String.class,
+						Array.newInstance(oLinkOption, 0).getClass())
+				.invoke(null, oPath, "unix:nlink", Array.newInstance(oLinkOption, 0));
+			return(((Number) oCount).intValue());
+		} catch (Exception e) {
+			return(-1);
+		}
+	}
+
+	static Object getNioPath(String asPathname) throws Exception {
+		return(File.class.getMethod("toPath").invoke(new File(asPathname)));
+	}
+
+}
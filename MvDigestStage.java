@@ -0,0 +1,384 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+
+/**
+ * This class computes digests (hashes) of a download on a thread of its own.
+ * The download thread copies each buffer into a bounded queue and carries on
+ * reading from the network; the digest thread takes the buffers from the
+ * queue and updates the digests. If the queue is full, the download thread
+ * waits for the digest thread to catch up.
+ * <p>
+ * A resumed download is hashed from the start of the file. The bytes already
+ * on disk are read back and hashed before the new bytes, unless the digests
+ * were saved with {@link #checkpoint()} at the offset where the download
+ * resumes, in which case the saved digests are used.
+ * <p>
+ * The algorithms can be any supported by {@link MessageDigest} (such as "MD5",
+ * "SHA1" and "SHA-256") and {@value #CRC32}. An empty list disables hashing.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDigestStage {
+
+	/**
+	 * Name of the CRC32 checksum algorithm.
+	 */
+	public static final String CRC32 = "CRC32";
+
+	/**
+	 * Algorithms used when none are specified.
+	 */
+	public static final String[] DEFAULT_ALGORITHMS = { "MD5", "SHA1" };
+
+	static final int QUEUE_CAPACITY = 16;
+	static final int ITEM_DATA = 0, ITEM_CHECKPOINT = 1, ITEM_RESTART = 2, ITEM_FINISH = 3;
+
+	String[] masAlgorithms;
+	Object[] maoDigests;
+	Object[] maoCheckpoint = null;
+	long mlBytesHashed = 0, mlCheckpointOffset = -1;
+	Map<String, String> moResults = null;
+	IOException moError = null;
+
+	final ArrayBlockingQueue<Item> moQueue = new ArrayBlockingQueue<Item>(QUEUE_CAPACITY);
+	final ConcurrentLinkedQueue<byte[]> moFreeArrays = new ConcurrentLinkedQueue<byte[]>();
+	Thread moThread = null;
+
+	/**
+	 * Creates a digest stage for specified algorithms. Algorithms that are not
+	 * supported are left out.
+	 *
+	 * @param asAlgorithms names of the algorithms (can be empty)
+	 */
+	public MvDigestStage(String[] asAlgorithms) {
+		super();
+		int i, n = 0;
+		Object[] arDigests = new Object[asAlgorithms.length];
+		String[] arNames = new String[asAlgorithms.length];
+
+		for (i = 0; i < asAlgorithms.length; i++) {
+			Object oDigest = newDigest(asAlgorithms[i]);
+			if (oDigest != null) {
+				arNames[n] = asAlgorithms[i];
+				arDigests[n] = oDigest;
+				n++;
+			} else {
+				MvLog.logMessage("Hash not available - " + asAlgorithms[i]);
+			}
+		}
+
+		masAlgorithms = new String[n];
+		maoDigests = new Object[n];
+		System.arraycopy(arNames, 0, masAlgorithms, 0, n);
+		System.arraycopy(arDigests, 0, maoDigests, 0, n);
+	}
+
+	/**
+	 * Returns whether any digest is being computed.
+	 *
+	 * @return false if no algorithm was specified or supported
+	 */
+	public boolean isEnabled() {
+		return(maoDigests.length > 0);
+	}
+
+	/**
+	 * Starts the digest thread. The first specified number of bytes of the file
+	 * are read back and hashed before any bytes passed to
+	 * {@link #update(ByteBuffer)}.
+	 *
+	 * @param asFilePathname pathname of the file being downloaded
+	 * @param alPrefixLength number of bytes already in the file
+	 */
+	public void start(String asFilePathname, long alPrefixLength) {
+		if (!isEnabled() || (moThread != null)) {
+			return;
+		}
+		moThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				digest();
+			}
+		}, "MvDigestStage");
+		moThread.start();
+		restart(asFilePathname, alPrefixLength);
+	}
+
+	/**
+	 * Queues the bytes between the position and limit of specified buffer for
+	 * hashing. The bytes are copied, so the buffer can be reused as soon as this
+	 * method returns. The position of the buffer is advanced to its limit.
+	 *
+	 * @param aoChunk bytes that need to be hashed
+	 */
+	public void update(ByteBuffer aoChunk) {
+		if (moThread == null) {
+			aoChunk.position(aoChunk.limit());
+			return;
+		}
+		Item oItem = new Item(ITEM_DATA);
+		oItem.miLength = aoChunk.remaining();
+		oItem.mData = moFreeArrays.poll();
+		if ((oItem.mData == null) || (oItem.mData.length < oItem.miLength)) {
+			oItem.mData = new byte[Math.max(oItem.miLength, MvBufferPool.DEFAULT_BUFFER_SIZE)];
+		}
+		aoChunk.get(oItem.mData, 0, oItem.miLength);
+		put(oItem);
+	}
+
+	/**
+	 * Saves the digests of the bytes queued so far. If the download is later
+	 * restarted at this offset, the saved digests are used instead of reading
+	 * the file back.
+	 */
+	public void checkpoint() {
+		if (moThread != null) {
+			put(new Item(ITEM_CHECKPOINT));
+		}
+	}
+
+	/**
+	 * Makes the digests cover only the first specified number of bytes of the
+	 * file. Use it when a download restarts from an earlier offset than the
+	 * bytes queued so far, for example from zero when the remote file has
+	 * changed.
+	 *
+	 * @param asFilePathname pathname of the file being downloaded
+	 * @param alOffset offset at which the download continues
+	 */
+	public void restart(String asFilePathname, long alOffset) {
+		if (moThread != null) {
+			Item oItem = new Item(ITEM_RESTART);
+			oItem.msPathname = asFilePathname;
+			oItem.mlOffset = alOffset;
+			put(oItem);
+		}
+	}
+
+	/**
+	 * Waits for the queued bytes to be hashed and returns the digests.
+	 *
+	 * @return map of algorithm name to hexadecimal digest; empty if hashing was
+	 *         disabled or failed
+	 */
+	public Map<String, String> finish() {
+		if (moThread == null) {
+			return(new LinkedHashMap<String, String>());
+		}
+		put(new Item(ITEM_FINISH));
+		try {
+			moThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		moThread = null;
+		if ((moResults == null) || (moError != null)) {
+			return(new LinkedHashMap<String, String>());
+		}
+		return(moResults);
+	}
+
+	/**
+	 * Stops the digest thread without computing the digests.
+	 */
+	public void abort() {
+		if (moThread != null) {
+			moThread.interrupt();
+			moThread = null;
+		}
+	}
+
+	void put(Item aoItem) {
+		try {
+			moQueue.put(aoItem);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	void digest() {
+		Item oItem;
+		int i;
+
+		try {
+			while (true) {
+				oItem = moQueue.take();
+				if (oItem.miType == ITEM_DATA) {
+					for (i = 0; i < maoDigests.length; i++) {
+						updateDigest(maoDigests[i], oItem.mData, oItem.miLength);
+					}
+					mlBytesHashed = mlBytesHashed + oItem.miLength;
+					if (moFreeArrays.size() < QUEUE_CAPACITY) {
+						moFreeArrays.offer(oItem.mData);
+					}
+				} else if (oItem.miType == ITEM_CHECKPOINT) {
+					maoCheckpoint = copyDigests(maoDigests);
+					mlCheckpointOffset = (maoCheckpoint != null) ? mlBytesHashed : -1;
+				} else if (oItem.miType == ITEM_RESTART) {
+					if (oItem.mlOffset == mlBytesHashed) {
+						continue;
+					}
+					if ((oItem.mlOffset == mlCheckpointOffset) && (maoCheckpoint != null)) {
+						maoDigests = copyDigests(maoCheckpoint);
+						mlBytesHashed = mlCheckpointOffset;
+					} else {
+						rehash(oItem.msPathname, oItem.mlOffset);
+					}
+				} else {
+					Map<String, String> oResults = new LinkedHashMap<String, String>();
+					for (i = 0; i < maoDigests.length; i++) {
+						oResults.put(masAlgorithms[i], getDigest(maoDigests[i]));
+					}
+					moResults = oResults;
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// Aborted
+		} catch (IOException e) {
+			moError = e;
+			MvLog.logMessage("Hashing failed - " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Resets the digests and hashes the first specified number of bytes of the
+	 * file.
+	 */
+	void rehash(String asFilePathname, long alLength) throws IOException {
+		FileInputStream oFIS = null;
+		byte[] buf;
+		int i, n;
+		long lRemaining = alLength;
+
+		for (i = 0; i < maoDigests.length; i++) {
+			resetDigest(maoDigests[i]);
+		}
+		mlBytesHashed = 0;
+		if (alLength <= 0) {
+			return;
+		}
+
+		MvLog.logMessage("Hashing existing " + alLength + " bytes of " + asFilePathname);
+		buf = new byte[MvBufferPool.DEFAULT_BUFFER_SIZE];
+		try {
+			oFIS = new FileInputStream(asFilePathname);
+			while (lRemaining > 0) {
+				n = oFIS.read(buf, 0, (int) Math.min(buf.length, lRemaining));
+				if (n == -1) {
+					throw new IOException("File is shorter than " + alLength + " bytes");
+				}
+				for (i = 0; i < maoDigests.length; i++) {
+					updateDigest(maoDigests[i], buf, n);
+				}
+				lRemaining = lRemaining - n;
+			}
+			mlBytesHashed = alLength;
+		} finally {
+			if (oFIS != null) {
+				oFIS.close();
+			}
+		}
+	}
+
+	static Object newDigest(String asAlgorithm) {
+		if (CRC32.equalsIgnoreCase(asAlgorithm)) {
+			return(new CRC32());
+		}
+		try {
+			return(MessageDigest.getInstance(asAlgorithm));
+		} catch (NoSuchAlgorithmException e) {
+			return(null);
+		}
+	}
+
+	static void updateDigest(Object aoDigest, byte[] aData, int aiLength) {
+		if (aoDigest instanceof MessageDigest) {
+			((MessageDigest) aoDigest).update(aData, 0, aiLength);
+		} else {
+			((CRC32) aoDigest).update(aData, 0, aiLength);
+		}
+	}
+
+	static void resetDigest(Object aoDigest) {
+		if (aoDigest instanceof MessageDigest) {
+			((MessageDigest) aoDigest).reset();
+		} else {
+			((CRC32) aoDigest).reset();
+		}
+	}
+
+	static String getDigest(Object aoDigest) {
+		if (aoDigest instanceof MessageDigest) {
+			return(toHexString(((MessageDigest) aoDigest).digest()));
+		}
+		return(String.format("%08X", ((CRC32) aoDigest).getValue()));
+	}
+
+	/**
+	 * Same as {@link MvGeneral#convertByteArrayToHexString(byte[])}, which
+	 * cannot be used where Android is not available.
+	 */
+	static String toHexString(byte[] aBytes) {
+		StringBuilder sb = new StringBuilder(aBytes.length * 2);
+		for (byte b : aBytes) {
+			sb.append(Character.toUpperCase(Character.forDigit((b >> 4) & 0x0F, 16)));
+			sb.append(Character.toUpperCase(Character.forDigit(b & 0x0F, 16)));
+		}
+		return(sb.toString());
+	}
+	
+	/**
+	 * Returns copies of specified digests; null if any of them (such as CRC32)
+	 * cannot be copied.
+	 */
+	static Object[] copyDigests(Object[] aoDigests) {
+		Object[] arCopies = new Object[aoDigests.length];
+		for (int i = 0; i < aoDigests.length; i++) {
+			if (!(aoDigests[i] instanceof MessageDigest)) {
+				return(null);
+			}
+			try {
+				arCopies[i] = ((MessageDigest) aoDigests[i]).clone();
+			} catch (CloneNotSupportedException e) {
+				return(null);
+			}
+		}
+		return(arCopies);
+	}
+
+
+	/**
+	 * A buffer or command passed to the digest thread.
+	 */
+	static class Item {
+		int miType;
+		byte[] mData;
+		int miLength;
+		long mlOffset;
+		String msPathname;
+
+		Item(int aiType) {
+			miType = aiType;
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.File;
+
+/**
+ * This class decides whether there is room on the disk for a download before
+ * its body is read, so that a full disk does not fail the download near its
+ * end and waste the whole transfer. A download is admitted if its size fits in
+ * the usable space of the target volume, less a reserve that is kept free for
+ * the rest of the system, and less the space reserved by the downloads that
+ * are already running. Each running download reserves the bytes it has yet to
+ * write and gives back the reservation as it writes them.
+ * <p>
+ * A download that would fit if the running downloads were not counted is
+ * {@link #HOLD held} until there is room, as when a running download fails or
+ * is cancelled and gives back the rest of its reservation, or when files are
+ * deleted. A download that would not fit even then is
+ * {@link #REJECT rejected}. Reservations are not told apart by
+ * volume, which errs on the safe side when downloads are saved to more than
+ * one volume.
+ *
+ * <pre>
+MvDiskSpace.Reservation oReservation = MvDiskSpace.getDefault().reserve(
+    "/mnt/sdcard/podcast.mp3", lContentLength, MvDiskSpace.DEFAULT_RESERVE_BYTES);
+if (oReservation != null) {
+  // Download, calling oReservation.setUsed(lBytesWritten) as it goes
+  oReservation.release();
+}
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDiskSpace {
+
+	/**
+	 * Default space in bytes that downloads leave free on the volume.
+	 */
+	public static final long DEFAULT_RESERVE_BYTES = 32*1024*1024;
+
+	/**
+	 * The download fits and can start.
+	 */
+	public static final int ADMIT = 0;
+
+	/**
+	 * The download fits only if the running downloads give back their space.
+	 */
+	public static final int HOLD = 1;
+
+	/**
+	 * The download does not fit on the volume.
+	 */
+	public static final int REJECT = 2;
+
+	static final MvDiskSpace moDefault = new MvDiskSpace();
+
+	long mlReserved = 0;
+
+	/**
+	 * Creates a ledger of reservations. Downloads use the
+	 * {@link #getDefault() shared ledger}.
+	 */
+	public MvDiskSpace() {
+		super();
+	}
+
+	/**
+	 * Returns the ledger shared by all downloads.
+	 *
+	 * @return shared ledger
+	 */
+	public static MvDiskSpace getDefault() {
+		return(moDefault);
+	}
+
+	/**
+	 * This class is the space reserved for one download.
+	 */
+	public class Reservation {
+		final long mlBytes;
+		long mlRemaining;
+
+		Reservation(long alBytes) {
+			mlBytes = alBytes;
+			mlRemaining = alBytes;
+		}
+
+		/**
+		 * Gives back the part of the reservation that has been written to the
+		 * disk.
+		 *
+		 * @param alBytes bytes written since the reservation was made
+		 */
+		public void setUsed(long alBytes) {
+			synchronized (MvDiskSpace.this) {
+				long lRemaining = Math.max(0, mlBytes - Math.max(0, alBytes));
+				if (lRemaining != mlRemaining) {
+					mlReserved = mlReserved - mlRemaining + lRemaining;
+					mlRemaining = lRemaining;
+					if (lRemaining == 0) {
+						MvDiskSpace.this.notifyAll();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Gives back the rest of the reservation. Call it when the download
+		 * ends or has claimed its space by other means, such as preallocation.
+		 */
+		public void release() {
+			setUsed(mlBytes);
+		}
+
+		/**
+		 * Returns the bytes that are still reserved.
+		 *
+		 * @return reserved bytes
+		 */
+		public long getRemaining() {
+			synchronized (MvDiskSpace.this) {
+				return(mlRemaining);
+			}
+		}
+	}
+
+	/**
+	 * Returns the usable space of the volume of specified file. The file and
+	 * its directory need not exist yet.
+	 *
+	 * @param asPathname pathname of the file
+	 * @return usable space in bytes
+	 */
+	public static long getUsableSpace(String asPathname) {
+		File oFile = new File(asPathname).getAbsoluteFile();
+
+		while ((oFile != null) && !oFile.exists()) {
+			oFile = oFile.getParentFile();
+		}
+		return((oFile == null) ? 0 : oFile.getUsableSpace());
+	}
+
+	/**
+	 * Returns whether a download of specified size can be started.
+	 *
+	 * @param asPathname pathname of the target file
+	 * @param alBytes bytes that the download will add to the disk; a negative
+	 *        number if it is not known, which is always admitted
+	 * @param alReserve bytes that need to be left free
+	 * @return {@link #ADMIT}, {@link #HOLD} or {@link #REJECT}
+	 */
+	public synchronized int check(String asPathname, long alBytes, long alReserve) {
+		long lFree;
+
+		if (alBytes <= 0) {
+			return(ADMIT);
+		}
+		lFree = getUsableSpace(asPathname) - alReserve;
+		if (lFree < alBytes) {
+			return(REJECT);
+		}
+		if (lFree - mlReserved < alBytes) {
+			return(HOLD);
+		}
+		return(ADMIT);
+	}
+
+	/**
+	 * Reserves space for a download of specified size, if it is admitted (see
+	 * {@link #check(String, long, long)}).
+	 *
+	 * @param asPathname pathname of the target file
+	 * @param alBytes bytes that the download will add to the disk; a negative
+	 *        number if it is not known
+	 * @param alReserve bytes that need to be left free
+	 * @return the reservation, which holds nothing if the size is not known;
+	 *         null if the download was not admitted
+	 */
+	public synchronized Reservation reserve(String asPathname, long alBytes, long alReserve) {
+		if (check(asPathname, alBytes, alReserve) != ADMIT) {
+			return(null);
+		}
+		alBytes = Math.max(0, alBytes);
+		mlReserved = mlReserved + alBytes;
+		return(new Reservation(alBytes));
+	}
+
+	/**
+	 * Waits until a held download of specified size can be started or is
+	 * rejected, or until specified time has passed. Waiting ends early when a
+	 * reservation is given back.
+	 *
+	 * @param asPathname pathname of the target file
+	 * @param alBytes bytes that the download will add to the disk
+	 * @param alReserve bytes that need to be left free
+	 * @param alTimeoutMillis time to wait
+	 * @return outcome of the last check
+	 * @throws InterruptedException if the thread was interrupted
+	 */
+	public synchronized int await(String asPathname, long alBytes, long alReserve, long alTimeoutMillis)
+			throws InterruptedException {
+		int iResult = check(asPathname, alBytes, alReserve);
+
+		if (iResult == HOLD) {
+			wait(alTimeoutMillis);
+			iResult = check(asPathname, alBytes, alReserve);
+		}
+		return(iResult);
+	}
+
+	/**
+	 * Returns the space reserved by the running downloads.
+	 *
+	 * @return reserved bytes
+	 */
+	public synchronized long getReservedBytes() {
+		return(mlReserved);
+	}
+
+}
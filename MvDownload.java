@@ -0,0 +1,1852 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class downloads a file from the Internet. It does not depend on
+ * Android, so it can also be used on other Java platforms, such as a server
+ * that aggregates feeds. {@link MvAsyncDownload} and
+ * {@link MvGeneral#startSyncDownload(String, String, MvDownloadOptions)} are
+ * built on it.
+ * <p>
+ * Call {@link #run()} to download on the current thread or {@link #start()} to
+ * download on an executor. The executor is the one of
+ * {@link MvDownloadOptions#moQueue}, if set, or the
+ * {@link #getDefaultExecutor() default executor}, which runs each download
+ * on a virtual thread where the platform has them (Java 21 and later). Any
+ * other executor can be passed to {@link #start(Executor)}. Override
+ * {@link #onProgress(MvDownloadProgress)} to receive progress reports. If a
+ * download of the same URL to the same file is already running, no second
+ * transfer is started; the download waits for the running one and reports its
+ * progress and outcome.
+ * 
+ * <pre>
+MvDownloadFuture oFuture = new MvDownload(
+    "http://www.example.com/rss.xml", 
+    "/var/feeds/rss.xml", 
+    new MvDownloadOptions()).start();
+oFuture.addListener(new MvDownloadFuture.OnCompleteListener() {
+  &#64;Override
+  public void onComplete(MvDownloadResult aoResult) {
+    System.out.println(aoResult.mbSuccess ? "Downloaded" : aoResult.msProblem);
+  }
+}, null);
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownload {
+	String msFilename, msFilePathname, msFileDirectory, msMimeType;
+	String msRemoteUrl, msHeaderFileName, msUserAgent, msHashMd5 = "", msHashSha1 = "";	
+	String msSourceUrl, msFasterMirror = null;
+	volatile HttpURLConnection moURLConnection;
+	long mlDownloadSize;
+	volatile long mlBytesDownloaded = 0;
+	long mlBytesWritten = 0, mlCheckpointBytes = 0, mlChunkBytes = 0;
+	volatile boolean mbContinue = true, mbPaused = false;
+	boolean mbGuessFileName = false, mbNotModified = false;
+	boolean mbUseHeaderFileName = false, mbResumeExistingFile = true;
+	MvDownloadOptions moOptions;
+	MvSegmentedDownload moSegmentedDownload = null;
+	MvDownloadJournal moJournal = null;
+	MvDigestStage moDigests = null;
+	MvContentDecoder moDecoder = null;
+	Map<String, String> moHashes = new LinkedHashMap<String, String>();
+	MvProgressPolicy.Tracker moProgressTracker = null;
+	volatile MvDownloadProgress moLastProgress = null;
+	MvSingleFlight.Flight moFlight = null;
+	MvDownloadMetrics.Sample moSample;
+	Runnable moOnPaused = null;
+	MvStallWatchdog.Watch moStallWatch = null;
+	Thread moRunner = null;
+	boolean mbInterrupted = false;
+	final Object moPauseLock = new Object();
+	MvMirrorSet moMirrors = null;
+	long mlRateWindowStart = 0, mlRateWindowBytes = 0, mlLimiterNanos = 0;
+	MvDiskSpace.Reservation moReservation = null;
+	long mlRequiredSize, mlReservedFrom = 0;
+	
+	BufferedInputStream in = null;
+	RandomAccessFile of = null;
+	
+	/**
+	 * Time after which a download waiting on another download of the same file
+	 * checks whether it has been stopped.
+	 */
+	static final long FOLLOW_POLL_MILLIS = 500;
+	
+	/**
+	 * Time over which the speed of a mirror is measured before it is compared
+	 * with the other mirrors.
+	 */
+	static final long MIRROR_CHECK_NANOS = 10*1000*1000*1000L;
+	
+	static Executor moDefaultExecutor = null;
+	
+	/**
+	 * Returns bytes that have been downloaded.
+	 * 
+	 * @return number of downloaded bytes
+	 */
+	public long getDownloadedSize() { return(mlBytesDownloaded); }
+	/**
+	 * Returns byte size of the download (if known).
+	 * @return byte size of the download
+	 */
+	public long getDownloadSize() { return(mlDownloadSize); }
+	/**
+	 * Returns name of the download file (if known).
+	 * 
+	 * @return name of the download file
+	 */
+	public String getDownloadFilename() { return(msFilename); }
+	/**
+	 * Returns pathname of the download file.
+	 * 
+	 * @return pathname of the download file
+	 */
+	public String getDownloadFilePathname() { return(msFilePathname); }
+	/**
+	 * Returns mimetype of the download.
+	 * @return mimetype of the download
+	 */
+	public String getMimeType() { return(msMimeType); }
+	
+	/**
+	 * Returns MD5 hash of the file.
+	 * 
+	 * @return MD5 hash of the file
+	 */
+	public String getHashMd5() { return("MD5: " + msHashMd5); }
+	
+	/**
+	 * Returns SHA1 hash of the file.
+	 * 
+	 * @return SHA1 hash of the file
+	 */
+	public String getHashSha1() { return("SHA1: " + msHashSha1); }
+	
+	/**
+	 * Returns the hash of the file computed with specified algorithm. The
+	 * algorithms are set with {@link MvDownloadOptions#masDigestAlgorithms}.
+	 * 
+	 * @param asAlgorithm name of the algorithm, such as "SHA-256" or "CRC32"
+	 * @return hash as a hexadecimal string; null if it was not computed
+	 */
+	public String getHash(String asAlgorithm) { return(moHashes.get(asAlgorithm)); }
+	
+	/**
+	 * Returns whether the server reported that the remote file has not changed
+	 * since it was last downloaded (see {@link MvDownloadOptions#moValidatorCache}).
+	 * The local file was left as it is.
+	 * 
+	 * @return whether the remote file has not been modified
+	 */
+	public boolean isNotModified() { return(mbNotModified); }
+	
+	/**
+	 * Returns the latest progress report of the download.
+	 * 
+	 * @return latest progress report; null if none has been made yet
+	 */
+	public MvDownloadProgress getProgress() { return(moLastProgress); }
+	
+	/**
+	 * Creates a download of specified URL to specified file using the
+	 * specified settings. The download is not started.
+	 * 
+	 * @param asURL download URL
+	 * @param asFile pathname of local file to which the download needs to be saved
+	 * @param aoOptions settings for the download
+	 */
+	public MvDownload(String asURL, String asFile, MvDownloadOptions aoOptions) {
+		super();
+		msRemoteUrl = asURL;
+		msSourceUrl = asURL;
+		msFilePathname = asFile;
+		msFileDirectory = MvFileIO.getParentDirectoryFromPath(asFile);
+		moOptions = aoOptions;
+		msUserAgent = aoOptions.msUserAgent;
+		mlRequiredSize = aoOptions.mlExpectedSize;
+		moSample = new MvDownloadMetrics.Sample(asURL, aoOptions.miPriority);
+	}
+	
+	/**
+	 * Sets whether the file is renamed to the file name sent by the server in
+	 * the Content-Disposition header. It is not, by default.
+	 * 
+	 * @param abUseHeaderFileName whether to use the file name of the server
+	 */
+	public void setUseHeaderFileName(boolean abUseHeaderFileName) {
+		mbUseHeaderFileName = abUseHeaderFileName;
+	}
+	
+	/**
+	 * Sets whether an existing file that is smaller than the remote file is
+	 * taken to be a partial download and resumed. It is, by default. Turn it
+	 * off for files that are replaced by newer versions, such as feeds, unless
+	 * {@link MvDownloadOptions#mbJournal} is set.
+	 * 
+	 * @param abResume whether to resume an existing file
+	 */
+	public void setResumeExistingFile(boolean abResume) {
+		mbResumeExistingFile = abResume;
+	}
+	
+	/**
+	 * Called with the latest progress report of the download, on the thread
+	 * of the download. Reports are made as often as allowed by
+	 * {@link MvDownloadOptions#moProgressPolicy}, and the last report
+	 * ({@link MvDownloadProgress#mbFinal}) is always made. Override this method
+	 * to display the progress.
+	 * 
+	 * @param aoProgress progress report
+	 */
+	protected void onProgress(MvDownloadProgress aoProgress) {
+	}
+	
+	/**
+	 * Returns whether the download needs to stop. The download stops when
+	 * {@link #stopDownload()} has been called or its thread has been
+	 * interrupted.
+	 * 
+	 * @return true if the download needs to stop
+	 */
+	protected boolean isStopped() {
+		return(!mbContinue || Thread.currentThread().isInterrupted());
+	}
+	
+	/**
+	 * Publishes the progress of the download if the progress policy allows it.
+	 * The last report is always published.
+	 */
+	void reportProgress(boolean abFinal) {
+		MvDownloadProgress oProgress;
+		
+		synchronized (this) {
+			if (moProgressTracker == null) {
+				moProgressTracker = moOptions.moProgressPolicy.newTracker(mlBytesDownloaded);
+			}
+		}
+		
+		if (abFinal) {
+			oProgress = moProgressTracker.complete(mlBytesDownloaded, mlDownloadSize);
+		} else {
+			oProgress = moProgressTracker.update(mlBytesDownloaded, mlDownloadSize);
+		}
+		if (oProgress != null) {
+			moLastProgress = oProgress;
+			onProgress(oProgress);
+			if (moFlight != null) {
+				moFlight.publishProgress(oProgress);
+			}
+		}
+	}
+	
+	/**
+	 * Downloads the file on the current thread. This method should not be
+	 * called in the UI thread.
+	 * 
+	 * @return download information
+	 */
+	public MvDownloadResult run() {
+		MvDownloadResult oRet;
+		MvSingleFlight.Flight oFlight;
+		
+		synchronized (this) {
+			moRunner = Thread.currentThread();
+		}
+		try {
+			if (!mbContinue) {
+				oRet = new MvDownloadResult();
+				oRet.msProblem = "Download cancelled.";
+				oRet.msPossibleSolution = "None required";
+				return(oRet);
+			}
+			oFlight = MvSingleFlight.getDefault().join(msRemoteUrl, msFilePathname);
+			// Another download of the same URL to the same file is running.
+			if (!oFlight.lead()) {
+				return(toResult(follow(oFlight)));
+			}
+			return(lead(oFlight));
+		} finally {
+			synchronized (this) {
+				moRunner = null;
+				if (mbInterrupted) {
+					// The interrupt of stopDownload() is not left on the thread.
+					Thread.interrupted();
+					mbInterrupted = false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Transfers the file as the leader of specified flight. If this download
+	 * is cancelled, it leaves the flight, so that a follower, which was not
+	 * cancelled, takes over the transfer.
+	 */
+	MvDownloadResult lead(MvSingleFlight.Flight aoFlight) {
+		MvException oRet = null;
+		boolean bLeave = false;
+		
+		moFlight = aoFlight;
+		try {
+			oRet = download(msRemoteUrl, msFilePathname);
+			if (moDigests != null) {
+				moDigests.abort();
+			}
+			if (((oRet == null) || !oRet.mbSuccess) && isStopped()) {
+				// The followers do not get the final report of the cancellation.
+				moFlight = null;
+				bLeave = true;
+			}
+			reportProgress(true);
+		} finally {
+			releaseSpace();
+			recordSample(oRet);
+			if (bLeave) {
+				aoFlight.leave(true);
+			} else {
+				aoFlight.complete(oRet, this);
+			}
+		}
+		return(toResult(oRet));
+	}
+	
+	/**
+	 * Starts the download on the executor of {@link MvDownloadOptions#moQueue}
+	 * or, if there is no queue, on the {@link #getDefaultExecutor() default
+	 * executor}.
+	 * 
+	 * @return future for the download information
+	 */
+	public MvDownloadFuture start() {
+		if (moOptions.moQueue != null) {
+			return(moOptions.moQueue.submit(this));
+		}
+		return(start(getDefaultExecutor()));
+	}
+	
+	/**
+	 * Starts the download on specified executor.
+	 * 
+	 * @param aoExecutor executor on which the download needs to run
+	 * @return future for the download information
+	 */
+	public MvDownloadFuture start(Executor aoExecutor) {
+		MvDownloadFuture oFuture = new MvDownloadFuture(this);
+		aoExecutor.execute(oFuture);
+		return(oFuture);
+	}
+	
+	/**
+	 * Returns the executor used by {@link #start()} when there is no queue. It
+	 * starts a virtual thread for each download if the platform supports them
+	 * (Java 21 and later), so that thousands of downloads can wait on the
+	 * network at little cost. Otherwise, it keeps a pool of daemon threads
+	 * that grows as needed.
+	 * 
+	 * @return shared executor
+	 */
+	public static synchronized Executor getDefaultExecutor() {
+		Method oFactory;
+		
+		if (moDefaultExecutor == null) {
+			try {
+				oFactory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				moDefaultExecutor = (ExecutorService) oFactory.invoke(null);
+				MvLog.logMessage("Downloads will run on virtual threads");
+			} catch (Exception e) {
+				moDefaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable aoRunnable) {
+						Thread oThread = new Thread(aoRunnable, "MvDownload");
+						oThread.setDaemon(true);
+						return(oThread);
+					}
+				});
+			}
+		}
+		return(moDefaultExecutor);
+	}
+	
+	static MvDownloadResult toResult(MvException aoResult) {
+		if (aoResult instanceof MvDownloadResult) {
+			return((MvDownloadResult) aoResult);
+		}
+		return(new MvDownloadResult(aoResult));
+	}
+	
+	/**
+	 * Waits for the leader of specified flight to complete the transfer,
+	 * passing on its progress reports, and returns its outcome. If the leader
+	 * leaves the flight, this download takes over the transfer.
+	 */
+	MvException follow(MvSingleFlight.Flight aoFlight) {
+		MvException oRet = null;
+		boolean bLead = false;
+		MvSingleFlight.OnProgressListener oListener = new MvSingleFlight.OnProgressListener() {
+			@Override
+			public void onProgress(MvDownloadProgress aoProgress) {
+				mlBytesDownloaded = aoProgress.mlBytesDownloaded;
+				mlDownloadSize = aoProgress.mlDownloadSize;
+				moLastProgress = aoProgress;
+				MvDownload.this.onProgress(aoProgress);
+			}
+		};
+		
+		MvLog.logMessage("Joining download in progress - " + msRemoteUrl);
+		aoFlight.addListener(oListener);
+		try {
+			while ((oRet == null) && mbContinue && !isStopped()) {
+				if (aoFlight.lead()) {
+					bLead = true;
+					break;
+				}
+				oRet = aoFlight.await(FOLLOW_POLL_MILLIS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			aoFlight.removeListener(oListener);
+		}
+		
+		if (bLead) {
+			MvLog.logMessage("Taking over cancelled download - " + msRemoteUrl);
+			return(lead(aoFlight));
+		}
+		
+		if (oRet == null) {
+			aoFlight.leave(false);
+			oRet = new MvDownloadResult();
+			oRet.mbSuccess = false;
+			oRet.msProblem = "Download cancelled.";
+			oRet.msPossibleSolution = "None required";
+			return(oRet);
+		}
+		
+		if (aoFlight.getLeader() instanceof MvDownload) {
+			copyFrom((MvDownload) aoFlight.getLeader());
+		} else if (oRet.mbSuccess && (oRet.moResult != null)) {
+			mlBytesDownloaded = MvFileIO.getFileSize(oRet.moResult.toString());
+			mlDownloadSize = mlBytesDownloaded;
+		}
+		if ((moLastProgress == null) || !moLastProgress.mbFinal) {
+			reportProgress(true);
+		}
+		return(oRet);
+	}
+	
+	void copyFrom(MvDownload aoLeader) {
+		msFilePathname = aoLeader.msFilePathname;
+		msFilename = aoLeader.msFilename;
+		msMimeType = aoLeader.msMimeType;
+		msHashMd5 = aoLeader.msHashMd5;
+		msHashSha1 = aoLeader.msHashSha1;
+		moHashes = aoLeader.moHashes;
+		mlDownloadSize = aoLeader.mlDownloadSize;
+		mlBytesDownloaded = aoLeader.mlBytesDownloaded;
+		mbNotModified = aoLeader.mbNotModified;
+		moLastProgress = aoLeader.moLastProgress;
+	}
+	
+	MvException download(String... asLinks) {
+		MvException oRet;
+		
+		// A download that had to wait for disk space is started again.
+		do {
+			oRet = attemptDownload(asLinks);
+		} while (oRet == null);
+		return(oRet);
+	}
+	
+	/**
+	 * Downloads the file.
+	 * 
+	 * @return outcome of the download; null if the download waited for disk
+	 *           space and needs to be started again
+	 */
+	MvException attemptDownload(String... asLinks) {
+		URL oURL;
+		MvDownloadResult oRet = new MvDownloadResult();
+		MvConnectionManager oConnections = moOptions.moConnectionManager;
+		MvRetryPolicy oRetryPolicy = moOptions.moRetryPolicy;
+		int iTries = 0;
+		boolean bConditional = false, bCompressed = false, bReconnect = false;
+		int iAdmission;
+		
+		if (asLinks.length == 2) { // url, file
+			if (restoreFromStore(moOptions.msExpectedSha1)) {
+				MvLog.logMessage("Restored from content store - " + msRemoteUrl);
+				oRet.mbSuccess = true;
+				oRet.moResult = msFilePathname;
+				return(oRet);
+			}
+			
+			// With a size known in advance, a download that cannot fit does not 
+			// connect at all.
+			iAdmission = MvDiskSpace.getDefault().check(msFilePathname, getSpaceNeeded(), moOptions.mlReserveBytes);
+			if (iAdmission != MvDiskSpace.ADMIT) {
+				return(waitForSpace(iAdmission));
+			}
+			
+			if (moOptions.masMirrors.length > 0) {
+				chooseMirror(oRetryPolicy);
+			}
+			
+			if (!oRetryPolicy.allowRequest(msSourceUrl)) {
+				MvLog.logMessage("Downloads from this server are paused - " + msRemoteUrl);
+				oRet.mbSuccess = false;
+				oRet.msProblem = "The server has been failing repeatedly.";
+				oRet.msPossibleSolution = "Try again later.";
+				return(oRet);
+			}
+			
+			if (moOptions.miSegments > 1) {
+				moSegmentedDownload = new MvSegmentedDownload(msRemoteUrl, msFilePathname, msUserAgent, moOptions.miSegments);
+				moSegmentedDownload.setRetryPolicy(oRetryPolicy);
+				moSegmentedDownload.setTimeouts(moOptions.miConnectTimeoutMillis, moOptions.miReadTimeoutMillis);
+				moSegmentedDownload.setMirrors(moMirrors);
+				moSegmentedDownload.setConnectionManager(moOptions.moConnectionManager);
+				long lStart = System.nanoTime();
+				if (moSegmentedDownload.probe()) {
+					// The HEAD request stands in for the first response.
+					moSample.onResponse(lStart, 0);
+					mlDownloadSize = moSegmentedDownload.getDownloadSize();
+					iAdmission = reserveSpace();
+					if (iAdmission != MvDiskSpace.ADMIT) {
+						moSegmentedDownload = null;
+						return(waitForSpace(iAdmission));
+					}
+					if (moOptions.mbPreallocate) {
+						// The segments claim the space as soon as they start.
+						releaseSpace();
+					}
+					return(doSegmentedDownload());
+				}
+				MvLog.logMessage("Segmented download is not possible. Using a single connection.");
+				moSegmentedDownload = null;
+			}
+			
+			try {
+				oURL = new URL(msSourceUrl);
+				moURLConnection = openConnection(oURL);
+				
+				if (msUserAgent.length() > "Wget 1".length()) {
+				  moURLConnection.setRequestProperty("User-Agent", msUserAgent);
+					// MvLog.logMessage("Mimicking " + msUserAgent);
+					//MvLog.logMessage("Mimicking useragent");
+				}
+				
+				if (moOptions.mbJournal) {
+					moJournal = MvDownloadJournal.load(msFilePathname);
+					if ((moJournal != null) && canResumeJournal()) {
+						// Ask for the missing bytes straight away; If-Range makes the 
+						// server send the whole file if it has changed.
+						setJournalHeaders();
+					} else {
+						moJournal = null;
+					}
+				}
+				
+				if ((moJournal == null) && (moOptions.moValidatorCache != null) && MvFileIO.isFile(msFilePathname)) {
+					bConditional = moOptions.moValidatorCache.setConditionalHeaders(msRemoteUrl, moURLConnection);
+				}
+				
+				if (moOptions.mbAcceptCompressed && (moJournal == null) && 
+						(bConditional || !mbResumeExistingFile || (MvFileIO.getFileSize(msFilePathname) <= 0))) {
+					// A partial file is better resumed uncompressed.
+					bCompressed = true;
+					MvContentDecoder.setAcceptEncoding(moURLConnection);
+				}
+				
+			// Handle redirects
+				int iResponseCode = sendRequest(oURL);
+				if ((iResponseCode == HttpURLConnection.HTTP_MOVED_TEMP) || 
+						(iResponseCode == HttpURLConnection.HTTP_MOVED_PERM) ||
+						(iResponseCode == HttpURLConnection.HTTP_SEE_OTHER)) {
+					if (moURLConnection.getHeaderField("Location") != null) {						
+						String sNewUrl = moURLConnection.getHeaderField("Location");
+						MvLog.logMessage("Redirected to " + sNewUrl);
+						moSample.miRedirects++;
+						oURL = new URL(sNewUrl);
+						oConnections.release(moURLConnection);
+						moURLConnection = openConnection(oURL);
+						if (moJournal != null) {
+							setJournalHeaders();
+						} else if (bConditional) {
+							moOptions.moValidatorCache.setConditionalHeaders(msRemoteUrl, moURLConnection);
+						}
+						if (bCompressed) {
+							MvContentDecoder.setAcceptEncoding(moURLConnection);
+						}
+					} else {
+						MvLog.logMessage("Redirected but no new location");
+						oRet.mbSuccess = false;
+						oRet.msProblem = "Redirected but no new location";
+						oRet.msPossibleSolution = "Check headers";
+						oConnections.release(moURLConnection);
+						return(oRet);
+					}
+				}
+				
+				if (bConditional) {
+					if (moURLConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+						MvLog.logMessage("Not modified - " + msRemoteUrl);
+						oConnections.release(moURLConnection);
+						oRetryPolicy.recordSuccess(msSourceUrl);
+						mbNotModified = true;
+						mlDownloadSize = MvFileIO.getFileSize(msFilePathname);
+						mlBytesDownloaded = mlDownloadSize;
+						msFilename = MvFileIO.getFileNameFromPath(msFilePathname);
+						oRet.mbNotModified = true;
+						oRet.mbSuccess = true;
+						oRet.moResult = msFilePathname;
+						return(oRet);
+					}
+					// The remote file has changed. The local file will be replaced, so
+					// its validators no longer apply.
+					moOptions.moValidatorCache.remove(msRemoteUrl);
+				}
+				
+				boolean bResumedFromJournal = false, bRemoteChanged = bConditional;
+				boolean bEncoded = bCompressed && MvContentDecoder.isEncoded(moURLConnection);
+				if (moJournal != null) {
+					if (moURLConnection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+						bResumedFromJournal = true;
+					} else {
+						MvLog.logMessage("Remote file has changed. Restarting download.");
+						moJournal.delete();
+						moJournal = null;
+						bRemoteChanged = true;
+					}
+				}
+				
+				if (bResumedFromJournal) {
+					mlDownloadSize = moJournal.mlExpectedLength;
+				} else {
+					mlDownloadSize = moURLConnection.getContentLength();
+				}
+				if (mlDownloadSize > -1) {
+					MvLog.logMessage("File size is " + mlDownloadSize);
+				} else {
+					MvLog.logMessage("File size is unknown.");
+				}
+
+				if (moURLConnection.getHeaderFields() != null) {
+					MvLog.logMessage("Headers are: " + moURLConnection.getHeaderFields().toString());
+					
+					String sDispositionHeader = moURLConnection.getHeaderField("content-disposition");
+
+					if ((sDispositionHeader != null) && !bResumedFromJournal && mbUseHeaderFileName) {
+						if (sDispositionHeader.length() > 0) {
+							msHeaderFileName = getFileNameFromHeader(sDispositionHeader);							
+							if (msHeaderFileName.length() > 0) {
+								MvLog.logMessage("Changed output file from " + msFilePathname);
+								msFilePathname = msFileDirectory + File.separator + MvFileIO.getSafeFileNameFor(msHeaderFileName);
+						  	MvLog.logMessage("\tto " + msFilePathname);
+						  	msFilename = msHeaderFileName;
+						  }
+						}
+					}
+					
+					if (!bResumedFromJournal && 
+							(moURLConnection.getResponseCode() == HttpURLConnection.HTTP_OK) &&
+							(moOptions.moContentStore != null) &&
+							restoreFromStore(moOptions.moContentStore.getHashForETag(
+									msRemoteUrl, moURLConnection.getHeaderField("ETag")))) {
+						// The content is already stored, so the body is not needed.
+						MvLog.logMessage("Restored from content store by ETag - " + msRemoteUrl);
+						msMimeType = moURLConnection.getContentType();
+						if (moOptions.moValidatorCache != null) {
+							moOptions.moValidatorCache.update(msRemoteUrl, moURLConnection);
+						}
+						oConnections.release(moURLConnection);
+						oRetryPolicy.recordSuccess(msSourceUrl);
+						oRet.mbSuccess = true;
+						oRet.moResult = msFilePathname;
+						return(oRet);
+					}
+					
+					if (bResumedFromJournal) {
+						mlBytesDownloaded = moJournal.mlCommittedBytes;
+						MvLog.logMessage("Resuming download from journal at " + mlBytesDownloaded);
+					} else if (bEncoded) {
+						// The file size is that of the encoded body, and a range of it 
+						// cannot be asked for, so the download always starts afresh.
+						mlBytesDownloaded = 0;
+						MvLog.logMessage("Body is " + moURLConnection.getContentEncoding() + " encoded");
+					} else if (moOptions.mbJournal) {
+						// The file size alone does not show whether the bytes on disk 
+						// belong to the current version of the remote file.
+						// A journal that can be resumed has been sent with If-Range 
+						// above, so one that is found here is of no use.
+						if (!bRemoteChanged && (mlDownloadSize > 0) && !hasPartState() &&
+								(MvFileIO.getFileSize(msFilePathname) == mlDownloadSize)) {
+							// Journals are deleted only when a download completes.
+							mlBytesDownloaded = mlDownloadSize;
+						} else {
+							mlBytesDownloaded = 0;
+							deletePartState();
+							moJournal = new MvDownloadJournal(msFilePathname);
+							if (moOptions.miChunkSizeMB > 0) {
+								moJournal.moChunks = new MvChunkMap(msFilePathname, moOptions.miChunkSizeMB * 1024L*1024);
+							}
+							moJournal.setFromResponse(msRemoteUrl, moURLConnection, mlDownloadSize);
+							moJournal.save();
+						}
+					} else if (bConditional || !mbResumeExistingFile) {
+						mlBytesDownloaded = 0;
+					} else if (hasPartState()) {
+						MvLog.logMessage("Existing file was left by a segmented or journalled download. Restarting download.");
+						mlBytesDownloaded = 0;
+						deletePartState();
+					} else {
+						mlBytesDownloaded = Math.max(0, MvFileIO.getFileSize(msFilePathname));
+						MvLog.logMessage("Existing file size is "  + mlBytesDownloaded);
+					}
+					
+					if ((mlBytesDownloaded > 0) && ((moJournal != null) || (mlBytesDownloaded < mlDownloadSize))) {
+						moSample.miResumes++;
+					}
+					
+					if ((moJournal == null) && (mlDownloadSize > 0) && (mlBytesDownloaded == mlDownloadSize)) {
+					  MvLog.logMessage("File already downloaded");
+					  oRet.moResult = msFilePathname;
+					  msMimeType = moURLConnection.getContentType();
+					  oConnections.release(moURLConnection);
+					  oRet.mbSuccess = true;
+					  return(oRet);
+					} else if ((moJournal == null) && (mlDownloadSize > 0) && (mlBytesDownloaded > 0) && (mlBytesDownloaded < mlDownloadSize)) {
+						oConnections.release(moURLConnection);
+						moURLConnection = openConnection(oURL);
+						MvLog.logMessage("Resuming download from " + mlBytesDownloaded);
+						moURLConnection.setRequestProperty("Range", "bytes=" + mlBytesDownloaded + "-");
+					}
+					
+					iAdmission = reserveSpace();
+					if (iAdmission != MvDiskSpace.ADMIT) {
+						oConnections.discard(moURLConnection);
+						return(waitForSpace(iAdmission));
+					}
+					
+					moURLConnection.connect();	
+					MvLog.logMessage("Connection response is " + moURLConnection.getResponseCode());
+					
+					for (iTries = 1; iTries <= oRetryPolicy.getMaxTries(); iTries++) {
+						if (!mbContinue) {
+							oRet.mbSuccess = false;
+							oRet.msProblem = "Download cancelled.";
+							oRet.msPossibleSolution = "None required";
+							iTries =6;
+							oConnections.discard(moURLConnection);
+							MvLog.logMessage("Download cancelled");
+							return(oRet);
+						}						
+						
+						if ((iTries > 1) || bReconnect) {
+							if (!bReconnect) {
+								moSample.miRetries++;
+							}
+							bReconnect = false;
+							oConnections.discard(moURLConnection);
+							moURLConnection = openConnection(oURL);
+							if (moJournal != null) {
+								saveJournal();
+								mlBytesDownloaded = moJournal.mlCommittedBytes;
+								seekTarget(mlBytesDownloaded);
+								moDigests.restart(msFilePathname, mlBytesDownloaded);
+								moSample.miResumes++;
+								MvLog.logMessage("Resuming download from " + mlBytesDownloaded);
+								setJournalHeaders();
+							} else if (bEncoded) {
+								mlBytesDownloaded = 0;
+								if (of != null) {
+									of.setLength(0);
+								}
+								seekTarget(0);
+								moDigests.restart(msFilePathname, 0);
+								MvLog.logMessage("Restarting encoded download");
+								MvContentDecoder.setAcceptEncoding(moURLConnection);
+								mlDownloadSize = moURLConnection.getContentLength();
+								bEncoded = MvContentDecoder.isEncoded(moURLConnection);
+							} else if (mlDownloadSize > -1) {
+								MvLog.logMessage("Resuming download from " + mlBytesDownloaded);
+							  moURLConnection.setRequestProperty("Range", "bytes=" + mlBytesDownloaded + "-");
+								seekTarget((of == null) ? 0 : of.length());
+								moSample.miResumes++;
+							}  
+							moURLConnection.connect();
+						} else {		
+							//MvLog.logMessage(msFilePathname + " ~ \n" + asLinks[0]);
+							if ((moJournal != null) && (mlBytesDownloaded > 0)) {
+								MvLog.logMessage("Using existing download file.");
+								// Bytes written after the last journal update are overwritten.
+								detachTarget(true);
+								of = new RandomAccessFile(msFilePathname, "rw");
+							} else if ((moJournal == null) && (mlDownloadSize > 0) && (mlBytesDownloaded > 0) && (mlBytesDownloaded < mlDownloadSize)) {
+								MvLog.logMessage("Using existing download file.");
+								detachTarget(true);
+							  of = new RandomAccessFile(msFilePathname, "rw");
+							} else if (isNamedByContent()) {
+								// The file is created when the first bytes of the body show
+								// its type.
+								of = null;
+							} else {
+								MvLog.logMessage("Using new download file.");
+								detachTarget(false);
+								of = new RandomAccessFile(msFilePathname, "rw");
+								of.setLength(0);
+							}
+							if (of != null) {
+								preallocate();
+							}
+							seekTarget(mlBytesDownloaded);
+							// The bytes already in the file are hashed first.
+							moDigests = new MvDigestStage(getDigestAlgorithms());
+							moDigests.start(msFilePathname, mlBytesDownloaded);
+						}
+						
+						if ((mlBytesDownloaded > 0) && !bEncoded &&
+								(moURLConnection.getResponseCode() == HttpURLConnection.HTTP_OK)) {
+							// If-Range did not match, or the server (another mirror) does 
+							// not accept ranges, so the whole file is on its way.
+							MvLog.logMessage("Whole file was sent. Restarting download.");
+							of.setLength(0);
+							mlBytesDownloaded = 0;
+							moDigests.restart(msFilePathname, 0);
+							mlDownloadSize = moURLConnection.getContentLength();
+							if (moJournal != null) {
+								moJournal.setFromResponse(msRemoteUrl, moURLConnection, mlDownloadSize);
+								moJournal.save();
+							}
+							preallocate();
+							seekTarget(0);
+						}
+						
+						try {						
+							checkMirrorResponse();
+							moStallWatch = MvStallWatchdog.watch(oConnections.getInputStream(moURLConnection), 
+									moOptions.miStallTimeoutMillis, new Runnable() {
+								@Override
+								public void run() {
+									abortConnection();
+								}
+							});
+							moDecoder = new MvContentDecoder(moStallWatch, moURLConnection.getContentEncoding());
+							in = new BufferedInputStream(moDecoder.getInputStream());
+							if (of == null) {
+								nameByContent(in);
+								MvLog.logMessage("Using new download file " + msFilename);
+								detachTarget(false);
+								of = new RandomAccessFile(msFilePathname, "rw");
+								of.setLength(0);
+								preallocate();
+								seekTarget(0);
+							}
+							if (msFilename == null) {
+								msFilename = MvFileIO.getFileNameFromPath(msFilePathname);
+							}
+							mlRateWindowStart = 0;
+							MvTransferEngine.transfer(in, of.getChannel(), new MvTransferEngine.OnChunkListener() {
+								@Override
+								public boolean onChunk(ByteBuffer aoChunk) {
+									if (mbPaused && !canPause()) {
+										refusePause();
+									}
+									if (isStopped() || (mbPaused && canPause()) || isMirrorSlow()) {
+										return(false);
+									}
+									// The previous chunk has been written. The bytes are counted
+									// as decoded, since an encoded body has fewer on the network.
+									mlBytesWritten = mlBytesWritten + mlChunkBytes;
+									mlChunkBytes = 0;
+									long lWaitStart = System.nanoTime();
+									try {
+										// An encoded chunk took fewer bytes off the network.
+										MvRateLimiter.acquire(moOptions.moRateLimiter, moDecoder.isEncoded() ? 
+												moDecoder.getEncodedBytes() - mlBytesDownloaded : aoChunk.remaining());
+									} catch (InterruptedException e) {
+										Thread.currentThread().interrupt();
+										return(false);
+									}
+									mlLimiterNanos = mlLimiterNanos + (System.nanoTime() - lWaitStart);
+									// Time spent waiting for the limiter is not a stall.
+									moStallWatch.restart();
+									mlChunkBytes = aoChunk.remaining();
+									checkpoint();
+									if ((moJournal != null) && (moJournal.moChunks != null)) {
+										moJournal.moChunks.update(aoChunk);
+									}
+									long lBefore = mlBytesDownloaded;
+									if (moDecoder.isEncoded()) {
+										// Progress is measured against the encoded Content-Length.
+										mlBytesDownloaded = moDecoder.getEncodedBytes();
+									} else {
+										mlBytesDownloaded = mlBytesDownloaded + aoChunk.remaining();
+									}
+									moSample.mlBytes = moSample.mlBytes + (mlBytesDownloaded - lBefore);
+									mlRateWindowBytes = mlRateWindowBytes + (mlBytesDownloaded - lBefore);
+									if (moReservation != null) {
+										moReservation.setUsed(mlBytesDownloaded - mlReservedFrom);
+									}
+									moDigests.update(aoChunk);
+									reportProgress(false);
+									return(true);
+								}
+							});
+							moStallWatch.stop();
+							mlBytesWritten = mlBytesWritten + mlChunkBytes;
+							mlChunkBytes = 0;
+							
+							if ((msFasterMirror != null) && !isStopped()) {
+								// The rest is asked for from the faster mirror with a range.
+								MvLog.logMessage("Switching to faster mirror " + msFasterMirror);
+								oConnections.discard(moURLConnection);
+								moDecoder.close();
+								saveJournal();
+								msSourceUrl = msFasterMirror;
+								msFasterMirror = null;
+								oURL = new URL(msSourceUrl);
+								bReconnect = true;
+								iTries--; // A switch is not a failed try.
+								continue;
+							}
+							
+							if (mbPaused && !isStopped() && canPause()) {
+								// Give up the connection; the rest is asked for with a range.
+								oConnections.discard(moURLConnection);
+								moDecoder.close();
+								saveJournal();
+								if (waitWhilePaused()) {
+									bReconnect = true;
+									iTries--; // A pause is not a failed try.
+									continue;
+								}
+							}
+							
+							if (isStopped() || Thread.currentThread().isInterrupted()) {
+								oRet.mbSuccess = false;
+								oRet.msProblem = "Download cancelled.";
+								oRet.msPossibleSolution = "None required";
+								iTries =6;
+								oConnections.discard(moURLConnection);
+								moDecoder.close();
+								saveJournal();
+								of.close();			
+								MvLog.logMessage("Download cancelled");
+								return(oRet);
+							}
+							
+							if (!moDecoder.isEncoded() && (mlDownloadSize > 0) && (mlBytesDownloaded < mlDownloadSize)) {
+								// The server or a proxy closed the connection early.
+								throw new IOException("Connection closed at " + mlBytesDownloaded + " of " + 
+										mlDownloadSize + " bytes");
+							}
+							
+							Map<String, String> oHashes = moDigests.finish();
+							if ((moJournal != null) && (moJournal.moChunks != null)) {
+								oHashes.put(MvChunkMap.HASH_NAME, moJournal.moChunks.getCombinedHash());
+							}
+							setHashes(oHashes);
+							
+							oConnections.release(moURLConnection);
+							moDecoder.close();
+							// Drop the preallocated space that the body did not fill.
+							of.setLength(of.getFilePointer());
+							if (moOptions.miDurability != MvDownloadOptions.DURABILITY_NONE) {
+								of.getFD().sync();
+							}
+							of.close();
+							if (moJournal != null) {
+								moJournal.delete();
+							}
+							if (moOptions.moValidatorCache != null) {
+								moOptions.moValidatorCache.update(msRemoteUrl, moURLConnection);
+							}
+							msMimeType = moURLConnection.getContentType();
+							MvLog.logMessage("Mime = " + msMimeType);
+							
+							if (mbGuessFileName && msFilename.endsWith(MvContentSniffer.DEFAULT_EXTENSION)) {
+								// A download that was not named by its content, such as a 
+								// journalled one, is renamed now.
+								renameByMimeType();
+							}
+							commitToStore(moURLConnection.getHeaderField("ETag"));
+							oRet.mbSuccess = true;
+							oRetryPolicy.recordSuccess(msSourceUrl);
+							
+							oRet.moResult = msFilePathname;
+													
+							break;
+					  } catch (IOException e) {
+						  oRet.mbSuccess = false;
+							oRet.mException = e;
+							if (moStallWatch != null) {
+								moStallWatch.stop();
+							}
+							if (isStopped()) {
+								// The connection was closed by stopDownload().
+								oRet.msProblem = "Download cancelled.";
+								oRet.msPossibleSolution = "None required";
+								MvLog.logMessage("Download cancelled");
+								break;
+							}
+							oRet.msProblem = "Download failed. Tries: " + iTries;
+							if ((moStallWatch != null) && moStallWatch.isStalled()) {
+								oRet.msProblem = "Download stalled. Tries: " + iTries;
+							}
+							oRet.msPossibleSolution = "A better download URL or network conditions.";
+							MvLog.logMessage(oRet.msProblem + " - " + e);
+							
+							if ((iTries < oRetryPolicy.getMaxTries()) && switchMirror()) {
+								// Another server, so there is no need to wait before trying it.
+								oURL = new URL(msSourceUrl);
+								continue;
+							}
+							
+							iResponseCode = MvRetryPolicy.getResponseCode(moURLConnection);
+							if (!oRetryPolicy.isRetryable(iResponseCode, e)) {
+								MvLog.logMessage("Not retrying. Response code is " + iResponseCode);
+								break;
+							}
+							if (oRetryPolicy.recordFailure(msSourceUrl)) {
+								oRet.msPossibleSolution = "Try again later.";
+								break;
+							}
+							if ((iTries < oRetryPolicy.getMaxTries()) && 
+									!oRetryPolicy.waitBeforeRetry(iTries + 1, moURLConnection)) {
+								break;
+							}
+						}
+					}
+					if (!oRet.mbSuccess) {
+						if (!mbContinue) {
+							oRet.msProblem = "Download cancelled.";
+							oRet.msPossibleSolution = "None required";
+						}
+						oConnections.discard(moURLConnection);
+						saveJournal();
+						if (of != null) {
+							try { of.close(); } catch (IOException e) { }
+						}
+					}
+				} else {
+					MvLog.logMessage("Headers are null");
+					oRet.mbSuccess = false;
+					oRet.mException = null;
+					oRet.msProblem = "Headers are null";
+					oRet.msPossibleSolution = "A valid URL (link) is required.";
+				}
+			} catch (MalformedURLException e) {
+				oRet.mbSuccess = false;
+				oRet.mException = e;
+				oRet.msProblem = "This is an invalid URL (link).";
+				oRet.msPossibleSolution = "A valid URL (link) is required.";
+				MvLog.logMessage(oRet.msProblem + " - " + e);
+			} catch (UnknownHostException e) {
+				oRet.mbSuccess = false;
+				oRet.mException = e;
+				oRet.msProblem = "There is no Internet connection or the website does not exist.";
+				oRet.msPossibleSolution = "An working Internet connection or a valid website address is required.";
+				MvLog.logMessage("Have you added INTERNET permission?");
+				MvLog.logMessage(oRet.msProblem + " - " + e);
+			} catch (FileNotFoundException e) {
+				oRet.mbSuccess = false;
+				oRet.mException = e;
+				oRet.msProblem = "The link (URL) or the file path is invalid." + msFilePathname;
+				oRet.msPossibleSolution = "An existing link (URL) is required.";
+				MvLog.logMessage(oRet.msProblem + " - " + e);
+			} catch (IOException e) {
+				oRet.mbSuccess = false;
+				oRet.mException = e;
+				oRet.msProblem = "There is no network connection.";
+				oRet.msPossibleSolution = "A good connection to the network is required.";
+				if (oRetryPolicy.isRetryable(MvRetryPolicy.getResponseCode(moURLConnection), e)) {
+					oRetryPolicy.recordFailure(msSourceUrl);
+				}
+				MvLog.logMessage(oRet.msProblem + " - " + e);
+			}
+		}		
+		return oRet;
+  }
+	
+	/**
+	 * Sends the request of the current connection, if it has not been sent,
+	 * and records the timing of the response.
+	 * 
+	 * @return response code
+	 */
+	int sendRequest(URL aoURL) throws IOException {
+		long lStart = System.nanoTime(), lConnected;
+		int iResponseCode;
+		
+		moURLConnection.connect();
+		lConnected = System.nanoTime();
+		iResponseCode = moURLConnection.getResponseCode();
+		moSample.onResponse(lStart, lConnected);
+		if (!aoURL.toString().equals(moURLConnection.getURL().toString())) {
+			// Followed by HttpURLConnection itself
+			moSample.miRedirects++;
+		}
+		return(iResponseCode);
+	}
+	
+	/**
+	 * Finishes the metrics sample of the download and records it in
+	 * {@link MvDownloadOptions#moMetrics}.
+	 */
+	void recordSample(MvException aoResult) {
+		String sFailure;
+		int iResponseCode;
+		
+		if (aoResult == null) {
+			sFailure = "Error";
+		} else if (!mbContinue || "Download cancelled.".equals(aoResult.msProblem)) {
+			sFailure = MvDownloadMetrics.FAILURE_CANCELLED;
+		} else if ((iResponseCode = MvRetryPolicy.getResponseCode(moURLConnection)) >= 400) {
+			sFailure = "HTTP " + iResponseCode;
+		} else if (aoResult.mException != null) {
+			sFailure = aoResult.mException.getClass().getSimpleName();
+		} else {
+			sFailure = aoResult.msProblem;
+		}
+		moSample.finish((aoResult != null) && aoResult.mbSuccess, sFailure);
+		if (moOptions.moMetrics != null) {
+			moOptions.moMetrics.record(moSample);
+		}
+	}
+	
+	/**
+	 * Returns the measurements of the download, such as the time to the first
+	 * response and the rate of the transfer. They are complete once the
+	 * download has ended. A download that waited for another download of the
+	 * same file has no measurements of its own.
+	 * 
+	 * @return measurements of the download
+	 */
+	public MvDownloadMetrics.Sample getMetrics() {
+		return(moSample);
+	}
+	
+	/**
+	 * Stops the download. Its connection is closed at once, so that a read
+	 * that is waiting for the network fails, and a wait for a retry, a
+	 * resumption or another download of the same file is cut short. The
+	 * thread of the download is free again within milliseconds. A segmented
+	 * download keeps its segment state so that it can be resumed later.
+	 */
+	public void stopDownload() {
+		mbContinue = false;
+		if (moSegmentedDownload != null) {
+			moSegmentedDownload.stopDownload();
+		}
+		abortConnection();
+		synchronized (moPauseLock) {
+			moPauseLock.notifyAll();
+		}
+		synchronized (this) {
+			if (moRunner != null) {
+				mbInterrupted = true;
+				moRunner.interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Pauses the download. The connection is closed at the next buffer and the
+	 * thread of the download waits until {@link #resume()} is called. The rest
+	 * of the file is then asked for with a range request. Downloads that cannot
+	 * be resumed that way, such as compressed or segmented downloads and
+	 * downloads of unknown size, are not paused, and {@link #isPaused()} turns
+	 * false again at the next buffer.
+	 */
+	public void pause() {
+		mbPaused = true;
+	}
+	
+	/**
+	 * Drops a request to pause a transfer that cannot be paused.
+	 */
+	void refusePause() {
+		synchronized (moPauseLock) {
+			if (mbPaused) {
+				mbPaused = false;
+				MvLog.logMessage("Download cannot be paused - " + msRemoteUrl);
+			}
+		}
+	}
+	
+	/**
+	 * Resumes a download paused with {@link #pause()}.
+	 */
+	public void resume() {
+		synchronized (moPauseLock) {
+			mbPaused = false;
+			moPauseLock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Returns whether the download has been asked to pause.
+	 * 
+	 * @return true if paused
+	 */
+	public boolean isPaused() {
+		return(mbPaused);
+	}
+	
+	/**
+	 * Returns whether the transfer in progress can be paused and resumed
+	 * with a range request.
+	 */
+	boolean canPause() {
+		MvContentDecoder oDecoder = moDecoder;
+		
+		if (moJournal != null) {
+			return(true);
+		}
+		// Before the body is read, it is not known whether it is encoded.
+		return((oDecoder != null) && !oDecoder.isEncoded() && (mlDownloadSize > 0));
+	}
+	
+	/**
+	 * Waits until the download is resumed or stopped.
+	 * 
+	 * @return false if the download was stopped
+	 */
+	boolean waitWhilePaused() {
+		Runnable oOnPaused = moOnPaused;
+		
+		MvLog.logMessage("Download paused at " + mlBytesDownloaded + " - " + msRemoteUrl);
+		if (oOnPaused != null) {
+			oOnPaused.run();
+		}
+		synchronized (moPauseLock) {
+			while (mbPaused && !isStopped()) {
+				try {
+					moPauseLock.wait(FOLLOW_POLL_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		if (isStopped()) {
+			return(false);
+		}
+		MvLog.logMessage("Download resumed - " + msRemoteUrl);
+		return(true);
+	}
+	
+	/**
+	 * Stops the download and closes its connection (see
+	 * {@link #stopDownload()}).
+	 */
+	void closeStreams() {
+		stopDownload();
+	}
+	
+	/**
+	 * Closes the connection of the download, which makes a blocked read fail.
+	 * It can be called from any thread. The body that the download reads is
+	 * aborted on the calling thread, so the read fails at once, even on
+	 * desktop Java, whose <code>HttpURLConnection</code> cannot wake a read
+	 * that is blocked on the socket (see
+	 * {@link MvConnectionManager#abort(HttpURLConnection)}). The download
+	 * thread closes the file and saves the journal as it fails.
+	 */
+	void abortConnection() {
+		moOptions.moConnectionManager.abort(moURLConnection);
+	}
+	
+	/**
+	 * Opens a connection with the timeouts of the download.
+	 */
+	HttpURLConnection openConnection(URL aoURL) throws IOException {
+		HttpURLConnection oConnection = moOptions.moConnectionManager.open(aoURL);
+		oConnection.setConnectTimeout(moOptions.miConnectTimeoutMillis);
+		oConnection.setReadTimeout(moOptions.miReadTimeoutMillis);
+		return(oConnection);
+	}
+	
+	/**
+	 * Probes the mirrors of the download (see
+	 * {@link MvDownloadOptions#masMirrors}) and picks the fastest one whose
+	 * host is not failing.
+	 */
+	void chooseMirror(MvRetryPolicy aoRetryPolicy) {
+		String[] asUrls = new String[moOptions.masMirrors.length + 1];
+		String sMirror;
+		
+		asUrls[0] = msRemoteUrl;
+		System.arraycopy(moOptions.masMirrors, 0, asUrls, 1, moOptions.masMirrors.length);
+		moMirrors = new MvMirrorSet(asUrls);
+		for (String sUrl : asUrls) {
+			if (aoRetryPolicy.isCircuitOpen(sUrl)) {
+				moMirrors.exclude(sUrl);
+			}
+		}
+		moMirrors.probe(msUserAgent, moOptions.miConnectTimeoutMillis);
+		sMirror = moMirrors.getBest();
+		if (sMirror != null) {
+			msSourceUrl = sMirror;
+			// The download is measured against the mirror it is made from.
+			moSample = new MvDownloadMetrics.Sample(msSourceUrl, moOptions.miPriority);
+		}
+		MvLog.logMessage("Downloading from " + msSourceUrl);
+	}
+	
+	/**
+	 * Records a failure of the mirror in use and moves to the best of the
+	 * other mirrors.
+	 * 
+	 * @return whether the download moved to another mirror
+	 */
+	boolean switchMirror() {
+		String sMirror;
+		
+		if (moMirrors == null) {
+			return(false);
+		}
+		moMirrors.reportFailure(msSourceUrl);
+		sMirror = moMirrors.getBest();
+		if ((sMirror == null) || sMirror.equals(msSourceUrl)) {
+			return(false);
+		}
+		MvLog.logMessage("Switching to mirror " + sMirror);
+		msSourceUrl = sMirror;
+		return(true);
+	}
+	
+	/**
+	 * Called before each chunk. Every {@link #MIRROR_CHECK_NANOS} nanoseconds,
+	 * the speed of the mirror in use, not counting the time spent waiting for
+	 * the rate limiters, is compared with that of the other mirrors.
+	 * 
+	 * @return true if the transfer needs to stop and move to
+	 *         {@link #msFasterMirror}
+	 */
+	boolean isMirrorSlow() {
+		long lNow = System.nanoTime(), lRate;
+		
+		if ((moMirrors == null) || !canPause()) {
+			return(false);
+		}
+		if (mlRateWindowStart == 0) {
+			mlRateWindowStart = lNow;
+			mlRateWindowBytes = 0;
+			mlLimiterNanos = 0;
+			return(false);
+		}
+		if (lNow - mlRateWindowStart < MIRROR_CHECK_NANOS) {
+			return(false);
+		}
+		lRate = mlRateWindowBytes * 1000000000L / Math.max(1, lNow - mlRateWindowStart - mlLimiterNanos);
+		moMirrors.reportRate(msSourceUrl, lRate);
+		msFasterMirror = moMirrors.getFaster(msSourceUrl, lRate);
+		mlRateWindowStart = lNow;
+		mlRateWindowBytes = 0;
+		mlLimiterNanos = 0;
+		return(msFasterMirror != null);
+	}
+	
+	/**
+	 * Fails the transfer if the mirror in use sent part of a file of another
+	 * size, so that the download moves to another mirror.
+	 */
+	void checkMirrorResponse() throws IOException {
+		long lTotal;
+		
+		if ((moMirrors != null) && (moURLConnection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL)) {
+			lTotal = MvMirrorSet.getTotalLength(moURLConnection);
+			if ((lTotal > 0) && (mlDownloadSize > 0) && (lTotal != mlDownloadSize)) {
+				moMirrors.exclude(msSourceUrl);
+				throw new IOException("Mirror has a different file - " + msSourceUrl);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the headers for resuming from the journal to the connection. The
+	 * validators in the journal are those of one server, so a download from
+	 * mirrors asks only for the range, and the size of the file is checked
+	 * instead (see {@link #checkMirrorResponse()}).
+	 */
+	void setJournalHeaders() {
+		if (moMirrors != null) {
+			moJournal.setRangeHeader(moURLConnection);
+		} else {
+			moJournal.setResumeHeaders(moURLConnection);
+		}
+	}
+	
+	/**
+	 * Returns whether the download can be resumed from its journal. The last
+	 * chunk of the committed bytes is first checked against its hash, if the
+	 * journal has a {@link MvChunkMap chunk map}, and is downloaded again if
+	 * it does not match.
+	 */
+	boolean canResumeJournal() {
+		if (!moJournal.canResume(msRemoteUrl, MvFileIO.getFileSize(msFilePathname))) {
+			return(false);
+		}
+		moJournal.verifyCommittedBytes();
+		return(moJournal.mlCommittedBytes > 0);
+	}
+	
+	/**
+	 * Returns whether the target file has been left by a segmented or a
+	 * journalled download. Such a file can be preallocated or written out of
+	 * order, so its size does not show how much of it has been downloaded.
+	 */
+	boolean hasPartState() {
+		return(MvFileIO.isFile(msFilePathname + MvSegmentedDownload.STATE_FILE_EXTENSION) ||
+				MvFileIO.isFile(msFilePathname + MvDownloadJournal.JOURNAL_FILE_EXTENSION));
+	}
+	
+	/**
+	 * Deletes the segment state and the journal of the target file, when the
+	 * file is going to be downloaded again from the start.
+	 */
+	void deletePartState() {
+		new File(msFilePathname + MvSegmentedDownload.STATE_FILE_EXTENSION).delete();
+		new MvDownloadJournal(msFilePathname).delete();
+	}
+	
+	/**
+	 * Records the bytes that have been written in the journal, if there is
+	 * one. Unless the durability mode is
+	 * {@link MvDownloadOptions#DURABILITY_NONE}, the bytes are first synced to
+	 * the disk, and the journal is left as it is if they cannot be.
+	 */
+	void saveJournal() {
+		if (moJournal != null) {
+			if ((of != null) && (moOptions.miDurability != MvDownloadOptions.DURABILITY_NONE)) {
+				try {
+					of.getFD().sync();
+				} catch (IOException e) {
+					MvLog.logMessage("Download file could not be synced - " + e.getMessage());
+					return;
+				}
+			}
+			moJournal.mlCommittedBytes = Math.min(mlBytesWritten, Math.max(0, MvFileIO.getFileSize(msFilePathname)));
+			moJournal.save();
+		}
+	}
+	
+	/**
+	 * Called before each chunk is written. Every
+	 * {@link MvDownloadOptions#miSyncIntervalMB} megabytes in
+	 * {@link MvDownloadOptions#DURABILITY_PERIODIC} mode, or every
+	 * {@link MvDownloadJournal#SAVE_INTERVAL} bytes otherwise, the bytes
+	 * written so far are synced to the disk (periodic mode only) and then
+	 * recorded in the journal. The bytes are those written to the file, which
+	 * are more than those received if the body is encoded.
+	 */
+	void checkpoint() {
+		boolean bPeriodic = (moOptions.miDurability == MvDownloadOptions.DURABILITY_PERIODIC);
+		long lInterval = bPeriodic ? moOptions.miSyncIntervalMB * 1024L*1024 : MvDownloadJournal.SAVE_INTERVAL;
+		
+		if ((mlBytesWritten - mlCheckpointBytes < lInterval) || (!bPeriodic && (moJournal == null))) {
+			return;
+		}
+		mlCheckpointBytes = mlBytesWritten;
+		if (bPeriodic) {
+			try {
+				of.getFD().sync();
+			} catch (IOException e) {
+				MvLog.logMessage("Download file could not be synced - " + e.getMessage());
+				return;
+			}
+		}
+		if (moJournal != null) {
+			moJournal.mlCommittedBytes = mlBytesWritten;
+			moJournal.save();
+			moDigests.checkpoint();
+		}
+	}
+	
+	/**
+	 * Makes sure that the target file does not share its content before it is
+	 * opened for writing. A file committed to a content store is a hard link
+	 * to the stored object, and possibly to other downloaded files, which
+	 * would all change if it were truncated or appended to.
+	 *
+	 * @param abKeepContent whether the bytes in the file are resumed from;
+	 *        if not, the file is deleted
+	 */
+	void detachTarget(boolean abKeepContent) throws IOException {
+		boolean bDetached;
+
+		if (moOptions.moContentStore != null) {
+			bDetached = moOptions.moContentStore.detach(msFilePathname, abKeepContent);
+		} else {
+			bDetached = MvContentStore.detachFile(msFilePathname, abKeepContent);
+		}
+		if (!bDetached) {
+			throw new IOException("Shared file could not be copied - " + msFilePathname);
+		}
+	}
+
+	/**
+	 * Moves the write position of the target file to specified offset.
+	 */
+	void seekTarget(long alPosition) throws IOException {
+		if (of != null) {
+			of.seek(alPosition);
+		}
+		mlBytesWritten = alPosition;
+		mlCheckpointBytes = alPosition;
+		mlChunkBytes = 0;
+	}
+	
+	/**
+	 * Reserves the space of the whole file on the disk before the body is
+	 * written, if {@link MvDownloadOptions#mbPreallocate} is set and the size
+	 * is known. This is done only for journalled downloads, because the size
+	 * of the file is otherwise taken as the number of bytes downloaded when the
+	 * download is resumed.
+	 */
+	void preallocate() {
+		if (moOptions.mbPreallocate && (moJournal != null) && (mlDownloadSize > 0) &&
+				MvTransferEngine.preallocate(of, mlDownloadSize)) {
+			// The space has been claimed, so it need not be held for the download.
+			releaseSpace();
+		}
+	}
+	
+	/**
+	 * Returns the bytes that the download will add to the disk: the size of
+	 * the file less the bytes already in the target file, which are either
+	 * kept or freed when the file is truncated.
+	 * 
+	 * @return bytes needed; -1 if the size of the file is not known
+	 */
+	long getSpaceNeeded() {
+		if (mlRequiredSize < 0) {
+			return(-1);
+		}
+		return(Math.max(0, mlRequiredSize - Math.max(0, MvFileIO.getFileSize(msFilePathname))));
+	}
+	
+	/**
+	 * Reserves disk space for the rest of the file, whose size is now known
+	 * from the response (see {@link MvDownloadOptions#mlReserveBytes}).
+	 * 
+	 * @return {@link MvDiskSpace#ADMIT}, {@link MvDiskSpace#HOLD} or
+	 *         {@link MvDiskSpace#REJECT}
+	 */
+	int reserveSpace() {
+		MvDiskSpace oSpace = MvDiskSpace.getDefault();
+		int iResult;
+		
+		releaseSpace();
+		mlRequiredSize = mlDownloadSize;
+		moReservation = oSpace.reserve(msFilePathname, getSpaceNeeded(), moOptions.mlReserveBytes);
+		if (moReservation != null) {
+			mlReservedFrom = mlBytesDownloaded;
+			return(MvDiskSpace.ADMIT);
+		}
+		iResult = oSpace.check(msFilePathname, getSpaceNeeded(), moOptions.mlReserveBytes);
+		// Space given back since the reservation was refused is used on the
+		// next try.
+		return((iResult == MvDiskSpace.ADMIT) ? MvDiskSpace.HOLD : iResult);
+	}
+	
+	/**
+	 * Gives back the disk space reserved for the download.
+	 */
+	void releaseSpace() {
+		if (moReservation != null) {
+			moReservation.release();
+			moReservation = null;
+		}
+	}
+	
+	/**
+	 * Fails a download that does not fit on the disk or, if it would fit but
+	 * for the space held by the running downloads, waits for room. A download
+	 * run by a {@link MvDownloadQueue} gives up its slot while it waits, and the
+	 * queue starts it again when there is room.
+	 * 
+	 * @return outcome of the download; null if there is room and the download
+	 *           needs to be started again
+	 */
+	MvException waitForSpace(int aiAdmission) {
+		MvDownloadResult oRet = new MvDownloadResult();
+		int iAdmission = aiAdmission;
+		
+		if (iAdmission == MvDiskSpace.HOLD) {
+			MvLog.logMessage("Waiting for disk space (" + getSpaceNeeded() + " bytes) - " + msRemoteUrl);
+			if (moOnPaused != null) {
+				mbPaused = true;
+				if (waitWhilePaused()) {
+					return(null);
+				}
+			} else {
+				try {
+					while ((iAdmission == MvDiskSpace.HOLD) && !isStopped()) {
+						iAdmission = MvDiskSpace.getDefault().await(msFilePathname, getSpaceNeeded(), 
+								moOptions.mlReserveBytes, FOLLOW_POLL_MILLIS);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (!isStopped()) {
+					return(null);
+				}
+			}
+			oRet.msProblem = "Download cancelled.";
+			oRet.msPossibleSolution = "None required";
+			return(oRet);
+		}
+		MvLog.logMessage("Not enough disk space (" + getSpaceNeeded() + " bytes) - " + msRemoteUrl);
+		oRet.msProblem = "There is not enough storage space for the download.";
+		oRet.msPossibleSolution = "Free storage space is required.";
+		return(oRet);
+	}
+	
+	/**
+	 * Returns whether there is room on the disk to start or resume the
+	 * download, as far as it is known. {@link MvDownloadQueue} holds the
+	 * download while there is not.
+	 */
+	boolean hasSpace() {
+		return(MvDiskSpace.getDefault().check(msFilePathname, getSpaceNeeded(), 
+				moOptions.mlReserveBytes) != MvDiskSpace.HOLD);
+	}
+	
+	MvException doSegmentedDownload() {
+		MvException oRet;
+		
+		mlDownloadSize = moSegmentedDownload.getDownloadSize();
+		msMimeType = moSegmentedDownload.getMimeType();
+		msFilename = MvFileIO.getFileNameFromPath(msFilePathname);
+		moSegmentedDownload.setRateLimiter(moOptions.moRateLimiter);
+		moSegmentedDownload.setPreallocate(moOptions.mbPreallocate);
+		moSegmentedDownload.setDurability(moOptions.miDurability, moOptions.miSyncIntervalMB);
+		moSegmentedDownload.setOnProgressListener(new MvSegmentedDownload.OnProgressListener() {
+			@Override
+			public void onProgress(long alBytesDownloaded) {
+				mlBytesDownloaded = alBytesDownloaded;
+				reportProgress(false);
+			}
+		});
+		
+		MvLog.logMessage("Downloading in " + moSegmentedDownload.getSegmentCount() + " segments");
+		oRet = moSegmentedDownload.startDownload();
+		mlBytesDownloaded = moSegmentedDownload.getDownloadedSize();
+		moSample.mlBytes = mlBytesDownloaded - moSegmentedDownload.mlResumedBytes;
+		if (moSegmentedDownload.mlResumedBytes > 0) {
+			moSample.miResumes++;
+		}
+		
+		if (oRet.mbSuccess) {
+			// Segments arrive out of order, so the hashes are computed from the file.
+			computeFileHashes();
+			if (mbGuessFileName && msFilename.endsWith(MvContentSniffer.DEFAULT_EXTENSION)) {
+				renameByMimeType();
+			}
+			commitToStore(null);
+			oRet.moResult = msFilePathname;
+		}
+		return(oRet);
+	}
+	
+	/**
+	 * Puts the content with specified SHA1 digest at the target file, if it is
+	 * in the content store.
+	 * 
+	 * @return whether the file was restored from the store
+	 */
+	boolean restoreFromStore(String asSha1) {
+		Map<String, String> oHashes;
+		MvDownloadJournal oJournal;
+		
+		if ((moOptions.moContentStore == null) || (asSha1 == null) || (asSha1.length() == 0) ||
+				!moOptions.moContentStore.restore(asSha1, msFilePathname)) {
+			return(false);
+		}
+		if (moOptions.mbJournal) {
+			// A partial download of the file is no longer of use.
+			oJournal = MvDownloadJournal.load(msFilePathname);
+			if (oJournal != null) {
+				oJournal.delete();
+			}
+		}
+		oHashes = new LinkedHashMap<String, String>();
+		oHashes.put(MvContentStore.ALGORITHM, asSha1.toUpperCase());
+		setHashes(oHashes);
+		msFilename = MvFileIO.getFileNameFromPath(msFilePathname);
+		mlDownloadSize = MvFileIO.getFileSize(msFilePathname);
+		mlBytesDownloaded = mlDownloadSize;
+		return(true);
+	}
+	
+	/**
+	 * Commits the downloaded file to the content store, if there is one.
+	 * 
+	 * @param asETag ETag header of the response (can be null)
+	 */
+	void commitToStore(String asETag) {
+		if (moOptions.moContentStore != null) {
+			moOptions.moContentStore.commit(msFilePathname, getHash(MvContentStore.ALGORITHM), msRemoteUrl, asETag);
+		}
+	}
+	
+	/**
+	 * Returns the algorithms with which the file is hashed (see
+	 * {@link MvDownloadOptions#masDigestAlgorithms}).
+	 */
+	String[] getDigestAlgorithms() {
+		if (moOptions.masDigestAlgorithms != null) {
+			return(moOptions.masDigestAlgorithms);
+		}
+		if ((moJournal != null) && (moJournal.moChunks != null)) {
+			if (moOptions.moContentStore != null) {
+				return(new String[] { MvContentStore.ALGORITHM });
+			}
+			return(new String[0]);
+		}
+		return(MvDigestStage.DEFAULT_ALGORITHMS);
+	}
+	
+	void computeFileHashes() {
+		MvDigestStage oDigests = new MvDigestStage(getDigestAlgorithms());
+		oDigests.start(msFilePathname, MvFileIO.getFileSize(msFilePathname));
+		setHashes(oDigests.finish());
+	}
+	
+	void setHashes(Map<String, String> aoHashes) {
+		moHashes = aoHashes;
+		for (Map.Entry<String, String> oHash : aoHashes.entrySet()) {
+			MvLog.logMessage("The " + oHash.getKey() + " hash is " + oHash.getValue());
+		}
+		msHashMd5 = aoHashes.containsKey("MD5") ? aoHashes.get("MD5") : "";
+		msHashSha1 = aoHashes.containsKey("SHA1") ? aoHashes.get("SHA1") : "";
+	}
+	
+	/**
+	 * Returns whether the name of the download file is to be chosen from the
+	 * type of its content, when the first bytes of the body have arrived. It
+	 * is done for new files whose name is guessed and has no known extension.
+	 * A journalled download keeps the name that its journal was made for.
+	 */
+	boolean isNamedByContent() {
+		return(mbGuessFileName && (moJournal == null) && (msFilename != null) && 
+				msFilename.endsWith(MvContentSniffer.DEFAULT_EXTENSION));
+	}
+	
+	/**
+	 * Names the download file from the type shown by the first bytes of the
+	 * body and by the Content-Type header (see {@link MvContentSniffer}). The
+	 * file has not been created yet, so it need not be renamed.
+	 * 
+	 * @param aoBody body of the response, which supports mark and reset
+	 */
+	void nameByContent(InputStream aoBody) throws IOException {
+		byte[] arHead = new byte[MvContentSniffer.SNIFF_LENGTH];
+		int iLength = MvContentSniffer.readHead(aoBody, arHead);
+		String sExtension = MvContentSniffer.getExtension(moURLConnection.getContentType(), arHead, iLength);
+		
+		if (!sExtension.equals(MvContentSniffer.DEFAULT_EXTENSION)) {
+			setFileName(getFileNameFor(sExtension));
+		}
+	}
+	
+	/**
+	 * Renames the downloaded file with the extension for the type of its
+	 * content, as shown by its first bytes and by the Content-Type header.
+	 */
+	void renameByMimeType() {
+		byte[] arHead = new byte[MvContentSniffer.SNIFF_LENGTH];
+		int iLength = 0;
+		String sExtension, sNewFileName;
+		RandomAccessFile oFile = null;
+		
+		try {
+			oFile = new RandomAccessFile(msFilePathname, "r");
+			iLength = Math.max(0, oFile.read(arHead));
+		} catch (IOException e) {
+			MvLog.logMessage("Unable to read the start of " + msFilePathname);
+		} finally {
+			if (oFile != null) {
+				try { oFile.close(); } catch (IOException e) { }
+			}
+		}
+		sExtension = MvContentSniffer.getExtension(msMimeType, arHead, iLength);
+		if (sExtension.equals(MvContentSniffer.DEFAULT_EXTENSION)) {
+			return;
+		}
+		
+		sNewFileName = getFileNameFor(sExtension);
+		MvException oRename = MvFileIO.renameFile(msFilePathname, msFileDirectory + File.separator + sNewFileName);		
+		if (oRename.mbSuccess) {
+			setFileName(sNewFileName);
+		} else {
+			MvLog.logMessage("Unable to rename file as " + sNewFileName + " because of " + oRename.msProblem);
+		}
+	}
+	
+	/**
+	 * Returns the name of the download file with specified extension, numbered
+	 * if a file of that name already exists.
+	 */
+	String getFileNameFor(String asExtension) {
+		String sNewFileName = MvFileIO.getFileNameWithoutExtension(msFilePathname) + asExtension;
+		
+		sNewFileName = MvFileIO.getSafeFileNameFor(sNewFileName);
+		return(MvFileIO.getIncrementedFileName(msFileDirectory + File.separator + sNewFileName));
+	}
+	
+	void setFileName(String asFileName) {
+		msFilename = asFileName;
+		msFilePathname = msFileDirectory + File.separator + asFileName;
+	}
+	
+	String getFileNameFromHeader(String asHeader) {
+		String sFileName, sReturn = "";
+		
+		if (asHeader.indexOf("filename=") > -1) {
+		  if (asHeader.length() > asHeader.indexOf("filename=")) {
+		  	sFileName = asHeader.substring(asHeader.indexOf("filename=") + "filename=".length());
+		  	if (sFileName.indexOf(";") > -1) {
+		  		sFileName = sFileName.substring(0,sFileName.indexOf(";"));
+		  	}
+		  	sReturn = sFileName.replace("\"", "").replace("\\", "").replace("\\", "");
+		  }
+		}
+		return(sReturn);
+	}
+	
+
+    
+	
+	
+}
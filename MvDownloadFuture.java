@@ -0,0 +1,157 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class represents a download started with {@link MvDownload#start()}.
+ * Besides waiting for the outcome with {@link #get()}, callbacks can be added
+ * to be invoked when the download completes, so that a large number of
+ * downloads can be followed without a thread waiting on each of them.
+ * Cancelling the future stops the download.
+ * <p>
+ * On Java 8 and later, the future can be turned into a
+ * <code>CompletableFuture</code> by completing one from a callback.
+ * <pre>
+final CompletableFuture&lt;MvDownloadResult&gt; oResult = new CompletableFuture&lt;&gt;();
+oFuture.addListener(oResult::complete, null);
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadFuture extends FutureTask<MvDownloadResult> {
+
+	/**
+	 * Interface definition for a callback to be invoked when a download
+	 * completes.
+	 */
+	public interface OnCompleteListener {
+		/**
+		 * Called with the outcome of the download.
+		 *
+		 * @param aoResult download information
+		 */
+		void onComplete(MvDownloadResult aoResult);
+	}
+
+	final MvDownload moDownload;
+	final List<Object[]> moListeners = new ArrayList<Object[]>();
+	boolean mbDone = false;
+
+	MvDownloadFuture(final MvDownload aoDownload) {
+		super(new Callable<MvDownloadResult>() {
+			@Override
+			public MvDownloadResult call() {
+				return(aoDownload.run());
+			}
+		});
+		moDownload = aoDownload;
+	}
+
+	/**
+	 * Returns the download, from which its progress and details can be read.
+	 *
+	 * @return download
+	 */
+	public MvDownload getDownload() {
+		return(moDownload);
+	}
+
+	/**
+	 * Adds a callback to be invoked when the download completes. If it has
+	 * already completed, the callback is invoked straight away.
+	 *
+	 * @param aoListener callback that needs to be invoked
+	 * @param aoExecutor executor on which the callback needs to be invoked
+	 *        (null to invoke it on the thread that completes the download)
+	 */
+	public void addListener(OnCompleteListener aoListener, Executor aoExecutor) {
+		synchronized (moListeners) {
+			if (!mbDone) {
+				moListeners.add(new Object[] { aoListener, aoExecutor });
+				return;
+			}
+		}
+		notifyListener(aoListener, aoExecutor);
+	}
+
+	/**
+	 * Waits for the download to complete and returns its outcome. Unlike
+	 * {@link #get()}, it does not throw; a cancelled or interrupted wait is
+	 * reported as a failed download.
+	 *
+	 * @return download information
+	 */
+	public MvDownloadResult getResult() {
+		MvDownloadResult oRet;
+
+		try {
+			return(get());
+		} catch (CancellationException e) {
+			oRet = new MvDownloadResult();
+			oRet.mException = e;
+			oRet.msProblem = "Download cancelled.";
+			oRet.msPossibleSolution = "None required";
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			oRet = new MvDownloadResult();
+			oRet.mException = e;
+			oRet.msProblem = "Download cancelled.";
+			oRet.msPossibleSolution = "None required";
+		} catch (ExecutionException e) {
+			oRet = new MvDownloadResult();
+			oRet.mException = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+			oRet.msProblem = "Download failed.";
+			oRet.msPossibleSolution = "A better download URL or network conditions.";
+		}
+		oRet.mbSuccess = false;
+		return(oRet);
+	}
+
+	@Override
+	public boolean cancel(boolean abMayInterruptIfRunning) {
+		moDownload.stopDownload();
+		return(super.cancel(abMayInterruptIfRunning));
+	}
+
+	@Override
+	protected void done() {
+		Object[][] arListeners;
+
+		synchronized (moListeners) {
+			mbDone = true;
+			arListeners = moListeners.toArray(new Object[moListeners.size()][]);
+			moListeners.clear();
+		}
+		for (Object[] oListener : arListeners) {
+			notifyListener((OnCompleteListener) oListener[0], (Executor) oListener[1]);
+		}
+	}
+
+	void notifyListener(final OnCompleteListener aoListener, Executor aoExecutor) {
+		if (aoExecutor == null) {
+			aoListener.onComplete(getResult());
+		} else {
+			aoExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					aoListener.onComplete(getResult());
+				}
+			});
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Properties;
+
+/**
+ * This class records the state of a download in a journal file next to the
+ * target file (target pathname + {@value #JOURNAL_FILE_EXTENSION}). The journal
+ * holds the URL, the validators sent by the server (ETag and Last-Modified),
+ * the expected length and the number of bytes safely written to the target
+ * file. As the journal is a file, it survives the death of the process.
+ * It can also hold the {@link MvChunkMap chunk hashes} of the committed
+ * bytes, so that they can be checked when the download is resumed.
+ * <p>
+ * When a download is resumed, the validator is sent in an
+ * <code>If-Range</code> header. If the remote file has not changed, the server
+ * sends only the missing bytes. If it has changed, the server sends the whole
+ * new file and the download restarts from the beginning instead of splicing
+ * two versions of the file together.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadJournal {
+
+	/**
+	 * Extension added to the target pathname to get the pathname of the
+	 * journal.
+	 */
+	public static final String JOURNAL_FILE_EXTENSION = ".journal";
+
+	/**
+	 * Number of bytes written to the target file between journal updates.
+	 */
+	public static final long SAVE_INTERVAL = 1024*1024;
+
+	String msJournalPathname;
+
+	/**
+	 * URL of the download.
+	 */
+	public String msUrl = "";
+	/**
+	 * ETag header sent by the server; empty if none was sent.
+	 */
+	public String msETag = "";
+	/**
+	 * Last-Modified header sent by the server; empty if none was sent.
+	 */
+	public String msLastModified = "";
+	/**
+	 * Byte size of the complete file; -1 if it is not known.
+	 */
+	public long mlExpectedLength = -1;
+	/**
+	 * Number of bytes at the start of the target file that have been written.
+	 */
+	public long mlCommittedBytes = 0;
+	/**
+	 * Hashes of the chunks of the committed bytes; null if they are not kept.
+	 */
+	public MvChunkMap moChunks = null;
+
+	/**
+	 * Creates an empty journal for specified target file. It is not written
+	 * until {@link #save()} is called.
+	 *
+	 * @param asFilePathname pathname of the target file
+	 */
+	public MvDownloadJournal(String asFilePathname) {
+		super();
+		msJournalPathname = asFilePathname + JOURNAL_FILE_EXTENSION;
+	}
+
+	/**
+	 * Returns the journal of specified target file.
+	 *
+	 * @param asFilePathname pathname of the target file
+	 * @return journal if it exists and can be read; null if otherwise
+	 */
+	public static MvDownloadJournal load(String asFilePathname) {
+		MvDownloadJournal oJournal = new MvDownloadJournal(asFilePathname);
+		Properties oProperties = new Properties();
+		FileInputStream oFIS = null;
+
+		if (!MvFileIO.isFile(oJournal.msJournalPathname)) {
+			return(null);
+		}
+
+		try {
+			oFIS = new FileInputStream(oJournal.msJournalPathname);
+			oProperties.load(oFIS);
+			oJournal.msUrl = oProperties.getProperty("url", "");
+			oJournal.msETag = oProperties.getProperty("etag", "");
+			oJournal.msLastModified = oProperties.getProperty("last-modified", "");
+			oJournal.mlExpectedLength = Long.parseLong(oProperties.getProperty("length", "-1"));
+			oJournal.mlCommittedBytes = Long.parseLong(oProperties.getProperty("committed", "0"));
+			oJournal.moChunks = MvChunkMap.load(asFilePathname, oProperties, oJournal.mlCommittedBytes);
+			return(oJournal);
+		} catch (Exception e) {
+			MvLog.logMessage("Journal could not be read - " + oJournal.msJournalPathname);
+			return(null);
+		} finally {
+			if (oFIS != null) {
+				try { oFIS.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	/**
+	 * Writes the journal. It is written to a temporary file first and then
+	 * renamed, so that a crash leaves either the old or the new journal.
+	 *
+	 * @return whether the journal was written
+	 */
+	public synchronized boolean save() {
+		File oTempFile = new File(msJournalPathname + ".tmp");
+		Properties oProperties = new Properties();
+		FileOutputStream oFOS = null;
+
+		oProperties.setProperty("url", msUrl);
+		oProperties.setProperty("etag", msETag);
+		oProperties.setProperty("last-modified", msLastModified);
+		oProperties.setProperty("length", Long.toString(mlExpectedLength));
+		if (moChunks != null) {
+			// Bytes that the map could not be made to cover are downloaded again.
+			mlCommittedBytes = moChunks.store(oProperties, mlCommittedBytes);
+		}
+		oProperties.setProperty("committed", Long.toString(mlCommittedBytes));
+
+		try {
+			oFOS = new FileOutputStream(oTempFile);
+			oProperties.store(oFOS, null);
+			oFOS.getFD().sync();
+			oFOS.close();
+			oFOS = null;
+			return(oTempFile.renameTo(new File(msJournalPathname)));
+		} catch (IOException e) {
+			MvLog.logMessage("Journal could not be saved - " + e.getMessage());
+			return(false);
+		} finally {
+			if (oFOS != null) {
+				try { oFOS.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	/**
+	 * Deletes the journal. Call it when the download is complete.
+	 *
+	 * @return whether the journal was deleted
+	 */
+	public boolean delete() {
+		return(new File(msJournalPathname).delete());
+	}
+
+	/**
+	 * Records the validators sent by the server in specified response.
+	 *
+	 * @param asUrl URL of the download
+	 * @param aoConnection connection whose response headers need to be recorded
+	 * @param alExpectedLength byte size of the complete file (-1 if unknown)
+	 */
+	public void setFromResponse(String asUrl, HttpURLConnection aoConnection, long alExpectedLength) {
+		String sHeader;
+
+		msUrl = asUrl;
+		sHeader = aoConnection.getHeaderField("ETag");
+		msETag = (sHeader == null) ? "" : sHeader;
+		sHeader = aoConnection.getHeaderField("Last-Modified");
+		msLastModified = (sHeader == null) ? "" : sHeader;
+		mlExpectedLength = alExpectedLength;
+		mlCommittedBytes = 0;
+		if (moChunks != null) {
+			moChunks.reset();
+		}
+	}
+
+	/**
+	 * Returns the value that needs to be sent in an <code>If-Range</code>
+	 * header. Weak ETags cannot be used with ranges, so the Last-Modified date is
+	 * used instead.
+	 *
+	 * @return validator; empty if the server sent none that can be used
+	 */
+	public String getRangeValidator() {
+		if ((msETag.length() > 0) && !msETag.startsWith("W/")) {
+			return(msETag);
+		}
+		return(msLastModified);
+	}
+
+	/**
+	 * Returns whether the download recorded in this journal can be resumed.
+	 *
+	 * @param asUrl URL of the download that is being started
+	 * @param alFileSize current size of the target file
+	 * @return whether the download can be resumed
+	 */
+	public boolean canResume(String asUrl, long alFileSize) {
+		return(msUrl.equals(asUrl) &&
+				(getRangeValidator().length() > 0) &&
+				(mlCommittedBytes > 0) &&
+				(mlCommittedBytes <= alFileSize) &&
+				((mlExpectedLength < 0) || (mlCommittedBytes < mlExpectedLength)));
+	}
+
+	/**
+	 * Checks the last chunk of the committed bytes against its hash, if the
+	 * chunk hashes are kept, and drops the chunk from the committed bytes if it
+	 * does not match.
+	 *
+	 * @return whether all the committed bytes were kept
+	 */
+	public boolean verifyCommittedBytes() {
+		long lVerified;
+
+		if ((moChunks == null) || (mlCommittedBytes <= 0)) {
+			return(true);
+		}
+		lVerified = moChunks.verify(mlCommittedBytes);
+		if (lVerified == mlCommittedBytes) {
+			return(true);
+		}
+		MvLog.logMessage("Committed bytes cut from " + mlCommittedBytes + " to " + lVerified);
+		mlCommittedBytes = lVerified;
+		save();
+		return(false);
+	}
+
+	/**
+	 * Adds the <code>Range</code> and <code>If-Range</code> headers for resuming
+	 * from the committed bytes to specified connection.
+	 *
+	 * @param aoConnection connection that has not been connected yet
+	 */
+	public void setResumeHeaders(HttpURLConnection aoConnection) {
+		setRangeHeader(aoConnection);
+		aoConnection.setRequestProperty("If-Range", getRangeValidator());
+	}
+
+	/**
+	 * Adds only the <code>Range</code> header for resuming from the committed
+	 * bytes to specified connection. It is used with mirrors, whose validators
+	 * differ from those of the server that the journal was started with.
+	 *
+	 * @param aoConnection connection that has not been connected yet
+	 */
+	public void setRangeHeader(HttpURLConnection aoConnection) {
+		aoConnection.setRequestProperty("Range", "bytes=" + mlCommittedBytes + "-");
+	}
+
+}
@@ -0,0 +1,480 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This class collects measurements of downloads. Each download made with
+ * {@link MvDownload} is described by a {@link Sample}: how long the
+ * connection and the first response took, how fast the body arrived, and how
+ * many retries, redirects and resumptions it needed. When the download ends,
+ * the sample is added to the totals of its host and to the global totals, and
+ * is passed to the registered listeners, which can export it.
+ * <p>
+ * The totals are kept under a lock of their own, so taking a
+ * {@link Stats snapshot} costs a copy of a few numbers and does not hold up
+ * the downloads.
+ *
+ * <pre>
+MvDownloadMetrics oMetrics = MvDownloadMetrics.getDefault();
+for (Map.Entry&lt;String, MvDownloadMetrics.Stats&gt; oHost : oMetrics.getHostStats().entrySet()) {
+  MvLog.logMessage(oHost.getKey() + " " + oHost.getValue());
+}
+oMetrics.addListener(new MvDownloadMetrics.OnSampleListener() {
+  &#64;Override
+  public void onSample(MvDownloadMetrics.Sample aoSample) {
+    oExporter.export(aoSample);
+  }
+});
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadMetrics {
+
+	/**
+	 * Failure cause of a download that was stopped.
+	 */
+	public static final String FAILURE_CANCELLED = "cancelled";
+
+	static MvDownloadMetrics moDefault = null;
+
+	volatile Stats moGlobal = new Stats();
+	final Map<String, Stats> moHosts = new ConcurrentHashMap<String, Stats>();
+	final CopyOnWriteArrayList<OnSampleListener> moListeners = new CopyOnWriteArrayList<OnSampleListener>();
+
+	/**
+	 * Interface definition for a callback to be invoked when a download ends.
+	 */
+	public interface OnSampleListener {
+		/**
+		 * Called on the thread of the download, after the totals have been
+		 * updated. It should return quickly.
+		 *
+		 * @param aoSample measurements of the download
+		 */
+		void onSample(Sample aoSample);
+	}
+
+	/**
+	 * This class holds the measurements of one download. Times are in
+	 * milliseconds; -1 means that the step did not take place.
+	 */
+	public static class Sample {
+
+		/**
+		 * URL of the download.
+		 */
+		public final String msUrl;
+
+		/**
+		 * Host of the URL.
+		 */
+		public final String msHost;
+
+		/**
+		 * Priority class of the download (see {@link MvDownloadOptions#miPriority}).
+		 */
+		public final int miPriority;
+
+		/**
+		 * Time taken to look up the host and open the connection (including the
+		 * TLS handshake), for the first request of the download. It is close to
+		 * 0 when a kept-alive connection was reused.
+		 */
+		public long mlConnectMillis = -1;
+
+		/**
+		 * Time from the start of the first request to its response headers.
+		 */
+		public long mlFirstByteMillis = -1;
+
+		/**
+		 * Time from the first response headers to the end of the download.
+		 */
+		public long mlTransferMillis = -1;
+
+		/**
+		 * Time from the start to the end of the download.
+		 */
+		public long mlTotalMillis = -1;
+
+		/**
+		 * Bytes received over the network. Bytes of a resumed download that were
+		 * already on disk are not included; a compressed body is counted as
+		 * received.
+		 */
+		public long mlBytes = 0;
+
+		/**
+		 * Number of times the transfer was tried again after a failure.
+		 */
+		public int miRetries = 0;
+
+		/**
+		 * Number of redirects that were followed.
+		 */
+		public int miRedirects = 0;
+
+		/**
+		 * Number of range requests made to continue a partial file.
+		 */
+		public int miResumes = 0;
+
+		/**
+		 * Whether the download succeeded.
+		 */
+		public boolean mbSuccess = false;
+
+		/**
+		 * Cause of the failure, such as "HTTP 503", "SocketTimeoutException" or
+		 * {@link MvDownloadMetrics#FAILURE_CANCELLED}; empty if the download
+		 * succeeded.
+		 */
+		public String msFailure = "";
+
+		long mlStartNanos, mlResponseNanos = 0;
+
+		/**
+		 * Creates an empty sample for specified download, which starts now.
+		 *
+		 * @param asUrl URL of the download
+		 * @param aiPriority priority class of the download
+		 */
+		public Sample(String asUrl, int aiPriority) {
+			super();
+			msUrl = asUrl;
+			msHost = MvDownloadQueue.getHost(asUrl);
+			miPriority = aiPriority;
+			mlStartNanos = System.nanoTime();
+		}
+
+		/**
+		 * Records the timing of a request, if it is the first of the download.
+		 *
+		 * @param alStartNanos time at which the request was started
+		 * @param alConnectedNanos time at which the connection was open (0 if
+		 *        it is not known)
+		 */
+		public void onResponse(long alStartNanos, long alConnectedNanos) {
+			if (mlResponseNanos == 0) {
+				mlResponseNanos = System.nanoTime();
+				if (alConnectedNanos != 0) {
+					mlConnectMillis = (alConnectedNanos - alStartNanos) / 1000000;
+				}
+				mlFirstByteMillis = (mlResponseNanos - alStartNanos) / 1000000;
+			}
+		}
+
+		/**
+		 * Records the end of the download.
+		 *
+		 * @param abSuccess whether the download succeeded
+		 * @param asFailure cause of the failure (ignored if it succeeded)
+		 */
+		public void finish(boolean abSuccess, String asFailure) {
+			long lNow = System.nanoTime();
+
+			mbSuccess = abSuccess;
+			msFailure = (abSuccess || (asFailure == null)) ? "" : asFailure;
+			mlTotalMillis = (lNow - mlStartNanos) / 1000000;
+			if (mlResponseNanos != 0) {
+				mlTransferMillis = (lNow - mlResponseNanos) / 1000000;
+			}
+		}
+
+		/**
+		 * Returns the rate at which the body was received.
+		 *
+		 * @return bytes per second; 0 if no body was received
+		 */
+		public long getBytesPerSecond() {
+			if ((mlBytes <= 0) || (mlTransferMillis < 0)) {
+				return(0);
+			}
+			return(mlBytes * 1000 / Math.max(1, mlTransferMillis));
+		}
+
+		@Override
+		public String toString() {
+			return(msUrl + (mbSuccess ? " ok" : " failed (" + msFailure + ")") +
+					" connect " + mlConnectMillis + " ms, first byte " + mlFirstByteMillis + " ms, " +
+					mlBytes + " bytes in " + mlTransferMillis + " ms (" + getBytesPerSecond() + " B/s), " +
+					miRetries + " retries, " + miRedirects + " redirects, " + miResumes + " resumes");
+		}
+	}
+
+	/**
+	 * This class holds the totals of a set of downloads. Instances returned by
+	 * {@link MvDownloadMetrics} are snapshots that do not change.
+	 */
+	public static class Stats {
+
+		/**
+		 * Number of downloads.
+		 */
+		public long mlDownloads = 0;
+
+		/**
+		 * Number of downloads that failed.
+		 */
+		public long mlFailures = 0;
+
+		/**
+		 * Bytes received over the network.
+		 */
+		public long mlBytes = 0;
+
+		/**
+		 * Sum of the transfer times of the downloads that received a body.
+		 */
+		public long mlTransferMillis = 0;
+
+		/**
+		 * Sum and number of the connection times.
+		 */
+		public long mlConnectMillis = 0, mlConnects = 0;
+
+		/**
+		 * Sum, number and maximum of the times to the first response.
+		 */
+		public long mlFirstByteMillis = 0, mlFirstBytes = 0, mlMaxFirstByteMillis = 0;
+
+		/**
+		 * Number of retries, redirects and resumptions.
+		 */
+		public long mlRetries = 0, mlRedirects = 0, mlResumes = 0;
+
+		/**
+		 * Number of failures by cause.
+		 */
+		public Map<String, Long> moFailures = new LinkedHashMap<String, Long>();
+
+		/**
+		 * Creates empty totals.
+		 */
+		public Stats() {
+			super();
+		}
+
+		synchronized void add(Sample aoSample) {
+			Long oCount;
+
+			mlDownloads++;
+			if (!aoSample.mbSuccess) {
+				mlFailures++;
+				oCount = moFailures.get(aoSample.msFailure);
+				moFailures.put(aoSample.msFailure, Long.valueOf((oCount == null) ? 1 : oCount.longValue() + 1));
+			}
+			if ((aoSample.mlBytes > 0) && (aoSample.mlTransferMillis >= 0)) {
+				mlBytes = mlBytes + aoSample.mlBytes;
+				mlTransferMillis = mlTransferMillis + aoSample.mlTransferMillis;
+			}
+			if (aoSample.mlConnectMillis >= 0) {
+				mlConnectMillis = mlConnectMillis + aoSample.mlConnectMillis;
+				mlConnects++;
+			}
+			if (aoSample.mlFirstByteMillis >= 0) {
+				mlFirstByteMillis = mlFirstByteMillis + aoSample.mlFirstByteMillis;
+				mlFirstBytes++;
+				mlMaxFirstByteMillis = Math.max(mlMaxFirstByteMillis, aoSample.mlFirstByteMillis);
+			}
+			mlRetries = mlRetries + aoSample.miRetries;
+			mlRedirects = mlRedirects + aoSample.miRedirects;
+			mlResumes = mlResumes + aoSample.miResumes;
+		}
+
+		synchronized Stats copy() {
+			Stats oCopy = new Stats();
+
+			oCopy.mlDownloads = mlDownloads;
+			oCopy.mlFailures = mlFailures;
+			oCopy.mlBytes = mlBytes;
+			oCopy.mlTransferMillis = mlTransferMillis;
+			oCopy.mlConnectMillis = mlConnectMillis;
+			oCopy.mlConnects = mlConnects;
+			oCopy.mlFirstByteMillis = mlFirstByteMillis;
+			oCopy.mlFirstBytes = mlFirstBytes;
+			oCopy.mlMaxFirstByteMillis = mlMaxFirstByteMillis;
+			oCopy.mlRetries = mlRetries;
+			oCopy.mlRedirects = mlRedirects;
+			oCopy.mlResumes = mlResumes;
+			oCopy.moFailures = new LinkedHashMap<String, Long>(moFailures);
+			return(oCopy);
+		}
+
+		/**
+		 * Returns the average time taken to open a connection.
+		 *
+		 * @return milliseconds; -1 if no connection was timed
+		 */
+		public long getAverageConnectMillis() {
+			return((mlConnects == 0) ? -1 : mlConnectMillis / mlConnects);
+		}
+
+		/**
+		 * Returns the average time to the first response.
+		 *
+		 * @return milliseconds; -1 if no response was timed
+		 */
+		public long getAverageFirstByteMillis() {
+			return((mlFirstBytes == 0) ? -1 : mlFirstByteMillis / mlFirstBytes);
+		}
+
+		/**
+		 * Returns the rate at which bodies were received, while they were being
+		 * received.
+		 *
+		 * @return bytes per second; 0 if no body was received
+		 */
+		public long getBytesPerSecond() {
+			return((mlBytes == 0) ? 0 : mlBytes * 1000 / Math.max(1, mlTransferMillis));
+		}
+
+		@Override
+		public synchronized String toString() {
+			return(mlDownloads + " downloads, " + mlFailures + " failed " + moFailures +
+					", connect " + getAverageConnectMillis() + " ms, first byte " + getAverageFirstByteMillis() +
+					" ms (max " + mlMaxFirstByteMillis + " ms), " + mlBytes + " bytes at " + getBytesPerSecond() +
+					" B/s, " + mlRetries + " retries, " + mlRedirects + " redirects, " + mlResumes + " resumes");
+		}
+	}
+
+	/**
+	 * Creates an empty set of metrics. Downloads record their samples in the
+	 * {@link #getDefault() default instance} unless
+	 * {@link MvDownloadOptions#moMetrics} is set to another one.
+	 */
+	public MvDownloadMetrics() {
+		super();
+	}
+
+	/**
+	 * Returns the metrics shared by all downloads.
+	 *
+	 * @return default metrics
+	 */
+	public static synchronized MvDownloadMetrics getDefault() {
+		if (moDefault == null) {
+			moDefault = new MvDownloadMetrics();
+		}
+		return(moDefault);
+	}
+
+	/**
+	 * Adds the sample of a download that has ended to the totals and passes it
+	 * to the listeners.
+	 *
+	 * @param aoSample measurements of the download
+	 */
+	public void record(Sample aoSample) {
+		Stats oHost = moHosts.get(aoSample.msHost);
+
+		if (oHost == null) {
+			synchronized (moHosts) {
+				oHost = moHosts.get(aoSample.msHost);
+				if (oHost == null) {
+					oHost = new Stats();
+					moHosts.put(aoSample.msHost, oHost);
+				}
+			}
+		}
+		oHost.add(aoSample);
+		moGlobal.add(aoSample);
+		for (OnSampleListener oListener : moListeners) {
+			try {
+				oListener.onSample(aoSample);
+			} catch (RuntimeException e) {
+				MvLog.logMessage("Metrics listener failed - " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the totals of all downloads.
+	 *
+	 * @return global totals
+	 */
+	public Stats getGlobalStats() {
+		return(moGlobal.copy());
+	}
+
+	/**
+	 * Returns a snapshot of the totals of the downloads from specified host.
+	 *
+	 * @param asHost host name, as in the URL
+	 * @return totals of the host; null if there has been no download from it
+	 */
+	public Stats getHostStats(String asHost) {
+		Stats oHost = moHosts.get(asHost);
+		return((oHost == null) ? null : oHost.copy());
+	}
+
+	/**
+	 * Returns snapshots of the totals of each host, slowest first by average
+	 * time to the first response.
+	 *
+	 * @return totals by host name
+	 */
+	public Map<String, Stats> getHostStats() {
+		Map<String, Stats> oRet = new LinkedHashMap<String, Stats>();
+		Map.Entry<String, Stats> oSlowest;
+		Map<String, Stats> oHosts = new LinkedHashMap<String, Stats>();
+
+		for (Map.Entry<String, Stats> oHost : moHosts.entrySet()) {
+			oHosts.put(oHost.getKey(), oHost.getValue().copy());
+		}
+		while (!oHosts.isEmpty()) {
+			oSlowest = null;
+			for (Map.Entry<String, Stats> oHost : oHosts.entrySet()) {
+				if ((oSlowest == null) ||
+						(oHost.getValue().getAverageFirstByteMillis() > oSlowest.getValue().getAverageFirstByteMillis())) {
+					oSlowest = oHost;
+				}
+			}
+			oRet.put(oSlowest.getKey(), oSlowest.getValue());
+			oHosts.remove(oSlowest.getKey());
+		}
+		return(oRet);
+	}
+
+	/**
+	 * Adds a callback to be invoked with the sample of each download that
+	 * ends.
+	 *
+	 * @param aoListener callback that needs to be invoked
+	 */
+	public void addListener(OnSampleListener aoListener) {
+		moListeners.addIfAbsent(aoListener);
+	}
+
+	/**
+	 * Removes a callback added with {@link #addListener(OnSampleListener)}.
+	 *
+	 * @param aoListener callback that needs to be removed
+	 */
+	public void removeListener(OnSampleListener aoListener) {
+		moListeners.remove(aoListener);
+	}
+
+	/**
+	 * Clears the totals, such as before measuring the effect of a change.
+	 */
+	public void reset() {
+		synchronized (moHosts) {
+			moHosts.clear();
+		}
+		moGlobal = new Stats();
+	}
+
+}
@@ -0,0 +1,267 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+/**
+ * This class holds optional settings for a download. Create an instance,
+ * change the fields that need to be changed and pass the instance to the
+ * constructor of {@link MvAsyncDownload}. Fields that are not changed retain
+ * the behaviour of the other constructors.
+ *
+ * <pre>
+MvDownloadOptions oOptions = new MvDownloadOptions();
+oOptions.miSegments = 4;
+
+MvAsyncDownload dl =
+  new MvAsyncDownload(
+    "http://www.example.com/podcast.mp3",
+    "/mnt/sdcard/podcast.mp3",
+    oOptions);
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadOptions {
+
+	/**
+	 * Durability mode in which the downloaded bytes are left to the operating
+	 * system to write. A power loss can leave the end of the file, and the
+	 * bytes recorded in the journal, missing.
+	 */
+	public static final int DURABILITY_NONE = 0;
+
+	/**
+	 * Durability mode in which the file is synced to the disk when the
+	 * download completes, before it is reported as successful.
+	 */
+	public static final int DURABILITY_ON_COMPLETE = 1;
+
+	/**
+	 * Durability mode in which the file is also synced every
+	 * {@link #miSyncIntervalMB} megabytes, and the journal is updated only
+	 * after each sync. An interrupted download then never resumes past bytes
+	 * that did not reach the disk.
+	 */
+	public static final int DURABILITY_PERIODIC = 2;
+
+	/**
+	 * User agent string of the http client that needs to be mimicked. Leave it
+	 * empty to use the default user agent.
+	 */
+	public String msUserAgent = "";
+
+	/**
+	 * Number of connections over which the download needs to be fetched in
+	 * parallel. If it is more than 1 and the server reports the size of the file
+	 * and accepts range requests, the file is split into as many segments and
+	 * each segment is fetched on its own connection. Otherwise, the file is
+	 * downloaded over a single connection.
+	 */
+	public int miSegments = 1;
+
+	/**
+	 * Other URLs from which the same file can be downloaded. The mirrors and
+	 * the download URL are probed with small range requests (see
+	 * {@link MvMirrorSet}) and the file is fetched from the fastest. If that
+	 * mirror fails, or turns out to be much slower than another, the rest of
+	 * the file is fetched from the next one. Segments of a segmented download
+	 * are spread over the fast mirrors. The mirrors need to serve the same
+	 * file; a mirror that reports a different size is not used.
+	 */
+	public String[] masMirrors = new String[0];
+
+	/**
+	 * Queue on which the download needs to be run. The queue limits the number
+	 * of downloads that run at the same time, overall and per host. If it is
+	 * null, {@link MvDownload#start()} starts the download immediately on
+	 * {@link MvDownload#getDefaultExecutor()}, which runs each download on a
+	 * virtual thread where the platform has them.
+	 */
+	public MvDownloadQueue moQueue = null;
+
+	/**
+	 * Priority class of the download on {@link #moQueue}, such as
+	 * {@link MvDownloadQueue#PRIORITY_INTERACTIVE} for a download that the user
+	 * is waiting for or {@link MvDownloadQueue#PRIORITY_BULK} for a large
+	 * enclosure. Prefetch and bulk downloads are paused while interactive and
+	 * feed downloads wait for a free slot.
+	 */
+	public int miPriority = MvDownloadQueue.PRIORITY_FEED;
+
+	/**
+	 * Policy that decides how often the download reports its progress. By
+	 * default, a report is made at most every
+	 * {@value MvProgressPolicy#DEFAULT_INTERVAL_MILLIS} milliseconds or every
+	 * {@value MvProgressPolicy#DEFAULT_INTERVAL_BYTES} bytes.
+	 */
+	public MvProgressPolicy moProgressPolicy = new MvProgressPolicy();
+
+	/**
+	 * Time in milliseconds allowed for opening a connection.
+	 */
+	public int miConnectTimeoutMillis = 4000;
+
+	/**
+	 * Time in milliseconds that a read may wait for bytes before the
+	 * connection is taken to have failed. Use 0 to wait forever.
+	 */
+	public int miReadTimeoutMillis = 30000;
+
+	/**
+	 * Time in milliseconds within which at least
+	 * {@value MvStallWatchdog#MIN_PROGRESS_BYTES} bytes of the body need to
+	 * arrive. A connection that falls below it has stalled, and it is closed
+	 * and tried again. Use 0 to disable stall detection.
+	 */
+	public int miStallTimeoutMillis = 60000;
+
+	/**
+	 * Whether to keep a {@link MvDownloadJournal journal} of the download next
+	 * to the target file. With a journal, an interrupted download is resumed
+	 * only if the remote file has not changed, as confirmed by its ETag or
+	 * Last-Modified date. Without it, the download is resumed whenever the
+	 * target file is smaller than the remote file.
+	 */
+	public boolean mbJournal = false;
+
+	/**
+	 * Size in megabytes of the chunks whose hashes are kept in the journal of
+	 * a download (see {@link #mbJournal} and {@link MvChunkMap}). When the
+	 * download is resumed, only the last chunk is read back and checked. Use 0
+	 * to not keep chunk hashes.
+	 */
+	public int miChunkSizeMB = 4;
+
+	/**
+	 * Whether to reserve the disk space of the whole file before the body is
+	 * written, when the server reports the size. It keeps the file in one
+	 * piece on the disk and fails the download early if the disk is full. It
+	 * is done for segmented downloads and for downloads with a
+	 * {@link #mbJournal journal}, whose progress is not read from the size of
+	 * the file.
+	 */
+	public boolean mbPreallocate = true;
+
+	/**
+	 * How far the downloaded bytes are forced to the disk:
+	 * {@link #DURABILITY_NONE}, {@link #DURABILITY_ON_COMPLETE} or
+	 * {@link #DURABILITY_PERIODIC}.
+	 */
+	public int miDurability = DURABILITY_NONE;
+
+	/**
+	 * Megabytes after which the file is synced in
+	 * {@link #DURABILITY_PERIODIC} mode.
+	 */
+	public int miSyncIntervalMB = 8;
+
+	/**
+	 * Bytes that downloads need to leave free on the volume of the target
+	 * file. Before the body is read, the size of the download is compared with
+	 * the usable space less this reserve and less the space reserved by the
+	 * other running downloads (see {@link MvDiskSpace}). A download that does
+	 * not fit fails without reading the body; one that would fit but for the
+	 * space held by the other downloads waits for room.
+	 */
+	public long mlReserveBytes = MvDiskSpace.DEFAULT_RESERVE_BYTES;
+
+	/**
+	 * Byte size of the file, if it is known in advance, as from the length of
+	 * a feed enclosure. A {@link #moQueue queue} then holds the download until
+	 * there is room for it on the disk, and a download that can never fit
+	 * fails without connecting. Use -1 if the size is not known.
+	 */
+	public long mlExpectedSize = -1;
+
+	/**
+	 * Cache of the validators of downloaded URLs. If it is set and the target
+	 * file exists, the download is made conditional. When the server reports
+	 * that the remote file has not changed, the local file is left as it is and
+	 * the outcome is marked {@link MvDownloadResult#mbNotModified}.
+	 */
+	public MvValidatorCache moValidatorCache = null;
+
+	/**
+	 * Algorithms with which the downloaded file is hashed, such as "MD5",
+	 * "SHA1", "SHA-256" or {@value MvDigestStage#CRC32}. The hashes are computed
+	 * on a separate thread and cover the whole file, even if the download was
+	 * resumed. Use an empty array to disable hashing.
+	 * <p>
+	 * If it is null, {@link MvDigestStage#DEFAULT_ALGORITHMS} are used, except
+	 * for a download that keeps {@link #miChunkSizeMB chunk hashes} in its
+	 * journal. Its file is reported with the combined hash of the chunks
+	 * ({@link MvChunkMap#HASH_NAME}) and, if there is a
+	 * {@link #moContentStore content store}, the hash that the store needs.
+	 * The state of the other digests is not saved in the journal, so a resumed
+	 * download would read the whole file back to compute them.
+	 */
+	public String[] masDigestAlgorithms = null;
+
+	/**
+	 * Whether to ask the server for a gzip or deflate compressed response. The
+	 * body is decoded as it is written to the target file. Text files such as
+	 * feeds shrink several times over. Compression is asked for only when there
+	 * is no partial file to resume, because an encoded body cannot be resumed.
+	 * Progress is then reported in encoded bytes, as that is what the
+	 * Content-Length of the response counts.
+	 */
+	public boolean mbAcceptCompressed = false;
+
+	/**
+	 * Connection manager through which the connections of the download are
+	 * opened and released. Connections that are released properly are kept
+	 * alive for the next download from the same host.
+	 */
+	public MvConnectionManager moConnectionManager = MvConnectionManager.getDefault();
+
+	/**
+	 * Limiter that throttles this download in addition to the
+	 * {@link MvRateLimiter#getGlobal() global limiter}. Its rate can be changed
+	 * while the download is running. If it is null, only the global limit
+	 * applies.
+	 */
+	public MvRateLimiter moRateLimiter = null;
+
+	/**
+	 * Policy that decides whether and when a failed download is tried again.
+	 * The default policy is shared by all downloads, so that a server that
+	 * keeps failing is left alone for a while by all of them.
+	 */
+	public MvRetryPolicy moRetryPolicy = MvRetryPolicy.getDefault();
+
+	/**
+	 * Store in which finished downloads are kept by their content. Files with
+	 * the same content are linked to one copy, and downloads whose content is
+	 * already stored are not transferred again. If it is null, files are
+	 * stored as they are.
+	 */
+	public MvContentStore moContentStore = null;
+
+	/**
+	 * SHA1 digest of the file, if it is known in advance, as from a feed that
+	 * lists the hashes of its enclosures. If the content is in
+	 * {@link #moContentStore}, the file is restored from it without connecting.
+	 */
+	public String msExpectedSha1 = "";
+
+	/**
+	 * Metrics in which the measurements of the download are recorded, by host
+	 * and overall. If it is null, the download is measured (see
+	 * {@link MvDownload#getMetrics()}) but not recorded.
+	 */
+	public MvDownloadMetrics moMetrics = MvDownloadMetrics.getDefault();
+
+	/**
+	 * Creates an instance with default settings.
+	 */
+	public MvDownloadOptions() {
+		super();
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+/**
+ * This class describes the progress of a download at one point in time. An
+ * instance is passed to {@link MvAsyncDownload#onDownloadProgress(MvDownloadProgress)}
+ * whenever the {@link MvProgressPolicy progress policy} of the download allows
+ * it.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadProgress {
+
+	/**
+	 * Bytes that have been downloaded, including bytes of a resumed download
+	 * that were already on disk.
+	 */
+	public final long mlBytesDownloaded;
+
+	/**
+	 * Byte size of the download; -1 if it is not known.
+	 */
+	public final long mlDownloadSize;
+
+	/**
+	 * Recent download rate in bytes per second.
+	 */
+	public final double mdBytesPerSecond;
+
+	/**
+	 * Estimated time to completion in milliseconds; -1 if it cannot be
+	 * estimated.
+	 */
+	public final long mlEtaMillis;
+
+	/**
+	 * Whether this is the last progress report of the download.
+	 */
+	public final boolean mbFinal;
+
+	/**
+	 * Creates a progress report.
+	 *
+	 * @param alBytesDownloaded bytes that have been downloaded
+	 * @param alDownloadSize byte size of the download (-1 if unknown)
+	 * @param adBytesPerSecond recent download rate in bytes per second
+	 * @param alEtaMillis estimated time to completion in milliseconds (-1 if unknown)
+	 * @param abFinal whether this is the last report
+	 */
+	public MvDownloadProgress(long alBytesDownloaded, long alDownloadSize, double adBytesPerSecond,
+			long alEtaMillis, boolean abFinal) {
+		super();
+		mlBytesDownloaded = alBytesDownloaded;
+		mlDownloadSize = alDownloadSize;
+		mdBytesPerSecond = adBytesPerSecond;
+		mlEtaMillis = alEtaMillis;
+		mbFinal = abFinal;
+	}
+
+	/**
+	 * Returns percentage of the download that is complete.
+	 *
+	 * @return percentage from 0 to 100; -1 if the size of the download is unknown
+	 */
+	public int getPercentage() {
+		if (mlDownloadSize > 0) {
+			return((int) Math.min(100, (mlBytesDownloaded * 100) / mlDownloadSize));
+		}
+		return(-1);
+	}
+
+	@Override
+	public String toString() {
+		return(mlBytesDownloaded + "/" + mlDownloadSize + " bytes, " +
+				Math.round(mdBytesPerSecond) + " B/s, ETA " + mlEtaMillis + " ms" +
+				(mbFinal ? " (final)" : ""));
+	}
+
+}
@@ -0,0 +1,568 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs downloads on a pool of worker threads. No more than a set
+ * number of downloads run at the same time and no more than a set number of
+ * them are made to the same host. Other downloads wait in the queue and are
+ * started in the order they were submitted, as soon as their host has a free
+ * slot.
+ * <p>
+ * Each download has a priority class ({@link MvDownloadOptions#miPriority}).
+ * Waiting downloads of a higher class are started first. A waiting download
+ * gains one class for every {@value #AGING_MILLIS} ms it has waited, so
+ * downloads of lower classes are never held back for good. When an
+ * {@link #PRIORITY_INTERACTIVE interactive} or {@link #PRIORITY_FEED feed}
+ * download cannot start because the queue is full, a running
+ * {@link #PRIORITY_PREFETCH prefetch} or {@link #PRIORITY_BULK bulk} download
+ * is paused to make room for it. The paused download gives up its
+ * connection and continues from where it stopped, with a range request,
+ * when it is started again. Downloads that cannot continue that way, such
+ * as those of unknown size, are not paused.
+ * <p>
+ * A download that does not fit on the disk while the running downloads hold
+ * their space (see {@link MvDiskSpace}) is held in the queue, without a slot,
+ * and is tried again when a running download ends. A download that can never fit is started,
+ * only to fail before it reads the body.
+ * <p>
+ * To run an {@link MvAsyncDownload} or an {@link MvDownload} on a queue, set
+ * {@link MvDownloadOptions#moQueue}. To run a synchronous download, call
+ * {@link #submitSyncDownload(String, String)}.
+ *
+ * <pre>
+MvDownloadQueue oQueue = new MvDownloadQueue(6, 2);
+
+MvDownloadOptions oOptions = new MvDownloadOptions();
+oOptions.moQueue = oQueue;
+oOptions.miPriority = MvDownloadQueue.PRIORITY_BULK;
+new MvAsyncDownload("http://www.example.com/a.mp3", "/mnt/sdcard/a.mp3", oOptions);
+
+Future&lt;MvException&gt; oFeed =
+  oQueue.submitSyncDownload("http://www.example.com/rss.xml", "/mnt/sdcard/rss.xml");
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadQueue {
+
+	/**
+	 * Priority class of downloads that the user is waiting for, such as an
+	 * article that has been opened.
+	 */
+	public static final int PRIORITY_INTERACTIVE = 0;
+
+	/**
+	 * Priority class of feed refreshes.
+	 */
+	public static final int PRIORITY_FEED = 1;
+
+	/**
+	 * Priority class of downloads that may be needed later, such as the images
+	 * of articles that have not been opened. They are paused to make room for
+	 * interactive and feed downloads.
+	 */
+	public static final int PRIORITY_PREFETCH = 2;
+
+	/**
+	 * Priority class of large downloads, such as podcast and video enclosures.
+	 * They are paused to make room for interactive and feed downloads.
+	 */
+	public static final int PRIORITY_BULK = 3;
+
+	/**
+	 * Time a download waits in the queue to gain one priority class.
+	 */
+	public static final long AGING_MILLIS = 30*1000;
+
+	/**
+	 * Time a resumed download is left to run before it can be paused again.
+	 */
+	static final long MIN_RUN_MILLIS = 10*1000;
+
+	int miMaxConcurrent, miMaxPerHost;
+	int miInFlight = 0;
+	final LinkedList<Job> moPending = new LinkedList<Job>();
+	final LinkedList<Job> moRunning = new LinkedList<Job>();
+	final HashMap<String, Integer> moHostCounts = new HashMap<String, Integer>();
+	final ThreadPoolExecutor moWorkers;
+
+	/**
+	 * Creates a queue with specified limits.
+	 *
+	 * @param aiMaxConcurrent maximum number of downloads that run at the same time
+	 * @param aiMaxPerHost maximum number of downloads that run at the same time
+	 *          for any one host
+	 */
+	public MvDownloadQueue(int aiMaxConcurrent, int aiMaxPerHost) {
+		super();
+		miMaxConcurrent = Math.max(1, aiMaxConcurrent);
+		miMaxPerHost = Math.max(1, aiMaxPerHost);
+		// The queue limits the running jobs. Paused jobs keep their threads, so
+		// the pool itself is not limited. Jobs are paused for others only while
+		// fewer are paused than can run (see preempt).
+		moWorkers = new ThreadPoolExecutor(
+				0, Integer.MAX_VALUE,
+				30, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					final AtomicInteger moCount = new AtomicInteger(1);
+
+					@Override
+					public Thread newThread(Runnable aoRunnable) {
+						return(new Thread(aoRunnable, "MvDownloadQueue-" + moCount.getAndIncrement()));
+					}
+				});
+	}
+
+	/**
+	 * Submits a job that downloads from specified URL. The job is run when the
+	 * global limit and the limit for the host of the URL allow it.
+	 *
+	 * @param asURL URL that the job downloads from (used for the per-host limit)
+	 * @param aoJob job that performs the download
+	 * @return future for the outcome of the job
+	 */
+	public Future<MvException> submit(String asURL, Callable<MvException> aoJob) {
+		return(submit(asURL, aoJob, PRIORITY_FEED));
+	}
+
+	/**
+	 * Submits a job with specified priority class. See
+	 * {@link #submit(String, Callable)}.
+	 *
+	 * @param asURL URL that the job downloads from (used for the per-host limit)
+	 * @param aoJob job that performs the download
+	 * @param aiPriority priority class, such as {@link #PRIORITY_INTERACTIVE}
+	 * @return future for the outcome of the job
+	 */
+	public Future<MvException> submit(String asURL, Callable<MvException> aoJob, int aiPriority) {
+		FutureTask<MvException> oTask = new FutureTask<MvException>(aoJob);
+		enqueue(new Job(getHost(asURL), oTask, aiPriority, null));
+		return(oTask);
+	}
+
+	/**
+	 * Submits a download, with the priority class of its options. Prefetch and
+	 * bulk downloads submitted this way can be paused to make room for
+	 * interactive and feed downloads.
+	 *
+	 * @param aoDownload download that needs to be run
+	 * @return future for the download information
+	 */
+	public MvDownloadFuture submit(MvDownload aoDownload) {
+		MvDownloadFuture oFuture = new MvDownloadFuture(aoDownload);
+		enqueue(new Job(getHost(aoDownload.msRemoteUrl), oFuture, aoDownload.moOptions.miPriority, aoDownload));
+		return(oFuture);
+	}
+	/**
+	 * Submits a synchronous download of specified URL to specified file. See
+	 * {@link MvGeneral#startSyncDownload(String, String)}.
+	 *
+	 * @param asURL address from which the file needs to be download
+	 * @param asFile path to which the file needs to be saved
+	 * @return future for the download information
+	 */
+	public Future<MvException> submitSyncDownload(String asURL, String asFile) {
+		return(submitSyncDownload(asURL, asFile, false, "", ""));
+	}
+
+	/**
+	 * Submits a synchronous download. See
+	 * {@link MvGeneral#startSyncDownload(String, String, boolean, String, String)}.
+	 *
+	 * @param asURL address from which the file needs to be download
+	 * @param asPath file or directory pathname (depending on abGuessFileName)
+	 * @param abGuessFileName whether the file name should be guessed from asURL
+	 * @param asMimeType mime type of the download
+	 * @param asUserAgent user agent string of the http client that needs to be mimicked
+	 * @return future for the download information
+	 */
+	public Future<MvException> submitSyncDownload(final String asURL, final String asPath,
+			final boolean abGuessFileName, final String asMimeType, final String asUserAgent) {
+		return(submit(asURL, new Callable<MvException>() {
+			@Override
+			public MvException call() {
+				return(MvGeneral.startSyncDownload(asURL, asPath, abGuessFileName, asMimeType, asUserAgent));
+			}
+		}));
+	}
+
+	/**
+	 * Returns an executor that runs its tasks on this queue, counting them
+	 * against the host of specified URL. {@link MvAsyncDownload} uses it with
+	 * {@link android.os.AsyncTask#executeOnExecutor}.
+	 *
+	 * @param asURL URL that the tasks download from
+	 * @return executor backed by this queue
+	 */
+	public Executor getExecutorFor(String asURL) {
+		return(getExecutorFor(asURL, PRIORITY_FEED, null));
+	}
+
+	/**
+	 * Returns an executor that runs its tasks on this queue with the priority
+	 * class of specified download, which can be paused while the task runs.
+	 */
+	Executor getExecutorFor(MvDownload aoDownload) {
+		return(getExecutorFor(aoDownload.msRemoteUrl, aoDownload.moOptions.miPriority, aoDownload));
+	}
+
+	Executor getExecutorFor(String asURL, final int aiPriority, final MvDownload aoDownload) {
+		final String sHost = getHost(asURL);
+		return(new Executor() {
+			@Override
+			public void execute(Runnable aoTask) {
+				enqueue(new Job(sHost, new FutureTask<MvException>(aoTask, null), aiPriority, aoDownload));
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of jobs waiting to be started.
+	 *
+	 * @return number of waiting jobs
+	 */
+	public synchronized int getQueueDepth() {
+		return(moPending.size());
+	}
+
+	/**
+	 * Returns the number of jobs of specified priority class waiting to be
+	 * started, including paused jobs.
+	 *
+	 * @param aiPriority priority class
+	 * @return number of waiting jobs of the class
+	 */
+	public synchronized int getQueueDepth(int aiPriority) {
+		int iCount = 0;
+		for (Job oJob : moPending) {
+			if (oJob.miPriority == aiPriority) {
+				iCount++;
+			}
+		}
+		return(iCount);
+	}
+
+	/**
+	 * Returns the number of jobs that are running.
+	 *
+	 * @return number of running jobs
+	 */
+	public synchronized int getInFlightCount() {
+		return(miInFlight);
+	}
+
+	/**
+	 * Returns the number of jobs that are running for specified host.
+	 *
+	 * @param asHost host name
+	 * @return number of running jobs for the host
+	 */
+	public synchronized int getInFlightCount(String asHost) {
+		Integer oCount = moHostCounts.get(asHost);
+		return((oCount == null) ? 0 : oCount.intValue());
+	}
+
+	/**
+	 * Changes the maximum number of jobs that run at the same time. Running jobs
+	 * are not affected if the limit is lowered.
+	 *
+	 * @param aiMaxConcurrent maximum number of running jobs
+	 */
+	public void setMaxConcurrent(int aiMaxConcurrent) {
+		synchronized (this) {
+			miMaxConcurrent = Math.max(1, aiMaxConcurrent);
+		}
+		dispatch();
+	}
+
+	/**
+	 * Changes the maximum number of jobs that run at the same time for any one
+	 * host.
+	 *
+	 * @param aiMaxPerHost maximum number of running jobs per host
+	 */
+	public void setMaxPerHost(int aiMaxPerHost) {
+		synchronized (this) {
+			miMaxPerHost = Math.max(1, aiMaxPerHost);
+		}
+		dispatch();
+	}
+
+	/**
+	 * Discards waiting jobs and lets running jobs finish. The queue cannot be
+	 * used afterwards.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			for (Job oJob : moPending) {
+				oJob.moTask.cancel(false);
+				if (oJob.moDownload != null) {
+					// Paused jobs are waiting on their threads.
+					oJob.moDownload.stopDownload();
+				}
+			}
+			moPending.clear();
+		}
+		moWorkers.shutdown();
+	}
+
+	/**
+	 * Returns the host name of specified URL in lower case. Jobs with invalid
+	 * URLs are counted against an empty host name.
+	 *
+	 * @param asURL URL whose host is required
+	 * @return host name of the URL
+	 */
+	public static String getHost(String asURL) {
+		try {
+			return(new URL(asURL).getHost().toLowerCase());
+		} catch (MalformedURLException e) {
+			return("");
+		} catch (NullPointerException e) {
+			return("");
+		}
+	}
+
+	void enqueue(Job aoJob) {
+		synchronized (this) {
+			moPending.add(aoJob);
+		}
+		dispatch();
+	}
+
+	/**
+	 * Starts the waiting jobs whose hosts are under the per-host limit until the
+	 * global limit is reached. Jobs of a higher class (allowing for aging) are
+	 * started first, and jobs of the same class in the order they were
+	 * submitted. If an interactive or feed job is left waiting, a running
+	 * prefetch or bulk job is paused for it.
+	 */
+	void dispatch() {
+		long lNow = System.currentTimeMillis();
+		Job oJob;
+
+		synchronized (this) {
+			while (miInFlight < miMaxConcurrent) {
+				oJob = null;
+				Iterator<Job> oIterator = moPending.iterator();
+				while (oIterator.hasNext()) {
+					Job oCandidate = oIterator.next();
+					if (oCandidate.moTask.isDone()) {
+						oIterator.remove();
+						continue;
+					}
+					if (getInFlightCount(oCandidate.msHost) >= miMaxPerHost) {
+						continue;
+					}
+					if (!oCandidate.hasSpace()) {
+						// Held until the running downloads give back their space
+						continue;
+					}
+					if ((oJob == null) || (oCandidate.getRank(lNow) < oJob.getRank(lNow))) {
+						oJob = oCandidate;
+					}
+				}
+				if (oJob == null) {
+					break;
+				}
+				moPending.remove(oJob);
+				start(oJob, lNow);
+			}
+			preempt(lNow);
+		}
+	}
+
+	void start(Job aoJob, long alNow) {
+		miInFlight++;
+		moHostCounts.put(aoJob.msHost, getInFlightCount(aoJob.msHost) + 1);
+		aoJob.mbCounted = true;
+		aoJob.mlStarted = alNow;
+		if (aoJob.mbPaused) {
+			aoJob.mbPaused = false;
+			aoJob.moDownload.resume();
+		} else {
+			moWorkers.execute(aoJob);
+		}
+	}
+
+	/**
+	 * Pauses a running prefetch or bulk job for each interactive or feed job
+	 * that is waiting. Only downloads that can be resumed with a range request
+	 * are paused. As each paused job keeps its thread, no more are paused
+	 * once as many jobs are paused as can run.
+	 */
+	void preempt(long alNow) {
+		Job oVictim;
+		int iPaused = getPausedCount();
+
+		for (Job oWaiting : moPending) {
+			if (iPaused >= miMaxConcurrent) {
+				return;
+			}
+			if ((oWaiting.miPriority > PRIORITY_FEED) || oWaiting.moTask.isDone() ||
+					!oWaiting.hasSpace()) {
+				continue;
+			}
+			oVictim = null;
+			for (Job oRunning : moRunning) {
+				if (!oRunning.mbCounted || (oRunning.moDownload == null) ||
+						oRunning.moDownload.isPaused() || !oRunning.moDownload.canPause() ||
+						(oRunning.miPriority < PRIORITY_PREFETCH) ||
+						(alNow - oRunning.mlStarted < MIN_RUN_MILLIS)) {
+					continue;
+				}
+				if ((miInFlight < miMaxConcurrent) && !oRunning.msHost.equals(oWaiting.msHost)) {
+					// Only the per-host limit is in the way.
+					continue;
+				}
+				if ((oVictim == null) || (oRunning.miPriority > oVictim.miPriority)) {
+					oVictim = oRunning;
+				}
+			}
+			if (oVictim == null) {
+				return;
+			}
+			MvLog.logMessage("Pausing download for a higher priority one - " + oVictim.moDownload.msRemoteUrl);
+			oVictim.moDownload.pause();
+			iPaused++;
+		}
+	}
+
+	/**
+	 * Returns the number of jobs that are paused or have been asked to pause.
+	 */
+	int getPausedCount() {
+		int iCount = 0;
+
+		for (Job oJob : moPending) {
+			if (oJob.mbPaused) {
+				iCount++;
+			}
+		}
+		for (Job oJob : moRunning) {
+			if (oJob.mbCounted && (oJob.moDownload != null) && oJob.moDownload.isPaused()) {
+				iCount++;
+			}
+		}
+		return(iCount);
+	}
+
+	/**
+	 * Called on the thread of a job when its download has paused. The job gives
+	 * up its slot and waits in the queue to be resumed.
+	 */
+	void paused(Job aoJob) {
+		synchronized (this) {
+			if (!aoJob.mbCounted) {
+				return;
+			}
+			release(aoJob);
+			aoJob.mbPaused = true;
+			moPending.add(aoJob);
+		}
+		dispatch();
+	}
+
+	synchronized void finished(Job aoJob) {
+		moRunning.remove(aoJob);
+		moPending.remove(aoJob);
+		if (aoJob.mbCounted) {
+			release(aoJob);
+		}
+	}
+
+	void release(Job aoJob) {
+		aoJob.mbCounted = false;
+		miInFlight--;
+		int iCount = getInFlightCount(aoJob.msHost) - 1;
+		if (iCount > 0) {
+			moHostCounts.put(aoJob.msHost, iCount);
+		} else {
+			moHostCounts.remove(aoJob.msHost);
+		}
+	}
+
+
+	/**
+	 * A task waiting in or running on the queue.
+	 */
+	class Job implements Runnable {
+		String msHost;
+		FutureTask<?> moTask;
+		int miPriority;
+		MvDownload moDownload;
+		long mlSubmitted = System.currentTimeMillis(), mlStarted = 0;
+		boolean mbCounted = false, mbPaused = false;
+
+		Job(String asHost, FutureTask<?> aoTask, int aiPriority, MvDownload aoDownload) {
+			msHost = asHost;
+			moTask = aoTask;
+			miPriority = aiPriority;
+			moDownload = aoDownload;
+		}
+
+		/**
+		 * Returns the priority class of this job less the classes it has gained
+		 * by waiting. The lowest rank is started first.
+		 */
+		long getRank(long alNow) {
+			return(miPriority - ((alNow - mlSubmitted) / AGING_MILLIS));
+		}
+
+		/**
+		 * Returns whether there is room on the disk for the download of this
+		 * job. A job that can never fit is started, so that it fails.
+		 */
+		boolean hasSpace() {
+			return((moDownload == null) || moDownload.hasSpace());
+		}
+
+		@Override
+		public void run() {
+			synchronized (MvDownloadQueue.this) {
+				moRunning.add(this);
+			}
+			if (moDownload != null) {
+				moDownload.moOnPaused = new Runnable() {
+					@Override
+					public void run() {
+						paused(Job.this);
+					}
+				};
+			}
+			try {
+				moTask.run();
+			} finally {
+				if (moDownload != null) {
+					moDownload.moOnPaused = null;
+				}
+				finished(this);
+				dispatch();
+			}
+		}
+	}
+
+}
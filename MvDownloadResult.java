@@ -0,0 +1,60 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+/**
+ * This class is the outcome of a download. It adds download-specific
+ * information to {@link MvException}. As with {@link MvException},
+ * {@link #moResult} is the pathname of the downloaded file.
+ *
+ * <pre>
+MvDownloadResult oResult = MvGeneral.startSyncDownload(sFeedUrl, sFeedFile, oOptions);
+if (oResult.mbSuccess &amp;&amp; !oResult.mbNotModified) {
+  MvNewsFeed oFeed = new MvNewsFeed(sFeedFile, sFeedUrl);
+}
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadResult extends MvException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Whether the server reported (with <code>304 Not Modified</code>) that the
+	 * remote file has not changed since it was last downloaded. The local file
+	 * was left as it is and does not need to be processed again.
+	 */
+	public boolean mbNotModified = false;
+
+	/**
+	 * Constructs a new instance of the class.
+	 */
+	public MvDownloadResult() {
+		super();
+	}
+
+	/**
+	 * Constructs a download result with the outcome held in specified result.
+	 *
+	 * @param aoResult outcome that needs to be copied
+	 */
+	public MvDownloadResult(MvException aoResult) {
+		super();
+		mbSuccess = aoResult.mbSuccess;
+		moResult = aoResult.moResult;
+		mException = aoResult.mException;
+		msProblem = aoResult.msProblem;
+		msPossibleSolution = aoResult.msPossibleSolution;
+		if (aoResult instanceof MvDownloadResult) {
+			mbNotModified = ((MvDownloadResult) aoResult).mbNotModified;
+		}
+	}
+
+}
@@ -28,8 +28,6 @@ import android.os.Environment;
  */
 public class MvFileIO {
 	
-  private static final long FILE_COPY_BUFFER_SIZE = 1024*1024;	
-  
 	/**
 	 * Checks if a bitmap with the specified size fits in memory
 	 * @param bmpwidth Bitmap width
@@ -63,17 +61,11 @@ public class MvFileIO {
   public static MvException copyFile(InputStream aoFromStream, String asTo) {
   	FileOutputStream oOutputFileStream;
   	MvException oResult = new MvException();
-    byte[] bBuffer = new byte[1024*1024];
-    int iBytesRead = 0;
     
     try {
       oOutputFileStream = new FileOutputStream(asTo);
       
-    	do {
-    		iBytesRead = aoFromStream.read(bBuffer);
-    		if (iBytesRead < 1) { continue; }
-    		oOutputFileStream.write(bBuffer, 0, iBytesRead);
-    	} while (iBytesRead > 0);
+      MvTransferEngine.transfer(aoFromStream, oOutputFileStream.getChannel(), null);
     	aoFromStream.close();
     	oOutputFileStream.close();
     	oResult.mbSuccess = true;
@@ -7,17 +7,11 @@
 
 package com.vsubhash.droid.androidwithoutstupid;
 
-import java.io.BufferedInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.lang.reflect.Field;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.UnknownHostException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -835,7 +829,9 @@ public class MvGeneral {
 	 * specfied mime type. If abGuessFileName is false, then the method is same as
 	 * calling {@link #startSyncDownload(String, String)} and other parameters will
 	 * be ignored. The specified user agent (browser or http client program) will be 
-	 * mimicked to download the file.
+	 * mimicked to download the file. To limit how many of these downloads run at
+	 * the same time, submit them with 
+	 * {@link MvDownloadQueue#submitSyncDownload(String, String, boolean, String, String)}.
 	 * 
 	 * @param asURL address from which the file needs to be download
 	 * @param asPath file or directory pathname (depending on abGuessFileName)
@@ -845,101 +841,58 @@ public class MvGeneral {
 	 * @return download information
 	 */
 	public static MvException startSyncDownload(String asURL, String asPath, boolean abGuessFileName, String asMimeType, String asUserAgent) {
-		URL oURL;
-		HttpURLConnection moURLConnection;
-		MvException oRet = new MvException();
-		byte[] buf = new byte[1024];
-		int n = 0;
-		String sDownloadedFile, sDownloadPath;
+		MvDownloadOptions oOptions = new MvDownloadOptions();
+		// User agents up to the length of "Mozilla" are not sent, as before
+		// (MvDownload sends those longer than "Wget 1").
+		if (asUserAgent.length() > "Mozilla".length()) {
+			oOptions.msUserAgent = asUserAgent;
+		}
+		return(startSyncDownload(asURL, asPath, abGuessFileName, asMimeType, oOptions));
+	}
+	
+	/**
+	 * Starts a synchronous download from specified URL and save it to specified
+	 * file path using the specified settings. This method should not be called
+	 * in the UI thread. Set {@link MvDownloadOptions#moValidatorCache} to skip
+	 * unchanged files, such as feeds that have not been updated.
+	 * 
+	 * @param asURL address from which the file needs to be download
+	 * @param asFile path to which the file needs to be saved
+	 * @param aoOptions settings for the download
+	 * @return download information
+	 */
+	public static MvDownloadResult startSyncDownload(String asURL, String asFile, MvDownloadOptions aoOptions) {
+		return(startSyncDownload(asURL, asFile, false, "", aoOptions));
+	}
+	
+	/**
+	 * Starts a synchronous download from specified URL and save it to specified
+	 * file path or directory using the specified settings. This method should not
+	 * be called in the UI thread. See 
+	 * {@link #startSyncDownload(String, String, boolean, String, String)} for the
+	 * other parameters.
+	 * 
+	 * @param asURL address from which the file needs to be download
+	 * @param asPath file or directory pathname (depending on abGuessFileName)
+	 * @param abGuessFileName whether the file name should be guessed from asURL
+	 * @param asMimeType mime type of the download
+	 * @param aoOptions settings for the download
+	 * @return download information
+	 */
+	public static MvDownloadResult startSyncDownload(String asURL, String asPath, boolean abGuessFileName, String asMimeType, MvDownloadOptions aoOptions) {
+		String sDownloadPath;
+		MvDownload oDownload;
 		
 	  if (abGuessFileName) {
-	  	sDownloadedFile = URLUtil.guessFileName(asURL, null, asMimeType);
-		  sDownloadPath = asPath + "/" + sDownloadedFile;	  	
+		  sDownloadPath = asPath + "/" + URLUtil.guessFileName(asURL, null, asMimeType);	  	
 	  } else {
 	  	sDownloadPath = asPath;	  	
 	  }		
 		
-		try {
-			oURL = new URL(asURL);
-			moURLConnection = (HttpURLConnection) oURL.openConnection();
-			if (asUserAgent.length() > "Mozilla".length()) {
-				moURLConnection.setRequestProperty("User-Agent", asUserAgent);
-				//MvMessages.logMessage("Mimicking" + asUserAgent);
-				//MvMessages.logMessage("Mimicking");
-			}
-			moURLConnection.setConnectTimeout(5000);	
-			
-			// Handle redirects
-			int iResponseCode = moURLConnection.getResponseCode();
-			if ((iResponseCode == HttpURLConnection.HTTP_MOVED_TEMP) || 
-					(iResponseCode == HttpURLConnection.HTTP_MOVED_PERM) ||
-					(iResponseCode == HttpURLConnection.HTTP_SEE_OTHER)) {
-				if (moURLConnection.getHeaderField("Location") != null) {						
-					String sNewUrl = moURLConnection.getHeaderField("Location");
-					MvMessages.logMessage("Redirected to " + sNewUrl);
-					oURL = new URL(sNewUrl);
-					moURLConnection = (HttpURLConnection) oURL.openConnection();
-				} else {
-					MvMessages.logMessage("Redirected but no new location");
-					oRet.mbSuccess = false;
-					oRet.msProblem = "Redirected but no new location";
-					oRet.msPossibleSolution = "Check headers";
-					return(oRet);
-				}
-			}
-			
-			
-			moURLConnection.connect();	
-			BufferedInputStream in = new BufferedInputStream(moURLConnection.getInputStream());
-			
-			try {
-				FileOutputStream of = new FileOutputStream(asPath);
-	
-				do {
-					n = in.read(buf, 0, 1024);
-					if (n != -1) {
-						of.write(buf, 0, n);
-					} else {
-						of.flush();
-						in.close();
-						of.close();							
-					}
-				} while(n != -1);					
-				oRet.mbSuccess = true;
-				oRet.moResult = sDownloadPath;
-	    } catch (IOException e) {
-			  oRet.mbSuccess = false;
-				oRet.mException = e;
-				oRet.msProblem = "There is a local storage issue.";
-				oRet.msPossibleSolution = "A writable location is required.";
-				e.printStackTrace();
-	    }
-    } catch (MalformedURLException e) {
-			oRet.mbSuccess = false;
-			oRet.mException = e;
-			oRet.msProblem = "This is an invalid URL (link).";
-			oRet.msPossibleSolution = "A valid URL (link) is required.";
-			e.printStackTrace();
-		} catch (UnknownHostException e) {
-			oRet.mbSuccess = false;
-			oRet.mException = e;
-			oRet.msProblem = "There is no Internet connection or the website does not exist.";
-			oRet.msPossibleSolution = "An working Internet connection or a valid website address is required.";
-			e.printStackTrace();
-		} catch (FileNotFoundException e) {
-			oRet.mbSuccess = false;
-			oRet.mException = e;
-			oRet.msProblem = "The link (URL) is broken or missing.";
-			oRet.msPossibleSolution = "An existing link (URL) is required.";
-			e.printStackTrace();
-		} catch (IOException e) {
-			oRet.mbSuccess = false;
-			oRet.mException = e;
-			oRet.msProblem = "There is no network connection.";
-			oRet.msPossibleSolution = "A good connection to the network is required.";
-			e.printStackTrace();
-		}
-		return oRet;
+		// The file is replaced by the latest version, not resumed.
+		oDownload = new MvDownload(asURL, sDownloadPath, aoOptions);
+		oDownload.setResumeExistingFile(false);
+		return(oDownload.run());
   }
 	
 	public static boolean[] convertToArray(ArrayList<Boolean> aoList) {
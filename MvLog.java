@@ -0,0 +1,100 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class writes the log messages of the classes that do not depend on
+ * Android, such as {@link MvDownload}. On Android, messages go to
+ * {@link MvMessages#logMessage(String)}. On other Java platforms, where
+ * {@link MvMessages} cannot be loaded, they go to a
+ * <code>java.util.logging</code> logger named "AndroidWithoutStupid", at the
+ * FINE level. Set a listener to send them somewhere else.
+ *
+ * <pre>
+MvLog.setOnLogListener(new MvLog.OnLogListener() {
+  &#64;Override
+  public void onLog(String asMessage) {
+    System.err.println(asMessage);
+  }
+});
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvLog {
+
+	/**
+	 * Interface definition for a callback to be invoked with each log message.
+	 */
+	public interface OnLogListener {
+		/**
+		 * Called on the thread that logged the message.
+		 *
+		 * @param asMessage the message
+		 */
+		void onLog(String asMessage);
+	}
+
+	static volatile OnLogListener moListener = null;
+	static Boolean mbAndroid = null;
+
+	private MvLog() {
+		super();
+	}
+
+	/**
+	 * Writes specified message to the log.
+	 *
+	 * @param asMessage the message
+	 */
+	public static void logMessage(String asMessage) {
+		OnLogListener oListener = moListener;
+
+		if (oListener != null) {
+			oListener.onLog(asMessage);
+		} else if (isAndroid()) {
+			MvMessages.logMessage(asMessage);
+		} else {
+			Logger.getLogger("AndroidWithoutStupid").log(Level.FINE, asMessage);
+		}
+	}
+
+	/**
+	 * Sends the log messages to specified callback instead.
+	 *
+	 * @param aoListener callback that needs to be invoked (null to restore the
+	 *        default log)
+	 */
+	public static void setOnLogListener(OnLogListener aoListener) {
+		moListener = aoListener;
+	}
+
+	/**
+	 * Returns whether the Android logger is available.
+	 *
+	 * @return true if running on Android
+	 */
+	public static synchronized boolean isAndroid() {
+		if (mbAndroid == null) {
+			try {
+				Class.forName("android.util.Log");
+				mbAndroid = Boolean.TRUE;
+			} catch (ClassNotFoundException e) {
+				mbAndroid = Boolean.FALSE;
+			} catch (LinkageError e) {
+				mbAndroid = Boolean.FALSE;
+			}
+		}
+		return(mbAndroid.booleanValue());
+	}
+
+}
@@ -0,0 +1,363 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class holds equivalent URLs (mirrors) of a file and ranks them by
+ * speed. {@link #probe(String, int)} fetches the first
+ * {@value #PROBE_BYTES} bytes from every mirror at the same time with a
+ * <code>Range</code> request and measures how fast they arrive. Mirrors that
+ * fail, do not accept range requests or report a different file size are not
+ * used.
+ * <p>
+ * {@link MvDownload} uses the fastest mirror when
+ * {@link MvDownloadOptions#masMirrors} is set. If the mirror fails, or turns
+ * out to be less than half as fast as another mirror, the download moves to
+ * the next one and asks for the rest of the file with a range request. A
+ * segmented download spreads its segments over the mirrors that are not much
+ * slower than the fastest one.
+ *
+ * <pre>
+MvMirrorSet oMirrors = new MvMirrorSet(
+    "http://www.example.com/podcast.mp3",
+    "http://mirror.example.net/podcast.mp3");
+oMirrors.probe("", 4000);
+String sFastest = oMirrors.getBest();
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvMirrorSet {
+
+	/**
+	 * Bytes fetched from each mirror to measure its speed.
+	 */
+	public static final int PROBE_BYTES = 64*1024;
+
+	/**
+	 * Time allowed for all the probes. A mirror that has not finished by then
+	 * is ranked last but is still used if the others fail.
+	 */
+	public static final long PROBE_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * Factor by which another mirror needs to be faster before a download
+	 * moves to it.
+	 */
+	public static final int SWITCH_FACTOR = 2;
+
+	/**
+	 * Failures after which a mirror is no longer used.
+	 */
+	public static final int MAX_FAILURES = 3;
+
+	final List<Mirror> moMirrors = new ArrayList<Mirror>();
+
+	static class Mirror {
+		final String msUrl;
+		volatile long mlBytesPerSecond = 0;
+		volatile long mlSize = -1;
+		volatile int miFailures = 0;
+		volatile boolean mbExcluded = false;
+
+		Mirror(String asUrl) {
+			msUrl = asUrl;
+		}
+
+		boolean isUsable() {
+			return(!mbExcluded && (miFailures < MAX_FAILURES));
+		}
+	}
+
+	/**
+	 * Creates a set of specified mirrors. The first URL is the one the file is
+	 * known by; it is preferred when the mirrors are equally fast.
+	 *
+	 * @param asUrls equivalent URLs of the file
+	 */
+	public MvMirrorSet(String... asUrls) {
+		super();
+		for (String sUrl : asUrls) {
+			if ((sUrl != null) && (sUrl.length() > 0) && (find(sUrl) == null)) {
+				moMirrors.add(new Mirror(sUrl));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of mirrors in the set.
+	 *
+	 * @return number of mirrors
+	 */
+	public int size() {
+		return(moMirrors.size());
+	}
+
+	/**
+	 * Measures the speed of every mirror with a ranged request for the first
+	 * {@value #PROBE_BYTES} bytes. The mirrors are probed at the same time, and
+	 * this method returns within {@value #PROBE_TIMEOUT_MILLIS} milliseconds.
+	 * It should not be called in the UI thread.
+	 *
+	 * @param asUserAgent user agent string of the http client that needs to be
+	 *        mimicked
+	 * @param aiConnectTimeoutMillis time allowed for opening a connection
+	 */
+	public void probe(final String asUserAgent, final int aiConnectTimeoutMillis) {
+		Thread[] arThreads = new Thread[moMirrors.size()];
+		final long lDeadline = System.currentTimeMillis() + PROBE_TIMEOUT_MILLIS;
+		long lSize = -1;
+		int i;
+
+		for (i = 0; i < arThreads.length; i++) {
+			final Mirror oMirror = moMirrors.get(i);
+			if (!oMirror.isUsable()) {
+				continue;
+			}
+			arThreads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					probe(oMirror, asUserAgent, aiConnectTimeoutMillis, lDeadline);
+				}
+			}, "MvMirrorSet-" + i);
+			arThreads[i].setDaemon(true);
+			arThreads[i].start();
+		}
+
+		try {
+			for (i = 0; i < arThreads.length; i++) {
+				if (arThreads[i] == null) {
+					continue;
+				}
+				arThreads[i].join(Math.max(1, lDeadline - System.currentTimeMillis()));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// A probe that is still running is too slow; its mirror is left at the
+		// end of the ranking and the probe ends on its own.
+		for (Mirror oMirror : moMirrors) {
+			if ((lSize == -1) && (oMirror.mlSize > 0)) {
+				lSize = oMirror.mlSize;
+			}
+		}
+		for (Mirror oMirror : moMirrors) {
+			if ((oMirror.mlSize > 0) && (oMirror.mlSize != lSize)) {
+				MvLog.logMessage("Mirror has a different file size - " + oMirror.msUrl);
+				oMirror.mbExcluded = true;
+			}
+			MvLog.logMessage("Mirror " + oMirror.msUrl + " - " + oMirror.mlBytesPerSecond + " B/s" +
+					(oMirror.isUsable() ? "" : " (not used)"));
+		}
+	}
+
+	void probe(Mirror aoMirror, String asUserAgent, int aiConnectTimeoutMillis, long alDeadline) {
+		HttpURLConnection oConnection = null;
+		InputStream in = null;
+		byte[] buf = new byte[8*1024];
+		long lStart, lBytes = 0;
+		int n;
+
+		try {
+			oConnection = (HttpURLConnection) new URL(aoMirror.msUrl).openConnection();
+			if ((asUserAgent != null) && (asUserAgent.length() > "Wget 1".length())) {
+				oConnection.setRequestProperty("User-Agent", asUserAgent);
+			}
+			oConnection.setConnectTimeout(aiConnectTimeoutMillis);
+			oConnection.setReadTimeout((int) PROBE_TIMEOUT_MILLIS);
+			oConnection.setRequestProperty("Range", "bytes=0-" + (PROBE_BYTES - 1));
+			if (oConnection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+				MvLog.logMessage("Mirror does not accept range requests - " + aoMirror.msUrl);
+				aoMirror.mbExcluded = true;
+				return;
+			}
+			aoMirror.mlSize = getTotalLength(oConnection);
+			// The speed of the body is measured; the time to the first response
+			// matters little for a large file.
+			lStart = System.nanoTime();
+			in = oConnection.getInputStream();
+			while ((lBytes < PROBE_BYTES) && (System.currentTimeMillis() < alDeadline) &&
+					((n = in.read(buf)) != -1)) {
+				lBytes = lBytes + n;
+			}
+			aoMirror.mlBytesPerSecond = lBytes * 1000000000L / Math.max(1, System.nanoTime() - lStart);
+		} catch (IOException e) {
+			MvLog.logMessage("Mirror probe failed - " + aoMirror.msUrl + " - " + e.getMessage());
+			aoMirror.miFailures++;
+		} finally {
+			if (in != null) {
+				try { in.close(); } catch (IOException e) { }
+			}
+			if (oConnection != null) {
+				oConnection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Returns the fastest mirror that is still in use.
+	 *
+	 * @return URL of the mirror; null if all of them have failed
+	 */
+	public String getBest() {
+		List<Mirror> oRanked = getRanked();
+		return(oRanked.isEmpty() ? null : oRanked.get(0).msUrl);
+	}
+
+	/**
+	 * Returns a mirror that is at least {@value #SWITCH_FACTOR} times as fast
+	 * as specified mirror is now and has not failed more often.
+	 *
+	 * @param asCurrent URL of the mirror in use
+	 * @param alBytesPerSecond measured speed of the mirror in use
+	 * @return URL of the faster mirror; null if there is none
+	 */
+	public String getFaster(String asCurrent, long alBytesPerSecond) {
+		Mirror oCurrent = find(asCurrent);
+		int iFailures = (oCurrent == null) ? 0 : oCurrent.miFailures;
+
+		for (Mirror oMirror : getRanked()) {
+			// A mirror that has failed more often is not worth the risk.
+			if (!oMirror.msUrl.equals(asCurrent) && (oMirror.miFailures <= iFailures) &&
+					(oMirror.mlBytesPerSecond >= alBytesPerSecond * SWITCH_FACTOR)) {
+				return(oMirror.msUrl);
+			}
+		}
+		return(null);
+	}
+
+	/**
+	 * Returns the mirror from which specified segment of a segmented download
+	 * needs to be fetched. The segments are spread over the mirrors that are at
+	 * least 1/{@value #SWITCH_FACTOR} as fast as the fastest one.
+	 *
+	 * @param aiSegment index of the segment
+	 * @return URL of the mirror; null if all of them have failed
+	 */
+	public String getForSegment(int aiSegment) {
+		List<Mirror> oRanked = getRanked();
+		int iCount = 0;
+
+		if (oRanked.isEmpty()) {
+			return(null);
+		}
+		while ((iCount < oRanked.size()) &&
+				(oRanked.get(iCount).mlBytesPerSecond * SWITCH_FACTOR >= oRanked.get(0).mlBytesPerSecond)) {
+			iCount++;
+		}
+		return(oRanked.get(aiSegment % Math.max(1, iCount)).msUrl);
+	}
+
+	/**
+	 * Records the speed at which a download is receiving bytes from specified
+	 * mirror. It replaces the speed measured by the probe.
+	 *
+	 * @param asUrl URL of the mirror
+	 * @param alBytesPerSecond measured speed
+	 */
+	public void reportRate(String asUrl, long alBytesPerSecond) {
+		Mirror oMirror = find(asUrl);
+		if (oMirror != null) {
+			oMirror.mlBytesPerSecond = alBytesPerSecond;
+		}
+	}
+
+	/**
+	 * Records a failed transfer from specified mirror. The mirror is ranked
+	 * after those with fewer failures and is no longer used after
+	 * {@value #MAX_FAILURES} failures.
+	 *
+	 * @param asUrl URL of the mirror
+	 */
+	public void reportFailure(String asUrl) {
+		Mirror oMirror = find(asUrl);
+		if (oMirror != null) {
+			oMirror.miFailures++;
+		}
+	}
+
+	/**
+	 * Stops the use of specified mirror, such as when it has a different file.
+	 *
+	 * @param asUrl URL of the mirror
+	 */
+	public void exclude(String asUrl) {
+		Mirror oMirror = find(asUrl);
+		if (oMirror != null) {
+			oMirror.mbExcluded = true;
+		}
+	}
+
+	Mirror find(String asUrl) {
+		for (Mirror oMirror : moMirrors) {
+			if (oMirror.msUrl.equals(asUrl)) {
+				return(oMirror);
+			}
+		}
+		return(null);
+	}
+
+	/**
+	 * Returns the usable mirrors, those with fewer failures first and then the
+	 * faster ones first. The sort is stable, so equal mirrors keep their order.
+	 */
+	List<Mirror> getRanked() {
+		List<Mirror> oRanked = new ArrayList<Mirror>();
+
+		for (Mirror oMirror : moMirrors) {
+			if (oMirror.isUsable()) {
+				oRanked.add(oMirror);
+			}
+		}
+		Collections.sort(oRanked, new Comparator<Mirror>() {
+			@Override
+			public int compare(Mirror aoA, Mirror aoB) {
+				if (aoA.miFailures != aoB.miFailures) {
+					return(aoA.miFailures < aoB.miFailures ? -1 : 1);
+				}
+				if (aoA.mlBytesPerSecond != aoB.mlBytesPerSecond) {
+					return(aoA.mlBytesPerSecond > aoB.mlBytesPerSecond ? -1 : 1);
+				}
+				return(0);
+			}
+		});
+		return(oRanked);
+	}
+
+	/**
+	 * Returns the size of the whole file from the <code>Content-Range</code>
+	 * header of a partial response.
+	 *
+	 * @return size in bytes; -1 if it is not known
+	 */
+	static long getTotalLength(HttpURLConnection aoConnection) {
+		String sRange = aoConnection.getHeaderField("Content-Range");
+		int iSlash;
+
+		if ((sRange == null) || ((iSlash = sRange.lastIndexOf('/')) < 0)) {
+			return(-1);
+		}
+		try {
+			return(Long.parseLong(sRange.substring(iSlash + 1).trim()));
+		} catch (NumberFormatException e) {
+			return(-1);
+		}
+	}
+
+}
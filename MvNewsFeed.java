@@ -6,9 +6,17 @@
  */
 package com.vsubhash.droid.androidwithoutstupid;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.regex.Pattern;
@@ -32,7 +40,20 @@ import android.text.Html;
  * {@link MvAsyncDownload} or {@link MvGeneral#startSyncDownload(String, String)}
  * to download the RSS XML from the Net.) Calling the constructor immediately
  * parses the file. The articles in the XML file will then be available in the
- * {link {@link #moMessages} arraylist.
+ * {link {@link #moMessages} arraylist. If the download was made with a
+ * {@link MvValidatorCache} and reports {@link MvDownloadResult#mbNotModified},
+ * the feed has not changed since it was last parsed and need not be parsed again.
+ * <p>
+ * A feed can also be parsed straight from the network with
+ * {@link #MvNewsFeed(String, String, MvDownloadOptions)}, which saves writing
+ * the XML to a file and reading it back. The XML can still be archived to a
+ * file as it is parsed.
+ * <pre>
+MvNewsFeed oFeed = new MvNewsFeed(
+    "http://www.example.com/rss.xml", 
+    "/mnt/sdcard/rss.xml",
+    new MvDownloadOptions());
+ * </pre>
  * 
  * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
  * @version 2016.08.15         
@@ -106,6 +127,11 @@ public class MvNewsFeed {
 	 * Error encountered while reading the XML.
 	 */
 	public String msError = "";
+	/**
+	 * Whether the server reported that the feed has not changed since it was
+	 * last downloaded. The articles were then read from the archive file.
+	 */
+	public boolean mbNotModified = false;
 	
 	/**
 	 * Creates an instance of this class and initializes it with articles loaded
@@ -118,47 +144,167 @@ public class MvNewsFeed {
 	 * @param asUrl Self-referencing URL of the feed in the XML.
 	 */
 	public MvNewsFeed(String asFile, String asUrl) {
-		DocumentBuilder oDocBuilder;
-		Document doc;
 		FileInputStream oInputStream;
-		NodeList oDomNodes;
-		int n;
 		moMessages = new ArrayList<MvNewsFeed.MvNewsFeedMessage>();
 		
 		try {
 			oInputStream = new FileInputStream(asFile);
+			parse(oInputStream, asUrl);
+			oInputStream.close();
+			this.mbIsDownloaded = true;
+			this.mbIsAvailable = true;
+		} catch (ParserConfigurationException e) {
+			this.mbIsAvailable = false;
+			this.msError = "XML configuration error.";
+			e.printStackTrace();
+		} catch (FactoryConfigurationError e) {
+			this.mbIsAvailable = false;
+			this.msError = "XML configuration error.";
+			e.printStackTrace();
+		} catch (FileNotFoundException e) {
+			this.mbIsAvailable = false;
+			this.msError = "The XML file could not be found.";
+			e.printStackTrace();
+		} catch (SAXException e) {
+			this.mbIsAvailable = false;
+			this.msError = "The file is not valid XML.";
+			e.printStackTrace();
+		} catch (IOException e) {
+			this.mbIsAvailable = false;
+			this.msError = "The XML file could not be read.";
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Creates an instance of this class and initializes it with articles read
+	 * from specified stream, such as the body of an HTTP response. Calling this
+	 * constructor immediately parses the XML. The stream is not closed.
+	 * 
+	 * @param aoStream stream from which the RSS XML can be read
+	 * @param asUrl Self-referencing URL of the feed in the XML.
+	 */
+	public MvNewsFeed(InputStream aoStream, String asUrl) {
+		moMessages = new ArrayList<MvNewsFeed.MvNewsFeedMessage>();
+		
+		try {
+			parse(aoStream, asUrl);
+			this.mbIsDownloaded = true;
+			this.mbIsAvailable = true;
+		} catch (ParserConfigurationException e) {
+			this.mbIsAvailable = false;
+			this.msError = "XML configuration error.";
+			e.printStackTrace();
+		} catch (FactoryConfigurationError e) {
+			this.mbIsAvailable = false;
+			this.msError = "XML configuration error.";
+			e.printStackTrace();
+		} catch (SAXException e) {
+			this.mbIsAvailable = false;
+			this.msError = "The file is not valid XML.";
+			e.printStackTrace();
+		} catch (IOException e) {
+			this.mbIsAvailable = false;
+			this.msError = "The XML could not be read.";
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Creates an instance of this class and initializes it with articles
+	 * downloaded from specified URL. The XML is parsed as it arrives from the
+	 * network, without first being saved to a file, so the feed is ready about
+	 * as soon as the download is complete. If an archive file is specified, the
+	 * XML is also copied to it as it is parsed. This constructor should not be
+	 * called in the UI thread.
+	 * <p>
+	 * If the options have a {@link MvDownloadOptions#moValidatorCache} and the
+	 * archive file exists, the download is made conditional. When the feed has
+	 * not changed, the archive file is parsed instead and
+	 * {@link #mbNotModified} is set.
+	 * 
+	 * @param asUrl URL of the RSS XML
+	 * @param asArchiveFile pathname of the file to which the XML needs to be
+	 *        copied (null for none)
+	 * @param aoOptions settings for the download
+	 */
+	public MvNewsFeed(String asUrl, String asArchiveFile, MvDownloadOptions aoOptions) {
+		MvConnectionManager oConnections = aoOptions.moConnectionManager;
+		MvValidatorCache oValidatorCache = aoOptions.moValidatorCache;
+		HttpURLConnection oConnection = null;
+		MvContentDecoder oDecoder = null;
+		TeeInputStream oTee = null;
+		InputStream oBody;
+		File oTempFile = null;
+		boolean bConditional = false, bParsed = false, bArchived = false;
+		moMessages = new ArrayList<MvNewsFeed.MvNewsFeedMessage>();
+		
+		try {
+			oConnection = oConnections.open(new URL(asUrl));
+			if (aoOptions.msUserAgent.length() > 0) {
+				oConnection.setRequestProperty("User-Agent", aoOptions.msUserAgent);
+			}
+			if ((oValidatorCache != null) && (asArchiveFile != null) && MvFileIO.isFile(asArchiveFile)) {
+				bConditional = oValidatorCache.setConditionalHeaders(asUrl, oConnection);
+			}
+			if (aoOptions.mbAcceptCompressed) {
+				MvContentDecoder.setAcceptEncoding(oConnection);
+			}
 			
-			oDocBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			doc = oDocBuilder.parse(oInputStream);
-			
-			oDomNodes = doc.getElementsByTagName("channel");
-			n = oDomNodes.getLength();			
-			if (n > 0) {
-				this.msFeedType = this.FEED_TYPE_RSS;
-				processRSS(oDomNodes);
-				if (this.msFeedLocation.length() < 1) {
-					this.msFeedLocation = asUrl;
+			if (bConditional && (oConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)) {
+				MvMessages.logMessage("Not modified - " + asUrl);
+				oConnections.release(oConnection);
+				oConnection = null;
+				this.mbNotModified = true;
+				oBody = new FileInputStream(asArchiveFile);
+				try {
+					parse(oBody, asUrl);
+				} finally {
+					oBody.close();
 				}
 			} else {
-				//MvMessages.logMessage("no channel nodes");
-				oDomNodes = doc.getElementsByTagName("rdf:RDF");
-				n = oDomNodes.getLength();
-				if (n > 0) {
-					this.msFeedType = this.FEED_TYPE_RDF;
-					processRDF(oDomNodes);
-				} else {
-					oDomNodes = doc.getElementsByTagName("feed");
-					n = oDomNodes.getLength();
-					if (n > 0) {
-						this.msFeedType = this.FEED_TYPE_ATOM;
-						processATOM(oDomNodes);
+				oDecoder = new MvContentDecoder(
+						oConnections.getInputStream(oConnection), oConnection.getContentEncoding());
+				oBody = oDecoder.getInputStream();
+				if (asArchiveFile != null) {
+					oTempFile = new File(asArchiveFile + ".tmp");
+					oTee = new TeeInputStream(oBody, new FileOutputStream(oTempFile));
+					oBody = oTee;
+				}
+				try {
+					parse(oBody, asUrl);
+					bParsed = true;
+				} finally {
+					if (oTee == null) {
+						// Nothing to copy
+					} else if (bParsed) {
+						// Copies the rest of the XML, which the parser may not have read.
+						oTee.close();
+					} else {
+						// The copy is not kept, so the rest is not worth downloading.
+						oTee.closeCopy();
+					}
+				}
+				if ((oTee != null) && oTee.mbEndReached) {
+					bArchived = oTempFile.renameTo(new File(asArchiveFile));
+					if (bArchived) {
+						oTempFile = null;
 					} else {
-						this.msFeedType = this.FEED_TYPE_UNKNOWN_OR_INVALID;
+						MvMessages.logMessage("Unable to save feed archive " + asArchiveFile);
 					}
 				}
+				if (oValidatorCache != null) {
+					// The validators are kept only with the copy of the XML they
+					// belong to, as a 304 Not Modified makes the archive current.
+					if (bArchived) {
+						oValidatorCache.update(asUrl, oConnection);
+					} else {
+						oValidatorCache.remove(asUrl);
+					}
+				}
+				oConnections.release(oConnection);
+				oConnection = null;
 			}
-
-			oInputStream.close();
 			this.mbIsDownloaded = true;
 			this.mbIsAvailable = true;
 		} catch (ParserConfigurationException e) {
@@ -169,18 +315,74 @@ public class MvNewsFeed {
 			this.mbIsAvailable = false;
 			this.msError = "XML configuration error.";
 			e.printStackTrace();
-		} catch (FileNotFoundException e) {
-			this.mbIsAvailable = false;
-			this.msError = "The XML file could not be found.";
-			e.printStackTrace();
 		} catch (SAXException e) {
+			this.mbIsDownloaded = true;
 			this.mbIsAvailable = false;
 			this.msError = "The file is not valid XML.";
 			e.printStackTrace();
+		} catch (MalformedURLException e) {
+			this.mbIsAvailable = false;
+			this.msError = "This is an invalid URL (link).";
+			e.printStackTrace();
+		} catch (FileNotFoundException e) {
+			this.mbIsAvailable = false;
+			this.msError = "The feed could not be found.";
+			e.printStackTrace();
 		} catch (IOException e) {
 			this.mbIsAvailable = false;
-			this.msError = "The XML file could not be read.";
+			this.msError = "The feed could not be downloaded.";
 			e.printStackTrace();
+		} finally {
+			if (oConnection != null) {
+				oConnections.discard(oConnection);
+			}
+			if (oDecoder != null) {
+				try { oDecoder.close(); } catch (IOException e) { }
+			}
+			if (oTempFile != null) {
+				oTempFile.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Parses the RSS, RDF or Atom XML in specified stream.
+	 */
+	void parse(InputStream aoInputStream, String asUrl) 
+			throws ParserConfigurationException, SAXException, IOException {
+		DocumentBuilder oDocBuilder;
+		Document doc;
+		NodeList oDomNodes;
+		int n;
+		
+		oDocBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		doc = oDocBuilder.parse(aoInputStream);
+		
+		oDomNodes = doc.getElementsByTagName("channel");
+		n = oDomNodes.getLength();			
+		if (n > 0) {
+			this.msFeedType = this.FEED_TYPE_RSS;
+			processRSS(oDomNodes);
+			if (this.msFeedLocation.length() < 1) {
+				this.msFeedLocation = asUrl;
+			}
+		} else {
+			//MvMessages.logMessage("no channel nodes");
+			oDomNodes = doc.getElementsByTagName("rdf:RDF");
+			n = oDomNodes.getLength();
+			if (n > 0) {
+				this.msFeedType = this.FEED_TYPE_RDF;
+				processRDF(oDomNodes);
+			} else {
+				oDomNodes = doc.getElementsByTagName("feed");
+				n = oDomNodes.getLength();
+				if (n > 0) {
+					this.msFeedType = this.FEED_TYPE_ATOM;
+					processATOM(oDomNodes);
+				} else {
+					this.msFeedType = this.FEED_TYPE_UNKNOWN_OR_INVALID;
+				}
+			}
 		}
 	}
 	
@@ -586,6 +788,81 @@ public class MvNewsFeed {
 	}
 	
 	
+	/**
+	 * A stream that copies the bytes read from it to an output stream. Closing
+	 * it copies the bytes that were not read and closes the copy, but not the
+	 * source. {@link #closeCopy()} closes the copy without reading the rest.
+	 */
+	static class TeeInputStream extends FilterInputStream {
+		OutputStream moCopy;
+		boolean mbEndReached = false, mbClosed = false;
+		
+		TeeInputStream(InputStream aoSource, OutputStream aoCopy) {
+			super(aoSource);
+			moCopy = aoCopy;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				mbEndReached = true;
+			} else {
+				moCopy.write(b);
+			}
+			return(b);
+		}
+		
+		@Override
+		public int read(byte[] aBuffer, int aiOffset, int aiLength) throws IOException {
+			int n = super.read(aBuffer, aiOffset, aiLength);
+			if (n == -1) {
+				mbEndReached = true;
+			} else {
+				moCopy.write(aBuffer, aiOffset, n);
+			}
+			return(n);
+		}
+		
+		@Override
+		public long skip(long alCount) throws IOException {
+			byte[] buf = new byte[(int) Math.min(Math.max(alCount, 0), 8192)];
+			int n = read(buf, 0, buf.length);
+			return(Math.max(n, 0));
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return(false);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			byte[] buf;
+			
+			if (mbClosed) {
+				return;
+			}
+			mbClosed = true;
+			try {
+				buf = new byte[8192];
+				while (read(buf, 0, buf.length) != -1) {
+					// Copy the rest
+				}
+			} finally {
+				moCopy.close();
+			}
+		}
+		
+		void closeCopy() throws IOException {
+			if (!mbClosed) {
+				mbClosed = true;
+				moCopy.close();
+			}
+		}
+	}
+	
+	
 	/**
 	 * Internal class representing an article in the RSS XML file.
 	 * 
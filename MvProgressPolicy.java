@@ -0,0 +1,161 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+/**
+ * This class decides how often a download reports its progress. A report is
+ * made when a set time has passed or a set number of bytes has been downloaded
+ * since the last report, whichever comes first. The last report of a download
+ * is always made.
+ *
+ * <pre>
+MvDownloadOptions oOptions = new MvDownloadOptions();
+oOptions.moProgressPolicy = new MvProgressPolicy(500, 4*1024*1024);
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvProgressPolicy {
+
+	/**
+	 * Default minimum time between reports in milliseconds.
+	 */
+	public static final long DEFAULT_INTERVAL_MILLIS = 250;
+
+	/**
+	 * Default number of bytes after which a report is made regardless of time.
+	 */
+	public static final long DEFAULT_INTERVAL_BYTES = 1024*1024;
+
+	/**
+	 * Weight of the latest interval in the smoothed download rate.
+	 */
+	static final double RATE_SMOOTHING = 0.3;
+
+	long mlIntervalMillis, mlIntervalBytes;
+
+	/**
+	 * Creates a policy with the default intervals.
+	 */
+	public MvProgressPolicy() {
+		this(DEFAULT_INTERVAL_MILLIS, DEFAULT_INTERVAL_BYTES);
+	}
+
+	/**
+	 * Creates a policy with specified intervals.
+	 *
+	 * @param alIntervalMillis time after which a report is made
+	 * @param alIntervalBytes number of bytes after which a report is made
+	 */
+	public MvProgressPolicy(long alIntervalMillis, long alIntervalBytes) {
+		super();
+		mlIntervalMillis = Math.max(0, alIntervalMillis);
+		mlIntervalBytes = (alIntervalBytes > 0) ? alIntervalBytes : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns time after which a report is made.
+	 *
+	 * @return interval in milliseconds
+	 */
+	public long getIntervalMillis() { return(mlIntervalMillis); }
+
+	/**
+	 * Returns number of bytes after which a report is made.
+	 *
+	 * @return interval in bytes
+	 */
+	public long getIntervalBytes() { return(mlIntervalBytes); }
+
+	/**
+	 * Returns a new tracker that applies this policy to one download.
+	 *
+	 * @param alStartBytes bytes already on disk when the download starts
+	 * @return new tracker
+	 */
+	public Tracker newTracker(long alStartBytes) {
+		return(new Tracker(alStartBytes));
+	}
+
+
+	/**
+	 * This class tracks the progress of one download and produces reports as
+	 * allowed by the policy. Its methods can be called from several threads.
+	 */
+	public class Tracker {
+		long mlLastBytes, mlLastNanos, mlRateBytes, mlRateNanos;
+		double mdBytesPerSecond = 0;
+		boolean mbFinished = false;
+
+		Tracker(long alStartBytes) {
+			mlLastBytes = alStartBytes;
+			mlRateBytes = alStartBytes;
+			mlLastNanos = System.nanoTime();
+			mlRateNanos = mlLastNanos;
+		}
+
+		/**
+		 * Returns a report if one is due.
+		 *
+		 * @param alBytesDownloaded bytes downloaded so far
+		 * @param alDownloadSize byte size of the download (-1 if unknown)
+		 * @return report if one is due; null if otherwise
+		 */
+		public synchronized MvDownloadProgress update(long alBytesDownloaded, long alDownloadSize) {
+			long lNow = System.nanoTime();
+			if (mbFinished) {
+				return(null);
+			}
+			if (((lNow - mlLastNanos) / 1000000 < mlIntervalMillis) &&
+					(alBytesDownloaded - mlLastBytes < mlIntervalBytes)) {
+				return(null);
+			}
+			return(report(alBytesDownloaded, alDownloadSize, lNow, false));
+		}
+
+		/**
+		 * Returns the last report. It is returned only once, even if this method
+		 * is called again.
+		 *
+		 * @param alBytesDownloaded bytes downloaded in all
+		 * @param alDownloadSize byte size of the download (-1 if unknown)
+		 * @return last report; null if it has already been returned
+		 */
+		public synchronized MvDownloadProgress complete(long alBytesDownloaded, long alDownloadSize) {
+			if (mbFinished) {
+				return(null);
+			}
+			mbFinished = true;
+			return(report(alBytesDownloaded, alDownloadSize, System.nanoTime(), true));
+		}
+
+		MvDownloadProgress report(long alBytesDownloaded, long alDownloadSize, long alNow, boolean abFinal) {
+			long lEta = -1;
+
+			if (alNow - mlRateNanos > 0) {
+				double dRate = (alBytesDownloaded - mlRateBytes) * 1e9 / (alNow - mlRateNanos);
+				mdBytesPerSecond = (mdBytesPerSecond == 0) ? dRate :
+					(RATE_SMOOTHING * dRate) + ((1 - RATE_SMOOTHING) * mdBytesPerSecond);
+				mlRateBytes = alBytesDownloaded;
+				mlRateNanos = alNow;
+			}
+
+			if (abFinal) {
+				lEta = 0;
+			} else if ((alDownloadSize > 0) && (mdBytesPerSecond > 0)) {
+				lEta = (long) (Math.max(0, alDownloadSize - alBytesDownloaded) * 1000 / mdBytesPerSecond);
+			}
+
+			mlLastBytes = alBytesDownloaded;
+			mlLastNanos = alNow;
+			return(new MvDownloadProgress(alBytesDownloaded, alDownloadSize, mdBytesPerSecond, lEta, abFinal));
+		}
+	}
+
+}
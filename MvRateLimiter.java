@@ -0,0 +1,154 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+/**
+ * This class limits the rate at which downloads read from the network, using
+ * a token bucket. Tokens (bytes) are added to the bucket at the set rate and
+ * each buffer that is read takes as many tokens as it has bytes. A buffer is
+ * never split to fit the tokens in the bucket; instead, the bucket goes into
+ * debt and the reader waits until the debt has been paid off. Readers wait
+ * on a monitor, so a throttled download uses no CPU.
+ * <p>
+ * The {@link #getGlobal() global limiter} is shared by all downloads. A
+ * download can also have a limiter of its own (see
+ * {@link MvDownloadOptions#moRateLimiter}), in which case both limits apply.
+ * The rates can be changed at any time, even while downloads are waiting.
+ *
+ * <pre>
+// Leave room for the foreground
+MvRateLimiter.getGlobal().setBytesPerSecond(256*1024);
+
+// Limit this download further
+MvDownloadOptions oOptions = new MvDownloadOptions();
+oOptions.moRateLimiter = new MvRateLimiter(64*1024);
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvRateLimiter {
+
+	/**
+	 * Rate that means no limit.
+	 */
+	public static final long UNLIMITED = 0;
+
+	/**
+	 * Number of seconds worth of tokens that can build up while no download is
+	 * reading. It lets a download catch up after a short pause without
+	 * exceeding the rate for long.
+	 */
+	static final double BURST_SECONDS = 0.5;
+
+	/**
+	 * Longest time a reader waits before checking the bucket again.
+	 */
+	static final long MAX_WAIT_MILLIS = 200;
+
+	static final MvRateLimiter moGlobal = new MvRateLimiter(UNLIMITED);
+
+	long mlBytesPerSecond;
+	double mdTokens = 0;
+	long mlLastRefillNanos = System.nanoTime();
+
+	/**
+	 * Creates a limiter with specified rate.
+	 *
+	 * @param alBytesPerSecond rate in bytes per second ({@link #UNLIMITED} for no
+	 *        limit)
+	 */
+	public MvRateLimiter(long alBytesPerSecond) {
+		super();
+		mlBytesPerSecond = Math.max(UNLIMITED, alBytesPerSecond);
+	}
+
+	/**
+	 * Returns the limiter shared by all downloads. It has no limit until one is
+	 * set.
+	 *
+	 * @return global limiter
+	 */
+	public static MvRateLimiter getGlobal() {
+		return(moGlobal);
+	}
+
+	/**
+	 * Changes the rate. Downloads that are waiting pick up the new rate
+	 * straight away.
+	 *
+	 * @param alBytesPerSecond rate in bytes per second ({@link #UNLIMITED} for no
+	 *        limit)
+	 */
+	public synchronized void setBytesPerSecond(long alBytesPerSecond) {
+		refill();
+		mlBytesPerSecond = Math.max(UNLIMITED, alBytesPerSecond);
+		if (mlBytesPerSecond == UNLIMITED) {
+			mdTokens = 0;
+		} else {
+			mdTokens = Math.min(mdTokens, mlBytesPerSecond * BURST_SECONDS);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Returns the rate.
+	 *
+	 * @return rate in bytes per second; {@link #UNLIMITED} if there is no limit
+	 */
+	public synchronized long getBytesPerSecond() {
+		return(mlBytesPerSecond);
+	}
+
+	/**
+	 * Takes tokens for specified number of bytes, waiting until the bucket is
+	 * no longer in debt.
+	 *
+	 * @param alBytes number of bytes that were read
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public synchronized void acquire(long alBytes) throws InterruptedException {
+		long lWaitMillis;
+
+		refill();
+		if (mlBytesPerSecond == UNLIMITED) {
+			return;
+		}
+		mdTokens = mdTokens - alBytes;
+		while ((mlBytesPerSecond != UNLIMITED) && (mdTokens < 0)) {
+			lWaitMillis = (long) Math.ceil(-mdTokens * 1000 / mlBytesPerSecond);
+			wait(Math.max(1, Math.min(lWaitMillis, MAX_WAIT_MILLIS)));
+			refill();
+		}
+	}
+
+	/**
+	 * Takes tokens for specified number of bytes from specified limiter (if
+	 * any) and from the global limiter.
+	 *
+	 * @param aoLimiter limiter of the download (can be null)
+	 * @param alBytes number of bytes that were read
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public static void acquire(MvRateLimiter aoLimiter, long alBytes) throws InterruptedException {
+		if (aoLimiter != null) {
+			aoLimiter.acquire(alBytes);
+		}
+		moGlobal.acquire(alBytes);
+	}
+
+	void refill() {
+		long lNow = System.nanoTime();
+		if (mlBytesPerSecond != UNLIMITED) {
+			mdTokens = Math.min(mdTokens + ((lNow - mlLastRefillNanos) * mlBytesPerSecond / 1e9),
+					mlBytesPerSecond * BURST_SECONDS);
+		}
+		mlLastRefillNanos = lNow;
+	}
+
+}
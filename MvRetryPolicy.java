@@ -0,0 +1,306 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * This class decides whether and when a failed download is tried again. Each
+ * method can be overridden to change one part of the policy.
+ * <ul>
+ * <li>Failures are either retryable (timeouts, dropped connections and
+ * responses such as 503) or fatal (responses such as 404 and 410). Fatal
+ * failures are not retried.</li>
+ * <li>The delay before a retry grows exponentially with the number of tries
+ * and is randomised (full jitter), so that downloads that failed together do
+ * not retry together. A delay asked for by the server in a
+ * <code>Retry-After</code> header is used instead.</li>
+ * <li>A circuit breaker is kept for each host. After several consecutive
+ * retryable failures, the circuit opens and downloads from the host fail
+ * straight away, without taking up a thread. After a cool-down period, one
+ * download is let through to test the host.</li>
+ * </ul>
+ *
+ * <pre>
+MvDownloadOptions oOptions = new MvDownloadOptions();
+oOptions.moRetryPolicy = new MvRetryPolicy() {
+  &#64;Override
+  public int getMaxTries() { return(10); }
+};
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvRetryPolicy {
+
+	/**
+	 * Default number of times a download is tried.
+	 */
+	public static final int DEFAULT_MAX_TRIES = 5;
+
+	/**
+	 * Default delay before the first retry, in milliseconds. It doubles with
+	 * each retry.
+	 */
+	public static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+
+	/**
+	 * Default longest delay before a retry, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 60*1000;
+
+	/**
+	 * Default number of consecutive failures after which the circuit of a host
+	 * opens.
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+	/**
+	 * Default time for which an open circuit stays open, in milliseconds.
+	 */
+	public static final long DEFAULT_OPEN_MILLIS = 60*1000;
+
+	static MvRetryPolicy moDefault = null;
+
+	final Map<String, Circuit> moCircuits = new HashMap<String, Circuit>();
+	final Random moRandom = new Random();
+
+	/**
+	 * Creates a policy with the default settings and circuits of its own.
+	 */
+	public MvRetryPolicy() {
+		super();
+	}
+
+	/**
+	 * Returns the policy used by downloads whose options do not specify one.
+	 * Its circuits are shared by all such downloads.
+	 *
+	 * @return shared policy
+	 */
+	public static synchronized MvRetryPolicy getDefault() {
+		if (moDefault == null) {
+			moDefault = new MvRetryPolicy();
+		}
+		return(moDefault);
+	}
+
+	/**
+	 * Returns the number of times a download is tried before it fails.
+	 *
+	 * @return number of tries, including the first
+	 */
+	public int getMaxTries() {
+		return(DEFAULT_MAX_TRIES);
+	}
+
+	/**
+	 * Returns whether a failure is worth retrying.
+	 *
+	 * @param aiResponseCode HTTP response code (-1 if there was no response)
+	 * @param aoException exception that was thrown (can be null)
+	 * @return true if the failure may be transient; false if it is permanent
+	 */
+	public boolean isRetryable(int aiResponseCode, IOException aoException) {
+		if (aiResponseCode >= 400) {
+			return((aiResponseCode == 408) || (aiResponseCode == 425) || (aiResponseCode == 429) ||
+					(aiResponseCode >= 500));
+		}
+		if ((aoException instanceof FileNotFoundException) ||
+				(aoException instanceof MalformedURLException) ||
+				(aoException instanceof UnknownHostException)) {
+			return(false);
+		}
+		return(true);
+	}
+
+	/**
+	 * Returns the time to wait before specified try.
+	 *
+	 * @param aiTry number of the try that is about to be made (2 for the first
+	 *        retry)
+	 * @param aoConnection connection that failed; its Retry-After header is
+	 *        honoured (can be null)
+	 * @return delay in milliseconds
+	 */
+	public long getDelayMillis(int aiTry, HttpURLConnection aoConnection) {
+		long lRetryAfter = getRetryAfterMillis(aoConnection);
+		long lCeiling;
+
+		if (lRetryAfter >= 0) {
+			return(Math.min(lRetryAfter, DEFAULT_MAX_DELAY_MILLIS));
+		}
+		lCeiling = DEFAULT_BASE_DELAY_MILLIS << Math.min(Math.max(aiTry - 2, 0), 20);
+		lCeiling = Math.min(lCeiling, DEFAULT_MAX_DELAY_MILLIS);
+		synchronized (moRandom) {
+			return((long) (moRandom.nextDouble() * lCeiling));
+		}
+	}
+
+	/**
+	 * Waits before specified try.
+	 *
+	 * @param aiTry number of the try that is about to be made
+	 * @param aoConnection connection that failed (can be null)
+	 * @return false if the wait was interrupted
+	 */
+	public boolean waitBeforeRetry(int aiTry, HttpURLConnection aoConnection) {
+		long lDelay = getDelayMillis(aiTry, aoConnection);
+		MvLog.logMessage("Retrying in " + lDelay + " ms");
+		try {
+			Thread.sleep(lDelay);
+			return(true);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return(false);
+		}
+	}
+
+	/**
+	 * Returns whether a download from the host of specified URL may be
+	 * attempted. It returns false while the circuit of the host is open.
+	 *
+	 * @param asURL address of the download
+	 * @return true if the download may be attempted
+	 */
+	public boolean allowRequest(String asURL) {
+		long lNow = System.currentTimeMillis();
+		Circuit oCircuit;
+
+		synchronized (moCircuits) {
+			oCircuit = moCircuits.get(MvDownloadQueue.getHost(asURL));
+			if ((oCircuit == null) || (oCircuit.mlOpenUntil == 0)) {
+				return(true);
+			}
+			if (lNow < oCircuit.mlOpenUntil) {
+				return(false);
+			}
+			// Half-open: let one download through to test the host.
+			oCircuit.mlOpenUntil = lNow + DEFAULT_OPEN_MILLIS;
+			return(true);
+		}
+	}
+
+	/**
+	 * Records a successful download, closing the circuit of its host.
+	 *
+	 * @param asURL address of the download
+	 */
+	public void recordSuccess(String asURL) {
+		synchronized (moCircuits) {
+			moCircuits.remove(MvDownloadQueue.getHost(asURL));
+		}
+	}
+
+	/**
+	 * Records a retryable failure. The circuit of the host opens when there
+	 * have been {@value #DEFAULT_FAILURE_THRESHOLD} failures in a row.
+	 *
+	 * @param asURL address of the download
+	 * @return true if the circuit of the host is now open
+	 */
+	public boolean recordFailure(String asURL) {
+		String sHost = MvDownloadQueue.getHost(asURL);
+		Circuit oCircuit;
+
+		synchronized (moCircuits) {
+			oCircuit = moCircuits.get(sHost);
+			if (oCircuit == null) {
+				oCircuit = new Circuit();
+				moCircuits.put(sHost, oCircuit);
+			}
+			oCircuit.miFailures++;
+			if ((oCircuit.miFailures >= DEFAULT_FAILURE_THRESHOLD) || (oCircuit.mlOpenUntil != 0)) {
+				if (oCircuit.mlOpenUntil == 0) {
+					MvLog.logMessage("Pausing downloads from " + sHost);
+				}
+				oCircuit.mlOpenUntil = System.currentTimeMillis() + DEFAULT_OPEN_MILLIS;
+				return(true);
+			}
+			return(false);
+		}
+	}
+
+	/**
+	 * Returns whether the circuit of the host of specified URL is open.
+	 *
+	 * @param asURL any address on the host
+	 * @return true if downloads from the host are failing straight away
+	 */
+	public boolean isCircuitOpen(String asURL) {
+		synchronized (moCircuits) {
+			Circuit oCircuit = moCircuits.get(MvDownloadQueue.getHost(asURL));
+			return((oCircuit != null) && (System.currentTimeMillis() < oCircuit.mlOpenUntil));
+		}
+	}
+
+	/**
+	 * Returns the response code of specified connection without throwing.
+	 *
+	 * @return response code; -1 if there was no valid response
+	 */
+	static int getResponseCode(HttpURLConnection aoConnection) {
+		if (aoConnection == null) {
+			return(-1);
+		}
+		try {
+			return(aoConnection.getResponseCode());
+		} catch (IOException e) {
+			return(-1);
+		}
+	}
+
+	/**
+	 * Returns the delay asked for by the Retry-After header of specified
+	 * connection.
+	 *
+	 * @return delay in milliseconds; -1 if there is no valid header
+	 */
+	static long getRetryAfterMillis(HttpURLConnection aoConnection) {
+		String sRetryAfter = (aoConnection == null) ? null : aoConnection.getHeaderField("Retry-After");
+		SimpleDateFormat oFormat;
+
+		if ((sRetryAfter == null) || (sRetryAfter.trim().length() == 0)) {
+			return(-1);
+		}
+		sRetryAfter = sRetryAfter.trim();
+		try {
+			return(Math.max(0, Long.parseLong(sRetryAfter) * 1000));
+		} catch (NumberFormatException e) {
+			oFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+			oFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+			try {
+				return(Math.max(0, oFormat.parse(sRetryAfter).getTime() - System.currentTimeMillis()));
+			} catch (ParseException pe) {
+				return(-1);
+			}
+		}
+	}
+
+
+	/**
+	 * State of the circuit breaker of one host.
+	 */
+	static class Circuit {
+		int miFailures = 0;
+		long mlOpenUntil = 0;
+	}
+
+}
@@ -0,0 +1,756 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class downloads a file over several connections at the same time. The
+ * size of the file is found with a HEAD request and split into ranges
+ * (segments). Each segment is fetched with a <code>Range</code> request on its
+ * own connection and written at its own offset in the target file. The
+ * progress of each segment is saved in a state file next to the target file
+ * (target pathname + {@value #STATE_FILE_EXTENSION}) so that an interrupted
+ * download resumes each segment from where it stopped. The state is kept
+ * under the URL that was asked for, not the one it redirects to, which may
+ * change from one request to the next. Without the state, the file is
+ * downloaded again; the segments write out of order, so the size of the
+ * file does not show what has been downloaded. If a segment fails, the
+ * other segments are stopped.
+ * <p>
+ * This class is used by {@link MvAsyncDownload} when
+ * {@link MvDownloadOptions#miSegments} is more than 1. It can also be used
+ * directly from a background thread.
+ *
+ * <pre>
+MvSegmentedDownload oDownload =
+  new MvSegmentedDownload(
+    "http://www.example.com/podcast.mp3",
+    "/mnt/sdcard/podcast.mp3",
+    "",
+    4);
+if (oDownload.probe()) {
+  MvException oResult = oDownload.startDownload();
+}
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvSegmentedDownload {
+
+	/**
+	 * Extension added to the target pathname to get the pathname of the state
+	 * file.
+	 */
+	public static final String STATE_FILE_EXTENSION = ".segments";
+
+	/**
+	 * Segments smaller than this size are not worth a connection of their own.
+	 */
+	static final long MIN_SEGMENT_SIZE = 256*1024;
+	static final int STATE_SAVE_INTERVAL = 1024*1024;
+
+	String msRemoteUrl, msSourceUrl, msFilePathname, msStatePathname, msUserAgent, msMimeType;
+	int miSegments;
+	long mlDownloadSize = -1;
+	long[] malSegmentStart, malSegmentEnd;
+	AtomicLongArray moSegmentDone;
+	AtomicLong moBytesDownloaded = new AtomicLong(0);
+	long mlResumedBytes = 0;
+	volatile boolean mbContinue = true;
+	volatile SegmentFetcher moFailure = null;
+	OnProgressListener moProgressListener = null;
+	MvRateLimiter moRateLimiter = null;
+	MvRetryPolicy moRetryPolicy = MvRetryPolicy.getDefault();
+	MvMirrorSet moMirrors = null;
+	MvConnectionManager moConnectionManager = MvConnectionManager.getDefault();
+	boolean mbPreallocate = false;
+	int miDurability = MvDownloadOptions.DURABILITY_NONE;
+	long mlSyncInterval = STATE_SAVE_INTERVAL;
+	int miConnectTimeoutMillis = 4000, miReadTimeoutMillis = 0;
+	final Set<HttpURLConnection> moConnections = Collections.synchronizedSet(new HashSet<HttpURLConnection>());
+
+	/**
+	 * Interface definition for a callback to be invoked when more bytes have
+	 * been downloaded. The callback is invoked from the segment threads.
+	 */
+	public interface OnProgressListener {
+		/**
+		 * Called when a segment has written more bytes to the target file.
+		 *
+		 * @param alBytesDownloaded total bytes downloaded across all segments
+		 */
+		void onProgress(long alBytesDownloaded);
+	}
+
+	/**
+	 * Creates an instance of this class. Call {@link #probe()} and then
+	 * {@link #startDownload()} to download the file.
+	 *
+	 * @param asURL download URL
+	 * @param asFile pathname of local file to which the download needs to be saved
+	 * @param asUserAgent user agent string of the http client that needs to be mimicked
+	 * @param aiSegments maximum number of parallel connections
+	 */
+	public MvSegmentedDownload(String asURL, String asFile, String asUserAgent, int aiSegments) {
+		super();
+		msRemoteUrl = asURL;
+		msSourceUrl = asURL;
+		msFilePathname = asFile;
+		msStatePathname = asFile + STATE_FILE_EXTENSION;
+		msUserAgent = (asUserAgent == null) ? "" : asUserAgent;
+		miSegments = aiSegments;
+	}
+
+	/**
+	 * Sets the callback that is invoked when more bytes have been downloaded.
+	 *
+	 * @param aoListener callback that needs to be invoked
+	 */
+	public void setOnProgressListener(OnProgressListener aoListener) {
+		moProgressListener = aoListener;
+	}
+
+	/**
+	 * Sets the limiter that throttles this download in addition to the
+	 * {@link MvRateLimiter#getGlobal() global limiter}. It is shared by all
+	 * segments.
+	 *
+	 * @param aoLimiter limiter of the download (can be null)
+	 */
+	public void setRateLimiter(MvRateLimiter aoLimiter) {
+		moRateLimiter = aoLimiter;
+	}
+
+	/**
+	 * Sets the policy that decides whether and when a failed segment is tried
+	 * again.
+	 *
+	 * @param aoPolicy retry policy
+	 */
+	public void setRetryPolicy(MvRetryPolicy aoPolicy) {
+		moRetryPolicy = aoPolicy;
+	}
+
+	/**
+	 * Sets the mirrors from which the segments can be fetched. The segments
+	 * are spread over the mirrors that are not much slower than the fastest
+	 * one, and a segment whose mirror fails moves to another mirror. The state
+	 * file is still kept under the URL given to the constructor.
+	 *
+	 * @param aoMirrors probed mirrors of the file (can be null)
+	 */
+	public void setMirrors(MvMirrorSet aoMirrors) {
+		moMirrors = aoMirrors;
+	}
+
+	/**
+	 * Sets the manager through which the bodies of the segments are read, so
+	 * that {@link #stopDownload()} can release the segment threads at once.
+	 *
+	 * @param aoManager connection manager
+	 */
+	public void setConnectionManager(MvConnectionManager aoManager) {
+		moConnectionManager = aoManager;
+	}
+
+	/**
+	 * Sets the timeouts of the connections of the segments.
+	 *
+	 * @param aiConnectTimeoutMillis time allowed for opening a connection
+	 * @param aiReadTimeoutMillis time that a read may wait for bytes (0 to
+	 *        wait forever)
+	 */
+	public void setTimeouts(int aiConnectTimeoutMillis, int aiReadTimeoutMillis) {
+		miConnectTimeoutMillis = aiConnectTimeoutMillis;
+		miReadTimeoutMillis = aiReadTimeoutMillis;
+	}
+
+	/**
+	 * Sets whether the disk space of the whole file is reserved before the
+	 * segments are fetched. By default, it is not.
+	 *
+	 * @param abPreallocate whether to reserve the space
+	 */
+	public void setPreallocate(boolean abPreallocate) {
+		mbPreallocate = abPreallocate;
+	}
+
+	/**
+	 * Sets how far the downloaded bytes are forced to the disk. In
+	 * {@link MvDownloadOptions#DURABILITY_PERIODIC} mode, the file is synced
+	 * every specified number of megabytes and the state file is saved after
+	 * each sync.
+	 *
+	 * @param aiMode durability mode, such as
+	 *        {@link MvDownloadOptions#DURABILITY_ON_COMPLETE}
+	 * @param aiSyncIntervalMB megabytes after which the file is synced in
+	 *        periodic mode
+	 */
+	public void setDurability(int aiMode, int aiSyncIntervalMB) {
+		miDurability = aiMode;
+		if (aiMode == MvDownloadOptions.DURABILITY_PERIODIC) {
+			mlSyncInterval = aiSyncIntervalMB * 1024L*1024;
+		} else {
+			mlSyncInterval = STATE_SAVE_INTERVAL;
+		}
+	}
+
+	/**
+	 * Returns byte size of the download (known after {@link #probe()}).
+	 *
+	 * @return byte size of the download
+	 */
+	public long getDownloadSize() { return(mlDownloadSize); }
+
+	/**
+	 * Returns bytes that have been downloaded across all segments.
+	 *
+	 * @return number of downloaded bytes
+	 */
+	public long getDownloadedSize() { return(moBytesDownloaded.get()); }
+
+	/**
+	 * Returns mimetype of the download (known after {@link #probe()}).
+	 *
+	 * @return mimetype of the download
+	 */
+	public String getMimeType() { return(msMimeType); }
+
+	/**
+	 * Returns number of segments that will be or are being downloaded.
+	 *
+	 * @return number of segments
+	 */
+	public int getSegmentCount() { return(miSegments); }
+
+	/**
+	 * Stops the download. The connections of the segments are aborted, so
+	 * that reads waiting for the network fail at once, and the state file is
+	 * retained for resumption.
+	 */
+	public void stopDownload() {
+		mbContinue = false;
+		abortConnections();
+	}
+
+	/**
+	 * Returns whether the segments need to go on: the download has not been
+	 * stopped and no segment has failed.
+	 */
+	boolean isRunning() {
+		return(mbContinue && (moFailure == null));
+	}
+
+	/**
+	 * Records the first segment that has failed and stops the others, since
+	 * the download cannot complete without it.
+	 */
+	void fail(SegmentFetcher aoFetcher) {
+		synchronized (this) {
+			if (moFailure != null) {
+				return;
+			}
+			moFailure = aoFetcher;
+		}
+		MvLog.logMessage("Stopping the other segments");
+		abortConnections();
+	}
+
+	void abortConnections() {
+		synchronized (moConnections) {
+			for (HttpURLConnection oConnection : moConnections) {
+				moConnectionManager.abort(oConnection);
+			}
+		}
+	}
+
+	/**
+	 * Sends a HEAD request to find whether the file can be downloaded in
+	 * segments. The server needs to report the size of the file and accept
+	 * byte-range requests. The number of segments is reduced if the file is too
+	 * small for all of them.
+	 *
+	 * @return true if the file can be downloaded in segments; false if it needs
+	 *         to be downloaded over a single connection
+	 */
+	public boolean probe() {
+		HttpURLConnection oConnection = null;
+		String sUrl = msSourceUrl, sAcceptRanges;
+
+		if ((moMirrors != null) && (moMirrors.getBest() != null)) {
+			// Ask the mirror that will serve the segments.
+			sUrl = moMirrors.getBest();
+		}
+		try {
+			oConnection = openConnection(sUrl);
+			oConnection.setRequestMethod("HEAD");
+
+			// Handle redirects
+			int iResponseCode = oConnection.getResponseCode();
+			if ((iResponseCode == HttpURLConnection.HTTP_MOVED_TEMP) ||
+					(iResponseCode == HttpURLConnection.HTTP_MOVED_PERM) ||
+					(iResponseCode == HttpURLConnection.HTTP_SEE_OTHER)) {
+				if (oConnection.getHeaderField("Location") == null) {
+					MvLog.logMessage("Redirected but no new location");
+					return(false);
+				}
+				sUrl = oConnection.getHeaderField("Location");
+				MvLog.logMessage("Redirected to " + sUrl);
+				if (moMirrors == null) {
+					msSourceUrl = sUrl;
+				}
+				oConnection.disconnect();
+				oConnection = openConnection(sUrl);
+				oConnection.setRequestMethod("HEAD");
+				iResponseCode = oConnection.getResponseCode();
+			}
+
+			if (iResponseCode != HttpURLConnection.HTTP_OK) {
+				MvLog.logMessage("HEAD response is " + iResponseCode);
+				return(false);
+			}
+
+			mlDownloadSize = getContentLength(oConnection);
+			msMimeType = oConnection.getContentType();
+			sAcceptRanges = oConnection.getHeaderField("Accept-Ranges");
+		} catch (IOException e) {
+			MvLog.logMessage("HEAD request failed - " + e.getMessage());
+			return(false);
+		} finally {
+			if (oConnection != null) {
+				oConnection.disconnect();
+			}
+		}
+
+		if ((sAcceptRanges == null) || !sAcceptRanges.trim().equalsIgnoreCase("bytes")) {
+			MvLog.logMessage("Server does not accept range requests.");
+			return(false);
+		}
+
+		if (mlDownloadSize < 1) {
+			MvLog.logMessage("File size is unknown.");
+			return(false);
+		}
+
+		if (miSegments > mlDownloadSize / MIN_SEGMENT_SIZE) {
+			miSegments = (int) (mlDownloadSize / MIN_SEGMENT_SIZE);
+		}
+		MvLog.logMessage("File size is " + mlDownloadSize + "; segments - " + miSegments);
+
+		return(miSegments > 1);
+	}
+
+	/**
+	 * Downloads the file in segments. This method blocks until all segments
+	 * have been downloaded, one of them has failed or the download has been
+	 * stopped. It should not be called in the UI thread. Call {@link #probe()}
+	 * first.
+	 *
+	 * @return outcome of the download; the result is the target pathname
+	 */
+	public MvException startDownload() {
+		MvException oRet = new MvException();
+		int i;
+
+		if (mlDownloadSize < 1) {
+			oRet.msProblem = "The size of the download is not known.";
+			oRet.msPossibleSolution = "Call probe() before starting the download.";
+			return(oRet);
+		}
+
+		if (!loadState()) {
+			planSegments();
+			new File(msFilePathname).delete();
+			saveState();
+		}
+
+		if (mbPreallocate) {
+			preallocate();
+		}
+
+		long lDone = 0;
+		for (i = 0; i < miSegments; i++) {
+			lDone = lDone + moSegmentDone.get(i);
+		}
+		moBytesDownloaded.set(lDone);
+		mlResumedBytes = lDone;
+		if (lDone > 0) {
+			MvLog.logMessage("Resuming segmented download from " + lDone);
+		}
+
+		SegmentFetcher[] arFetchers = new SegmentFetcher[miSegments];
+		Thread[] arThreads = new Thread[miSegments];
+		for (i = 0; i < miSegments; i++) {
+			arFetchers[i] = new SegmentFetcher(i);
+			arThreads[i] = new Thread(arFetchers[i], "MvSegmentedDownload-" + i);
+			arThreads[i].start();
+		}
+
+		try {
+			for (i = 0; i < miSegments; i++) {
+				arThreads[i].join();
+			}
+		} catch (InterruptedException e) {
+			stopDownload();
+			Thread.currentThread().interrupt();
+		}
+
+		saveState();
+
+		for (i = 0; i < miSegments; i++) {
+			if (!isSegmentComplete(i)) {
+				oRet.mbSuccess = false;
+				if (!mbContinue) {
+					oRet.msProblem = "Download cancelled.";
+					oRet.msPossibleSolution = "None required";
+				} else {
+					if (moFailure != null) {
+						// The other segments were stopped because of this one.
+						i = moFailure.miSegment;
+					}
+					oRet.mException = arFetchers[i].moResult.mException;
+					oRet.msProblem = "Segment " + i + " failed. " + arFetchers[i].moResult.msProblem;
+					oRet.msPossibleSolution = arFetchers[i].moResult.msPossibleSolution;
+				}
+				MvLog.logMessage(oRet.msProblem);
+				return(oRet);
+			}
+		}
+
+		if ((miDurability != MvDownloadOptions.DURABILITY_NONE) && !syncFile()) {
+			oRet.msProblem = "The downloaded file could not be written to the disk.";
+			oRet.msPossibleSolution = "Free storage space or a working storage device is required.";
+			return(oRet);
+		}
+		new File(msStatePathname).delete();
+		oRet.mbSuccess = true;
+		oRet.moResult = msFilePathname;
+		return(oRet);
+	}
+
+	HttpURLConnection openConnection(String asURL) throws IOException {
+		HttpURLConnection oConnection = (HttpURLConnection) new URL(asURL).openConnection();
+		if (msUserAgent.length() > "Wget 1".length()) {
+			oConnection.setRequestProperty("User-Agent", msUserAgent);
+		}
+		oConnection.setConnectTimeout(miConnectTimeoutMillis);
+		oConnection.setReadTimeout(miReadTimeoutMillis);
+		return(oConnection);
+	}
+
+	/**
+	 * Returns the URL from which specified segment needs to be fetched: a
+	 * mirror, if there are mirrors and any of them is still in use, or the
+	 * URL of the download.
+	 */
+	String getSourceUrl(int aiSegment) {
+		String sUrl = null;
+
+		if (moMirrors != null) {
+			sUrl = moMirrors.getForSegment(aiSegment);
+		}
+		return((sUrl == null) ? msSourceUrl : sUrl);
+	}
+
+	static long getContentLength(HttpURLConnection aoConnection) {
+		long lLength = -1;
+		String sLength = aoConnection.getHeaderField("Content-Length");
+		if (sLength != null) {
+			try {
+				lLength = Long.parseLong(sLength.trim());
+			} catch (NumberFormatException e) {
+				lLength = -1;
+			}
+		}
+		return(lLength);
+	}
+
+	boolean isSegmentComplete(int aiSegment) {
+		return(moSegmentDone.get(aiSegment) >= malSegmentEnd[aiSegment] - malSegmentStart[aiSegment] + 1);
+	}
+
+	void planSegments() {
+		long lSegmentSize = mlDownloadSize / miSegments;
+
+		malSegmentStart = new long[miSegments];
+		malSegmentEnd = new long[miSegments];
+		moSegmentDone = new AtomicLongArray(miSegments);
+		for (int i = 0; i < miSegments; i++) {
+			malSegmentStart[i] = i * lSegmentSize;
+			malSegmentEnd[i] = (i == miSegments - 1) ? mlDownloadSize - 1 : ((i + 1) * lSegmentSize) - 1;
+		}
+	}
+
+	/**
+	 * Loads segment progress from the state file. The state is used only if it
+	 * was saved for the same requested URL and file size and the target file
+	 * still exists.
+	 */
+	boolean loadState() {
+		BufferedReader oReader = null;
+		String sLine;
+		String[] arFields;
+		int i, iSegments;
+
+		if (!MvFileIO.isFile(msStatePathname) || !MvFileIO.isFile(msFilePathname)) {
+			return(false);
+		}
+
+		try {
+			oReader = new BufferedReader(new FileReader(msStatePathname));
+			if (!msRemoteUrl.equals(oReader.readLine())) {
+				return(false);
+			}
+			if (Long.parseLong(oReader.readLine().trim()) != mlDownloadSize) {
+				return(false);
+			}
+			iSegments = Integer.parseInt(oReader.readLine().trim());
+			long[] arStart = new long[iSegments], arEnd = new long[iSegments];
+			AtomicLongArray oDone = new AtomicLongArray(iSegments);
+			for (i = 0; i < iSegments; i++) {
+				sLine = oReader.readLine();
+				arFields = sLine.trim().split(" ");
+				arStart[i] = Long.parseLong(arFields[0]);
+				arEnd[i] = Long.parseLong(arFields[1]);
+				oDone.set(i, Long.parseLong(arFields[2]));
+			}
+			miSegments = iSegments;
+			malSegmentStart = arStart;
+			malSegmentEnd = arEnd;
+			moSegmentDone = oDone;
+			return(true);
+		} catch (Exception e) {
+			MvLog.logMessage("Segment state could not be read - " + msStatePathname);
+			return(false);
+		} finally {
+			if (oReader != null) {
+				try { oReader.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	void preallocate() {
+		RandomAccessFile oFile = null;
+
+		try {
+			oFile = new RandomAccessFile(msFilePathname, "rw");
+			MvTransferEngine.preallocate(oFile, mlDownloadSize);
+		} catch (IOException e) {
+			MvLog.logMessage("Space could not be reserved - " + e.getMessage());
+		} finally {
+			if (oFile != null) {
+				try { oFile.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	/**
+	 * Syncs the target file to the disk. The segments write through their own
+	 * handles, but a sync covers all the bytes written to the file.
+	 */
+	boolean syncFile() {
+		RandomAccessFile oFile = null;
+
+		try {
+			oFile = new RandomAccessFile(msFilePathname, "rw");
+			oFile.getFD().sync();
+			return(true);
+		} catch (IOException e) {
+			MvLog.logMessage("Download file could not be synced - " + e.getMessage());
+			return(false);
+		} finally {
+			if (oFile != null) {
+				try { oFile.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	/**
+	 * Saves segment progress to the state file. The state is written to a
+	 * temporary file first so that a crash does not leave a truncated state.
+	 */
+	synchronized void saveState() {
+		File oTempFile = new File(msStatePathname + ".tmp");
+		FileOutputStream oFOS = null;
+		StringBuilder sbState = new StringBuilder();
+
+		if (moSegmentDone == null) {
+			return;
+		}
+
+		sbState.append(msRemoteUrl).append('\n');
+		sbState.append(mlDownloadSize).append('\n');
+		sbState.append(miSegments).append('\n');
+		for (int i = 0; i < miSegments; i++) {
+			sbState.append(malSegmentStart[i]).append(' ')
+			       .append(malSegmentEnd[i]).append(' ')
+			       .append(moSegmentDone.get(i)).append('\n');
+		}
+		if ((miDurability == MvDownloadOptions.DURABILITY_PERIODIC) && !syncFile()) {
+			// The state is not saved ahead of the bytes on the disk.
+			return;
+		}
+
+		try {
+			oFOS = new FileOutputStream(oTempFile);
+			oFOS.write(sbState.toString().getBytes("UTF-8"));
+			oFOS.close();
+			oFOS = null;
+			if (!oTempFile.renameTo(new File(msStatePathname))) {
+				MvLog.logMessage("Segment state could not be saved - " + msStatePathname);
+			}
+		} catch (IOException e) {
+			MvLog.logMessage("Segment state could not be saved - " + e.getMessage());
+		} finally {
+			if (oFOS != null) {
+				try { oFOS.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+
+	/**
+	 * Downloads one segment on its own connection, retrying from the last
+	 * written byte if the connection fails.
+	 */
+	class SegmentFetcher implements Runnable {
+		int miSegment;
+		MvException moResult = new MvException();
+
+		SegmentFetcher(int aiSegment) {
+			miSegment = aiSegment;
+		}
+
+		@Override
+		public void run() {
+			HttpURLConnection oConnection;
+			InputStream in;
+			RandomAccessFile oFile;
+			String sUrl;
+			byte[] buf = new byte[16*1024];
+			int n, iTries, iUnsaved = 0;
+			long lPosition, lEnd = malSegmentEnd[miSegment];
+
+			for (iTries = 1; (iTries <= moRetryPolicy.getMaxTries()) && isRunning() && !isSegmentComplete(miSegment); iTries++) {
+				oConnection = null;
+				in = null;
+				oFile = null;
+				lPosition = malSegmentStart[miSegment] + moSegmentDone.get(miSegment);
+				sUrl = getSourceUrl(miSegment);
+
+				try {
+					oConnection = openConnection(sUrl);
+					moConnections.add(oConnection);
+					if (!isRunning()) {
+						break;
+					}
+					oConnection.setRequestProperty("Range", "bytes=" + lPosition + "-" + lEnd);
+					if (oConnection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+						moResult.msProblem = "Server ignored the range request. Response: " + oConnection.getResponseCode();
+						moResult.msPossibleSolution = "Download the file over a single connection.";
+						if (moMirrors != null) {
+							// The segment moves to another mirror, if one is left.
+							MvLog.logMessage("Segment " + miSegment + " - " + moResult.msProblem + " - " + sUrl);
+							moMirrors.exclude(sUrl);
+							if (moMirrors.getBest() != null) {
+								continue;
+							}
+						}
+						break;
+					}
+					long lFileSize = MvMirrorSet.getTotalLength(oConnection);
+					if ((moMirrors != null) && (lFileSize > 0) && (lFileSize != mlDownloadSize)) {
+						moMirrors.exclude(sUrl);
+						throw new IOException("Mirror has a different file - " + sUrl);
+					}
+
+					in = moConnectionManager.getInputStream(oConnection);
+					oFile = new RandomAccessFile(msFilePathname, "rw");
+					oFile.seek(lPosition);
+
+					while (isRunning() && (lPosition <= lEnd)) {
+						n = in.read(buf, 0, (int) Math.min(buf.length, lEnd - lPosition + 1));
+						if (n == -1) {
+							throw new IOException("Connection closed at " + lPosition + " of segment end " + lEnd);
+						}
+						MvRateLimiter.acquire(moRateLimiter, n);
+						oFile.write(buf, 0, n);
+						lPosition = lPosition + n;
+						moSegmentDone.addAndGet(miSegment, n);
+						long lTotal = moBytesDownloaded.addAndGet(n);
+						if (moProgressListener != null) {
+							moProgressListener.onProgress(lTotal);
+						}
+						iUnsaved = iUnsaved + n;
+						if (iUnsaved >= mlSyncInterval) {
+							saveState();
+							iUnsaved = 0;
+						}
+					}
+				} catch (IOException e) {
+					moResult.mException = e;
+					moResult.msProblem = "Download failed. Tries: " + iTries;
+					moResult.msPossibleSolution = "A better download URL or network conditions.";
+					MvLog.logMessage("Segment " + miSegment + " - " + moResult.msProblem);
+					if (moMirrors != null) {
+						moMirrors.reportFailure(sUrl);
+						if (!sUrl.equals(getSourceUrl(miSegment))) {
+							// Another server, so there is no need to wait before trying it.
+							continue;
+						}
+					}
+					if (!moRetryPolicy.isRetryable(MvRetryPolicy.getResponseCode(oConnection), e)) {
+						break;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					moResult.msProblem = "Download interrupted.";
+					moResult.msPossibleSolution = "None required";
+					break;
+				} finally {
+					try {
+						if (in != null) { in.close(); }
+						if (oFile != null) { oFile.close(); }
+					} catch (IOException e) {
+						MvLog.logMessage("IO Exception closing segment " + miSegment);
+					}
+					if (oConnection != null) {
+						moConnections.remove(oConnection);
+						moConnectionManager.discard(oConnection);
+					}
+				}
+				
+				if (isRunning() && !isSegmentComplete(miSegment) && (iTries < moRetryPolicy.getMaxTries()) &&
+						!moRetryPolicy.waitBeforeRetry(iTries + 1, oConnection)) {
+					break;
+				}
+			}
+
+			moResult.mbSuccess = isSegmentComplete(miSegment);
+			if (!moResult.mbSuccess && isRunning()) {
+				fail(this);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,348 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class makes sure that only one transfer of a URL to a file runs at a
+ * time. Downloads register with the registry before they start. The first
+ * download of a URL and file leads the flight and does the transfer; downloads
+ * of the same URL to the same file that register while it runs follow the
+ * flight. Followers do not connect or write; they receive the progress
+ * reports and the outcome of the leader. A leader that is cancelled by its
+ * caller {@link Flight#leave(boolean) leaves} the flight instead of
+ * completing it, and one of the followers takes over the transfer.
+ * <p>
+ * URLs are compared after the scheme and host are put in lower case, the
+ * default port and the fragment are removed. Files are compared by their
+ * canonical pathnames.
+ *
+ * <pre>
+MvSingleFlight.Flight oFlight = MvSingleFlight.getDefault().join(sURL, sFile);
+if (oFlight.lead()) {
+  MvException oResult = null;
+  try {
+    oResult = download(sURL, sFile);
+  } finally {
+    oFlight.complete(oResult, null);
+  }
+} else {
+  // null if the leader left the flight; lead() then hands over the transfer
+  MvException oResult = oFlight.await(0);
+}
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvSingleFlight {
+
+	/**
+	 * Interface definition for a callback to be invoked when the leader of a
+	 * flight reports its progress.
+	 */
+	public interface OnProgressListener {
+		/**
+		 * Called on the thread of the leader with its latest progress report.
+		 *
+		 * @param aoProgress progress of the transfer
+		 */
+		void onProgress(MvDownloadProgress aoProgress);
+	}
+
+	static final MvSingleFlight moDefault = new MvSingleFlight();
+
+	final Map<String, Flight> moFlights = new HashMap<String, Flight>();
+
+	/**
+	 * Creates a registry of its own. Flights in different registries are not
+	 * coalesced.
+	 */
+	public MvSingleFlight() {
+		super();
+	}
+
+	/**
+	 * Returns the registry used by the downloaders of this library.
+	 *
+	 * @return shared registry
+	 */
+	public static MvSingleFlight getDefault() {
+		return(moDefault);
+	}
+
+	/**
+	 * Joins the flight of specified URL and file, starting a new flight if
+	 * there is none in progress. Call {@link Flight#lead()} to find whether the
+	 * caller needs to do the transfer.
+	 *
+	 * @param asURL download URL
+	 * @param asFilePathname pathname of the target file
+	 * @return flight of the URL and file
+	 */
+	public Flight join(String asURL, String asFilePathname) {
+		String sKey = getKey(asURL, asFilePathname);
+		Flight oFlight;
+
+		synchronized (moFlights) {
+			oFlight = moFlights.get(sKey);
+			if (oFlight == null) {
+				oFlight = new Flight(sKey);
+				moFlights.put(sKey, oFlight);
+			}
+			synchronized (oFlight) {
+				oFlight.miMembers++;
+				oFlight.miPresent++;
+			}
+		}
+		return(oFlight);
+	}
+
+	/**
+	 * Returns the number of flights in progress.
+	 *
+	 * @return number of flights
+	 */
+	public int getFlightCount() {
+		synchronized (moFlights) {
+			return(moFlights.size());
+		}
+	}
+
+	/**
+	 * Returns the key under which the flight of specified URL and file is
+	 * registered.
+	 *
+	 * @param asURL download URL
+	 * @param asFilePathname pathname of the target file
+	 * @return key of the flight
+	 */
+	public static String getKey(String asURL, String asFilePathname) {
+		return(normalizeUrl(asURL) + " " + normalizePath(asFilePathname));
+	}
+
+	static String normalizeUrl(String asURL) {
+		URL oURL;
+		StringBuilder sb = new StringBuilder();
+
+		try {
+			oURL = new URL(asURL.trim());
+		} catch (MalformedURLException e) {
+			return(asURL.trim());
+		}
+		sb.append(oURL.getProtocol().toLowerCase()).append("://");
+		if (oURL.getUserInfo() != null) {
+			sb.append(oURL.getUserInfo()).append('@');
+		}
+		sb.append(oURL.getHost().toLowerCase());
+		if ((oURL.getPort() != -1) && (oURL.getPort() != oURL.getDefaultPort())) {
+			sb.append(':').append(oURL.getPort());
+		}
+		sb.append((oURL.getPath().length() == 0) ? "/" : oURL.getPath());
+		if (oURL.getQuery() != null) {
+			sb.append('?').append(oURL.getQuery());
+		}
+		return(sb.toString());
+	}
+
+	static String normalizePath(String asFilePathname) {
+		File oFile = new File(asFilePathname);
+		try {
+			return(oFile.getCanonicalPath());
+		} catch (IOException e) {
+			return(oFile.getAbsolutePath());
+		}
+	}
+
+	void remove(Flight aoFlight) {
+		synchronized (moFlights) {
+			if (moFlights.get(aoFlight.msKey) == aoFlight) {
+				moFlights.remove(aoFlight.msKey);
+			}
+		}
+	}
+
+
+	/**
+	 * One transfer of a URL to a file and the downloads waiting on it.
+	 */
+	public class Flight {
+		final String msKey;
+		int miMembers = 0, miPresent = 0;
+		boolean mbLed = false, mbComplete = false;
+		MvException moResult = null;
+		Object moLeader = null;
+		MvDownloadProgress moLastProgress = null;
+		final List<OnProgressListener> moListeners = new ArrayList<OnProgressListener>();
+
+		Flight(String asKey) {
+			msKey = asKey;
+		}
+
+		/**
+		 * Claims the lead of this flight. Only the first caller gets it, unless
+		 * the leader leaves the flight, after which the next caller gets it.
+		 *
+		 * @return true if the caller needs to do the transfer; false if it needs
+		 *         to wait for the leader with {@link #await(long)}
+		 */
+		public synchronized boolean lead() {
+			if (mbLed) {
+				return(false);
+			}
+			mbLed = true;
+			return(true);
+		}
+
+		/**
+		 * Returns the number of downloads that joined this flight.
+		 *
+		 * @return number of downloads, including the leader
+		 */
+		public synchronized int getMemberCount() {
+			return(miMembers);
+		}
+
+		/**
+		 * Adds a callback for the progress reports of the leader. The latest
+		 * report, if any, is passed to it straight away.
+		 *
+		 * @param aoListener callback that needs to be invoked
+		 */
+		public void addListener(OnProgressListener aoListener) {
+			MvDownloadProgress oProgress;
+			synchronized (this) {
+				moListeners.add(aoListener);
+				oProgress = moLastProgress;
+			}
+			if (oProgress != null) {
+				aoListener.onProgress(oProgress);
+			}
+		}
+
+		/**
+		 * Removes a callback added with {@link #addListener(OnProgressListener)}.
+		 *
+		 * @param aoListener callback that needs to be removed
+		 */
+		public synchronized void removeListener(OnProgressListener aoListener) {
+			moListeners.remove(aoListener);
+		}
+
+		/**
+		 * Passes a progress report of the leader to the followers.
+		 *
+		 * @param aoProgress progress of the transfer
+		 */
+		public void publishProgress(MvDownloadProgress aoProgress) {
+			OnProgressListener[] arListeners;
+			synchronized (this) {
+				moLastProgress = aoProgress;
+				arListeners = moListeners.toArray(new OnProgressListener[moListeners.size()]);
+			}
+			for (OnProgressListener oListener : arListeners) {
+				oListener.onProgress(aoProgress);
+			}
+		}
+
+		/**
+		 * Ends this flight with the outcome of the transfer and wakes up the
+		 * followers. Later downloads of the URL start a new flight.
+		 *
+		 * @param aoResult outcome of the transfer
+		 * @param aoLeader object that did the transfer, from which followers can
+		 *        copy details (can be null)
+		 */
+		public void complete(MvException aoResult, Object aoLeader) {
+			remove(this);
+			synchronized (this) {
+				if (aoResult == null) {
+					aoResult = new MvException();
+					aoResult.mbSuccess = false;
+					aoResult.msProblem = "Download failed.";
+					aoResult.msPossibleSolution = "A better download URL or network conditions.";
+				}
+				moResult = aoResult;
+				moLeader = aoLeader;
+				mbComplete = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Leaves this flight without waiting for its outcome. A leader that
+		 * leaves gives up the lead, and a follower needs to take it over with
+		 * {@link #lead()}. The flight ends without an outcome when the last
+		 * download leaves it, and later downloads of the URL start a new one.
+		 *
+		 * @param abLeader whether the caller leads the flight
+		 */
+		public void leave(boolean abLeader) {
+			synchronized (moFlights) {
+				synchronized (this) {
+					miPresent--;
+					if (abLeader) {
+						mbLed = false;
+						notifyAll();
+					}
+					if (!mbComplete && (miPresent == 0)) {
+						remove(this);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Waits for the leader to complete the transfer. The wait ends early if
+		 * the leader {@link #leave(boolean) leaves} the flight.
+		 *
+		 * @param alTimeoutMillis longest time to wait (0 to wait until done)
+		 * @return outcome of the transfer; null if it did not complete in time or
+		 *         the lead has been given up
+		 * @throws InterruptedException if the thread was interrupted while waiting
+		 */
+		public synchronized MvException await(long alTimeoutMillis) throws InterruptedException {
+			long lEnd = System.currentTimeMillis() + alTimeoutMillis;
+			long lWait;
+
+			while (!mbComplete) {
+				if (!mbLed) {
+					return(null);
+				}
+				if (alTimeoutMillis == 0) {
+					wait();
+				} else {
+					lWait = lEnd - System.currentTimeMillis();
+					if (lWait <= 0) {
+						return(null);
+					}
+					wait(lWait);
+				}
+			}
+			return(moResult);
+		}
+
+		/**
+		 * Returns the object that did the transfer, once it is complete.
+		 *
+		 * @return leader passed to {@link #complete(MvException, Object)}
+		 */
+		public synchronized Object getLeader() {
+			return(moLeader);
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class watches the bodies of downloads for stalls. A read timeout fails
+ * a read that receives nothing at all, but a connection that trickles in a
+ * few bytes every now and then never times out and keeps the download
+ * waiting. A watched stream counts the bytes read from it; if fewer than
+ * {@value #MIN_PROGRESS_BYTES} bytes arrive in the stall timeout, the
+ * callback of the stream is invoked, which normally closes the connection so
+ * that the download fails and is tried again.
+ * <p>
+ * All streams are checked by one daemon thread, every
+ * {@value #CHECK_INTERVAL_MILLIS} milliseconds.
+ *
+ * <pre>
+MvStallWatchdog.Watch oBody = MvStallWatchdog.watch(oConnection.getInputStream(), 60000,
+  new Runnable() {
+    &#64;Override
+    public void run() {
+      oConnection.disconnect();
+    }
+  });
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvStallWatchdog {
+
+	/**
+	 * Bytes that need to arrive within the stall timeout.
+	 */
+	public static final long MIN_PROGRESS_BYTES = 1024;
+
+	/**
+	 * Time between checks of the watched streams.
+	 */
+	public static final long CHECK_INTERVAL_MILLIS = 1000;
+
+	static final Set<Watch> moWatches = Collections.newSetFromMap(new ConcurrentHashMap<Watch, Boolean>());
+	static ScheduledExecutorService moChecker = null;
+
+	private MvStallWatchdog() {
+		super();
+	}
+
+	/**
+	 * This class is a stream whose progress is watched. Closing it, or calling
+	 * {@link #stop()}, ends the watch.
+	 */
+	public static class Watch extends FilterInputStream {
+		final long mlTimeoutNanos;
+		final Runnable moOnStall;
+		volatile long mlWindowStart, mlWindowBytes = 0;
+		volatile boolean mbStalled = false;
+
+		Watch(InputStream aoStream, long alTimeoutMillis, Runnable aoOnStall) {
+			super(aoStream);
+			mlTimeoutNanos = alTimeoutMillis * 1000000;
+			moOnStall = aoOnStall;
+			mlWindowStart = System.nanoTime();
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				mlWindowBytes = mlWindowBytes + 1;
+			}
+			return(b);
+		}
+
+		@Override
+		public int read(byte[] aBuffer, int aiOffset, int aiLength) throws IOException {
+			int n = super.read(aBuffer, aiOffset, aiLength);
+			if (n > 0) {
+				mlWindowBytes = mlWindowBytes + n;
+			}
+			return(n);
+		}
+
+		@Override
+		public void close() throws IOException {
+			stop();
+			super.close();
+		}
+
+		/**
+		 * Starts the stall timeout afresh. Call it after the reader has waited
+		 * for something other than the network, such as a rate limit.
+		 */
+		public void restart() {
+			mlWindowBytes = 0;
+			mlWindowStart = System.nanoTime();
+		}
+
+		/**
+		 * Ends the watch of this stream.
+		 */
+		public void stop() {
+			moWatches.remove(this);
+		}
+
+		/**
+		 * Returns whether the stream was found to have stalled.
+		 *
+		 * @return true if the stall callback was invoked
+		 */
+		public boolean isStalled() {
+			return(mbStalled);
+		}
+
+		void check(long alNow) {
+			if (alNow - mlWindowStart < mlTimeoutNanos) {
+				return;
+			}
+			if (mlWindowBytes >= MIN_PROGRESS_BYTES) {
+				restart();
+				return;
+			}
+			mbStalled = true;
+			stop();
+			MvLog.logMessage("Download stalled - " + mlWindowBytes + " bytes in " +
+					(mlTimeoutNanos / 1000000) + " ms");
+			moOnStall.run();
+		}
+	}
+
+	/**
+	 * Starts watching specified stream.
+	 *
+	 * @param aoStream stream that needs to be watched
+	 * @param alTimeoutMillis time within which {@value #MIN_PROGRESS_BYTES}
+	 *        bytes need to arrive; 0 to not watch the stream
+	 * @param aoOnStall callback invoked on the thread of the watchdog when the
+	 *        stream has stalled
+	 * @return stream from which the bytes need to be read
+	 */
+	public static Watch watch(InputStream aoStream, long alTimeoutMillis, Runnable aoOnStall) {
+		Watch oWatch = new Watch(aoStream, alTimeoutMillis, aoOnStall);
+
+		if (alTimeoutMillis > 0) {
+			startChecker();
+			moWatches.add(oWatch);
+		}
+		return(oWatch);
+	}
+
+	static synchronized void startChecker() {
+		if (moChecker != null) {
+			return;
+		}
+		moChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable aoTask) {
+				Thread oThread = new Thread(aoTask, "MvStallWatchdog");
+				oThread.setDaemon(true);
+				return(oThread);
+			}
+		});
+		moChecker.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				long lNow = System.nanoTime();
+				for (Watch oWatch : moWatches) {
+					try {
+						oWatch.check(lNow);
+					} catch (RuntimeException e) {
+						MvLog.logMessage("Stall callback failed - " + e.getMessage());
+					}
+				}
+			}
+		}, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+}
@@ -0,0 +1,261 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.FileInputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This class copies bytes from a stream or channel to a file channel. It is
+ * used by the download and copy routines of this library. Stream sources are
+ * read into pooled direct buffers (see {@link MvBufferPool}) and written with
+ * one write per buffer. If the source is a file, the bytes are moved with
+ * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)} so that
+ * they do not pass through the Java heap at all.
+ *
+ * <pre>
+FileChannel oTarget = new FileOutputStream("/mnt/sdcard/copy.bin").getChannel();
+long lCopied = MvTransferEngine.transfer(oInputStream, oTarget, null);
+oTarget.close();
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvTransferEngine {
+
+	/**
+	 * Number of bytes moved by one call to
+	 * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}.
+	 */
+	static final long FILE_TRANSFER_CHUNK_SIZE = 8*1024*1024;
+
+	/**
+	 * Time over which the rate of a transfer is measured before its buffer is
+	 * resized.
+	 */
+	static final long RESIZE_INTERVAL_NANOS = 250*1000*1000L;
+
+	/**
+	 * Time that a buffer should take to fill at the measured rate. A buffer
+	 * that fills faster costs too many reads and writes; a buffer that fills
+	 * slower holds memory for nothing.
+	 */
+	static final long TARGET_FILL_MILLIS = 50;
+
+	/**
+	 * Interface definition for a callback to be invoked after each buffer has
+	 * been read and before it is written. It can be used to hash the bytes, to
+	 * report progress or to stop the transfer.
+	 */
+	public interface OnChunkListener {
+		/**
+		 * Called with a buffer containing the bytes that were just read, between
+		 * its position and limit. The listener may consume the buffer; its
+		 * position and limit are restored before the bytes are written.
+		 *
+		 * @param aoChunk bytes that were read
+		 * @return true to continue the transfer; false to stop it
+		 */
+		boolean onChunk(ByteBuffer aoChunk);
+	}
+
+	private MvTransferEngine() {
+		super();
+	}
+
+	/**
+	 * Copies all bytes from specified stream to specified file channel, starting
+	 * at the current position of the channel. The stream is not closed.
+	 *
+	 * @param aoFrom stream from which the bytes need to be read
+	 * @param aoTo file channel to which the bytes need to be written
+	 * @param aoListener callback invoked for each buffer (can be null)
+	 * @return number of bytes copied
+	 * @throws IOException if the stream cannot be read or the file written
+	 */
+	public static long transfer(InputStream aoFrom, FileChannel aoTo, OnChunkListener aoListener) throws IOException {
+		if ((aoListener == null) && (aoFrom instanceof FileInputStream)) {
+			return(transfer(((FileInputStream) aoFrom).getChannel(), aoTo, null));
+		}
+		return(transfer(Channels.newChannel(aoFrom), aoTo, aoListener));
+	}
+
+	/**
+	 * Copies all bytes from specified channel to specified file channel,
+	 * starting at the current position of the file channel. The source channel
+	 * is not closed. If the source is a file channel and there is no listener,
+	 * the bytes are moved by the file system without a buffer.
+	 *
+	 * @param aoFrom channel from which the bytes need to be read
+	 * @param aoTo file channel to which the bytes need to be written
+	 * @param aoListener callback invoked for each buffer (can be null)
+	 * @return number of bytes copied
+	 * @throws IOException if the source cannot be read or the file written
+	 */
+	public static long transfer(ReadableByteChannel aoFrom, FileChannel aoTo, OnChunkListener aoListener) throws IOException {
+		if ((aoListener == null) && (aoFrom instanceof FileChannel)) {
+			return(transferFile((FileChannel) aoFrom, aoTo));
+		}
+		return(transfer(aoFrom, aoTo, aoListener, MvBufferPool.getDefault()));
+	}
+
+	/**
+	 * Copies all bytes from specified channel to specified file channel using
+	 * buffers from specified pool. The transfer starts with a buffer of the
+	 * default size of the pool. Every quarter of a second, the buffer is
+	 * changed for one that holds about {@value #TARGET_FILL_MILLIS}
+	 * milliseconds of the measured rate, which is a larger buffer on a fast
+	 * link and a smaller one on a slow link.
+	 *
+	 * @param aoFrom channel from which the bytes need to be read
+	 * @param aoTo file channel to which the bytes need to be written
+	 * @param aoListener callback invoked for each buffer (can be null)
+	 * @param aoPool pool from which the buffer needs to be taken
+	 * @return number of bytes copied
+	 * @throws IOException if the source cannot be read or the file written
+	 */
+	public static long transfer(ReadableByteChannel aoFrom, FileChannel aoTo, OnChunkListener aoListener,
+			MvBufferPool aoPool) throws IOException {
+		ByteBuffer oBuffer = aoPool.acquire();
+		long lTotal = 0, lWindowStart = System.nanoTime(), lWindowBytes = 0, lNow;
+		int n, iPosition, iLimit, iSize;
+
+		try {
+			while (true) {
+				n = fill(aoFrom, oBuffer);
+				if (oBuffer.position() == 0) {
+					break;
+				}
+				oBuffer.flip();
+				if (aoListener != null) {
+					iPosition = oBuffer.position();
+					iLimit = oBuffer.limit();
+					boolean bContinue = aoListener.onChunk(oBuffer);
+					oBuffer.limit(iLimit);
+					oBuffer.position(iPosition);
+					if (!bContinue) {
+						break;
+					}
+				}
+				lWindowBytes = lWindowBytes + oBuffer.remaining();
+				while (oBuffer.hasRemaining()) {
+					lTotal = lTotal + aoTo.write(oBuffer);
+				}
+				oBuffer.clear();
+				if (n == -1) {
+					break;
+				}
+				lNow = System.nanoTime();
+				if (lNow - lWindowStart >= RESIZE_INTERVAL_NANOS) {
+					iSize = MvBufferPool.getSizeClass((int) Math.min(Integer.MAX_VALUE,
+							lWindowBytes * TARGET_FILL_MILLIS * 1000000 / (lNow - lWindowStart)));
+					if (iSize != oBuffer.capacity()) {
+						aoPool.release(oBuffer);
+						oBuffer = null;
+						oBuffer = aoPool.acquire(iSize);
+					}
+					lWindowStart = lNow;
+					lWindowBytes = 0;
+				}
+			}
+		} finally {
+			aoPool.release(oBuffer);
+		}
+		return(lTotal);
+	}
+
+	/**
+	 * Reads from the channel until the buffer is full or the channel has no more
+	 * bytes ready. A stream-backed channel often returns a few kilobytes per
+	 * read, so the buffer is topped up to cut down the number of writes.
+	 *
+	 * @return -1 if the end of the channel was reached; 0 otherwise
+	 */
+	static int fill(ReadableByteChannel aoFrom, ByteBuffer aoBuffer) throws IOException {
+		int n;
+		while (aoBuffer.hasRemaining()) {
+			n = aoFrom.read(aoBuffer);
+			if (n == -1) {
+				return(-1);
+			}
+			if (n == 0) {
+				break;
+			}
+			if (aoBuffer.position() > aoBuffer.capacity() / 2) {
+				// Half a buffer is enough to make the write worthwhile; do not
+				// block waiting for a slow network to fill the rest.
+				break;
+			}
+		}
+		return(0);
+	}
+
+	/**
+	 * Reserves disk space for specified file up to specified length, so that
+	 * the file is written into contiguous blocks and a full disk is found out
+	 * before the transfer rather than in the middle of it. On Android 5.0 and
+	 * later, the blocks are allocated with <code>posix_fallocate</code>. On
+	 * other platforms, the file is extended to the length, which allocates the
+	 * space on file systems without sparse files, such as FAT. The file is
+	 * never shortened, and its position is not changed.
+	 *
+	 * @param aoFile file for which the space needs to be reserved
+	 * @param alLength length of the file when it is complete
+	 * @return whether the space was reserved
+	 */
+	public static boolean preallocate(RandomAccessFile aoFile, long alLength) {
+		try {
+			if (aoFile.length() >= alLength) {
+				return(true);
+			}
+		} catch (IOException e) {
+			return(false);
+		}
+		try {
+			Class.forName("android.system.Os")
+				.getMethod("posix_fallocate", FileDescriptor.class, long.class, long.class)
+				.invoke(null, aoFile.getFD(), Long.valueOf(0), Long.valueOf(alLength));
+			return(true);
+		} catch (Exception e) {
+			// Not Android or not supported by the file system
+		}
+		try {
+			aoFile.setLength(alLength);
+			return(true);
+		} catch (IOException e) {
+			MvLog.logMessage("Space could not be reserved - " + e.getMessage());
+			return(false);
+		}
+	}
+
+	static long transferFile(FileChannel aoFrom, FileChannel aoTo) throws IOException {
+		long lTotal = 0, lPosition = aoTo.position(), n;
+		long lRemaining = aoFrom.size() - aoFrom.position();
+
+		while (lRemaining > 0) {
+			n = aoTo.transferFrom(aoFrom, lPosition, Math.min(lRemaining, FILE_TRANSFER_CHUNK_SIZE));
+			if (n <= 0) {
+				break;
+			}
+			lPosition = lPosition + n;
+			lTotal = lTotal + n;
+			lRemaining = lRemaining - n;
+		}
+		aoTo.position(lPosition);
+		return(lTotal);
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * This class remembers the validators (ETag and Last-Modified headers) of
+ * downloaded URLs. When a URL is downloaded again, the validators are sent in
+ * <code>If-None-Match</code> and <code>If-Modified-Since</code> headers. If the
+ * remote file has not changed, the server replies with
+ * <code>304 Not Modified</code> and no body, and the download reports
+ * {@link MvDownloadResult#mbNotModified}. This saves the bandwidth of
+ * unchanged feeds and the work of parsing them again.
+ * <p>
+ * The validators are kept in memory or, if a store file is specified, in the
+ * store file as well.
+ *
+ * <pre>
+MvDownloadOptions oOptions = new MvDownloadOptions();
+oOptions.moValidatorCache = new MvValidatorCache(getFilesDir() + "/validators.properties");
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvValidatorCache {
+
+	static final String ETAG_PREFIX = "etag ";
+	static final String LAST_MODIFIED_PREFIX = "last-modified ";
+
+	String msStorePathname = null;
+	final HashMap<String, String> moETags = new HashMap<String, String>();
+	final HashMap<String, String> moLastModified = new HashMap<String, String>();
+
+	/**
+	 * Creates a cache that is kept only in memory.
+	 */
+	public MvValidatorCache() {
+		super();
+	}
+
+	/**
+	 * Creates a cache that is saved to specified store file. Validators already
+	 * in the store file are loaded.
+	 *
+	 * @param asStorePathname pathname of the store file
+	 */
+	public MvValidatorCache(String asStorePathname) {
+		this();
+		msStorePathname = asStorePathname;
+		load();
+	}
+
+	/**
+	 * Returns the ETag last sent for specified URL.
+	 *
+	 * @param asUrl URL of the download
+	 * @return ETag; null if none is known
+	 */
+	public synchronized String getETag(String asUrl) {
+		return(moETags.get(asUrl));
+	}
+
+	/**
+	 * Returns the Last-Modified date last sent for specified URL.
+	 *
+	 * @param asUrl URL of the download
+	 * @return Last-Modified date; null if none is known
+	 */
+	public synchronized String getLastModified(String asUrl) {
+		return(moLastModified.get(asUrl));
+	}
+
+	/**
+	 * Adds the conditional headers for specified URL to specified connection.
+	 *
+	 * @param asUrl URL of the download
+	 * @param aoConnection connection that has not been connected yet
+	 * @return whether any conditional header was added
+	 */
+	public synchronized boolean setConditionalHeaders(String asUrl, HttpURLConnection aoConnection) {
+		boolean bAdded = false;
+		String sValue = moETags.get(asUrl);
+
+		if (sValue != null) {
+			aoConnection.setRequestProperty("If-None-Match", sValue);
+			bAdded = true;
+		}
+		sValue = moLastModified.get(asUrl);
+		if (sValue != null) {
+			aoConnection.setRequestProperty("If-Modified-Since", sValue);
+			bAdded = true;
+		}
+		return(bAdded);
+	}
+
+	/**
+	 * Records the validators of a complete response for specified URL. Call it
+	 * after the body has been saved.
+	 *
+	 * @param asUrl URL of the download
+	 * @param aoConnection connection whose response headers need to be recorded
+	 */
+	public void update(String asUrl, HttpURLConnection aoConnection) {
+		String sETag = aoConnection.getHeaderField("ETag");
+		String sLastModified = aoConnection.getHeaderField("Last-Modified");
+
+		synchronized (this) {
+			moETags.remove(asUrl);
+			moLastModified.remove(asUrl);
+			if (sETag != null) {
+				moETags.put(asUrl, sETag);
+			}
+			if (sLastModified != null) {
+				moLastModified.put(asUrl, sLastModified);
+			}
+		}
+		save();
+	}
+
+	/**
+	 * Forgets the validators of specified URL so that it is downloaded in full
+	 * the next time.
+	 *
+	 * @param asUrl URL of the download
+	 */
+	public void remove(String asUrl) {
+		synchronized (this) {
+			moETags.remove(asUrl);
+			moLastModified.remove(asUrl);
+		}
+		save();
+	}
+
+	/**
+	 * Writes the validators to the store file, if there is one.
+	 *
+	 * @return whether the validators were written
+	 */
+	public synchronized boolean save() {
+		Properties oProperties = new Properties();
+		FileOutputStream oFOS = null;
+		File oTempFile;
+
+		if (msStorePathname == null) {
+			return(false);
+		}
+
+		for (Map.Entry<String, String> oEntry : moETags.entrySet()) {
+			oProperties.setProperty(ETAG_PREFIX + oEntry.getKey(), oEntry.getValue());
+		}
+		for (Map.Entry<String, String> oEntry : moLastModified.entrySet()) {
+			oProperties.setProperty(LAST_MODIFIED_PREFIX + oEntry.getKey(), oEntry.getValue());
+		}
+
+		oTempFile = new File(msStorePathname + ".tmp");
+		try {
+			oFOS = new FileOutputStream(oTempFile);
+			oProperties.store(oFOS, null);
+			oFOS.close();
+			oFOS = null;
+			return(oTempFile.renameTo(new File(msStorePathname)));
+		} catch (IOException e) {
+			MvLog.logMessage("Validators could not be saved - " + e.getMessage());
+			return(false);
+		} finally {
+			if (oFOS != null) {
+				try { oFOS.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	synchronized void load() {
+		Properties oProperties = new Properties();
+		FileInputStream oFIS = null;
+
+		if (!MvFileIO.isFile(msStorePathname)) {
+			return;
+		}
+
+		try {
+			oFIS = new FileInputStream(msStorePathname);
+			oProperties.load(oFIS);
+			for (String sKey : oProperties.stringPropertyNames()) {
+				if (sKey.startsWith(ETAG_PREFIX)) {
+					moETags.put(sKey.substring(ETAG_PREFIX.length()), oProperties.getProperty(sKey));
+				} else if (sKey.startsWith(LAST_MODIFIED_PREFIX)) {
+					moLastModified.put(sKey.substring(LAST_MODIFIED_PREFIX.length()), oProperties.getProperty(sKey));
+				}
+			}
+		} catch (IOException e) {
+			MvLog.logMessage("Validators could not be read - " + msStorePathname);
+		} finally {
+			if (oFIS != null) {
+				try { oFIS.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+}
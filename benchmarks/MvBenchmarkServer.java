@@ -0,0 +1,294 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class is an HTTP server, run in the same JVM as the benchmarks, that
+ * serves files of {@link #FILE_SIZES fixed sizes} from memory, so that the
+ * benchmarks measure the download and not the network or the disk of the
+ * server. The files are served at <code>/files/&lt;name&gt;</code>, with
+ * support for ranges, <code>If-Range</code> and <code>HEAD</code>, and at
+ * <code>/redirect/&lt;name&gt;</code>, which is redirected to the first path.
+ * The bytes of the files are random, so that they cannot be compressed.
+ *
+ * <pre>
+MvBenchmarkServer oServer = new MvBenchmarkServer();
+oServer.start();
+String sUrl = oServer.getFileUrl("1MB");  // http://127.0.0.1:&lt;port&gt;/files/1MB
+oServer.stop();
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvBenchmarkServer {
+
+	/**
+	 * Names and byte sizes of the files that are served.
+	 */
+	public static final LinkedHashMap<String, Integer> FILE_SIZES = new LinkedHashMap<String, Integer>();
+
+	static {
+		FILE_SIZES.put("10KB", 10*1024);
+		FILE_SIZES.put("1MB", 1024*1024);
+		FILE_SIZES.put("100MB", 100*1024*1024);
+	}
+
+	static final String ETAG = "\"mv-benchmark-1\"";
+	static final String LAST_MODIFIED = "Sat, 17 Oct 2026 00:00:00 GMT";
+	static final int WRITE_SIZE = 64*1024;
+
+	HttpServer moServer;
+	ExecutorService moExecutor;
+	byte[] mContent;
+
+	/**
+	 * Creates the server. The content of the largest file is generated; the
+	 * other files are the first bytes of it.
+	 */
+	public MvBenchmarkServer() {
+		super();
+		int iLargest = 0;
+
+		for (Integer iSize : FILE_SIZES.values()) {
+			iLargest = Math.max(iLargest, iSize);
+		}
+		mContent = new byte[iLargest];
+		new Random(17).nextBytes(mContent);
+	}
+
+	/**
+	 * Starts the server on a free port of the loopback interface.
+	 *
+	 * @throws IOException if the server could not be started
+	 */
+	public void start() throws IOException {
+		// Without it, small responses wait about 40 ms for a delayed ACK, which
+		// would hide the overhead of a download. It is read when the first
+		// server is created.
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		moServer =HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 64);
+		moExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable aoTask) {
+				Thread oThread = new Thread(aoTask, "MvBenchmarkServer");
+				oThread.setDaemon(true);
+				return(oThread);
+			}
+		});
+		moServer.setExecutor(moExecutor);
+		moServer.createContext("/files/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange aoExchange) throws IOException {
+				serveFile(aoExchange, aoExchange.getRequestURI().getPath().substring("/files/".length()));
+			}
+		});
+		moServer.createContext("/redirect/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange aoExchange) throws IOException {
+				redirect(aoExchange, aoExchange.getRequestURI().getPath().substring("/redirect/".length()));
+			}
+		});
+		moServer.start();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	public void stop() {
+		if (moServer != null) {
+			moServer.stop(0);
+			moServer = null;
+		}
+		if (moExecutor != null) {
+			moExecutor.shutdownNow();
+			moExecutor = null;
+		}
+	}
+
+	/**
+	 * Returns the address of the server.
+	 *
+	 * @return URL without a path, such as <code>http://127.0.0.1:8080</code>
+	 */
+	public String getBaseUrl() {
+		return("http://127.0.0.1:" + moServer.getAddress().getPort());
+	}
+
+	/**
+	 * Returns the URL of specified file.
+	 *
+	 * @param asName name of the file (see {@link #FILE_SIZES})
+	 * @return URL of the file
+	 */
+	public String getFileUrl(String asName) {
+		return(getBaseUrl() + "/files/" + asName);
+	}
+
+	/**
+	 * Returns a URL that is redirected to specified file.
+	 *
+	 * @param asName name of the file (see {@link #FILE_SIZES})
+	 * @return URL that is redirected
+	 */
+	public String getRedirectUrl(String asName) {
+		return(getBaseUrl() + "/redirect/" + asName);
+	}
+
+	/**
+	 * Returns the byte size of specified file.
+	 *
+	 * @param asName name of the file (see {@link #FILE_SIZES})
+	 * @return byte size
+	 */
+	public static int getFileSize(String asName) {
+		Integer iSize = FILE_SIZES.get(asName);
+		if (iSize == null) {
+			throw new IllegalArgumentException("No such benchmark file - " + asName);
+		}
+		return(iSize);
+	}
+
+	/**
+	 * Returns the content of specified file.
+	 *
+	 * @param asName name of the file (see {@link #FILE_SIZES})
+	 * @param aiLength number of bytes needed from the start of the file
+	 * @return copy of the bytes
+	 */
+	public byte[] getContent(String asName, int aiLength) {
+		byte[] arBytes = new byte[Math.min(aiLength, getFileSize(asName))];
+		System.arraycopy(mContent, 0, arBytes, 0, arBytes.length);
+		return(arBytes);
+	}
+
+	void serveFile(HttpExchange aoExchange, String asName) throws IOException {
+		Integer iSize = FILE_SIZES.get(asName);
+		Headers oHeaders = aoExchange.getResponseHeaders();
+		long[] arRange;
+		long lStart = 0, lEnd;
+		int iCode = 200;
+
+		try {
+			drain(aoExchange);
+			if (iSize == null) {
+				aoExchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			lEnd = iSize - 1;
+			arRange = getRange(aoExchange.getRequestHeaders(), iSize);
+			if (arRange != null) {
+				if (arRange[0] > lEnd) {
+					oHeaders.set("Content-Range", "bytes */" + iSize);
+					aoExchange.sendResponseHeaders(416, -1);
+					return;
+				}
+				lStart = arRange[0];
+				lEnd = Math.min(arRange[1], lEnd);
+				iCode = 206;
+				oHeaders.set("Content-Range", "bytes " + lStart + "-" + lEnd + "/" + iSize);
+			}
+			oHeaders.set("Content-Type", "application/octet-stream");
+			oHeaders.set("Accept-Ranges", "bytes");
+			oHeaders.set("ETag", ETAG);
+			oHeaders.set("Last-Modified", LAST_MODIFIED);
+			if ("HEAD".equals(aoExchange.getRequestMethod())) {
+				oHeaders.set("Content-Length", Long.toString(lEnd - lStart + 1));
+				aoExchange.sendResponseHeaders(iCode, -1);
+				return;
+			}
+			aoExchange.sendResponseHeaders(iCode, lEnd - lStart + 1);
+			write(aoExchange.getResponseBody(), (int) lStart, (int) (lEnd - lStart + 1));
+		} finally {
+			aoExchange.close();
+		}
+	}
+
+	void redirect(HttpExchange aoExchange, String asName) throws IOException {
+		try {
+			drain(aoExchange);
+			aoExchange.getResponseHeaders().set("Location", getFileUrl(asName));
+			aoExchange.sendResponseHeaders(302, -1);
+		} finally {
+			aoExchange.close();
+		}
+	}
+
+	/**
+	 * Returns the first and last bytes asked for by the Range header of a
+	 * request, or null if the whole file needs to be sent, as when the
+	 * If-Range header does not match.
+	 */
+	static long[] getRange(Headers aoHeaders, int aiSize) {
+		String sRange = aoHeaders.getFirst("Range");
+		String sIfRange = aoHeaders.getFirst("If-Range");
+		int iDash;
+
+		if ((sRange == null) || !sRange.startsWith("bytes=") || (sRange.indexOf(',') >= 0)) {
+			return(null);
+		}
+		if ((sIfRange != null) && !sIfRange.equals(ETAG) && !sIfRange.equals(LAST_MODIFIED)) {
+			return(null);
+		}
+		sRange = sRange.substring("bytes=".length()).trim();
+		iDash = sRange.indexOf('-');
+		try {
+			if (iDash == 0) {
+				// Last bytes of the file
+				return(new long[] {
+						Math.max(0, aiSize - Long.parseLong(sRange.substring(1))), aiSize - 1 });
+			}
+			if (iDash == sRange.length() - 1) {
+				return(new long[] { Long.parseLong(sRange.substring(0, iDash)), aiSize - 1 });
+			}
+			return(new long[] {
+					Long.parseLong(sRange.substring(0, iDash)),
+					Long.parseLong(sRange.substring(iDash + 1)) });
+		} catch (NumberFormatException e) {
+			return(null);
+		}
+	}
+
+	void write(OutputStream aoOut, int aiOffset, int aiLength) throws IOException {
+		int n;
+
+		// A client that stops reading, as when a download is resumed, ends the
+		// write with an exception, after which the connection is closed.
+		while (aiLength > 0) {
+			n = Math.min(WRITE_SIZE, aiLength);
+			aoOut.write(mContent, aiOffset, n);
+			aiOffset = aiOffset + n;
+			aiLength = aiLength - n;
+		}
+	}
+
+	static void drain(HttpExchange aoExchange) throws IOException {
+		byte[] buf = new byte[512];
+		while (aoExchange.getRequestBody().read(buf) != -1) {
+			// Request bodies are not used.
+		}
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * These JMH benchmarks measure the download loop of {@link MvDownload}, and
+ * of {@link MvGeneral#startSyncDownload(String, String, MvDownloadOptions)}
+ * and {@link MvAsyncDownload} which run it, against a
+ * {@link MvBenchmarkServer} in the same JVM. Each benchmark downloads one file
+ * of each {@link MvBenchmarkServer#FILE_SIZES size}. The score is downloads
+ * per second, and the <code>bytes</code> counter is bytes per second. The
+ * downloads per second of the 10 KB file show the overhead of each download,
+ * and the bytes per second of the 100 MB file show the throughput of the loop.
+ * Resumed and redirected downloads are measured too. Run them with the GC
+ * profiler (<code>-prof gc</code>) to see the bytes allocated per download.
+ * <p>
+ * Files are saved in the directory named by the <code>mv.benchmark.dir</code>
+ * system property, or in the temporary directory. The time taken to write
+ * them is part of the measurement, so a disk that is slower than the loopback
+ * interface shows up in the results. See <code>README.md</code> for how the
+ * benchmarks are built and run.
+ *
+ * <pre>
+java -jar benchmarks.jar MvDownloadBenchmark -p msFile=1MB -prof gc
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx512m" })
+public class MvDownloadBenchmark {
+
+	/**
+	 * Name of the file that is downloaded (see
+	 * {@link MvBenchmarkServer#FILE_SIZES}).
+	 */
+	@Param({ "10KB", "1MB", "100MB" })
+	public String msFile;
+
+	MvBenchmarkServer moServer;
+	File moDirectory;
+	String msTarget;
+	int miFileSize;
+
+	/**
+	 * This class counts the bytes that are downloaded, which JMH reports as
+	 * bytes per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Bytes {
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * This class deletes the target file before each download, so that it is
+	 * downloaded from the start.
+	 */
+	@State(Scope.Thread)
+	public static class NewFile {
+		@Setup(Level.Invocation)
+		public void prepare(MvDownloadBenchmark aoBenchmark) {
+			new File(aoBenchmark.msTarget).delete();
+		}
+	}
+
+	/**
+	 * This class writes the first half of the file to the target before each
+	 * download, so that the download is resumed from there.
+	 */
+	@State(Scope.Thread)
+	public static class PartialFile {
+		byte[] mFirstHalf;
+
+		@Setup(Level.Trial)
+		public void load(MvDownloadBenchmark aoBenchmark) {
+			mFirstHalf = aoBenchmark.moServer.getContent(aoBenchmark.msFile, aoBenchmark.miFileSize / 2);
+		}
+
+		@Setup(Level.Invocation)
+		public void prepare(MvDownloadBenchmark aoBenchmark) throws IOException {
+			FileOutputStream oOut = new FileOutputStream(aoBenchmark.msTarget);
+			try {
+				oOut.write(mFirstHalf);
+			} finally {
+				oOut.close();
+			}
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void startServer() throws IOException {
+		moServer = new MvBenchmarkServer();
+		moServer.start();
+		moDirectory = new File(System.getProperty("mv.benchmark.dir", System.getProperty("java.io.tmpdir")),
+				"mv-benchmark-" + System.nanoTime());
+		if (!moDirectory.mkdirs()) {
+			throw new IOException("Could not create " + moDirectory);
+		}
+		msTarget = new File(moDirectory, msFile).getAbsolutePath();
+		miFileSize = MvBenchmarkServer.getFileSize(msFile);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServer() {
+		moServer.stop();
+		MvFileIO.deletePath(moDirectory.getAbsolutePath());
+	}
+
+	/**
+	 * Downloads the file with {@link MvDownload#run()}.
+	 */
+	@Benchmark
+	public MvException download(NewFile aoFile, Bytes aoBytes) {
+		MvDownload oDownload = new MvDownload(moServer.getFileUrl(msFile), msTarget, new MvDownloadOptions());
+		return(check(oDownload.run(), miFileSize, aoBytes));
+	}
+
+	/**
+	 * Downloads the file with
+	 * {@link MvGeneral#startSyncDownload(String, String, MvDownloadOptions)}.
+	 */
+	@Benchmark
+	public MvException syncDownload(NewFile aoFile, Bytes aoBytes) {
+		return(check(MvGeneral.startSyncDownload(moServer.getFileUrl(msFile), msTarget, new MvDownloadOptions()),
+				miFileSize, aoBytes));
+	}
+
+	/**
+	 * Downloads the file with an {@link MvAsyncDownload} and waits for it. The
+	 * time includes the hand-off to the background thread.
+	 */
+	@Benchmark
+	public MvException asyncDownload(NewFile aoFile, Bytes aoBytes) throws InterruptedException, ExecutionException {
+		MvAsyncDownload oDownload = new MvAsyncDownload(moServer.getFileUrl(msFile), msTarget, new MvDownloadOptions());
+		return(check(oDownload.get(), miFileSize, aoBytes));
+	}
+
+	/**
+	 * Resumes the download of a file whose first half has been downloaded.
+	 * The first half is hashed again before the rest is downloaded.
+	 */
+	@Benchmark
+	public MvException resumeDownload(PartialFile aoFile, Bytes aoBytes) {
+		MvDownload oDownload = new MvDownload(moServer.getFileUrl(msFile), msTarget, new MvDownloadOptions());
+		return(check(oDownload.run(), miFileSize - (miFileSize / 2), aoBytes));
+	}
+
+	/**
+	 * Downloads the file from a URL that is redirected to it.
+	 */
+	@Benchmark
+	public MvException redirectDownload(NewFile aoFile, Bytes aoBytes) {
+		MvDownload oDownload = new MvDownload(moServer.getRedirectUrl(msFile), msTarget, new MvDownloadOptions());
+		return(check(oDownload.run(), miFileSize, aoBytes));
+	}
+
+	/**
+	 * Counts the bytes of a download, and fails the benchmark if the download
+	 * failed, so that failures are not measured as fast downloads.
+	 */
+	static MvException check(MvException aoResult, long alBytes, Bytes aoBytes) {
+		if ((aoResult == null) || !aoResult.mbSuccess) {
+			throw new IllegalStateException("Download failed - " +
+					((aoResult == null) ? "no result" : aoResult.msProblem));
+		}
+		aoBytes.bytes = aoBytes.bytes + alBytes;
+		return(aoResult);
+	}
+
+}
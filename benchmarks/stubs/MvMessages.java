@@ -0,0 +1,20 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+/**
+ * Stand-in for the Android messages class, for the benchmarks. Log messages
+ * go to {@link MvLog}.
+ */
+public class MvMessages {
+
+	public static void logMessage(String asMessage) {
+		MvLog.logMessage(asMessage);
+	}
+
+}
@@ -0,0 +1,13 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.app;
+
+/** Stub for the benchmarks. */
+public class Activity extends android.content.Context {
+	public android.content.Context getApplicationContext() { throw new RuntimeException("Stub!"); }
+}
@@ -0,0 +1,17 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.content;
+
+/** Stub for the benchmarks. */
+public class Context {
+	public static final String CLIPBOARD_SERVICE = "clipboard";
+	public Object getSystemService(String asName) { throw new RuntimeException("Stub!"); }
+	public android.content.pm.PackageManager getPackageManager() { throw new RuntimeException("Stub!"); }
+	public void startActivity(Intent aoIntent) { throw new RuntimeException("Stub!"); }
+	public String getPackageName() { throw new RuntimeException("Stub!"); }
+}
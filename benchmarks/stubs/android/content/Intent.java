@@ -0,0 +1,20 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.content;
+
+/** Stub for the benchmarks. */
+public class Intent {
+	public static final String ACTION_VIEW = "android.intent.action.VIEW";
+	public static final String CATEGORY_LAUNCHER = "android.intent.category.LAUNCHER";
+	public static final int FLAG_ACTIVITY_NEW_TASK = 0x10000000;
+	public Intent(String asAction) { throw new RuntimeException("Stub!"); }
+	public Intent addCategory(String asCategory) { throw new RuntimeException("Stub!"); }
+	public Intent setFlags(int aiFlags) { throw new RuntimeException("Stub!"); }
+	public Intent setData(android.net.Uri aoData) { throw new RuntimeException("Stub!"); }
+	public Intent setDataAndType(android.net.Uri aoData, String asType) { throw new RuntimeException("Stub!"); }
+}
@@ -0,0 +1,14 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.content.pm;
+
+/** Stub for the benchmarks. */
+public class PackageInfo {
+	public String versionName;
+	public int versionCode;
+}
@@ -0,0 +1,17 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.content.pm;
+
+/** Stub for the benchmarks. */
+public class PackageManager {
+	public static class NameNotFoundException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+	public android.content.Intent getLaunchIntentForPackage(String asPackageName) { throw new RuntimeException("Stub!"); }
+	public PackageInfo getPackageInfo(String asPackageName, int aiFlags) throws NameNotFoundException { throw new RuntimeException("Stub!"); }
+}
@@ -0,0 +1,24 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.media;
+
+/** Stub for the benchmarks. */
+public class MediaPlayer {
+	public interface OnCompletionListener {
+		void onCompletion(MediaPlayer aoPlayer);
+	}
+	public static MediaPlayer create(android.content.Context aoContext, int aiResId) { throw new RuntimeException("Stub!"); }
+	public static MediaPlayer create(android.content.Context aoContext, android.net.Uri aoUri) { throw new RuntimeException("Stub!"); }
+	public void setDataSource(android.content.Context aoContext, android.net.Uri aoUri) throws java.io.IOException { throw new RuntimeException("Stub!"); }
+	public void setOnCompletionListener(OnCompletionListener aoListener) { throw new RuntimeException("Stub!"); }
+	public boolean isPlaying() { throw new RuntimeException("Stub!"); }
+	public void start() { throw new RuntimeException("Stub!"); }
+	public void pause() { throw new RuntimeException("Stub!"); }
+	public void stop() { throw new RuntimeException("Stub!"); }
+	public void release() { throw new RuntimeException("Stub!"); }
+}
@@ -0,0 +1,15 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.media;
+
+/** Stub for the benchmarks. */
+public class Ringtone {
+	public boolean isPlaying() { throw new RuntimeException("Stub!"); }
+	public void play() { throw new RuntimeException("Stub!"); }
+	public void stop() { throw new RuntimeException("Stub!"); }
+}
@@ -0,0 +1,15 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.media;
+
+/** Stub for the benchmarks. */
+public class RingtoneManager {
+	public static final int TYPE_RINGTONE = 1;
+	public static android.net.Uri getDefaultUri(int aiType) { throw new RuntimeException("Stub!"); }
+	public static Ringtone getRingtone(android.content.Context aoContext, android.net.Uri aoUri) { throw new RuntimeException("Stub!"); }
+}
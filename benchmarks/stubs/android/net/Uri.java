@@ -0,0 +1,13 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.net;
+
+/** Stub for the benchmarks. */
+public class Uri {
+	public static Uri parse(String asUri) { throw new RuntimeException("Stub!"); }
+}
@@ -0,0 +1,129 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.os;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Working stand-in for the Android class, for the benchmarks. The task runs
+ * on a background thread, as it does on Android. There is no UI thread, so
+ * progress updates and {@link #onPostExecute(Object)} are called on the
+ * background thread.
+ */
+public abstract class AsyncTask<Params, Progress, Result> {
+
+	public enum Status { PENDING, RUNNING, FINISHED }
+
+	static final ThreadFactory moThreadFactory = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable aoTask) {
+			Thread oThread = new Thread(aoTask, "AsyncTask");
+			oThread.setDaemon(true);
+			return(oThread);
+		}
+	};
+
+	public static final Executor THREAD_POOL_EXECUTOR = Executors.newCachedThreadPool(moThreadFactory);
+
+	public static final Executor SERIAL_EXECUTOR = Executors.newSingleThreadExecutor(moThreadFactory);
+
+	final AtomicBoolean mbCancelled = new AtomicBoolean(false);
+	volatile Status moStatus = Status.PENDING;
+	FutureTask<Result> moFuture;
+
+	@SuppressWarnings("unchecked")
+	protected abstract Result doInBackground(Params... aParams);
+
+	protected void onPreExecute() {
+	}
+
+	protected void onPostExecute(Result aoResult) {
+	}
+
+	@SuppressWarnings("unchecked")
+	protected void onProgressUpdate(Progress... aValues) {
+	}
+
+	protected void onCancelled(Result aoResult) {
+		onCancelled();
+	}
+
+	protected void onCancelled() {
+	}
+
+	@SafeVarargs
+	public final AsyncTask<Params, Progress, Result> execute(Params... aParams) {
+		return(executeOnExecutor(SERIAL_EXECUTOR, aParams));
+	}
+
+	@SafeVarargs
+	public final AsyncTask<Params, Progress, Result> executeOnExecutor(Executor aoExecutor, final Params... aParams) {
+		if (moStatus != Status.PENDING) {
+			throw new IllegalStateException("Cannot execute task: the task has already been executed.");
+		}
+		moStatus = Status.RUNNING;
+		onPreExecute();
+		moFuture = new FutureTask<Result>(new Callable<Result>() {
+			@Override
+			public Result call() throws Exception {
+				Result oResult = null;
+				try {
+					oResult = doInBackground(aParams);
+				} finally {
+					if (isCancelled()) {
+						onCancelled(oResult);
+					} else {
+						onPostExecute(oResult);
+					}
+					moStatus = Status.FINISHED;
+				}
+				return(oResult);
+			}
+		});
+		aoExecutor.execute(moFuture);
+		return(this);
+	}
+
+	@SafeVarargs
+	protected final void publishProgress(Progress... aValues) {
+		if (!isCancelled()) {
+			onProgressUpdate(aValues);
+		}
+	}
+
+	public final boolean cancel(boolean abMayInterruptIfRunning) {
+		mbCancelled.set(true);
+		return((moFuture != null) && moFuture.cancel(abMayInterruptIfRunning));
+	}
+
+	public final boolean isCancelled() {
+		return(mbCancelled.get());
+	}
+
+	public final Status getStatus() {
+		return(moStatus);
+	}
+
+	public final Result get() throws InterruptedException, ExecutionException {
+		return(moFuture.get());
+	}
+
+	public final Result get(long alTimeout, TimeUnit aoUnit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		return(moFuture.get(alTimeout, aoUnit));
+	}
+
+}
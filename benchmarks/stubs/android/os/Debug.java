@@ -0,0 +1,13 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.os;
+
+/** Stub for the benchmarks. */
+public class Debug {
+	public static long getNativeHeapAllocatedSize() { throw new RuntimeException("Stub!"); }
+}
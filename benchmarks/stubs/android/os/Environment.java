@@ -0,0 +1,15 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.os;
+
+/** Stub for the benchmarks. */
+public class Environment {
+	public static final String MEDIA_MOUNTED = "mounted";
+	public static String getExternalStorageState() { throw new RuntimeException("Stub!"); }
+	public static java.io.File getExternalStorageDirectory() { throw new RuntimeException("Stub!"); }
+}
@@ -0,0 +1,13 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.preference;
+
+/** Stub for the benchmarks. */
+public class PreferenceManager {
+	public static android.content.SharedPreferences getDefaultSharedPreferences(android.content.Context aoContext) { throw new RuntimeException("Stub!"); }
+}
@@ -0,0 +1,15 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.text;
+
+/** Stub for the benchmarks. */
+public class ClipboardManager {
+	public CharSequence getText() { throw new RuntimeException("Stub!"); }
+	public void setText(CharSequence asText) { throw new RuntimeException("Stub!"); }
+	public boolean hasText() { throw new RuntimeException("Stub!"); }
+}
@@ -0,0 +1,12 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.view;
+
+/** Stub for the benchmarks. */
+public class View {
+}
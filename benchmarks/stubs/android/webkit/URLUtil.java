@@ -0,0 +1,16 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package android.webkit;
+
+/** Stub for the benchmarks. */
+public class URLUtil {
+	public static String guessFileName(String asUrl, String asContentDisposition, String asMimeType) { throw new RuntimeException("Stub!"); }
+	public static boolean isValidUrl(String asUrl) { throw new RuntimeException("Stub!"); }
+	public static boolean isHttpUrl(String asUrl) { throw new RuntimeException("Stub!"); }
+	public static boolean isHttpsUrl(String asUrl) { throw new RuntimeException("Stub!"); }
+}
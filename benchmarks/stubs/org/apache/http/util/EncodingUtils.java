@@ -0,0 +1,14 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package org.apache.http.util;
+
+/** Stub for the benchmarks. */
+public class EncodingUtils {
+	public static String getString(byte[] aData, String asCharset) { throw new RuntimeException("Stub!"); }
+	public static byte[] getBytes(String asData, String asCharset) { throw new RuntimeException("Stub!"); }
+}
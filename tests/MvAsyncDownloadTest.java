@@ -0,0 +1,132 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that {@link MvAsyncDownload} delivers the last progress report of a
+ * download once, including when the task is cancelled. The tests run on the
+ * AsyncTask stub of the benchmarks, which drops progress published after the
+ * task is cancelled, as Android does.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvAsyncDownloadTest {
+
+	static final int FILE_SIZE = 1024*1024;
+
+	@Rule
+	public TemporaryFolder moFolder = new TemporaryFolder();
+
+	MvTestServer moServer;
+	MvTestServer.Resource moFile;
+	String msTarget;
+	final List<MvDownloadProgress> moReports = Collections.synchronizedList(new ArrayList<MvDownloadProgress>());
+	final CountDownLatch moEnded = new CountDownLatch(1);
+
+	/**
+	 * A download that records its progress reports.
+	 */
+	class RecordingDownload extends MvAsyncDownload {
+		RecordingDownload() {
+			super(moServer.getUrl("/file"), msTarget, new MvDownloadOptions());
+		}
+
+		@Override
+		protected void onDownloadProgress(MvDownloadProgress aoProgress) {
+			moReports.add(aoProgress);
+		}
+
+		@Override
+		protected void onPostExecute(MvException aoResult) {
+			super.onPostExecute(aoResult);
+			moEnded.countDown();
+		}
+
+		@Override
+		protected void onCancelled(MvException aoResult) {
+			super.onCancelled(aoResult);
+			moEnded.countDown();
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		moServer = new MvTestServer();
+		moServer.start();
+		moFile = moServer.add("/file", MvTestServer.randomBytes(FILE_SIZE, 1));
+		msTarget = new File(moFolder.getRoot(), "file").getAbsolutePath();
+	}
+
+	@After
+	public void tearDown() {
+		moServer.stop();
+	}
+
+	@Test
+	public void deliversFinalProgressOnce() throws InterruptedException {
+		new RecordingDownload();
+		assertTrue(moEnded.await(10, TimeUnit.SECONDS));
+		assertEquals(1, getFinalCount());
+		assertEquals(FILE_SIZE, getLastReport().mlBytesDownloaded);
+	}
+
+	@Test
+	public void deliversFinalProgressWhenCancelled() throws InterruptedException {
+		MvAsyncDownload oDownload;
+
+		moFile.miWriteDelayMillis = 10;
+		oDownload = new RecordingDownload();
+		while (oDownload.getDownloadedSize() == 0) {
+			Thread.sleep(10);
+		}
+		oDownload.cancel(true);
+		assertTrue(moEnded.await(10, TimeUnit.SECONDS));
+		assertEquals(1, getFinalCount());
+		assertTrue(getLastReport().mbFinal);
+		assertFalse(getLastReport().mlBytesDownloaded == FILE_SIZE);
+	}
+
+	int getFinalCount() {
+		int iCount = 0;
+
+		synchronized (moReports) {
+			for (MvDownloadProgress oProgress : moReports) {
+				if (oProgress.mbFinal) {
+					iCount++;
+				}
+			}
+		}
+		return(iCount);
+	}
+
+	MvDownloadProgress getLastReport() {
+		synchronized (moReports) {
+			return(moReports.get(moReports.size() - 1));
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests how {@link MvConnectionManager} hands out response bodies: straight
+ * through where a blocked read can be released by closing the connection,
+ * and through a read-ahead task with the HTTP client of desktop Java, whose
+ * connection is never closed on the caller's thread while that task waits
+ * for the network.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvConnectionManagerTest {
+
+	static final int FILE_SIZE = 1024*1024;
+
+	MvTestServer moServer;
+	MvTestServer.Resource moFile;
+	MvConnectionManager moManager;
+
+	/**
+	 * A connection of an HTTP client other than that of desktop Java, with a
+	 * body in memory.
+	 */
+	static class MemoryConnection extends HttpURLConnection {
+		final byte[] mContent;
+
+		MemoryConnection(byte[] aContent) throws IOException {
+			super(new URL("http://127.0.0.1/memory"));
+			mContent = aContent;
+		}
+
+		@Override
+		public void connect() {
+			connected = true;
+		}
+
+		@Override
+		public void disconnect() {
+			connected = false;
+		}
+
+		@Override
+		public boolean usingProxy() {
+			return(false);
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return(new ByteArrayInputStream(mContent));
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		moServer = new MvTestServer();
+		moServer.start();
+		moFile = moServer.add("/file", MvTestServer.randomBytes(FILE_SIZE, 1));
+		moManager = new MvConnectionManager();
+	}
+
+	@After
+	public void tearDown() {
+		moServer.stop();
+	}
+
+	@Test
+	public void handsBodyStraightThrough() throws IOException {
+		byte[] arContent = MvTestServer.randomBytes(256*1024, 2);
+		HttpURLConnection oConnection = new MemoryConnection(arContent);
+		InputStream oBody = moManager.getInputStream(oConnection);
+
+		assertFalse(oBody instanceof MvConnectionManager.PumpedBodyStream);
+		// One read takes as much as the caller's buffer holds.
+		assertEquals(arContent.length, oBody.read(new byte[arContent.length]));
+		assertEquals(-1, oBody.read());
+		assertTrue(moManager.release(oConnection));
+	}
+
+	@Test
+	public void readsAheadOnDesktopJava() throws IOException {
+		HttpURLConnection oConnection = moManager.open(new URL(moServer.getUrl("/file")));
+		InputStream oBody = moManager.getInputStream(oConnection);
+		byte[] buf = new byte[64*1024];
+		int n;
+		long lRead = 0;
+
+		assertTrue(oBody instanceof MvConnectionManager.PumpedBodyStream);
+		while ((n = oBody.read(buf)) != -1) {
+			lRead = lRead + n;
+		}
+		assertEquals(FILE_SIZE, lRead);
+		assertTrue(moManager.release(oConnection));
+	}
+
+	@Test
+	public void discardDoesNotWaitForStalledRead() throws IOException, InterruptedException {
+		HttpURLConnection oConnection;
+		InputStream oBody;
+		long lStart;
+
+		moFile.mlStallAfter = 100*1024;
+		oConnection = moManager.open(new URL(moServer.getUrl("/file")));
+		oConnection.setReadTimeout(30000);
+		oBody = moManager.getInputStream(oConnection);
+		assertTrue(oBody.read(new byte[1024]) > 0);
+		// Let the read-ahead task reach the stall.
+		Thread.sleep(500);
+		lStart = System.nanoTime();
+		moManager.discard(oConnection);
+		assertTrue((System.nanoTime() - lStart) / 1000000 < 1000);
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that files deduplicated by {@link MvContentStore} are not changed
+ * when one of them is downloaded again.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvContentStoreTest {
+
+	static final int FILE_SIZE = 256*1024;
+
+	@Rule
+	public TemporaryFolder moFolder = new TemporaryFolder();
+
+	MvTestServer moServer;
+	MvTestServer.Resource moFile;
+	MvDownloadOptions moOptions;
+	String msFileA, msFileB;
+	byte[] mOldContent;
+
+	@Before
+	public void setUp() throws IOException {
+		moServer = new MvTestServer();
+		moServer.start();
+		mOldContent = MvTestServer.randomBytes(FILE_SIZE, 1);
+		moFile = moServer.add("/file", mOldContent);
+		moOptions = new MvDownloadOptions();
+		moOptions.moContentStore = new MvContentStore(moFolder.newFolder("store").getAbsolutePath());
+		msFileA = new File(moFolder.getRoot(), "a.bin").getAbsolutePath();
+		msFileB = new File(moFolder.getRoot(), "b.bin").getAbsolutePath();
+		download(msFileA, true);
+		download(msFileB, true);
+		// Both files are links to the stored object.
+		assertEquals(3, MvContentStore.getLinkCount(msFileA));
+	}
+
+	@After
+	public void tearDown() {
+		moServer.stop();
+	}
+
+	@Test
+	public void newDownloadDoesNotChangeLinkedFiles() throws IOException {
+		byte[] arNewContent = MvTestServer.randomBytes(FILE_SIZE / 2, 2);
+
+		moFile.mContent = arNewContent;
+		moFile.msETag = "\"mv-test-2\"";
+		download(msFileA, false);
+		assertArrayEquals(arNewContent, read(msFileA));
+		assertUnchanged();
+	}
+
+	@Test
+	public void resumedDownloadDoesNotChangeLinkedFiles() throws IOException {
+		byte[] arLongerContent = Arrays.copyOf(mOldContent, FILE_SIZE * 2);
+
+		System.arraycopy(MvTestServer.randomBytes(FILE_SIZE, 2), 0, arLongerContent, FILE_SIZE, FILE_SIZE);
+		moFile.mContent = arLongerContent;
+		// The store knows the old ETag, so it would restore the old content.
+		moFile.msETag = "\"mv-test-2\"";
+		download(msFileA, true);
+		assertEquals("bytes=" + FILE_SIZE + "-", moFile.moRanges.get(moFile.moRanges.size() - 1));
+		assertArrayEquals(arLongerContent, read(msFileA));
+		assertUnchanged();
+	}
+
+	/**
+	 * Checks that the other file and the stored object still have the old
+	 * content.
+	 */
+	void assertUnchanged() throws IOException {
+		String sObject = moOptions.moContentStore.locate(getSha1(mOldContent));
+
+		assertArrayEquals(mOldContent, read(msFileB));
+		assertNotNull(sObject);
+		assertArrayEquals(mOldContent, read(sObject));
+	}
+
+	void download(String asFilePathname, boolean abResume) {
+		MvDownload oDownload = new MvDownload(moServer.getUrl("/file"), asFilePathname, moOptions);
+		MvDownloadResult oResult;
+
+		oDownload.setResumeExistingFile(abResume);
+		oResult = oDownload.run();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+	}
+
+	static byte[] read(String asFilePathname) throws IOException {
+		return(Files.readAllBytes(new File(asFilePathname).toPath()));
+	}
+
+	static String getSha1(byte[] aContent) {
+		StringBuilder oHex = new StringBuilder();
+
+		try {
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(aContent)) {
+				oHex.append(String.format("%02X", b));
+			}
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		return(oHex.toString());
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that a download whose server has stopped sending is cancelled at
+ * once, and not when the read times out.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadCancelTest {
+
+	static final int FILE_SIZE = 1024*1024;
+
+	/**
+	 * Time within which a cancelled download needs to end. The read timeout
+	 * of the downloads is much longer.
+	 */
+	static final long CANCEL_MILLIS = 1000;
+
+	@Rule
+	public TemporaryFolder moFolder = new TemporaryFolder();
+
+	MvTestServer moServer;
+	MvTestServer.Resource moFile;
+	String msTarget;
+	MvDownloadOptions moOptions;
+
+	@Before
+	public void setUp() throws IOException {
+		moServer = new MvTestServer();
+		moServer.start();
+		moFile = moServer.add("/file", MvTestServer.randomBytes(FILE_SIZE, 1));
+		moFile.mlStallAfter = 100*1024;
+		msTarget = new File(moFolder.getRoot(), "file").getAbsolutePath();
+		moOptions = new MvDownloadOptions();
+		moOptions.miReadTimeoutMillis = 30000;
+		moOptions.miStallTimeoutMillis = 0;
+		moOptions.moRetryPolicy = new MvRetryPolicy();
+	}
+
+	@After
+	public void tearDown() {
+		moServer.stop();
+	}
+
+	@Test
+	public void stopDownloadReleasesStalledRead() throws InterruptedException {
+		final MvDownload oDownload = new MvDownload(moServer.getUrl("/file"), msTarget, moOptions);
+		final MvDownloadResult[] arResult = new MvDownloadResult[1];
+		Thread oThread = new Thread() {
+			@Override
+			public void run() {
+				arResult[0] = oDownload.run();
+			}
+		};
+		long lStart;
+
+		oThread.start();
+		waitForStall(oDownload);
+		lStart = System.nanoTime();
+		oDownload.stopDownload();
+		assertTrue(getMillisSince(lStart) < CANCEL_MILLIS);
+		oThread.join(CANCEL_MILLIS);
+		assertFalse("Download still running", oThread.isAlive());
+		assertFalse(arResult[0].mbSuccess);
+		assertEquals("Download cancelled.", arResult[0].msProblem);
+	}
+
+	@Test
+	public void cancelReleasesReadWithoutTimeout() throws InterruptedException {
+		ExecutorService oExecutor = Executors.newSingleThreadExecutor();
+		MvDownload oDownload;
+		MvDownloadFuture oFuture;
+		long lStart;
+
+		moOptions.miReadTimeoutMillis = 0;
+		oDownload = new MvDownload(moServer.getUrl("/file"), msTarget, moOptions);
+		oFuture = oDownload.start(oExecutor);
+		waitForStall(oDownload);
+		lStart = System.nanoTime();
+		oFuture.cancel(true);
+		assertTrue(getMillisSince(lStart) < CANCEL_MILLIS);
+		oExecutor.shutdown();
+		assertTrue("Download still running", oExecutor.awaitTermination(CANCEL_MILLIS, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void stopDownloadReleasesStalledSegments() throws InterruptedException {
+		final MvDownload oDownload;
+		final MvDownloadResult[] arResult = new MvDownloadResult[1];
+		Thread oThread;
+		long lStart;
+
+		moFile.mlStallAfter = 64*1024;
+		moOptions.miSegments = 4;
+		oDownload = new MvDownload(moServer.getUrl("/file"), msTarget, moOptions);
+		oThread = new Thread() {
+			@Override
+			public void run() {
+				arResult[0] = oDownload.run();
+			}
+		};
+		oThread.start();
+		while (moFile.moRanges.size() < 4) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(500);
+		lStart = System.nanoTime();
+		oDownload.stopDownload();
+		assertTrue(getMillisSince(lStart) < CANCEL_MILLIS);
+		oThread.join(CANCEL_MILLIS);
+		assertFalse("Download still running", oThread.isAlive());
+		assertEquals("Download cancelled.", arResult[0].msProblem);
+		assertTrue(new File(msTarget + MvSegmentedDownload.STATE_FILE_EXTENSION).exists());
+	}
+
+	/**
+	 * Waits until the download has read the bytes that the server sends
+	 * before it stalls.
+	 */
+	void waitForStall(MvDownload aoDownload) throws InterruptedException {
+		long lStart = System.nanoTime();
+
+		while (aoDownload.mlBytesDownloaded < moFile.mlStallAfter) {
+			assertTrue("Stall not reached", getMillisSince(lStart) < 10000);
+			Thread.sleep(10);
+		}
+		Thread.sleep(200);
+	}
+
+	static long getMillisSince(long alStartNanos) {
+		return((System.nanoTime() - alStartNanos) / 1000000);
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that a download with a {@link MvDownloadJournal} is resumed with an
+ * If-Range request, is downloaded again if the file has changed on the
+ * server, and is reported with the combined hash of its chunks.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadJournalTest {
+
+	static final int FILE_SIZE = 1024*1024;
+
+	@Rule
+	public TemporaryFolder moFolder = new TemporaryFolder();
+
+	MvTestServer moServer;
+	MvTestServer.Resource moFile;
+	String msTarget;
+	MvDownloadOptions moOptions;
+
+	@Before
+	public void setUp() throws IOException, InterruptedException {
+		moServer = new MvTestServer();
+		moServer.start();
+		moFile = moServer.add("/file", MvTestServer.randomBytes(FILE_SIZE, 1));
+		msTarget = new File(moFolder.getRoot(), "file").getAbsolutePath();
+		moOptions = new MvDownloadOptions();
+		moOptions.mbJournal = true;
+		stopPartWay();
+		moFile.moRanges.clear();
+		moFile.moIfRanges.clear();
+	}
+
+	@After
+	public void tearDown() {
+		moServer.stop();
+	}
+
+	@Test
+	public void resumesWithIfRange() throws IOException {
+		long lCommitted = MvDownloadJournal.load(msTarget).mlCommittedBytes;
+
+		assertTrue(lCommitted > 0);
+		download();
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+		// One request, for the bytes that were not committed.
+		assertEquals(1, moFile.moRanges.size());
+		assertEquals("bytes=" + lCommitted + "-", moFile.moRanges.get(0));
+		assertEquals("\"mv-test-1\"", moFile.moIfRanges.get(0));
+		assertFalse(new File(msTarget + MvDownloadJournal.JOURNAL_FILE_EXTENSION).exists());
+	}
+
+	@Test
+	public void reportsChunkHashByDefault() {
+		MvDownload oDownload = download();
+
+		assertNotNull(oDownload.getHash(MvChunkMap.HASH_NAME));
+		// Digests that would need the committed bytes read back are left out.
+		assertNull(oDownload.getHash("MD5"));
+		assertNull(oDownload.getHash("SHA1"));
+	}
+
+	@Test
+	public void computesSpecifiedDigests() {
+		MvDownload oDownload;
+
+		moOptions.masDigestAlgorithms = MvDigestStage.DEFAULT_ALGORITHMS;
+		oDownload = download();
+		assertNotNull(oDownload.getHash(MvChunkMap.HASH_NAME));
+		assertEquals(MvContentStoreTest.getSha1(moFile.mContent), oDownload.getHash("SHA1"));
+	}
+
+	@Test
+	public void restartsWhenFileHasChanged() throws IOException {
+		byte[] arNewContent = MvTestServer.randomBytes(FILE_SIZE, 2);
+
+		moFile.mContent = arNewContent;
+		moFile.msETag = "\"mv-test-2\"";
+		download();
+		assertArrayEquals(arNewContent, Files.readAllBytes(new File(msTarget).toPath()));
+		// The server ignored the range and sent the new file in reply to the
+		// same request.
+		assertEquals(1, moFile.moRanges.size());
+		assertEquals("\"mv-test-1\"", moFile.moIfRanges.get(0));
+		assertFalse(new File(msTarget + MvDownloadJournal.JOURNAL_FILE_EXTENSION).exists());
+	}
+
+	/**
+	 * Starts a slow download of the file and stops it after a quarter of the
+	 * file has been downloaded.
+	 */
+	void stopPartWay() throws InterruptedException {
+		final MvDownload oDownload = new MvDownload(moServer.getUrl("/file"), msTarget, moOptions);
+		final MvDownloadResult[] arResult = new MvDownloadResult[1];
+		Thread oThread = new Thread() {
+			@Override
+			public void run() {
+				arResult[0] = oDownload.run();
+			}
+		};
+
+		moFile.miWriteDelayMillis = 5;
+		oThread.start();
+		while (oDownload.mlBytesDownloaded < FILE_SIZE / 4) {
+			Thread.sleep(10);
+		}
+		oDownload.stopDownload();
+		oThread.join(10000);
+		assertFalse("Download still running", oThread.isAlive());
+		assertEquals("Download cancelled.", arResult[0].msProblem);
+		assertTrue(new File(msTarget + MvDownloadJournal.JOURNAL_FILE_EXTENSION).exists());
+		moFile.miWriteDelayMillis = 0;
+	}
+
+	MvDownload download() {
+		MvDownload oDownload = new MvDownload(moServer.getUrl("/file"), msTarget, moOptions);
+		MvDownloadResult oResult = oDownload.run();
+
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		return(oDownload);
+	}
+
+}
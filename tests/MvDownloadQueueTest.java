@@ -0,0 +1,147 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that {@link MvDownloadQueue} pauses a bulk download to make room for
+ * an interactive one only if the bulk download can be resumed with a range
+ * request, and that a download that cannot be paused drops the request.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvDownloadQueueTest {
+
+	static final int FILE_SIZE = 1024*1024;
+
+	@Rule
+	public TemporaryFolder moFolder = new TemporaryFolder();
+
+	MvTestServer moServer;
+	MvTestServer.Resource moFile;
+	MvDownloadQueue moQueue;
+	String msTarget;
+
+	@Before
+	public void setUp() throws IOException {
+		moServer = new MvTestServer();
+		moServer.start();
+		moFile = moServer.add("/file", MvTestServer.randomBytes(FILE_SIZE, 1));
+		moFile.miWriteDelayMillis = 5;
+		moQueue = new MvDownloadQueue(1, 1);
+		msTarget = new File(moFolder.getRoot(), "file").getAbsolutePath();
+	}
+
+	@After
+	public void tearDown() {
+		moQueue.shutdown();
+		moServer.stop();
+	}
+
+	@Test
+	public void pausesBulkDownloadForInteractiveJob() throws Exception {
+		MvDownloadFuture oBulk = submitBulk();
+		Future<MvException> oInteractive;
+
+		oInteractive = moQueue.submit(moServer.getUrl("/file"), new Callable<MvException>() {
+			@Override
+			public MvException call() {
+				return(new MvDownloadResult());
+			}
+		}, MvDownloadQueue.PRIORITY_INTERACTIVE);
+		preempt();
+		oInteractive.get(10, TimeUnit.SECONDS);
+		assertTrue(oBulk.getResult().mbSuccess);
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+		// The paused download asked for the rest with a range.
+		assertEquals(2, moFile.moRanges.size());
+	}
+
+	@Test
+	public void skipsDownloadOfUnknownSize() throws Exception {
+		MvDownloadFuture oBulk;
+
+		moFile.mbChunked = true;
+		oBulk = submitBulk();
+		moQueue.submit(moServer.getUrl("/file"), new Callable<MvException>() {
+			@Override
+			public MvException call() {
+				return(new MvDownloadResult());
+			}
+		}, MvDownloadQueue.PRIORITY_INTERACTIVE);
+		preempt();
+		assertFalse(oBulk.getDownload().isPaused());
+		assertEquals(1, moQueue.getInFlightCount());
+		assertTrue(oBulk.getResult().mbSuccess);
+		assertEquals(1, moFile.moRanges.size());
+	}
+
+	@Test
+	public void dropsRefusedPause() throws Exception {
+		MvDownloadFuture oBulk;
+		long lStart = System.nanoTime();
+
+		moFile.mbChunked = true;
+		oBulk = submitBulk();
+		oBulk.getDownload().pause();
+		while (oBulk.getDownload().isPaused()) {
+			assertTrue("Pause not dropped", System.nanoTime() - lStart < 10000*1000000L);
+			Thread.sleep(10);
+		}
+		assertTrue(oBulk.get(10, TimeUnit.SECONDS).mbSuccess);
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+	}
+
+	/**
+	 * Submits a slow bulk download of the file and waits until it has bytes.
+	 */
+	MvDownloadFuture submitBulk() throws InterruptedException {
+		MvDownloadOptions oOptions = new MvDownloadOptions();
+		MvDownloadFuture oFuture;
+		long lStart = System.nanoTime();
+
+		oOptions.miPriority = MvDownloadQueue.PRIORITY_BULK;
+		oFuture = moQueue.submit(new MvDownload(moServer.getUrl("/file"), msTarget, oOptions));
+		while (oFuture.getDownload().getDownloadedSize() == 0) {
+			assertTrue("Download not started", System.nanoTime() - lStart < 10000*1000000L);
+			Thread.sleep(10);
+		}
+		return(oFuture);
+	}
+
+	/**
+	 * Pauses a running download for the waiting ones, as if the running
+	 * download had run long enough to be paused.
+	 */
+	void preempt() throws InterruptedException {
+		synchronized (moQueue) {
+			moQueue.preempt(System.currentTimeMillis() + MvDownloadQueue.MIN_RUN_MILLIS);
+		}
+		// Let the download reach its next buffer.
+		Thread.sleep(200);
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link MvSegmentedDownload}, and of the fallback of
+ * {@link MvDownload} to a single connection, against an
+ * {@link MvTestServer}.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvSegmentedDownloadTest {
+
+	static final int FILE_SIZE = 2*1024*1024 + 123;
+
+	@Rule
+	public TemporaryFolder moFolder = new TemporaryFolder();
+
+	MvTestServer moServer;
+	MvTestServer.Resource moFile;
+	String msTarget;
+
+	@Before
+	public void setUp() throws IOException {
+		moServer = new MvTestServer();
+		moServer.start();
+		moFile = moServer.add("/file", MvTestServer.randomBytes(FILE_SIZE, 1));
+		msTarget = new File(moFolder.getRoot(), "file").getAbsolutePath();
+	}
+
+	@After
+	public void tearDown() {
+		moServer.stop();
+	}
+
+	@Test
+	public void downloadsInSegments() throws IOException {
+		MvSegmentedDownload oDownload = new MvSegmentedDownload(moServer.getUrl("/file"), msTarget, null, 4);
+		MvException oResult;
+
+		assertTrue(oDownload.probe());
+		assertEquals(4, oDownload.getSegmentCount());
+		oResult = oDownload.startDownload();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+		assertEquals(4, moFile.moRanges.size());
+		for (String sRange : moFile.moRanges) {
+			assertNotNull(sRange);
+		}
+		assertFalse(new File(msTarget + MvSegmentedDownload.STATE_FILE_EXTENSION).exists());
+	}
+
+	@Test
+	public void resumesFromSegmentState() throws IOException {
+		MvSegmentedDownload oResumed;
+		MvException oResult;
+
+		stopAtQuarter("/file", false);
+		moFile.moRanges.clear();
+		oResumed = new MvSegmentedDownload(moServer.getUrl("/file"), msTarget, null, 4);
+		assertTrue(oResumed.probe());
+		oResult = oResumed.startDownload();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		assertTrue(oResumed.mlResumedBytes >= FILE_SIZE / 4);
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+		// The segments asked only for the bytes they did not have.
+		assertEquals(FILE_SIZE - oResumed.mlResumedBytes, getRangeBytes());
+		assertFalse(new File(msTarget + MvSegmentedDownload.STATE_FILE_EXTENSION).exists());
+	}
+
+	@Test
+	public void fallsBackWithoutAcceptRanges() throws IOException {
+		MvDownloadOptions oOptions = new MvDownloadOptions();
+		MvDownloadResult oResult;
+
+		moFile.mbRanges = false;
+		assertFalse(new MvSegmentedDownload(moServer.getUrl("/file"), msTarget, null, 4).probe());
+
+		oOptions.miSegments = 4;
+		oResult = new MvDownload(moServer.getUrl("/file"), msTarget, oOptions).run();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+		// One connection, without a range.
+		assertEquals(1, moFile.moRanges.size());
+		assertEquals(null, moFile.moRanges.get(0));
+		assertFalse(new File(msTarget + MvSegmentedDownload.STATE_FILE_EXTENSION).exists());
+	}
+
+	@Test
+	public void plainDownloadRestartsAfterStoppedSegments() throws IOException {
+		MvDownloadResult oResult;
+
+		stopAtQuarter("/file", true);
+		assertEquals(FILE_SIZE, new File(msTarget).length());
+		oResult = new MvDownload(moServer.getUrl("/file"), msTarget, new MvDownloadOptions()).run();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+		assertFalse(new File(msTarget + MvSegmentedDownload.STATE_FILE_EXTENSION).exists());
+	}
+
+	@Test
+	public void resumesBehindChangingRedirect() throws IOException {
+		MvTestServer.Resource oRedirect = moServer.add("/redirect", new byte[0]);
+		MvSegmentedDownload oResumed;
+		MvException oResult;
+
+		// The redirect is followed by probe(), as it would be from http to a
+		// https CDN, which the platform does not follow.
+		HttpURLConnection.setFollowRedirects(false);
+		try {
+			oRedirect.msLocation = moServer.getUrl("/file?signature=1");
+			stopAtQuarter("/redirect", false);
+			oRedirect.msLocation = moServer.getUrl("/file?signature=2");
+			oResumed = new MvSegmentedDownload(moServer.getUrl("/redirect"), msTarget, null, 4);
+			assertTrue(oResumed.probe());
+			oResult = oResumed.startDownload();
+		} finally {
+			HttpURLConnection.setFollowRedirects(true);
+		}
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		assertTrue(oResumed.mlResumedBytes >= FILE_SIZE / 4);
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+	}
+
+	@Test
+	public void restartsWithoutSegmentState() throws IOException {
+		MvSegmentedDownload oRestarted;
+		MvException oResult;
+
+		stopAtQuarter("/file", true);
+		assertTrue(new File(msTarget + MvSegmentedDownload.STATE_FILE_EXTENSION).delete());
+		moFile.moRanges.clear();
+		oRestarted = new MvSegmentedDownload(moServer.getUrl("/file"), msTarget, null, 4);
+		assertTrue(oRestarted.probe());
+		oResult = oRestarted.startDownload();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		assertEquals(0, oRestarted.mlResumedBytes);
+		assertEquals(FILE_SIZE, getRangeBytes());
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+	}
+
+	@Test
+	public void failedSegmentStopsTheOthers() {
+		MvSegmentedDownload oDownload = new MvSegmentedDownload(moServer.getUrl("/file"), msTarget, null, 4);
+		MvException oResult;
+		long lStart;
+
+		// The other segments would take more than three seconds.
+		moFile.miWriteDelayMillis = 100;
+		moFile.mlRefuseFrom = 3 * (FILE_SIZE / 4);
+		assertTrue(oDownload.probe());
+		lStart = System.nanoTime();
+		oResult = oDownload.startDownload();
+		assertTrue((System.nanoTime() - lStart) / 1000000 < 1000);
+		assertFalse(oResult.mbSuccess);
+		assertTrue(oResult.msProblem, oResult.msProblem.startsWith("Segment 3 failed."));
+		assertTrue(new File(msTarget + MvSegmentedDownload.STATE_FILE_EXTENSION).exists());
+	}
+
+	/**
+	 * Downloads the file slowly in four segments and stops the download after
+	 * a quarter of the file has been downloaded.
+	 */
+	void stopAtQuarter(String asPath, boolean abPreallocate) {
+		final MvSegmentedDownload oStopped = new MvSegmentedDownload(moServer.getUrl(asPath), msTarget, null, 4);
+		MvException oResult;
+
+		moFile.miWriteDelayMillis = 5;
+		oStopped.setPreallocate(abPreallocate);
+		assertTrue(oStopped.probe());
+		oStopped.setOnProgressListener(new MvSegmentedDownload.OnProgressListener() {
+			@Override
+			public void onProgress(long alBytesDownloaded) {
+				if (alBytesDownloaded >= FILE_SIZE / 4) {
+					oStopped.stopDownload();
+				}
+			}
+		});
+		oResult = oStopped.startDownload();
+		assertFalse(oResult.mbSuccess);
+		assertEquals("Download cancelled.", oResult.msProblem);
+		assertTrue(new File(msTarget + MvSegmentedDownload.STATE_FILE_EXTENSION).exists());
+		moFile.miWriteDelayMillis = 0;
+	}
+
+	/**
+	 * Returns the number of bytes asked for by the Range headers of the GET
+	 * requests.
+	 */
+	long getRangeBytes() {
+		long lBytes = 0;
+		String[] arRange;
+
+		synchronized (moFile.moRanges) {
+			for (String sRange : moFile.moRanges) {
+				arRange = sRange.substring("bytes=".length()).split("-");
+				lBytes = lBytes + Long.parseLong(arRange[1]) - Long.parseLong(arRange[0]) + 1;
+			}
+		}
+		return(lBytes);
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that downloads of the same URL to the same file share one transfer
+ * through {@link MvSingleFlight}, and that a follower takes over the transfer
+ * when the leader is cancelled by its caller.
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvSingleFlightTest {
+
+	static final int FILE_SIZE = 1024*1024;
+
+	@Rule
+	public TemporaryFolder moFolder = new TemporaryFolder();
+
+	MvTestServer moServer;
+	MvTestServer.Resource moFile;
+	String msTarget;
+
+	/**
+	 * A download run on a thread of its own.
+	 */
+	class DownloadThread extends Thread {
+		final MvDownload moDownload = new MvDownload(moServer.getUrl("/file"), msTarget, new MvDownloadOptions());
+		MvDownloadResult moResult;
+
+		@Override
+		public void run() {
+			moResult = moDownload.run();
+		}
+
+		/**
+		 * Starts the download and waits until it has bytes, either its own or
+		 * those of the leader that it follows.
+		 */
+		DownloadThread begin() throws InterruptedException {
+			long lStart = System.nanoTime();
+
+			start();
+			while (moDownload.getDownloadedSize() == 0) {
+				assertTrue("Download not started", System.nanoTime() - lStart < 10000*1000000L);
+				Thread.sleep(10);
+			}
+			return(this);
+		}
+
+		MvDownloadResult end() throws InterruptedException {
+			join(10000);
+			assertFalse("Download still running", isAlive());
+			return(moResult);
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		moServer = new MvTestServer();
+		moServer.start();
+		moFile = moServer.add("/file", MvTestServer.randomBytes(FILE_SIZE, 1));
+		moFile.miWriteDelayMillis = 5;
+		msTarget = new File(moFolder.getRoot(), "file").getAbsolutePath();
+	}
+
+	@After
+	public void tearDown() {
+		moServer.stop();
+	}
+
+	@Test
+	public void followerSharesTransfer() throws InterruptedException, IOException {
+		DownloadThread oLeader = new DownloadThread().begin();
+		DownloadThread oFollower = new DownloadThread().begin();
+		MvDownloadResult oResult;
+
+		oResult = oLeader.end();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		oResult = oFollower.end();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		assertEquals(1, moFile.moRequests.get());
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+		assertEquals(0, MvSingleFlight.getDefault().getFlightCount());
+	}
+
+	@Test
+	public void followerTakesOverFromCancelledLeader() throws InterruptedException, IOException {
+		DownloadThread oLeader = new DownloadThread().begin();
+		DownloadThread oFollower = new DownloadThread().begin();
+		MvDownloadResult oResult;
+
+		oLeader.moDownload.stopDownload();
+		oResult = oLeader.end();
+		assertFalse(oResult.mbSuccess);
+		assertEquals("Download cancelled.", oResult.msProblem);
+		oResult = oFollower.end();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		assertEquals(FILE_SIZE, oFollower.moDownload.getDownloadedSize());
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+		assertEquals(0, MvSingleFlight.getDefault().getFlightCount());
+	}
+
+	@Test
+	public void flightEndsWhenAllAreCancelled() throws InterruptedException, IOException {
+		DownloadThread oLeader = new DownloadThread().begin();
+		DownloadThread oFollower = new DownloadThread().begin();
+		MvDownloadResult oResult;
+
+		oFollower.moDownload.stopDownload();
+		assertEquals("Download cancelled.", oFollower.end().msProblem);
+		oLeader.moDownload.stopDownload();
+		assertEquals("Download cancelled.", oLeader.end().msProblem);
+		assertEquals(0, MvSingleFlight.getDefault().getFlightCount());
+
+		moFile.miWriteDelayMillis = 0;
+		oResult = new DownloadThread().begin().end();
+		assertTrue(oResult.msProblem, oResult.mbSuccess);
+		assertArrayEquals(moFile.mContent, Files.readAllBytes(new File(msTarget).toPath()));
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+ * AndroidWithoutStupid Java Library
+ * Created by V. Subhash
+ * http://www.VSubhash.com
+ * Released as Public Domain Software in 2014
+ */
+
+package com.vsubhash.droid.androidwithoutstupid;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class is an HTTP server, run in the same JVM as the tests, that serves
+ * {@link Resource resources} from memory. Each resource can be set to refuse
+ * ranges, to change its ETag, to redirect, to send its body slowly or to stop
+ * sending it part of the way, and it records the requests made for it.
+ *
+ * <pre>
+MvTestServer oServer = new MvTestServer();
+oServer.start();
+MvTestServer.Resource oFile = oServer.add("/file", MvTestServer.randomBytes(1024*1024, 1));
+oFile.mbRanges = false;
+String sUrl = oServer.getUrl("/file");  // http://127.0.0.1:&lt;port&gt;/file
+oServer.stop();
+ * </pre>
+ *
+ * @author V. Subhash (<a href="http://www.VSubhash.com/">www.VSubhash.com</a>)
+ * @version 2026.10.17
+ */
+public class MvTestServer {
+
+	static final int WRITE_SIZE = 16*1024;
+
+	HttpServer moServer;
+	ExecutorService moExecutor;
+	final Map<String, Resource> moResources = new ConcurrentHashMap<String, Resource>();
+	final CountDownLatch moStopped = new CountDownLatch(1);
+
+	/**
+	 * A file served by the server, and the requests made for it. Its fields
+	 * can be changed while the server is running.
+	 */
+	public static class Resource {
+		/**
+		 * Body of the resource.
+		 */
+		public volatile byte[] mContent;
+
+		/**
+		 * Whether range requests are honoured and <code>Accept-Ranges</code>
+		 * is sent.
+		 */
+		public volatile boolean mbRanges = true;
+
+		/**
+		 * Whether the body is sent in chunks, without a
+		 * <code>Content-Length</code>.
+		 */
+		public volatile boolean mbChunked = false;
+
+		/**
+		 * ETag of the resource; null to send none.
+		 */
+		public volatile String msETag = "\"mv-test-1\"";
+
+		/**
+		 * Address to which requests are redirected with 302 Found; null to
+		 * serve the content.
+		 */
+		public volatile String msLocation = null;
+
+		/**
+		 * Byte from which range requests are refused with 403 Forbidden; -1 to
+		 * refuse none.
+		 */
+		public volatile long mlRefuseFrom = -1;
+
+		/**
+		 * Number of body bytes after which the response stops until the server
+		 * is stopped; -1 to send the whole body.
+		 */
+		public volatile long mlStallAfter = -1;
+
+		/**
+		 * Time waited after each {@value MvTestServer#WRITE_SIZE} bytes of the
+		 * body.
+		 */
+		public volatile int miWriteDelayMillis = 0;
+
+		/**
+		 * Number of requests made for the resource, including HEAD requests.
+		 */
+		public final AtomicInteger moRequests = new AtomicInteger(0);
+
+		/**
+		 * Range header of each GET request, or null if it had none.
+		 */
+		public final List<String> moRanges = Collections.synchronizedList(new ArrayList<String>());
+
+		/**
+		 * If-Range header of each GET request, or null if it had none.
+		 */
+		public final List<String> moIfRanges = Collections.synchronizedList(new ArrayList<String>());
+
+		Resource(byte[] aContent) {
+			mContent = aContent;
+		}
+	}
+
+	/**
+	 * Starts the server on a free port of the loopback interface.
+	 *
+	 * @throws IOException if the server could not be started
+	 */
+	public void start() throws IOException {
+		// Without it, small responses wait about 40 ms for a delayed ACK.
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		moServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 64);
+		moExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable aoTask) {
+				Thread oThread = new Thread(aoTask, "MvTestServer");
+				oThread.setDaemon(true);
+				return(oThread);
+			}
+		});
+		moServer.setExecutor(moExecutor);
+		moServer.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange aoExchange) throws IOException {
+				serve(aoExchange);
+			}
+		});
+		moServer.start();
+	}
+
+	/**
+	 * Stops the server. Responses that have stalled are ended.
+	 */
+	public void stop() {
+		moStopped.countDown();
+		if (moServer != null) {
+			moServer.stop(0);
+			moServer = null;
+		}
+		if (moExecutor != null) {
+			moExecutor.shutdownNow();
+			moExecutor = null;
+		}
+	}
+
+	/**
+	 * Adds a resource, or replaces the one with the same path.
+	 *
+	 * @param asPath path of the resource, such as <code>/file</code>
+	 * @param aContent body of the resource
+	 * @return the resource, whose settings can be changed
+	 */
+	public Resource add(String asPath, byte[] aContent) {
+		Resource oResource = new Resource(aContent);
+		moResources.put(asPath, oResource);
+		return(oResource);
+	}
+
+	/**
+	 * Returns the URL of specified path.
+	 *
+	 * @param asPath path of a resource
+	 * @return URL of the resource
+	 */
+	public String getUrl(String asPath) {
+		return("http://127.0.0.1:" + moServer.getAddress().getPort() + asPath);
+	}
+
+	/**
+	 * Returns bytes that cannot be compressed. The same length and seed give
+	 * the same bytes.
+	 *
+	 * @param aiLength number of bytes
+	 * @param alSeed seed of the random bytes
+	 * @return random bytes
+	 */
+	public static byte[] randomBytes(int aiLength, long alSeed) {
+		byte[] arBytes = new byte[aiLength];
+		new Random(alSeed).nextBytes(arBytes);
+		return(arBytes);
+	}
+
+	void serve(HttpExchange aoExchange) throws IOException {
+		Resource oResource = moResources.get(aoExchange.getRequestURI().getPath());
+		Headers oRequest = aoExchange.getRequestHeaders(), oResponse = aoExchange.getResponseHeaders();
+		byte[] arContent;
+		long[] arRange = null;
+		long lStart = 0, lEnd;
+		int iCode = 200;
+
+		try {
+			drain(aoExchange);
+			if (oResource == null) {
+				aoExchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			oResource.moRequests.incrementAndGet();
+			if (oResource.msLocation != null) {
+				oResponse.set("Location", oResource.msLocation);
+				aoExchange.sendResponseHeaders(302, -1);
+				return;
+			}
+			arContent = oResource.mContent;
+			lEnd = arContent.length - 1;
+			if (!"HEAD".equals(aoExchange.getRequestMethod())) {
+				oResource.moRanges.add(oRequest.getFirst("Range"));
+				oResource.moIfRanges.add(oRequest.getFirst("If-Range"));
+			}
+			if (oResource.mbRanges) {
+				oResponse.set("Accept-Ranges", "bytes");
+				arRange = getRange(oRequest, arContent.length, oResource.msETag);
+			}
+			if (arRange != null) {
+				if ((oResource.mlRefuseFrom >= 0) && (arRange[0] >= oResource.mlRefuseFrom)) {
+					aoExchange.sendResponseHeaders(403, -1);
+					return;
+				}
+				if (arRange[0] > lEnd) {
+					oResponse.set("Content-Range", "bytes */" + arContent.length);
+					aoExchange.sendResponseHeaders(416, -1);
+					return;
+				}
+				lStart = arRange[0];
+				lEnd = Math.min(arRange[1], lEnd);
+				iCode = 206;
+				oResponse.set("Content-Range", "bytes " + lStart + "-" + lEnd + "/" + arContent.length);
+			}
+			oResponse.set("Content-Type", "application/octet-stream");
+			if (oResource.msETag != null) {
+				oResponse.set("ETag", oResource.msETag);
+			}
+			if ("HEAD".equals(aoExchange.getRequestMethod())) {
+				oResponse.set("Content-Length", Long.toString(lEnd - lStart + 1));
+				aoExchange.sendResponseHeaders(iCode, -1);
+				return;
+			}
+			aoExchange.sendResponseHeaders(iCode, oResource.mbChunked ? 0 : lEnd - lStart + 1);
+			write(aoExchange.getResponseBody(), oResource, arContent, (int) lStart, (int) (lEnd - lStart + 1));
+		} finally {
+			aoExchange.close();
+		}
+	}
+
+	void write(OutputStream aoOut, Resource aoResource, byte[] aContent, int aiOffset, int aiLength)
+			throws IOException {
+		long lSent = 0, lStallAfter = aoResource.mlStallAfter;
+		int n;
+
+		while (aiLength > 0) {
+			n = Math.min(WRITE_SIZE, aiLength);
+			if ((lStallAfter >= 0) && (lSent + n > lStallAfter)) {
+				n = (int) (lStallAfter - lSent);
+				aoOut.write(aContent, aiOffset, n);
+				aoOut.flush();
+				try {
+					moStopped.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw new IOException("Response stalled");
+			}
+			aoOut.write(aContent, aiOffset, n);
+			aiOffset = aiOffset + n;
+			aiLength = aiLength - n;
+			lSent = lSent + n;
+			if (aoResource.miWriteDelayMillis > 0) {
+				aoOut.flush();
+				try {
+					TimeUnit.MILLISECONDS.sleep(aoResource.miWriteDelayMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Response interrupted");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the first and last bytes asked for by the Range header of a
+	 * request, or null if the whole body needs to be sent, as when the
+	 * If-Range header does not match the ETag.
+	 */
+	static long[] getRange(Headers aoHeaders, int aiSize, String asETag) {
+		String sRange = aoHeaders.getFirst("Range");
+		String sIfRange = aoHeaders.getFirst("If-Range");
+		int iDash;
+
+		if ((sRange == null) || !sRange.startsWith("bytes=") || (sRange.indexOf(',') >= 0)) {
+			return(null);
+		}
+		if ((sIfRange != null) && !sIfRange.equals(asETag)) {
+			return(null);
+		}
+		sRange = sRange.substring("bytes=".length()).trim();
+		iDash = sRange.indexOf('-');
+		try {
+			if (iDash == 0) {
+				return(new long[] {
+						Math.max(0, aiSize - Long.parseLong(sRange.substring(1))), aiSize - 1 });
+			}
+			if (iDash == sRange.length() - 1) {
+				return(new long[] { Long.parseLong(sRange.substring(0, iDash)), aiSize - 1 });
+			}
+			return(new long[] {
+					Long.parseLong(sRange.substring(0, iDash)),
+					Long.parseLong(sRange.substring(iDash + 1)) });
+		} catch (NumberFormatException e) {
+			return(null);
+		}
+	}
+
+	static void drain(HttpExchange aoExchange) throws IOException {
+		byte[] buf = new byte[512];
+		while (aoExchange.getRequestBody().read(buf) != -1) {
+			// Request bodies are not used.
+		}
+	}
+
+}